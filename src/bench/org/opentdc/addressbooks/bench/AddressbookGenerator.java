@@ -0,0 +1,172 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.opentdc.addressbooks.AddressModel;
+import org.opentdc.addressbooks.AddressType;
+import org.opentdc.addressbooks.AddressbookModel;
+import org.opentdc.addressbooks.BulkContactModel;
+import org.opentdc.addressbooks.BulkOrgModel;
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.OrgModel;
+import org.opentdc.addressbooks.ServiceProvider;
+
+/**
+ * Generates synthetic addressbooks for the benchmarks.
+ * The data only depends on the seed, so that runs are comparable.
+ * About one in LAST_NAMES.length contacts has the last name Muster.
+ * @author Bruno Kaiser
+ *
+ */
+public class AddressbookGenerator {
+	public static final String[] LAST_NAMES = { 
+		"Muster", "Meier", "Mueller", "Schmid", "Keller", "Weber", "Huber", "Schneider", "Meyer", "Steiner",
+		"Fischer", "Gerber", "Brunner", "Baumann", "Frei", "Zimmermann", "Moser", "Widmer", "Wyss", "Graf" };
+	public static final String[] FIRST_NAMES = { 
+		"Hans", "Peter", "Anna", "Maria", "Daniel", "Martin", "Thomas", "Andreas", "Ursula", "Ruth",
+		"Christian", "Stefan", "Barbara", "Sandra", "Marco", "Monika", "Michael", "Nicole", "Bruno", "Laura" };
+	public static final String[] ORG_NAMES = { 
+		"Arbalo", "Acme", "Globex", "Initech", "Umbrella", "Hooli", "Stark", "Wayne", "Cyberdyne", "Tyrell" };
+	private static final int BULK_SIZE = 1000;
+
+	private final Random random;
+	private int counter = 0;
+
+	/**
+	 * Constructor.
+	 * @param seed the seed of the random generator
+	 */
+	public AddressbookGenerator(
+			long seed) 
+	{
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @return a new contact without id
+	 */
+	public ContactModel newContact() {
+		ContactModel _contact = new ContactModel(
+				FIRST_NAMES[random.nextInt(FIRST_NAMES.length)], 
+				LAST_NAMES[random.nextInt(LAST_NAMES.length)] + (random.nextInt(4) == 0 ? "-" + counter : ""));
+		_contact.setCompany(ORG_NAMES[random.nextInt(ORG_NAMES.length)]);
+		_contact.setBirthdayMillis(-946771200000L + random.nextInt(20000) * 86400000L);
+		counter++;
+		return _contact;
+	}
+
+	/**
+	 * @param size the number of contacts
+	 * @return new contacts with generated ids, not stored anywhere
+	 */
+	public List<ContactModel> newContacts(
+			int size) 
+	{
+		List<ContactModel> _contacts = new ArrayList<ContactModel>(size);
+		for (int i = 0; i < size; i++) {
+			ContactModel _contact = newContact();
+			_contact.setId(String.format("%08x-%04x", random.nextInt(), i));
+			_contacts.add(_contact);
+		}
+		return _contacts;
+	}
+
+	/**
+	 * @return a new org without id
+	 */
+	public OrgModel newOrg() {
+		OrgModel _org = new OrgModel();
+		_org.setName(ORG_NAMES[random.nextInt(ORG_NAMES.length)] + " " + counter++);
+		return _org;
+	}
+
+	/**
+	 * @return a new phone number or email address without id
+	 */
+	public AddressModel newAddress() {
+		AddressModel _address = new AddressModel();
+		if (random.nextBoolean()) {
+			_address.setAddressType(AddressType.PHONE);
+			_address.setValue("+41 79 " + (1000000 + random.nextInt(9000000)));
+		} else {
+			_address.setAddressType(AddressType.EMAIL);
+			_address.setValue("user" + random.nextInt(1000000) + "@example.com");
+		}
+		return _address;
+	}
+
+	/**
+	 * Create addressbooks with contacts, addresses and orgs through a ServiceProvider.
+	 * @param sp the service provider to fill
+	 * @param books the number of addressbooks
+	 * @param contactsPerBook the number of contacts per addressbook
+	 * @param addressesPerContact the number of addresses per contact and org
+	 * @param orgsPerBook the number of orgs per addressbook
+	 * @return the ids of the created addressbooks
+	 */
+	public List<String> populate(
+			ServiceProvider sp, 
+			int books, 
+			int contactsPerBook, 
+			int addressesPerContact, 
+			int orgsPerBook) 
+	{
+		List<String> _aids = new ArrayList<String>(books);
+		for (int b = 0; b < books; b++) {
+			String _aid = sp.create(null, new AddressbookModel("bench " + b)).getId();
+			_aids.add(_aid);
+			List<BulkContactModel> _contacts = new ArrayList<BulkContactModel>(BULK_SIZE);
+			for (int i = 0; i < contactsPerBook; i++) {
+				_contacts.add(new BulkContactModel(null, newContact(), newAddresses(addressesPerContact)));
+				if (_contacts.size() == BULK_SIZE || i == contactsPerBook - 1) {
+					sp.bulkContacts(null, _aid, _contacts);
+					_contacts.clear();
+				}
+			}
+			List<BulkOrgModel> _orgs = new ArrayList<BulkOrgModel>(BULK_SIZE);
+			for (int i = 0; i < orgsPerBook; i++) {
+				_orgs.add(new BulkOrgModel(null, newOrg(), newAddresses(addressesPerContact)));
+				if (_orgs.size() == BULK_SIZE || i == orgsPerBook - 1) {
+					sp.bulkOrgs(null, _aid, _orgs);
+					_orgs.clear();
+				}
+			}
+		}
+		return _aids;
+	}
+
+	private List<AddressModel> newAddresses(
+			int size) 
+	{
+		List<AddressModel> _addresses = new ArrayList<AddressModel>(size);
+		for (int i = 0; i < size; i++) {
+			_addresses.add(newAddress());
+		}
+		return _addresses;
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.ContactQueryHandler;
+import org.opentdc.addressbooks.TopKCollector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Ordering contacts with the comparators of the query handlers: a full sort, 
+ * and the bounded top-K selection used by the list methods.
+ * @author Bruno Kaiser
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ComparatorBenchmark {
+	@Param({ "10000" })
+	public int contacts;
+
+	@Param({ "orderBy(lastName)", "orderBy(lastName,desc)", "orderBy(birthday)" })
+	public String query;
+
+	@Param({ "50" })
+	public int pageSize;
+
+	private Comparator<ContactModel> comparator;
+	private List<ContactModel> models;
+
+	@Setup
+	public void setup() {
+		comparator = new ContactQueryHandler(query).getComparator();
+		models = new AddressbookGenerator(42).newContacts(contacts);
+	}
+
+	@Benchmark
+	public List<ContactModel> sort() {
+		List<ContactModel> _sorted = new ArrayList<ContactModel>(models);
+		Collections.sort(_sorted, comparator);
+		return _sorted;
+	}
+
+	@Benchmark
+	public List<ContactModel> topK() {
+		TopKCollector<ContactModel> _collector = new TopKCollector<ContactModel>(comparator, 0, pageSize);
+		for (ContactModel _model : models) {
+			_collector.add(_model);
+		}
+		return _collector.getPage();
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.bench;
+
+/**
+ * The contact queries used by the benchmarks, by a short name that appears in the results.
+ * @author Bruno Kaiser
+ *
+ */
+public class ContactQueries {
+	public static final String NONE = "none";
+	public static final String EQUAL = "equal";
+	public static final String PREFIX = "prefix";
+	public static final String RANGE = "range";
+	public static final String SORTED = "sorted";
+	public static final String FILTERED_SORTED = "filteredSorted";
+
+	/**
+	 * @param name one of the names above
+	 * @return the query string
+	 */
+	public static String get(
+			String name) 
+	{
+		if (NONE.equals(name)) {
+			return "";
+		} else if (EQUAL.equals(name)) {
+			return "lastName().equalTo(Muster)";
+		} else if (PREFIX.equals(name)) {
+			return "lastName().isLike(Mu*)";
+		} else if (RANGE.equals(name)) {
+			return "lastName().greaterThanOrEqualTo(M);lastName().lessThan(N)";
+		} else if (SORTED.equals(name)) {
+			return "orderBy(lastName)";
+		} else if (FILTERED_SORTED.equals(name)) {
+			return "firstName().equalTo(Anna);orderBy(lastName,desc)";
+		}
+		throw new IllegalArgumentException("unknown query <" + name + ">");
+	}
+}
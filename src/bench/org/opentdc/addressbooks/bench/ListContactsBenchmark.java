@@ -0,0 +1,77 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opentdc.addressbooks.ContactModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * End-to-end ServiceProvider.listContacts and listAllContacts calls on synthetic addressbooks.
+ * @author Bruno Kaiser
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListContactsBenchmark {
+	@Param({ ContactQueries.NONE, ContactQueries.EQUAL, ContactQueries.PREFIX, ContactQueries.SORTED })
+	public String queryName;
+
+	@Param({ "0" })
+	public int position;
+
+	@Param({ "50" })
+	public int size;
+
+	private String query;
+
+	@Setup
+	public void setup() {
+		query = ContactQueries.get(queryName);
+	}
+
+	@Benchmark
+	public List<ContactModel> listContacts(
+			SyntheticAddressbooks data) 
+	{
+		return data.getServiceProvider().listContacts(data.getAid(), query, "", position, size);
+	}
+
+	@Benchmark
+	public List<ContactModel> listAllContacts(
+			SyntheticAddressbooks data) 
+	{
+		return data.getServiceProvider().listAllContacts(query, "", position, size);
+	}
+}
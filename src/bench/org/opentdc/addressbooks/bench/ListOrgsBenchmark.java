@@ -0,0 +1,78 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opentdc.addressbooks.AddressModel;
+import org.opentdc.addressbooks.OrgModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * End-to-end ServiceProvider list calls on the orgs and addresses of synthetic addressbooks.
+ * @author Bruno Kaiser
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListOrgsBenchmark {
+	@Param({ "50" })
+	public int size;
+
+	@Benchmark
+	public List<OrgModel> listOrgs(
+			SyntheticAddressbooks data) 
+	{
+		return data.getServiceProvider().listOrgs(data.getAid(), "", "", 0, size);
+	}
+
+	@Benchmark
+	public List<OrgModel> listAllOrgs(
+			SyntheticAddressbooks data) 
+	{
+		return data.getServiceProvider().listAllOrgs("", "", 0, size);
+	}
+
+	@Benchmark
+	public List<AddressModel> listAddresses(
+			SyntheticAddressbooks data) 
+	{
+		return data.getServiceProvider().listAddresses(data.getAid(), data.getCid(), "", "", 0, size);
+	}
+
+	@Benchmark
+	public List<AddressModel> listOrgAddresses(
+			SyntheticAddressbooks data) 
+	{
+		return data.getServiceProvider().listOrgAddresses(data.getAid(), data.getOid(), "", "", 0, size);
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.ContactQueryHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Evaluation of a compiled contact query against single contacts; the result is the time per contact.
+ * @author Bruno Kaiser
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QueryEvaluationBenchmark {
+	private static final int CONTACTS = 10000;
+
+	@Param({ ContactQueries.NONE, ContactQueries.EQUAL, ContactQueries.PREFIX, ContactQueries.RANGE })
+	public String queryName;
+
+	private ContactQueryHandler queryHandler;
+	private ContactModel[] contacts;
+
+	@Setup
+	public void setup() {
+		queryHandler = new ContactQueryHandler(ContactQueries.get(queryName));
+		List<ContactModel> _contacts = new AddressbookGenerator(42).newContacts(CONTACTS);
+		contacts = _contacts.toArray(new ContactModel[_contacts.size()]);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CONTACTS)
+	public int evaluate() {
+		int _matches = 0;
+		for (ContactModel _contact : contacts) {
+			if (queryHandler.evaluate(_contact)) {
+				_matches++;
+			}
+		}
+		return _matches;
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.bench;
+
+import java.util.List;
+
+import org.opentdc.addressbooks.ServiceProvider;
+import org.opentdc.addressbooks.memory.MemoryServiceProvider;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A MemoryServiceProvider filled with synthetic addressbooks, shared by the list benchmarks.
+ * @author Bruno Kaiser
+ *
+ */
+@State(Scope.Benchmark)
+public class SyntheticAddressbooks {
+	@Param({ "4" })
+	public int books;
+
+	@Param({ "1000", "10000" })
+	public int contactsPerBook;
+
+	@Param({ "2" })
+	public int addressesPerContact;
+
+	@Param({ "100" })
+	public int orgsPerBook;
+
+	private ServiceProvider sp;
+	private String aid;
+	private String cid;
+	private String oid;
+
+	@Setup
+	public void setup() {
+		sp = new MemoryServiceProvider();
+		List<String> _aids = new AddressbookGenerator(42).populate(sp, books, contactsPerBook, addressesPerContact, orgsPerBook);
+		aid = _aids.get(0);
+		cid = sp.listContacts(aid, "", "", 0, 1).get(0).getId();
+		oid = sp.listOrgs(aid, "", "", 0, 1).get(0).getId();
+	}
+
+	/**
+	 * @return the filled service provider
+	 */
+	public ServiceProvider getServiceProvider() {
+		return sp;
+	}
+
+	/**
+	 * @return the id of the first addressbook
+	 */
+	public String getAid() {
+		return aid;
+	}
+
+	/**
+	 * @return the id of a contact in the first addressbook
+	 */
+	public String getCid() {
+		return cid;
+	}
+
+	/**
+	 * @return the id of an org in the first addressbook
+	 */
+	public String getOid() {
+		return oid;
+	}
+}
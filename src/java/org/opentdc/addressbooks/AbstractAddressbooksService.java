@@ -0,0 +1,646 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+import org.opentdc.service.GenericService;
+import org.opentdc.service.exception.NotFoundException;
+import org.opentdc.service.exception.NotImplementedException;
+import org.opentdc.service.exception.ValidationException;
+
+/**
+ * The resources of the REST service API of addressbooks that AddressbooksService and AsyncAddressbooksService
+ * serve in the same way (lists over all addressbooks, streaming, search, lookup, change log and reports), 
+ * together with the service provider of the servlet context and the helpers of both.
+ * @author Bruno Kaiser
+ *
+ */
+public abstract class AbstractAddressbooksService extends GenericService<ServiceProvider> {
+
+	private static final Logger logger = Logger.getLogger(AbstractAddressbooksService.class.getName());
+	public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+	public static final String ETAG_HEADER = "ETag";
+	public static final String LAST_MODIFIED_HEADER = "Last-Modified";
+	// number of threads of the shared ExecutorAsyncServiceProvider of AsyncAddressbooksService; 0 for none
+	public static final String ASYNC_THREADS_PARAM = "addressbooks.async.threads";
+	public static final String ASYNC_QUEUE_SIZE_PARAM = "addressbooks.async.queueSize";
+	public static final int DEFAULT_ASYNC_THREADS = 0;
+	public static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
+	// seconds after which an asynchronous request is answered with 503 (Service Unavailable); 0 waits forever
+	public static final String ASYNC_TIMEOUT_PARAM = "addressbooks.async.timeout";
+	public static final int DEFAULT_ASYNC_TIMEOUT = 30;
+	// the providers of the servlet context are resolved once and kept in this context attribute
+	private static final String PROVIDERS_ATTRIBUTE = AddressbooksService.class.getName() + ".providers";
+	// the generic types of the list results, see toListResponse()
+	protected static final Type ADDRESSBOOK_LIST_TYPE = new GenericEntity<List<AddressbookModel>>(new ArrayList<AddressbookModel>()) {}.getType();
+	protected static final Type CONTACT_LIST_TYPE = new GenericEntity<List<ContactModel>>(new ArrayList<ContactModel>()) {}.getType();
+	protected static final Type ORG_LIST_TYPE = new GenericEntity<List<OrgModel>>(new ArrayList<OrgModel>()) {}.getType();
+	protected static final Type ADDRESS_LIST_TYPE = new GenericEntity<List<AddressModel>>(new ArrayList<AddressModel>()) {}.getType();
+	protected static final Type BULK_RESULT_LIST_TYPE = new GenericEntity<List<BulkResultModel>>(new ArrayList<BulkResultModel>()) {}.getType();
+	protected ServiceProvider sp = null;
+	protected AsyncServiceProvider asp = null;
+	protected int asyncTimeout = 0;
+	@Context
+	private Request restRequest;
+	@Context
+	private HttpServletResponse httpResponse;
+	
+	/**
+	 * Invoked for each service invocation (Constructor).
+	 * The service provider is resolved by the first invocation (or by AddressbooksServiceListener at startup) 
+	 * and shared by all later invocations in the same servlet context.
+	 */
+	protected AbstractAddressbooksService(
+		ServletContext context
+	) throws ReflectiveOperationException{
+		Providers _providers = getProviders(context);
+		sp = _providers.sp;
+		asp = _providers.asp;
+		asyncTimeout = _providers.asyncTimeout;
+	}
+
+	/**
+	 * Forget the service provider of a servlet context, stop the threads of its asynchronous adapter 
+	 * and close the provider if it holds resources (threads, files, pending snapshots).
+	 * @param context the servlet context
+	 */
+	static void releaseServiceProvider(
+			ServletContext context) 
+	{
+		synchronized (AbstractAddressbooksService.class) {
+			Object _providers = context.getAttribute(PROVIDERS_ATTRIBUTE);
+			context.removeAttribute(PROVIDERS_ATTRIBUTE);
+			if (!(_providers instanceof Providers)) {
+				return;
+			}
+			Providers _resolved = (Providers) _providers;
+			if (_resolved.asp instanceof ExecutorAsyncServiceProvider) {
+				((ExecutorAsyncServiceProvider) _resolved.asp).shutdown();
+			}
+			if (_resolved.sp instanceof Closeable) {
+				try {
+					((Closeable) _resolved.sp).close();
+				} catch (IOException _ex) {
+					logger.log(Level.SEVERE, "the service provider could not be closed", _ex);
+				}
+			}
+			logger.info("AddressbooksService released " + (_resolved.sp == null ? null : _resolved.sp.getClass().getName()));
+		}
+	}
+
+	/**
+	 * Return the contacts of all addressbooks.
+	 * With a cursor parameter, keyset pagination is used instead of position: the first page is requested 
+	 * with an empty cursor, and each response carries the cursor of the next page in the X-Next-Cursor header.
+	 * Pages ordered by id, lastName, firstName or fn start at the cursor; with any other orderBy, 
+	 * each page reads all contacts (see CursorServiceProvider).
+	 * @param cursor	the cursor of the previous page (optional)
+	 * @return	a list of at most size ContactModels
+	 */
+	@GET
+	@Path("/allContacts")
+	public Response allContacts(
+			@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
+			@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
+			@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
+			@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+			@QueryParam("cursor") String cursor,
+			@DefaultValue("false") @QueryParam("trace") boolean trace,
+			@QueryParam("fields") String fields
+	) {
+		FieldProjection<ContactModel> _projection = FieldProjection.getInstance(ContactModel.class, fields);
+		checkCollectionModified(null);
+		QueryTrace _trace = QueryTrace.begin("allContacts", query, trace);
+		try {
+			if (cursor != null) {
+				ResultPage<ContactModel> _page = getCursorServiceProvider().listAllContacts(query, queryType, cursor, size);
+				setNextCursor(_page.getNextCursor());
+				return toListResponse(QueryTrace.returned(_trace, _page.getItems()), CONTACT_LIST_TYPE, _projection);
+			}
+			return toListResponse(QueryTrace.returned(_trace, sp.listAllContacts(query, queryType, position, size)), CONTACT_LIST_TYPE, _projection);
+		}
+		finally {
+			QueryTrace.end(_trace);
+		}
+	}
+
+	/**
+	 * Return the orgs of all addressbooks.
+	 * With a cursor parameter, keyset pagination is used instead of position: the first page is requested 
+	 * with an empty cursor, and each response carries the cursor of the next page in the X-Next-Cursor header.
+	 * Pages ordered by id start at the cursor; with an orderBy predicate, each page reads all orgs (see CursorServiceProvider).
+	 * @param cursor	the cursor of the previous page (optional)
+	 * @return	a list of at most size OrgModels
+	 */
+	@GET
+	@Path("/allOrgs")
+	public Response allOrgs(
+			@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
+			@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
+			@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
+			@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+			@QueryParam("cursor") String cursor,
+			@DefaultValue("false") @QueryParam("trace") boolean trace,
+			@QueryParam("fields") String fields
+	) {
+		FieldProjection<OrgModel> _projection = FieldProjection.getInstance(OrgModel.class, fields);
+		checkCollectionModified(null);
+		QueryTrace _trace = QueryTrace.begin("allOrgs", query, trace);
+		try {
+			if (cursor != null) {
+				ResultPage<OrgModel> _page = getCursorServiceProvider().listAllOrgs(query, queryType, cursor, size);
+				setNextCursor(_page.getNextCursor());
+				return toListResponse(QueryTrace.returned(_trace, _page.getItems()), ORG_LIST_TYPE, _projection);
+			}
+			return toListResponse(QueryTrace.returned(_trace, sp.listAllOrgs(query, queryType, position, size)), ORG_LIST_TYPE, _projection);
+		}
+		finally {
+			QueryTrace.end(_trace);
+		}
+	}
+
+	/**
+	 * Stream the contacts of all addressbooks as a JSON array (format=json) or as newline-delimited JSON (format=ndjson).
+	 * The contacts are read lazily from the service provider and written incrementally.
+	 */
+	@GET
+	@Path("/allContacts/stream")
+	@Produces({ MediaType.APPLICATION_JSON, JsonStreamingOutput.APPLICATION_NDJSON })
+	public Response streamAllContacts(
+			@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
+			@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
+			@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
+			@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+			@DefaultValue(JsonStreamingOutput.FORMAT_JSON) @QueryParam("format") String format,
+			@QueryParam("fields") String fields
+	) {
+		FieldProjection<ContactModel> _projection = FieldProjection.getInstance(ContactModel.class, fields);
+		checkCollectionModified(null);
+		Iterator<ContactModel> _models = getStreamingServiceProvider().iterateAllContacts(query, queryType, position, size);
+		return Response.ok(new JsonStreamingOutput<ContactModel>(_models, ContactModel.class, format, _projection), 
+				JsonStreamingOutput.getMediaType(format)).build();
+	}
+
+	/**
+	 * Stream the orgs of all addressbooks as a JSON array (format=json) or as newline-delimited JSON (format=ndjson).
+	 * The orgs are read lazily from the service provider and written incrementally.
+	 */
+	@GET
+	@Path("/allOrgs/stream")
+	@Produces({ MediaType.APPLICATION_JSON, JsonStreamingOutput.APPLICATION_NDJSON })
+	public Response streamAllOrgs(
+			@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
+			@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
+			@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
+			@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+			@DefaultValue(JsonStreamingOutput.FORMAT_JSON) @QueryParam("format") String format,
+			@QueryParam("fields") String fields
+	) {
+		FieldProjection<OrgModel> _projection = FieldProjection.getInstance(OrgModel.class, fields);
+		checkCollectionModified(null);
+		Iterator<OrgModel> _models = getStreamingServiceProvider().iterateAllOrgs(query, queryType, position, size);
+		return Response.ok(new JsonStreamingOutput<OrgModel>(_models, OrgModel.class, format, _projection), 
+				JsonStreamingOutput.getMediaType(format)).build();
+	}
+
+	/**
+	 * Full-text search for contacts and orgs in all addressbooks.
+	 * Matches words and word prefixes of names, notes and other text fields, and of the 
+	 * addresses (email, phone, street, city) of the contacts and orgs. A hit must match all words of q.
+	 * @param q	the search words
+	 * @return	a list of at most size hits, best first
+	 * @throws ValidationException	if q contains no word
+	 */
+	@GET
+	@Path("/search")
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<SearchHitModel> search(
+		@QueryParam("q") String q,
+		@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
+		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size
+	) throws ValidationException {
+		SearchServiceProvider _sp = getSearchServiceProvider();
+		checkCollectionModified(null);
+		return _sp.search(q, position, size);
+	}
+
+	/**
+	 * Reverse lookup: find the contacts and orgs in all addressbooks that own a phone number or email address.
+	 * Values are compared in normalized form, i.e. phone numbers in E.164 format and email addresses in lower case.
+	 * @param addressType	PHONE or EMAIL; if omitted, values containing @ are looked up as EMAIL, others as PHONE
+	 * @param value	the phone number or email address
+	 * @return	the matching addresses with the ids of their addressbook and contact or org
+	 * @throws ValidationException	if the type is not PHONE or EMAIL, or the value is not valid for the type
+	 */
+	@GET
+	@Path("/lookup")
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<AddressLookupModel> lookupAddress(
+		@QueryParam("addressType") AddressType addressType,
+		@QueryParam("value") String value
+	) throws ValidationException {
+		if (addressType == null) {
+			addressType = value != null && value.indexOf('@') >= 0 ? AddressType.EMAIL : AddressType.PHONE;
+		}
+		return getAddressLookupServiceProvider().lookupAddress(addressType, value);
+	}
+
+	/**
+	 * Report the heap usage of the stored models and the bytes saved by interning repetitive string attributes.
+	 * This walks all stored models and is meant for diagnostics, not for frequent polling.
+	 * @return	the heap report
+	 */
+	@GET
+	@Path("/_heap")
+	@Produces(MediaType.APPLICATION_JSON)
+	public HeapReportModel getHeapReport() {
+		return getHeapReportServiceProvider().getHeapReport();
+	}
+
+	/**
+	 * Report the latency histograms, request and error counters and list row counters of all resource methods 
+	 * in the Prometheus text format, with the counters of the service provider if it exports any.
+	 * The same request metrics are available in JMX under org.opentdc.addressbooks:type=EndpointMetrics.
+	 * @return	the metrics
+	 */
+	@GET
+	@Path("/_metrics")
+	@Produces(RequestMetrics.PROMETHEUS_CONTENT_TYPE)
+	public String getMetrics() {
+		return RequestMetrics.toPrometheus(sp instanceof MetricsServiceProvider ? ((MetricsServiceProvider) sp).getMetrics() : null);
+	}
+
+	/**
+	 * Return the changes of the contacts, orgs and addresses of an addressbook since a sync token.
+	 * A sync starts without a token: the response asks for a resync and carries the token to use 
+	 * after the addressbook has been reloaded with listContacts and listOrgs.
+	 * @param aid	the addressbook id
+	 * @param since	the token returned by the previous call (optional)
+	 * @param size	the maximum number of changes to return
+	 * @return	the changes in the order they were made, and the token of the next call
+	 * @throws NotFoundException	if no addressbook with this id exists
+	 * @throws ValidationException	if the token is malformed
+	 */
+	@GET
+	@Path("/{aid}/changes")
+	@Produces(MediaType.APPLICATION_JSON)
+	public ChangesModel listChanges(
+		@PathParam("aid") String aid,
+		@QueryParam("since") String since,
+		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size
+	) throws NotFoundException, ValidationException {
+		return getChangeLogServiceProvider().listChanges(aid, since, size);
+	}
+
+	/********************************** contact ***************************************/
+	/**
+	 * Stream the contacts of an addressbook as a JSON array (format=json) or as newline-delimited JSON (format=ndjson).
+	 * The contacts are read lazily from the service provider and written incrementally.
+	 */
+	@GET
+	@Path("/{aid}/contact/stream")
+	@Produces({ MediaType.APPLICATION_JSON, JsonStreamingOutput.APPLICATION_NDJSON })
+	public Response streamContacts(
+		@PathParam("aid") String aid,
+		@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
+		@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
+		@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
+		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+		@DefaultValue(JsonStreamingOutput.FORMAT_JSON) @QueryParam("format") String format,
+		@QueryParam("fields") String fields
+	) {
+		FieldProjection<ContactModel> _projection = FieldProjection.getInstance(ContactModel.class, fields);
+		checkCollectionModified(aid);
+		Iterator<ContactModel> _models = getStreamingServiceProvider().iterateContacts(aid, query, queryType, position, size);
+		return Response.ok(new JsonStreamingOutput<ContactModel>(_models, ContactModel.class, format, _projection), 
+				JsonStreamingOutput.getMediaType(format)).build();
+	}
+
+	/********************************** orgs ***************************************/
+	/**
+	 * Stream the orgs of an addressbook as a JSON array (format=json) or as newline-delimited JSON (format=ndjson).
+	 * The orgs are read lazily from the service provider and written incrementally.
+	 */
+	@GET
+	@Path("/{aid}/org/stream")
+	@Produces({ MediaType.APPLICATION_JSON, JsonStreamingOutput.APPLICATION_NDJSON })
+	public Response streamOrgs(
+		@PathParam("aid") String aid,
+		@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
+		@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
+		@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
+		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+		@DefaultValue(JsonStreamingOutput.FORMAT_JSON) @QueryParam("format") String format,
+		@QueryParam("fields") String fields
+	) {
+		FieldProjection<OrgModel> _projection = FieldProjection.getInstance(OrgModel.class, fields);
+		checkCollectionModified(aid);
+		Iterator<OrgModel> _models = getStreamingServiceProvider().iterateOrgs(aid, query, queryType, position, size);
+		return Response.ok(new JsonStreamingOutput<OrgModel>(_models, OrgModel.class, format, _projection), 
+				JsonStreamingOutput.getMediaType(format)).build();
+	}
+
+	/********************************** helpers ***************************************/
+	/**
+	 * @return the service provider if it supports keyset pagination
+	 * @throws NotImplementedException if the service provider does not support keyset pagination
+	 */
+	private CursorServiceProvider getCursorServiceProvider() 
+			throws NotImplementedException 
+	{
+		if (!(sp instanceof CursorServiceProvider)) {
+			throw new NotImplementedException("cursor pagination is not supported by this service provider.");
+		}
+		return (CursorServiceProvider) sp;
+	}
+
+	/**
+	 * @return the service provider if it keeps a change log
+	 * @throws NotImplementedException if the service provider does not keep a change log
+	 */
+	private ChangeLogServiceProvider getChangeLogServiceProvider() 
+			throws NotImplementedException 
+	{
+		if (!(sp instanceof ChangeLogServiceProvider)) {
+			throw new NotImplementedException("change log is not supported by this service provider.");
+		}
+		return (ChangeLogServiceProvider) sp;
+	}
+
+	/**
+	 * @return the service provider if it supports address lookup
+	 * @throws NotImplementedException if the service provider does not support address lookup
+	 */
+	private AddressLookupServiceProvider getAddressLookupServiceProvider() 
+			throws NotImplementedException 
+	{
+		if (!(sp instanceof AddressLookupServiceProvider)) {
+			throw new NotImplementedException("address lookup is not supported by this service provider.");
+		}
+		return (AddressLookupServiceProvider) sp;
+	}
+
+	/**
+	 * @return the service provider if it reports its heap usage
+	 * @throws NotImplementedException if the service provider does not report its heap usage
+	 */
+	private HeapReportServiceProvider getHeapReportServiceProvider() 
+			throws NotImplementedException 
+	{
+		if (!(sp instanceof HeapReportServiceProvider)) {
+			throw new NotImplementedException("heap report is not supported by this service provider.");
+		}
+		return (HeapReportServiceProvider) sp;
+	}
+
+	/**
+	 * @return the service provider if it supports full-text search
+	 * @throws NotImplementedException if the service provider does not support full-text search
+	 */
+	private SearchServiceProvider getSearchServiceProvider() 
+			throws NotImplementedException 
+	{
+		if (!(sp instanceof SearchServiceProvider)) {
+			throw new NotImplementedException("full-text search is not supported by this service provider.");
+		}
+		return (SearchServiceProvider) sp;
+	}
+
+	/**
+	 * @return the service provider if it supports streaming
+	 * @throws NotImplementedException if the service provider does not support streaming
+	 */
+	private StreamingServiceProvider getStreamingServiceProvider() 
+			throws NotImplementedException 
+	{
+		if (!(sp instanceof StreamingServiceProvider)) {
+			throw new NotImplementedException("streaming is not supported by this service provider.");
+		}
+		return (StreamingServiceProvider) sp;
+	}
+
+	/**
+	 * Answer a conditional GET on a single object. Its weak ETag and Last-Modified are derived from modifiedAt.
+	 * @param id the id of the object
+	 * @param modifiedAt the time of the last change of the object
+	 * @param model the object
+	 * @return the object, if the client does not have the current version
+	 * @throws WebApplicationException with status 304 (Not Modified) if the client has the current version
+	 */
+	protected <T> T checkModified(
+			String id, 
+			Date modifiedAt, 
+			T model) 
+			throws WebApplicationException 
+	{
+		if (modifiedAt != null) {
+			evaluatePreconditions(getEntityTag(id, modifiedAt), modifiedAt);
+		}
+		return model;
+	}
+
+	protected static EntityTag getEntityTag(
+			String id, 
+			Date modifiedAt) 
+	{
+		return new EntityTag(id + "-" + Long.toString(modifiedAt.getTime(), 36), true);
+	}
+
+	/**
+	 * @param projection the requested fields, null for all
+	 * @return the model, or an entity that writes the projected model
+	 */
+	protected static <T> Object projectModel(
+			T model, 
+			FieldProjection<T> projection) 
+	{
+		return projection == null ? model : projection.toObjectOutput(model);
+	}
+
+	/**
+	 * Build the response of a list. Within a Response, the JAXB and JSON providers only find the element type of 
+	 * a List if it is wrapped into a GenericEntity of its generic type.
+	 * @param models the models
+	 * @param listType the generic type of the list, e.g. CONTACT_LIST_TYPE
+	 * @param projection the requested fields, null for all
+	 * @return the response with the models, or with an entity that writes the projected models
+	 */
+	protected static <T> Response toListResponse(
+			List<T> models, 
+			Type listType, 
+			FieldProjection<T> projection) 
+	{
+		if (projection != null) {
+			return Response.ok(projection.toArrayOutput(models), MediaType.APPLICATION_JSON).build();
+		}
+		return Response.ok(new GenericEntity<List<T>>(models, listType)).build();
+	}
+
+	/**
+	 * The service provider of a servlet context and its asynchronous variant.
+	 */
+	private static class Providers {
+		private final ServiceProvider sp;
+		private final AsyncServiceProvider asp;
+		private final int asyncTimeout;
+
+		Providers(
+				ServiceProvider sp, 
+				AsyncServiceProvider asp, 
+				int asyncTimeout) 
+		{
+			this.sp = sp;
+			this.asp = asp;
+			this.asyncTimeout = asyncTimeout;
+		}
+	}
+
+	/**
+	 * Get the providers of a servlet context. The first call resolves them; later calls find them in a context attribute.
+	 * @throws ReflectiveOperationException if the configured service provider cannot be instantiated
+	 */
+	private Providers getProviders(
+			ServletContext context) 
+			throws ReflectiveOperationException 
+	{
+		Object _providers = context == null ? null : context.getAttribute(PROVIDERS_ATTRIBUTE);
+		if (_providers instanceof Providers) {
+			return (Providers) _providers;
+		}
+		synchronized (AbstractAddressbooksService.class) {
+			_providers = context == null ? null : context.getAttribute(PROVIDERS_ATTRIBUTE);
+			if (_providers instanceof Providers) {
+				return (Providers) _providers;
+			}
+			ServiceProvider _sp = this.getServiceProvider(AddressbooksService.class, context);
+			AsyncServiceProvider _asp = _sp instanceof AsyncServiceProvider 
+					? (AsyncServiceProvider) _sp : newAsyncServiceProvider(context, _sp);
+			Providers _resolved = new Providers(_sp, _asp, context == null ? 0 : 
+					ContextParameters.getIntParameter(context, ASYNC_TIMEOUT_PARAM, DEFAULT_ASYNC_TIMEOUT));
+			if (context != null) {
+				context.setAttribute(PROVIDERS_ATTRIBUTE, _resolved);
+			}
+			logger.info("AddressbooksService initialized with " + (_sp == null ? null : _sp.getClass().getName()));
+			return _resolved;
+		}
+	}
+
+	/**
+	 * Create the ExecutorAsyncServiceProvider shared by all requests of a servlet context, 
+	 * if ASYNC_THREADS_PARAM configures one.
+	 * @return the asynchronous adapter of the service provider, or null if requests are served synchronously
+	 */
+	private static AsyncServiceProvider newAsyncServiceProvider(
+			ServletContext context, 
+			ServiceProvider sp) 
+	{
+		int _threads = context == null ? 0 : ContextParameters.getIntParameter(context, ASYNC_THREADS_PARAM, DEFAULT_ASYNC_THREADS);
+		if (_threads <= 0) {
+			return null;
+		}
+		logger.info("serving CRUD requests asynchronously with " + _threads + " threads");
+		return new ExecutorAsyncServiceProvider(sp, _threads, 
+				ContextParameters.getIntParameter(context, ASYNC_QUEUE_SIZE_PARAM, DEFAULT_ASYNC_QUEUE_SIZE));
+	}
+
+
+	/**
+	 * Answer a conditional GET on a list. Its strong ETag and Last-Modified are derived from the collection version, 
+	 * if the service provider keeps versions. The version is read before the list, so that a concurrent change 
+	 * can only lead to an outdated ETag, never to an outdated list under a current ETag.
+	 * @param aid the addressbook of the list, null for lists over all addressbooks
+	 * @throws WebApplicationException with status 304 (Not Modified) if the client has the current version
+	 */
+	protected void checkCollectionModified(
+			String aid) 
+			throws WebApplicationException 
+	{
+		if (!(sp instanceof VersionedServiceProvider)) {
+			return;
+		}
+		VersionedServiceProvider _vsp = (VersionedServiceProvider) sp;
+		CollectionVersion _version = aid == null ? _vsp.getVersion() : _vsp.getVersion(aid);
+		if (_version != null) {
+			evaluatePreconditions(new EntityTag((aid == null ? "" : aid + "-") + Long.toString(_version.getVersion(), 36)), 
+					_version.getLastModified());
+		}
+	}
+
+	/**
+	 * Evaluate If-None-Match and If-Modified-Since, and set ETag and Last-Modified on the response.
+	 * @throws WebApplicationException with status 304 (Not Modified) if the preconditions say so
+	 */
+	private void evaluatePreconditions(
+			EntityTag tag, 
+			Date lastModified) 
+			throws WebApplicationException 
+	{
+		// HTTP dates have a resolution of seconds
+		Date _lastModified = new Date(lastModified.getTime() / 1000 * 1000);
+		if (restRequest != null) {
+			ResponseBuilder _builder = restRequest.evaluatePreconditions(_lastModified, tag);
+			if (_builder != null) {
+				throw new WebApplicationException(_builder.tag(tag).lastModified(_lastModified).build());
+			}
+		}
+		if (httpResponse != null) {
+			httpResponse.setHeader(ETAG_HEADER, (tag.isWeak() ? "W/\"" : "\"") + tag.getValue() + "\"");
+			httpResponse.setDateHeader(LAST_MODIFIED_HEADER, _lastModified.getTime());
+		}
+	}
+
+	private void setNextCursor(
+			String nextCursor) 
+	{
+		if (httpResponse != null && nextCursor != null) {
+			httpResponse.setHeader(NEXT_CURSOR_HEADER, nextCursor);
+		}
+	}
+}
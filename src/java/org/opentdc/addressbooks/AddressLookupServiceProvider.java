@@ -0,0 +1,48 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.List;
+
+import org.opentdc.service.exception.ValidationException;
+
+/**
+ * Optional interface of a ServiceProvider that finds the contacts and orgs owning a phone number or email address.
+ * @author Bruno Kaiser
+ *
+ */
+public interface AddressLookupServiceProvider {
+
+	/**
+	 * Find all addresses of all addressbooks with the same normalized value (see AddressNormalizer).
+	 * @param addressType PHONE or EMAIL
+	 * @param value the phone number or email address
+	 * @return the matching addresses with their owners; empty if there is none
+	 * @throws ValidationException if the type is not PHONE or EMAIL, or the value is not valid for the type
+	 */
+	public List<AddressLookupModel> lookupAddress(
+			AddressType addressType,
+			String value)
+		throws ValidationException;
+}
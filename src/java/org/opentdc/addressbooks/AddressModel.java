@@ -28,7 +28,9 @@ import java.util.Date;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlRootElement
@@ -42,9 +44,11 @@ public class AddressModel {
 	private String postalCode;  // optional
 	private String city;		// optional
 	private short countryCode;	// ISO Code, default: 0 = NA
-	private Date createdAt;
+	@XmlTransient
+	private transient long createdAt = Timestamps.NONE;
 	private String createdBy;
-	private Date modifiedAt;
+	@XmlTransient
+	private transient long modifiedAt = Timestamps.NONE;
 	private String modifiedBy;
 
 	public AddressModel() {
@@ -123,11 +127,20 @@ public class AddressModel {
 		this.countryCode = isoCode;
 	}
 
+	@XmlElement
 	public Date getCreatedAt() {
-		return createdAt;
+		return Timestamps.toDate(createdAt);
 	}
 
 	public void setCreatedAt(Date createdAt) {
+		this.createdAt = Timestamps.toMillis(createdAt);
+	}
+
+	public long getCreatedAtMillis() {
+		return createdAt;
+	}
+
+	public void setCreatedAtMillis(long createdAt) {
 		this.createdAt = createdAt;
 	}
 
@@ -139,11 +152,20 @@ public class AddressModel {
 		this.createdBy = createdBy;
 	}
 
+	@XmlElement
 	public Date getModifiedAt() {
-		return modifiedAt;
+		return Timestamps.toDate(modifiedAt);
 	}
 
 	public void setModifiedAt(Date modifiedAt) {
+		this.modifiedAt = Timestamps.toMillis(modifiedAt);
+	}
+
+	public long getModifiedAtMillis() {
+		return modifiedAt;
+	}
+
+	public void setModifiedAtMillis(long modifiedAt) {
 		this.modifiedAt = modifiedAt;
 	}
 
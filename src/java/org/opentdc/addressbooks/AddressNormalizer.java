@@ -0,0 +1,115 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalizes the values of phone and email addresses so that equal addresses compare equal:
+ * phone numbers to E.164 (+ followed by the country code and the subscriber number), 
+ * email addresses to lower case. National phone numbers (with a leading 0) get the default country code.
+ * @author Bruno Kaiser
+ *
+ */
+public class AddressNormalizer {
+	public static final String COUNTRY_CODE_PROPERTY = "org.opentdc.addressbooks.defaultCountryCode";
+	public static final String DEFAULT_COUNTRY_CODE = "41";
+	private static final String countryCode = System.getProperty(COUNTRY_CODE_PROPERTY, DEFAULT_COUNTRY_CODE);
+	// E.164 numbers have at most 15 digits; shorter ones are not callable from abroad
+	private static final int MIN_PHONE_DIGITS = 7;
+	private static final int MAX_PHONE_DIGITS = 15;
+	private static final Pattern TRUNK_PREFIX = Pattern.compile("\\(0\\)");
+	private static final Pattern NON_DIGITS = Pattern.compile("[^0-9]+");
+
+	/**
+	 * @param addressType the type of the address
+	 * @param value the value of the address
+	 * @return the normalized value, or null if the type has no normalized form or the value is not valid for it
+	 */
+	public static String normalize(
+			AddressType addressType, 
+			String value) 
+	{
+		if (addressType == AddressType.PHONE) {
+			return normalizePhone(value);
+		}
+		if (addressType == AddressType.EMAIL) {
+			return normalizeEmail(value);
+		}
+		return null;
+	}
+
+	/**
+	 * Normalize a phone number to E.164, e.g. +41 (0)79 123 45 67, 0041791234567 and 079 123 45 67 to +41791234567.
+	 * @param value a phone number
+	 * @return the number in E.164 format, or null if the value is not a valid phone number
+	 */
+	public static String normalizePhone(
+			String value) 
+	{
+		if (value == null) {
+			return null;
+		}
+		String _value = value.trim();
+		if (_value.regionMatches(true, 0, "tel:", 0, 4)) {
+			_value = _value.substring(4);
+		}
+		boolean _international = _value.startsWith("+");
+		String _digits = NON_DIGITS.matcher(TRUNK_PREFIX.matcher(_value).replaceAll("")).replaceAll("");
+		if (!_international) {
+			if (_digits.startsWith("00")) {
+				_digits = _digits.substring(2);
+			} else if (_digits.startsWith("0")) {
+				_digits = countryCode + _digits.substring(1);
+			}
+			// otherwise the number is taken to start with the country code, as delivered by most caller-id sources
+		}
+		if (_digits.length() < MIN_PHONE_DIGITS || _digits.length() > MAX_PHONE_DIGITS || _digits.startsWith("0")) {
+			return null;
+		}
+		return "+" + _digits;
+	}
+
+	/**
+	 * @param value an email address
+	 * @return the address in lower case, or null if the value is not a valid email address
+	 */
+	public static String normalizeEmail(
+			String value) 
+	{
+		if (value == null) {
+			return null;
+		}
+		String _value = value.trim();
+		if (_value.regionMatches(true, 0, "mailto:", 0, 7)) {
+			_value = _value.substring(7);
+		}
+		int _at = _value.lastIndexOf('@');
+		if (_at <= 0 || _at == _value.length() - 1) {
+			return null;
+		}
+		return _value.toLowerCase(Locale.ROOT);
+	}
+}
@@ -28,7 +28,9 @@ import java.util.Date;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
 /**
  * @author bruno
@@ -39,9 +41,11 @@ import javax.xml.bind.annotation.XmlRootElement;
 public class AddressbookModel {
 	private String id;		// sortable
 	private String name;	// mandatory
-	private Date createdAt;
+	@XmlTransient
+	private transient long createdAt = Timestamps.NONE;
 	private String createdBy;
-	private Date modifiedAt;
+	@XmlTransient
+	private transient long modifiedAt = Timestamps.NONE;
 	private String modifiedBy;
 
 	/**
@@ -92,14 +96,29 @@ public class AddressbookModel {
 	/**
 	 * @return createdAt
 	 */
+	@XmlElement
 	public Date getCreatedAt() {
-		return createdAt;
+		return Timestamps.toDate(createdAt);
 	}
 
 	/**
 	 * @param createdAt  the date of the addressbook creation
 	 */
 	public void setCreatedAt(Date createdAt) {
+		this.createdAt = Timestamps.toMillis(createdAt);
+	}
+
+	/**
+	 * @return createdAt in epoch milliseconds, Timestamps.NONE if it is not set
+	 */
+	public long getCreatedAtMillis() {
+		return createdAt;
+	}
+
+	/**
+	 * @param createdAt  createdAt in epoch milliseconds, Timestamps.NONE for none
+	 */
+	public void setCreatedAtMillis(long createdAt) {
 		this.createdAt = createdAt;
 	}
 
@@ -120,14 +139,29 @@ public class AddressbookModel {
 	/**
 	 * @return modifiedAt the date of the last modification of this addressbook object
 	 */
+	@XmlElement
 	public Date getModifiedAt() {
-		return modifiedAt;
+		return Timestamps.toDate(modifiedAt);
 	}
 
 	/**
 	 * @param modifiedAt   the date of the last modification of this addressbook object
 	 */
 	public void setModifiedAt(Date modifiedAt) {
+		this.modifiedAt = Timestamps.toMillis(modifiedAt);
+	}
+
+	/**
+	 * @return modifiedAt in epoch milliseconds, Timestamps.NONE if it is not set
+	 */
+	public long getModifiedAtMillis() {
+		return modifiedAt;
+	}
+
+	/**
+	 * @param modifiedAt  modifiedAt in epoch milliseconds, Timestamps.NONE for none
+	 */
+	public void setModifiedAtMillis(long modifiedAt) {
 		this.modifiedAt = modifiedAt;
 	}
 
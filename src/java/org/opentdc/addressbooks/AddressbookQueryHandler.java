@@ -24,10 +24,13 @@
 package org.opentdc.addressbooks;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
 import java.util.StringTokenizer;
 
 import org.opentdc.query.AbstractQueryHandler;
+import org.opentdc.query.QueryOperator;
 import org.opentdc.query.QueryQuantor;
 import org.opentdc.query.SortPredicate;
 import org.opentdc.service.exception.NotImplementedException;
@@ -40,6 +43,11 @@ import org.opentdc.service.exception.ValidationException;
  */
 public class AddressbookQueryHandler extends AbstractQueryHandler {
 	protected List<AddressbookQueryPredicate> queryPredicates = null;
+	protected SortComparator sortComparator = null;
+	private AddressbookQueryFeatureType[] featureTypes = null;
+	private QueryOperator[] operators = null;
+	private String[][] values = null;
+	private DateRange[] dateRanges = null;
 
 	/**
 	 * Constructor.
@@ -49,7 +57,27 @@ public class AddressbookQueryHandler extends AbstractQueryHandler {
 	{
 		queryPredicates = new ArrayList<AddressbookQueryPredicate>();
 		sortPredicates = new ArrayList<SortPredicate>();
+		sortComparator = new SortComparator();
 		parsePredicates(query);
+		compile();
+	}
+
+	/**
+	 * Return the compiled query handler for a query string.
+	 * The query is parsed on the first use only; afterwards, the handler is taken from the QueryCache.
+	 * @param query the query string
+	 * @return the query handler; it is not modified after construction and can be shared between threads
+	 */
+	public static AddressbookQueryHandler getInstance(
+			String query) 
+	{
+		String _query = query == null ? "" : query;
+		AddressbookQueryHandler _handler = QueryCache.getInstance().get(AddressbookQueryHandler.class, _query);
+		if (_handler == null) {
+			_handler = new AddressbookQueryHandler(_query);
+			QueryCache.getInstance().put(AddressbookQueryHandler.class, _query, _handler);
+		}
+		return _handler;
 	}
 	
 	/**
@@ -65,45 +93,186 @@ public class AddressbookQueryHandler extends AbstractQueryHandler {
 			String _token = _st.nextToken();
 			if (_token.startsWith("orderBy")) {
 				sortPredicates.add(SortPredicate.parsePredicate(_token));
+				sortComparator.addSortPredicate(AddressbookQueryFeatureType.class, _token);
 			}
 			else {
 				queryPredicates.add(AddressbookQueryPredicate.parsePredicate(_token));
 			}
 		}
-		logger.info("parsePredicates(" + query + ") -> OK");
+		logger.fine("parsePredicates(" + query + ") -> OK");
 	}
 
 	/**
-	 * @param model
-	 * @return
+	 * Validate the query predicates and bind featureType, operator and values of each predicate,
+	 * so that evaluate() does not need to inspect the predicates for each addressbook.
+	 * @throws NotImplementedException if a predicate uses a quantor or multiple values
+	 * @throws ValidationException if a predicate has no value or an invalid featureType
 	 */
-	public boolean evaluate(
-			AddressbookModel model)
+	protected void compile()
 			throws NotImplementedException, ValidationException 
 	{
-		boolean _retVal = true;
-		for (AddressbookQueryPredicate _queryPredicate : queryPredicates) {
-			logger.info("evaluate(" + model.getId() + "): featureType=" + _queryPredicate.getFeatureType() + ", operator=" + _queryPredicate.getOperator() + ", value=" + _queryPredicate.getValues()[0]);
+		int _size = queryPredicates.size();
+		featureTypes = new AddressbookQueryFeatureType[_size];
+		operators = new QueryOperator[_size];
+		values = new String[_size][];
+		dateRanges = new DateRange[_size];
+		for (int i = 0; i < _size; i++) {
+			AddressbookQueryPredicate _queryPredicate = queryPredicates.get(i);
 			if (_queryPredicate.getQuantor() != QueryQuantor.NONE) {
 				throw new NotImplementedException("support for QueryQuantor is not yet implemented");
 			}
-			if (_queryPredicate.getValues().length == 0) {
+			if (_queryPredicate.getValues() == null || _queryPredicate.getValues().length == 0) {
 				throw new ValidationException("expected value is missing");
 			}
 			if (_queryPredicate.getValues().length > 1) {
 				throw new NotImplementedException("Multi-valued queries are not yet supported");		
 			}
 			switch(_queryPredicate.getFeatureType()) {
-			case NAME:			_retVal = evaluateStringOperation(model.getName(), _queryPredicate.getOperator(), _queryPredicate.getValues()); break;
-			case CREATEDBY:		_retVal = evaluateStringOperation(model.getCreatedBy(), _queryPredicate.getOperator(), _queryPredicate.getValues()); break;
-			case CREATEDAT:		_retVal = evaluateDateOperation(model.getCreatedAt(), _queryPredicate.getOperator(), _queryPredicate.getValues()); break;
-			case MODIFIEDBY:	_retVal = evaluateStringOperation(model.getModifiedBy(), _queryPredicate.getOperator(), _queryPredicate.getValues()); break;
-			case MODIFIEDAT:	_retVal = evaluateDateOperation(model.getModifiedAt(), _queryPredicate.getOperator(), _queryPredicate.getValues()); break;
+			case NAME:
+			case CREATEDBY:
+			case CREATEDAT:
+			case MODIFIEDBY:
+			case MODIFIEDAT:
+				break;
 			default: 			throw new ValidationException("FeatureType <" + _queryPredicate.getFeatureType() + "> is invalid.");
 			}
+			featureTypes[i] = _queryPredicate.getFeatureType();
+			operators[i] = _queryPredicate.getOperator();
+			values[i] = _queryPredicate.getValues();
+			if (featureTypes[i] == AddressbookQueryFeatureType.CREATEDAT || featureTypes[i] == AddressbookQueryFeatureType.MODIFIEDAT) {
+				dateRanges[i] = compileDateRange(operators[i], values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Compile a date predicate, so that evaluate() compares the epoch milliseconds of a timestamp.
+	 * @param operator the operator of the predicate
+	 * @param value the expected value of the predicate
+	 * @return the compiled predicate
+	 */
+	private DateRange compileDateRange(
+			final QueryOperator operator, 
+			final String[] value) 
+	{
+		return DateRange.compile(operator, new DateRange.Predicate() {
+			@Override
+			public boolean matches(
+					Date date) 
+			{
+				return evaluateDateOperation(date, operator, value);
+			}
+		});
+	}
+
+	/**
+	 * @return the sort order given by the orderBy predicates of the query, 
+	 * or the default order of AddressbookModel.AddressbookComparator if there are none
+	 */
+	public Comparator<AddressbookModel> getComparator() {
+		if (sortComparator.isEmpty()) {
+			return AddressbookModel.AddressbookComparator;
+		}
+		return sortComparator;
+	}
+
+	/**
+	 * @return the sort order given by the orderBy predicates of the query, ordered by id if there are none;
+	 * this order is total and can be used with a QueryCursor
+	 */
+	public ModelComparator<AddressbookModel, AddressbookQueryFeatureType> getSortComparator() {
+		return sortComparator;
+	}
+
+	/**
+	 * @param model
+	 * @return
+	 */
+	public boolean evaluate(
+			AddressbookModel model)
+			throws NotImplementedException, ValidationException 
+	{
+		boolean _retVal = true;
+		for (int i = 0; i < featureTypes.length; i++) {
+			switch(featureTypes[i]) {
+			case NAME:			_retVal = evaluateStringOperation(model.getName(), operators[i], values[i]); break;
+			case CREATEDBY:		_retVal = evaluateStringOperation(model.getCreatedBy(), operators[i], values[i]); break;
+			case CREATEDAT:		_retVal = dateRanges[i].matches(model.getCreatedAtMillis()); break;
+			case MODIFIEDBY:	_retVal = evaluateStringOperation(model.getModifiedBy(), operators[i], values[i]); break;
+			case MODIFIEDAT:	_retVal = dateRanges[i].matches(model.getModifiedAtMillis()); break;
+			default: 			throw new ValidationException("FeatureType <" + featureTypes[i] + "> is invalid.");
+			}
 			if (_retVal == false) break;
 		}
-		logger.info("evaluate() -> " + _retVal);
 		return _retVal;
 	}
+
+	/**
+	 * Compares addressbooks by the features of the orderBy predicates.
+	 */
+	protected static class SortComparator extends ModelComparator<AddressbookModel, AddressbookQueryFeatureType> {
+
+		@Override
+		protected boolean isSortable(
+				AddressbookQueryFeatureType featureType) 
+		{
+			switch(featureType) {
+			case NAME:
+			case CREATEDBY:
+			case CREATEDAT:
+			case MODIFIEDBY:
+			case MODIFIEDAT:
+				return true;
+			default:
+				return false;
+			}
+		}
+
+		@Override
+		protected Comparable<?> getSortValue(
+				AddressbookModel model, 
+				AddressbookQueryFeatureType featureType) 
+		{
+			switch(featureType) {
+			case NAME:			return model.getName();
+			case CREATEDBY:		return model.getCreatedBy();
+			case CREATEDAT:		return model.getCreatedAt();
+			case MODIFIEDBY:	return model.getModifiedBy();
+			case MODIFIEDAT:	return model.getModifiedAt();
+			default:			return null;
+			}
+		}
+
+		@Override
+		protected boolean isTimestamp(
+				AddressbookQueryFeatureType featureType) 
+		{
+			switch(featureType) {
+			case CREATEDAT:
+			case MODIFIEDAT:
+				return true;
+			default:
+				return false;
+			}
+		}
+
+		@Override
+		protected long getTimestamp(
+				AddressbookModel model, 
+				AddressbookQueryFeatureType featureType) 
+		{
+			switch(featureType) {
+			case CREATEDAT:		return model.getCreatedAtMillis();
+			case MODIFIEDAT:	return model.getModifiedAtMillis();
+			default:			return Timestamps.NONE;
+			}
+		}
+
+		@Override
+		protected String getId(
+				AddressbookModel model) 
+		{
+			return model.getId();
+		}
+	}
 }
@@ -24,7 +24,6 @@
 package org.opentdc.addressbooks;
 
 import java.util.List;
-import java.util.logging.Logger;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -40,8 +39,8 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
-import org.opentdc.service.GenericService;
 import org.opentdc.service.exception.DuplicateException;
 import org.opentdc.service.exception.InternalServerErrorException;
 import org.opentdc.service.exception.NotFoundException;
@@ -49,26 +48,34 @@ import org.opentdc.service.exception.ValidationException;
 
 /**
  * Describes the REST service API of addressbooks, contacts, orgs and addresses.
+ * All requests are served on the request thread; AsyncAddressbooksService serves the same API 
+ * with asynchronous CRUD, list and bulk requests.
  * @author bruno
  *
  */
 @Path("/api/addressbooks")
-public class AddressbooksService extends GenericService<ServiceProvider> {
+public class AddressbooksService extends AbstractAddressbooksService {
 
-	private static final Logger logger = Logger.getLogger(AddressbooksService.class.getName());
-	private ServiceProvider sp = null;
-	
 	/**
-	 * Invoked for each service invocation (Constructor)
+	 * Invoked for each service invocation (Constructor).
 	 */
 	public AddressbooksService(
 		@Context ServletContext context
 	) throws ReflectiveOperationException{
-		logger.info("> AddressbooksService()");
-		if (sp == null) {
-			sp = this.getServiceProvider(AddressbooksService.class, context);
-		}
-		logger.info("AddressbooksService() initialized");
+		super(context);
+	}
+
+	/**
+	 * Resolve the service provider of a servlet context, unless this was done already.
+	 * @param context the servlet context
+	 * @return the shared service provider
+	 * @throws ReflectiveOperationException if the configured service provider cannot be instantiated
+	 */
+	static ServiceProvider resolveServiceProvider(
+			ServletContext context) 
+			throws ReflectiveOperationException 
+	{
+		return new AddressbooksService(context).sp;
 	}
 
 	/**
@@ -77,18 +84,30 @@ public class AddressbooksService extends GenericService<ServiceProvider> {
 	 * @param queryType
 	 * @param position	the position to start the result set with (default: GenericService.DEF_POSITION)
 	 * @param size	the number of addressbook objects to return (default: GenericService.DEF_SIZE)
+	 * @param trace	if true, a summary of the query execution is logged (default: false)
+	 * @param fields	the comma-separated attributes to return, e.g. id,fn,company (default: all)
 	 * @return	a list of size AddressbookModels starting from position 
 	 */
 	@GET
 	@Path("/")
 	@Produces(MediaType.APPLICATION_JSON)
-	public List<AddressbookModel> list(
+	public Response list(
 		@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
 		@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
 		@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
-		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size			
+		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+		@DefaultValue("false") @QueryParam("trace") boolean trace,
+		@QueryParam("fields") String fields
 	) {
-		return sp.list(query, queryType, position, size);
+		FieldProjection<AddressbookModel> _projection = FieldProjection.getInstance(AddressbookModel.class, fields);
+		checkCollectionModified(null);
+		QueryTrace _trace = QueryTrace.begin("list", query, trace);
+		try {
+			return toListResponse(QueryTrace.returned(_trace, sp.list(query, queryType, position, size)), ADDRESSBOOK_LIST_TYPE, _projection);
+		}
+		finally {
+			QueryTrace.end(_trace);
+		}
 	}
 
 	/**
@@ -118,10 +137,13 @@ public class AddressbooksService extends GenericService<ServiceProvider> {
 	@GET
 	@Path("/{id}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public AddressbookModel read(
-		@PathParam("id") String id
+	public Response read(
+		@PathParam("id") String id,
+		@QueryParam("fields") String fields
 	) throws NotFoundException {
-		return sp.read(id);
+		FieldProjection<AddressbookModel> _projection = FieldProjection.getInstance(AddressbookModel.class, fields);
+		AddressbookModel _model = sp.read(id);
+		return Response.ok(projectModel(checkModified(_model.getId(), _model.getModifiedAt(), _model), _projection)).build();
 	}
 
 	/**
@@ -151,43 +173,31 @@ public class AddressbooksService extends GenericService<ServiceProvider> {
 	) throws NotFoundException, InternalServerErrorException {
 		sp.delete(id);
 	}
-	
-	@GET
-	@Path("/allContacts")
-	public List<ContactModel> allContacts(
-			@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
-			@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
-			@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
-			@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size
-	) {
-		return sp.listAllContacts(query, queryType, position, size);
-	}
-
-	@GET
-	@Path("/allOrgs")
-	public List<OrgModel> allOrgs(
-			@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
-			@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
-			@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
-			@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size
-	) {
-		return sp.listAllOrgs(query, queryType, position, size);
-	}
 
 	/********************************** contact ***************************************/
 	@GET
 	@Path("/{aid}/contact")
 	@Produces(MediaType.APPLICATION_JSON)
-	public List<ContactModel> listContacts(
+	public Response listContacts(
 		@PathParam("aid") String aid,
 		@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
 		@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
 		@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
-		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size
+		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+		@DefaultValue("false") @QueryParam("trace") boolean trace,
+		@QueryParam("fields") String fields
 	) {
-		return sp.listContacts(aid, query, queryType, position, size);
+		FieldProjection<ContactModel> _projection = FieldProjection.getInstance(ContactModel.class, fields);
+		checkCollectionModified(aid);
+		QueryTrace _trace = QueryTrace.begin("listContacts", query, trace);
+		try {
+			return toListResponse(QueryTrace.returned(_trace, sp.listContacts(aid, query, queryType, position, size)), CONTACT_LIST_TYPE, _projection);
+		}
+		finally {
+			QueryTrace.end(_trace);
+		}
 	}
-	
+
 	@POST
 	@Path("/{aid}/contact")
 	@Consumes(MediaType.APPLICATION_JSON)
@@ -199,15 +209,18 @@ public class AddressbooksService extends GenericService<ServiceProvider> {
 	) throws DuplicateException, ValidationException {
 		return sp.createContact(request, aid, contact);
 	}
-	
+
 	@GET
 	@Path("/{aid}/contact/{cid}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public ContactModel readContact(
+	public Response readContact(
 		@PathParam("aid") String aid,
-		@PathParam("cid") String cid
+		@PathParam("cid") String cid,
+		@QueryParam("fields") String fields
 	) throws NotFoundException {
-		return sp.readContact(aid, cid);
+		FieldProjection<ContactModel> _projection = FieldProjection.getInstance(ContactModel.class, fields);
+		ContactModel _model = sp.readContact(aid, cid);
+		return Response.ok(projectModel(checkModified(_model.getId(), _model.getModifiedAt(), _model), _projection)).build();
 	}
 
 	@PUT
@@ -231,19 +244,29 @@ public class AddressbooksService extends GenericService<ServiceProvider> {
 	) throws NotFoundException, InternalServerErrorException {
 		sp.deleteContact(aid, cid);
 	}
-	
+
 	/********************************** orgs ***************************************/
 	@GET
 	@Path("/{aid}/org")
 	@Produces(MediaType.APPLICATION_JSON)
-	public List<OrgModel> listOrgs(
+	public Response listOrgs(
 		@PathParam("aid") String aid,
 		@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
 		@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
 		@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
-		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size
+		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+		@DefaultValue("false") @QueryParam("trace") boolean trace,
+		@QueryParam("fields") String fields
 	) {
-		return sp.listOrgs(aid, query, queryType, position, size);
+		FieldProjection<OrgModel> _projection = FieldProjection.getInstance(OrgModel.class, fields);
+		checkCollectionModified(aid);
+		QueryTrace _trace = QueryTrace.begin("listOrgs", query, trace);
+		try {
+			return toListResponse(QueryTrace.returned(_trace, sp.listOrgs(aid, query, queryType, position, size)), ORG_LIST_TYPE, _projection);
+		}
+		finally {
+			QueryTrace.end(_trace);
+		}
 	}
 
 	@POST
@@ -257,15 +280,18 @@ public class AddressbooksService extends GenericService<ServiceProvider> {
 	) throws DuplicateException, ValidationException {
 		return sp.createOrg(request, aid, org);
 	}
-	
+
 	@GET
 	@Path("/{aid}/org/{oid}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public OrgModel readOrg(
+	public Response readOrg(
 		@PathParam("aid") String aid,
-		@PathParam("oid") String oid
+		@PathParam("oid") String oid,
+		@QueryParam("fields") String fields
 	) throws NotFoundException {
-		return sp.readOrg(aid, oid);
+		FieldProjection<OrgModel> _projection = FieldProjection.getInstance(OrgModel.class, fields);
+		OrgModel _model = sp.readOrg(aid, oid);
+		return Response.ok(projectModel(checkModified(_model.getId(), _model.getModifiedAt(), _model), _projection)).build();
 	}
 
 	@PUT
@@ -294,15 +320,25 @@ public class AddressbooksService extends GenericService<ServiceProvider> {
 	@GET
 	@Path("/{aid}/contact/{cid}/address")
 	@Produces(MediaType.APPLICATION_JSON)
-	public List<AddressModel> listAddresses(
+	public Response listAddresses(
 		@PathParam("aid") String aid,
 		@PathParam("cid") String cid,
 		@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
 		@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
 		@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
-		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size
+		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+		@DefaultValue("false") @QueryParam("trace") boolean trace,
+		@QueryParam("fields") String fields
 	) {
-		return sp.listAddresses(aid, cid, query, queryType, position, size);
+		FieldProjection<AddressModel> _projection = FieldProjection.getInstance(AddressModel.class, fields);
+		checkCollectionModified(aid);
+		QueryTrace _trace = QueryTrace.begin("listAddresses", query, trace);
+		try {
+			return toListResponse(QueryTrace.returned(_trace, sp.listAddresses(aid, cid, query, queryType, position, size)), ADDRESS_LIST_TYPE, _projection);
+		}
+		finally {
+			QueryTrace.end(_trace);
+		}
 	}
 
 	@POST
@@ -317,16 +353,19 @@ public class AddressbooksService extends GenericService<ServiceProvider> {
 	) throws DuplicateException, ValidationException {
 		return sp.createAddress(request, aid, cid, address);
 	}
-	
+
 	@GET
 	@Path("/{aid}/contact/{cid}/address/{adrid}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public AddressModel readAddress(
+	public Response readAddress(
 		@PathParam("aid") String aid,
 		@PathParam("cid") String cid,
-		@PathParam("adrid") String adrid
+		@PathParam("adrid") String adrid,
+		@QueryParam("fields") String fields
 	) throws NotFoundException {
-		return sp.readAddress(aid, cid, adrid);
+		FieldProjection<AddressModel> _projection = FieldProjection.getInstance(AddressModel.class, fields);
+		AddressModel _model = sp.readAddress(aid, cid, adrid);
+		return Response.ok(projectModel(checkModified(_model.getId(), _model.getModifiedAt(), _model), _projection)).build();
 	}
 
 	@PUT
@@ -352,20 +391,30 @@ public class AddressbooksService extends GenericService<ServiceProvider> {
 	) throws NotFoundException, InternalServerErrorException {
 		sp.deleteAddress(aid, cid, adrid);
 	}
-	
+
 	/********************************** address (of org) ***************************************/
 	@GET
 	@Path("/{aid}/org/{oid}/address")
 	@Produces(MediaType.APPLICATION_JSON)
-	public List<AddressModel> listOrgAddresses(
+	public Response listOrgAddresses(
 		@PathParam("aid") String aid,
 		@PathParam("oid") String oid,
 		@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
 		@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
 		@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
-		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size
+		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+		@DefaultValue("false") @QueryParam("trace") boolean trace,
+		@QueryParam("fields") String fields
 	) {
-		return sp.listOrgAddresses(aid, oid, query, queryType, position, size);
+		FieldProjection<AddressModel> _projection = FieldProjection.getInstance(AddressModel.class, fields);
+		checkCollectionModified(aid);
+		QueryTrace _trace = QueryTrace.begin("listOrgAddresses", query, trace);
+		try {
+			return toListResponse(QueryTrace.returned(_trace, sp.listOrgAddresses(aid, oid, query, queryType, position, size)), ADDRESS_LIST_TYPE, _projection);
+		}
+		finally {
+			QueryTrace.end(_trace);
+		}
 	}
 
 	@POST
@@ -380,16 +429,19 @@ public class AddressbooksService extends GenericService<ServiceProvider> {
 	) throws DuplicateException, ValidationException {
 		return sp.createOrgAddress(request, aid, oid, address);
 	}
-	
+
 	@GET
 	@Path("/{aid}/org/{oid}/address/{adrid}")
 	@Produces(MediaType.APPLICATION_JSON)
-	public AddressModel readOrgAddress(
+	public Response readOrgAddress(
 		@PathParam("aid") String aid,
 		@PathParam("oid") String oid,
-		@PathParam("adrid") String adrid
+		@PathParam("adrid") String adrid,
+		@QueryParam("fields") String fields
 	) throws NotFoundException {
-		return sp.readOrgAddress(aid, oid, adrid);
+		FieldProjection<AddressModel> _projection = FieldProjection.getInstance(AddressModel.class, fields);
+		AddressModel _model = sp.readOrgAddress(aid, oid, adrid);
+		return Response.ok(projectModel(checkModified(_model.getId(), _model.getModifiedAt(), _model), _projection)).build();
 	}
 
 	@PUT
@@ -415,4 +467,71 @@ public class AddressbooksService extends GenericService<ServiceProvider> {
 	) throws NotFoundException, InternalServerErrorException {
 		sp.deleteOrgAddress(aid, oid, adrid);
 	}
+
+	/********************************** bulk ***************************************/
+	/**
+	 * Create, update or delete many contacts of an addressbook and their addresses in one request.
+	 * @return one result per item, in the order of the request
+	 */
+	@POST
+	@Path("/{aid}/contact/_bulk")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<BulkResultModel> bulkContacts(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		List<BulkContactModel> contacts
+	) throws NotFoundException, ValidationException {
+		return sp.bulkContacts(request, aid, contacts);
+	}
+
+	/**
+	 * Create, update or delete many orgs of an addressbook and their addresses in one request.
+	 * @return one result per item, in the order of the request
+	 */
+	@POST
+	@Path("/{aid}/org/_bulk")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<BulkResultModel> bulkOrgs(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		List<BulkOrgModel> orgs
+	) throws NotFoundException, ValidationException {
+		return sp.bulkOrgs(request, aid, orgs);
+	}
+
+	/**
+	 * Create, update or delete many addresses of a contact in one request.
+	 * @return one result per item, in the order of the request
+	 */
+	@POST
+	@Path("/{aid}/contact/{cid}/address/_bulk")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<BulkResultModel> bulkAddresses(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		@PathParam("cid") String cid,
+		List<BulkAddressModel> addresses
+	) throws NotFoundException, ValidationException {
+		return sp.bulkAddresses(request, aid, cid, addresses);
+	}
+
+	/**
+	 * Create, update or delete many addresses of an org in one request.
+	 * @return one result per item, in the order of the request
+	 */
+	@POST
+	@Path("/{aid}/org/{oid}/address/_bulk")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<BulkResultModel> bulkOrgAddresses(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		@PathParam("oid") String oid,
+		List<BulkAddressModel> addresses
+	) throws NotFoundException, ValidationException {
+		return sp.bulkOrgAddresses(request, aid, oid, addresses);
+	}
 }
@@ -0,0 +1,194 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Resolves the ServiceProvider of AddressbooksService when the application starts, instead of on the first request, 
+ * and warms up the hot paths (query parsing and evaluation, sorting, JSON streaming and the read path of the 
+ * service provider), so that the first requests after a deployment do not pay for class loading and interpretation.
+ * Register it as a listener of the web application; the context parameter addressbooks.warmup.iterations 
+ * sets the number of warm-up rounds (default: 2000, 0 for none).
+ * @author Bruno Kaiser
+ *
+ */
+public class AddressbooksServiceListener implements ServletContextListener {
+	private static final Logger logger = Logger.getLogger(AddressbooksServiceListener.class.getName());
+	public static final String WARMUP_ITERATIONS_PARAM = "addressbooks.warmup.iterations";
+	public static final int DEFAULT_WARMUP_ITERATIONS = 2000;
+	private static final int WARMUP_MODELS = 100;
+	private static final String[] CONTACT_QUERIES = {
+		"", 
+		"lastName().equalTo(warmup)", 
+		"firstName().isLike(warm*);orderBy(lastName)", 
+		"orderBy(lastName,desc)" 
+	};
+	private static final String[] ORG_QUERIES = {
+		"", 
+		"name().equalTo(warmup)", 
+		"orderBy(name)" 
+	};
+	private static final String[] ADDRESSBOOK_QUERIES = {
+		"", 
+		"orderBy(name)" 
+	};
+
+	@Override
+	public void contextInitialized(
+			ServletContextEvent event) 
+	{
+		ServletContext _context = event.getServletContext();
+		ServiceProvider _sp = null;
+		try {
+			_sp = AddressbooksService.resolveServiceProvider(_context);
+		}
+		catch (ReflectiveOperationException _ex) {
+			// the first request will try again and report the error to its client
+			logger.log(Level.SEVERE, "could not resolve the service provider", _ex);
+			return;
+		}
+		int _iterations = ContextParameters.getIntParameter(_context, WARMUP_ITERATIONS_PARAM, DEFAULT_WARMUP_ITERATIONS);
+		if (_iterations > 0) {
+			long _start = System.currentTimeMillis();
+			warmUp(_sp, _iterations);
+			logger.info("warm-up of " + _iterations + " iterations took " + (System.currentTimeMillis() - _start) + "ms");
+		}
+	}
+
+	/**
+	 * Stop the asynchronous adapter and close the service provider, e.g. to write its last snapshot 
+	 * and stop its threads, and unregister the metrics from JMX, before the application is undeployed.
+	 */
+	@Override
+	public void contextDestroyed(
+			ServletContextEvent event) 
+	{
+		AddressbooksService.releaseServiceProvider(event.getServletContext());
+		RequestMetrics.unregister();
+	}
+
+	/**
+	 * Run the hot paths on synthetic models, and the read path of the service provider on its first addressbook.
+	 * Failures are logged and end the warm-up; they never prevent the application from starting.
+	 * Queries that the query parser rejects are skipped.
+	 * @param sp the service provider
+	 * @param iterations the number of rounds
+	 */
+	static void warmUp(
+			ServiceProvider sp, 
+			int iterations) 
+	{
+		List<ContactModel> _contacts = new ArrayList<ContactModel>();
+		List<OrgModel> _orgs = new ArrayList<OrgModel>();
+		for (int i = 0; i < WARMUP_MODELS; i++) {
+			_contacts.add(new ContactModel("warm" + i, "up" + (WARMUP_MODELS - i)));
+			_orgs.add(new OrgModel("warmup" + i, OrgType.values()[i % OrgType.values().length]));
+		}
+		List<String> _contactQueries = getValidQueries(ContactQueryHandler.class, CONTACT_QUERIES);
+		List<String> _orgQueries = getValidQueries(OrgQueryHandler.class, ORG_QUERIES);
+		List<String> _addressbookQueries = getValidQueries(AddressbookQueryHandler.class, ADDRESSBOOK_QUERIES);
+		try {
+			for (int i = 0; i < iterations; i++) {
+				for (String _query : _contactQueries) {
+					ContactQueryHandler _handler = new ContactQueryHandler(_query);
+					for (ContactModel _contact : _contacts) {
+						_handler.evaluate(_contact);
+					}
+					Collections.sort(new ArrayList<ContactModel>(_contacts), _handler.getComparator());
+				}
+				for (String _query : _orgQueries) {
+					OrgQueryHandler _handler = new OrgQueryHandler(_query);
+					for (OrgModel _org : _orgs) {
+						_handler.evaluate(_org);
+					}
+					Collections.sort(new ArrayList<OrgModel>(_orgs), _handler.getComparator());
+				}
+				for (String _query : _addressbookQueries) {
+					new AddressbookQueryHandler(_query);
+				}
+				writeJson(_contacts, ContactModel.class, i % 2 == 0 ? JsonStreamingOutput.FORMAT_JSON : JsonStreamingOutput.FORMAT_NDJSON);
+				writeJson(_orgs, OrgModel.class, JsonStreamingOutput.FORMAT_JSON);
+			}
+		}
+		catch (RuntimeException _ex) {
+			logger.log(Level.WARNING, "warm-up ended early", _ex);
+		}
+		catch (IOException _ex) {
+			logger.log(Level.WARNING, "warm-up ended early", _ex);
+		}
+		try {
+			// only reads, and few of them: the provider logs each call, and its caches should hold real traffic
+			if (sp != null) {
+				for (int i = 0; i < Math.min(iterations, 10); i++) {
+					List<AddressbookModel> _addressbooks = sp.list(null, null, 0, 1);
+					if (!_addressbooks.isEmpty()) {
+						String _aid = _addressbooks.get(0).getId();
+						sp.listContacts(_aid, null, null, 0, 1);
+						sp.listOrgs(_aid, null, null, 0, 1);
+					}
+				}
+			}
+		}
+		catch (RuntimeException _ex) {
+			logger.log(Level.WARNING, "warm-up of the service provider ended early", _ex);
+		}
+	}
+
+	private static List<String> getValidQueries(
+			Class<?> handlerType, 
+			String[] queries) 
+	{
+		List<String> _valid = new ArrayList<String>();
+		for (String _query : queries) {
+			try {
+				handlerType.getConstructor(String.class).newInstance(_query);
+				_valid.add(_query);
+			}
+			catch (ReflectiveOperationException _ex) {
+				logger.fine("warm-up skips " + handlerType.getSimpleName() + " query <" + _query + ">: " + _ex.getCause());
+			}
+		}
+		return _valid;
+	}
+
+	private static <T> void writeJson(
+			List<T> models, 
+			Class<T> type, 
+			String format) 
+			throws IOException 
+	{
+		new JsonStreamingOutput<T>(models.iterator(), type, format).write(new ByteArrayOutputStream());
+	}
+}
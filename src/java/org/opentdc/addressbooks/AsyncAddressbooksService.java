@@ -0,0 +1,829 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.lang.reflect.Type;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.opentdc.service.exception.DuplicateException;
+import org.opentdc.service.exception.InternalServerErrorException;
+import org.opentdc.service.exception.NotFoundException;
+import org.opentdc.service.exception.ValidationException;
+
+/**
+ * The REST service API of AddressbooksService, with the CRUD, list and bulk requests suspended and resumed 
+ * by the callbacks of an AsyncServiceProvider: the service provider itself if it is asynchronous, otherwise the 
+ * ExecutorAsyncServiceProvider that addressbooks.async.threads configures. Register it instead of AddressbooksService, 
+ * as both serve the same path; without an AsyncServiceProvider, the suspended requests are resumed on the request thread.
+ * @author Bruno Kaiser
+ *
+ */
+@Path("/api/addressbooks")
+public class AsyncAddressbooksService extends AbstractAddressbooksService {
+
+	/**
+	 * Invoked for each service invocation (Constructor).
+	 */
+	public AsyncAddressbooksService(
+		@Context ServletContext context
+	) throws ReflectiveOperationException{
+		super(context);
+	}
+
+	/**
+	 * Return a list of addressbooks
+	 * @param query
+	 * @param queryType
+	 * @param position	the position to start the result set with (default: GenericService.DEF_POSITION)
+	 * @param size	the number of addressbook objects to return (default: GenericService.DEF_SIZE)
+	 * @param trace	if true, a summary of the query execution is logged (default: false)
+	 * @param fields	the comma-separated attributes to return, e.g. id,fn,company (default: all)
+	 * @return	a list of size AddressbookModels starting from position 
+	 */
+	@GET
+	@Path("/")
+	@Produces(MediaType.APPLICATION_JSON)
+	public void list(
+		@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
+		@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
+		@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
+		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+		@DefaultValue("false") @QueryParam("trace") boolean trace,
+		@QueryParam("fields") String fields,
+		@Suspended AsyncResponse asyncResponse
+	) {
+		FieldProjection<AddressbookModel> _projection = FieldProjection.getInstance(AddressbookModel.class, fields);
+		checkCollectionModified(null);
+		if (asp != null && !trace) {
+			resume(asyncResponse, asp.list(query, queryType, position, size), ADDRESSBOOK_LIST_TYPE, _projection);
+			return;
+		}
+		QueryTrace _trace = QueryTrace.begin("list", query, trace);
+		try {
+			asyncResponse.resume(toListResponse(QueryTrace.returned(_trace, sp.list(query, queryType, position, size)), ADDRESSBOOK_LIST_TYPE, _projection));
+		}
+		finally {
+			QueryTrace.end(_trace);
+		}
+	}
+
+	/**
+	 * Create a new addressbook object
+	 * @param addressbook
+	 * @return	the newly created addressbook; this is the same as the parameter plus a given random id
+	 * @throws DuplicateException if an addressbook with the same id already exists
+	 * @throws ValidationException if any validation checks fail
+	 */
+	@POST
+	@Path("/")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void create(
+		@Context HttpServletRequest request,
+		AddressbookModel addressbook,
+		@Suspended AsyncResponse asyncResponse
+	) throws DuplicateException, ValidationException {
+		if (asp != null) {
+			resume(asyncResponse, asp.create(request, addressbook));
+		} else {
+			asyncResponse.resume(sp.create(request, addressbook));
+		}
+	}
+
+	/**
+	 * Return the addressbook with id
+	 * @param id   the id to look for
+	 * @return  the addressbook with id
+	 * @throws NotFoundException	if no addressbook with this id exists
+	 */
+	@GET
+	@Path("/{id}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public void read(
+		@Context HttpServletRequest request,
+		@PathParam("id") String id,
+		@QueryParam("fields") String fields,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException {
+		final FieldProjection<AddressbookModel> _projection = FieldProjection.getInstance(AddressbookModel.class, fields);
+		if (asp != null && !isConditional(request)) {
+			asp.read(id).addCallback(new Resumer<AddressbookModel>(asyncResponse, asyncTimeout) {
+				@Override
+				protected Object toResponse(
+						AddressbookModel model) 
+				{
+					return modified(model.getId(), model.getModifiedAt(), projectModel(model, _projection));
+				}
+			});
+		} else {
+			AddressbookModel _model = sp.read(id);
+			asyncResponse.resume(projectModel(checkModified(_model.getId(), _model.getModifiedAt(), _model), _projection));
+		}
+	}
+
+	/**
+	 * Change some attributes of the addressbook object
+	 * @param id		the id of the addressbook object to change
+	 * @param addressbook	an addressbook object with the new attributes. BEWARE: all attributes will be changed to these values.
+	 * @return	the addressbook object with the updated attributes
+	 * @throws NotFoundException	if no addressbook with such an id exists
+	 * @throws ValidationException	if any validation checks on the attribute values failed; see log for reason
+	 */
+	@PUT
+	@Path("/{id}")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void update(
+		@Context HttpServletRequest request,
+		@PathParam("id") String id,
+		AddressbookModel addressbook,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException, ValidationException {
+		if (asp != null) {
+			resume(asyncResponse, asp.update(request, id, addressbook));
+		} else {
+			asyncResponse.resume(sp.update(request, id, addressbook));
+		}
+	}
+
+	@DELETE
+	@Path("/{id}")
+	public void delete(
+		@PathParam("id") String id,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException, InternalServerErrorException {
+		if (asp != null) {
+			resume(asyncResponse, asp.delete(id));
+		} else {
+			sp.delete(id);
+			asyncResponse.resume(Response.noContent().build());
+		}
+	}
+
+	/********************************** contact ***************************************/
+	@GET
+	@Path("/{aid}/contact")
+	@Produces(MediaType.APPLICATION_JSON)
+	public void listContacts(
+		@PathParam("aid") String aid,
+		@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
+		@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
+		@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
+		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+		@DefaultValue("false") @QueryParam("trace") boolean trace,
+		@QueryParam("fields") String fields,
+		@Suspended AsyncResponse asyncResponse
+	) {
+		FieldProjection<ContactModel> _projection = FieldProjection.getInstance(ContactModel.class, fields);
+		checkCollectionModified(aid);
+		if (asp != null && !trace) {
+			resume(asyncResponse, asp.listContacts(aid, query, queryType, position, size), CONTACT_LIST_TYPE, _projection);
+			return;
+		}
+		QueryTrace _trace = QueryTrace.begin("listContacts", query, trace);
+		try {
+			asyncResponse.resume(toListResponse(QueryTrace.returned(_trace, sp.listContacts(aid, query, queryType, position, size)), CONTACT_LIST_TYPE, _projection));
+		}
+		finally {
+			QueryTrace.end(_trace);
+		}
+	}
+
+	@POST
+	@Path("/{aid}/contact")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void createContact(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid, 
+		ContactModel contact,
+		@Suspended AsyncResponse asyncResponse
+	) throws DuplicateException, ValidationException {
+		if (asp != null) {
+			resume(asyncResponse, asp.createContact(request, aid, contact));
+		} else {
+			asyncResponse.resume(sp.createContact(request, aid, contact));
+		}
+	}
+
+	@GET
+	@Path("/{aid}/contact/{cid}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public void readContact(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		@PathParam("cid") String cid,
+		@QueryParam("fields") String fields,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException {
+		final FieldProjection<ContactModel> _projection = FieldProjection.getInstance(ContactModel.class, fields);
+		if (asp != null && !isConditional(request)) {
+			asp.readContact(aid, cid).addCallback(new Resumer<ContactModel>(asyncResponse, asyncTimeout) {
+				@Override
+				protected Object toResponse(
+						ContactModel model) 
+				{
+					return modified(model.getId(), model.getModifiedAt(), projectModel(model, _projection));
+				}
+			});
+		} else {
+			ContactModel _model = sp.readContact(aid, cid);
+			asyncResponse.resume(projectModel(checkModified(_model.getId(), _model.getModifiedAt(), _model), _projection));
+		}
+	}
+
+	@PUT
+	@Path("/{aid}/contact/{cid}")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void updateContact(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		@PathParam("cid") String cid,
+		ContactModel contact,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException, ValidationException {
+		if (asp != null) {
+			resume(asyncResponse, asp.updateContact(request, aid, cid, contact));
+		} else {
+			asyncResponse.resume(sp.updateContact(request, aid, cid, contact));
+		}
+	}
+
+	@DELETE
+	@Path("/{aid}/contact/{cid}")
+	public void deleteContact(
+		@PathParam("aid") String aid,
+		@PathParam("cid") String cid,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException, InternalServerErrorException {
+		if (asp != null) {
+			resume(asyncResponse, asp.deleteContact(aid, cid));
+		} else {
+			sp.deleteContact(aid, cid);
+			asyncResponse.resume(Response.noContent().build());
+		}
+	}
+
+	/********************************** orgs ***************************************/
+	@GET
+	@Path("/{aid}/org")
+	@Produces(MediaType.APPLICATION_JSON)
+	public void listOrgs(
+		@PathParam("aid") String aid,
+		@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
+		@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
+		@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
+		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+		@DefaultValue("false") @QueryParam("trace") boolean trace,
+		@QueryParam("fields") String fields,
+		@Suspended AsyncResponse asyncResponse
+	) {
+		FieldProjection<OrgModel> _projection = FieldProjection.getInstance(OrgModel.class, fields);
+		checkCollectionModified(aid);
+		if (asp != null && !trace) {
+			resume(asyncResponse, asp.listOrgs(aid, query, queryType, position, size), ORG_LIST_TYPE, _projection);
+			return;
+		}
+		QueryTrace _trace = QueryTrace.begin("listOrgs", query, trace);
+		try {
+			asyncResponse.resume(toListResponse(QueryTrace.returned(_trace, sp.listOrgs(aid, query, queryType, position, size)), ORG_LIST_TYPE, _projection));
+		}
+		finally {
+			QueryTrace.end(_trace);
+		}
+	}
+
+	@POST
+	@Path("/{aid}/org")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void createOrg(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid, 
+		OrgModel org,
+		@Suspended AsyncResponse asyncResponse
+	) throws DuplicateException, ValidationException {
+		if (asp != null) {
+			resume(asyncResponse, asp.createOrg(request, aid, org));
+		} else {
+			asyncResponse.resume(sp.createOrg(request, aid, org));
+		}
+	}
+
+	@GET
+	@Path("/{aid}/org/{oid}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public void readOrg(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		@PathParam("oid") String oid,
+		@QueryParam("fields") String fields,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException {
+		final FieldProjection<OrgModel> _projection = FieldProjection.getInstance(OrgModel.class, fields);
+		if (asp != null && !isConditional(request)) {
+			asp.readOrg(aid, oid).addCallback(new Resumer<OrgModel>(asyncResponse, asyncTimeout) {
+				@Override
+				protected Object toResponse(
+						OrgModel model) 
+				{
+					return modified(model.getId(), model.getModifiedAt(), projectModel(model, _projection));
+				}
+			});
+		} else {
+			OrgModel _model = sp.readOrg(aid, oid);
+			asyncResponse.resume(projectModel(checkModified(_model.getId(), _model.getModifiedAt(), _model), _projection));
+		}
+	}
+
+	@PUT
+	@Path("/{aid}/org/{oid}")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void updateOrg(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		@PathParam("oid") String oid,
+		OrgModel org,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException, ValidationException {
+		if (asp != null) {
+			resume(asyncResponse, asp.updateOrg(request, aid, oid, org));
+		} else {
+			asyncResponse.resume(sp.updateOrg(request, aid, oid, org));
+		}
+	}
+
+	@DELETE
+	@Path("/{aid}/org/{oid}")
+	public void deleteOrg(
+		@PathParam("aid") String aid,
+		@PathParam("oid") String oid,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException, InternalServerErrorException {
+		if (asp != null) {
+			resume(asyncResponse, asp.deleteOrg(aid, oid));
+		} else {
+			sp.deleteOrg(aid, oid);
+			asyncResponse.resume(Response.noContent().build());
+		}
+	}
+
+	/********************************** address (of contact) ***************************************/
+	@GET
+	@Path("/{aid}/contact/{cid}/address")
+	@Produces(MediaType.APPLICATION_JSON)
+	public void listAddresses(
+		@PathParam("aid") String aid,
+		@PathParam("cid") String cid,
+		@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
+		@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
+		@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
+		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+		@DefaultValue("false") @QueryParam("trace") boolean trace,
+		@QueryParam("fields") String fields,
+		@Suspended AsyncResponse asyncResponse
+	) {
+		FieldProjection<AddressModel> _projection = FieldProjection.getInstance(AddressModel.class, fields);
+		checkCollectionModified(aid);
+		if (asp != null && !trace) {
+			resume(asyncResponse, asp.listAddresses(aid, cid, query, queryType, position, size), ADDRESS_LIST_TYPE, _projection);
+			return;
+		}
+		QueryTrace _trace = QueryTrace.begin("listAddresses", query, trace);
+		try {
+			asyncResponse.resume(toListResponse(QueryTrace.returned(_trace, sp.listAddresses(aid, cid, query, queryType, position, size)), ADDRESS_LIST_TYPE, _projection));
+		}
+		finally {
+			QueryTrace.end(_trace);
+		}
+	}
+
+	@POST
+	@Path("/{aid}/contact/{cid}/address")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void createAddress(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid, 
+		@PathParam("cid") String cid,
+		AddressModel address,
+		@Suspended AsyncResponse asyncResponse
+	) throws DuplicateException, ValidationException {
+		if (asp != null) {
+			resume(asyncResponse, asp.createAddress(request, aid, cid, address));
+		} else {
+			asyncResponse.resume(sp.createAddress(request, aid, cid, address));
+		}
+	}
+
+	@GET
+	@Path("/{aid}/contact/{cid}/address/{adrid}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public void readAddress(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		@PathParam("cid") String cid,
+		@PathParam("adrid") String adrid,
+		@QueryParam("fields") String fields,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException {
+		final FieldProjection<AddressModel> _projection = FieldProjection.getInstance(AddressModel.class, fields);
+		if (asp != null && !isConditional(request)) {
+			asp.readAddress(aid, cid, adrid).addCallback(new Resumer<AddressModel>(asyncResponse, asyncTimeout) {
+				@Override
+				protected Object toResponse(
+						AddressModel model) 
+				{
+					return modified(model.getId(), model.getModifiedAt(), projectModel(model, _projection));
+				}
+			});
+		} else {
+			AddressModel _model = sp.readAddress(aid, cid, adrid);
+			asyncResponse.resume(projectModel(checkModified(_model.getId(), _model.getModifiedAt(), _model), _projection));
+		}
+	}
+
+	@PUT
+	@Path("/{aid}/contact/{cid}/address/{adrid}")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void updateAddress(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		@PathParam("cid") String cid,
+		@PathParam("adrid") String adrid,
+		AddressModel address,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException, ValidationException {
+		if (asp != null) {
+			resume(asyncResponse, asp.updateAddress(request, aid, cid, adrid, address));
+		} else {
+			asyncResponse.resume(sp.updateAddress(request, aid, cid, adrid, address));
+		}
+	}
+
+	@DELETE
+	@Path("/{aid}/contact/{cid}/address/{adrid}")
+	public void deleteAddress(
+		@PathParam("aid") String aid,
+		@PathParam("cid") String cid,
+		@PathParam("adrid") String adrid,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException, InternalServerErrorException {
+		if (asp != null) {
+			resume(asyncResponse, asp.deleteAddress(aid, cid, adrid));
+		} else {
+			sp.deleteAddress(aid, cid, adrid);
+			asyncResponse.resume(Response.noContent().build());
+		}
+	}
+
+	/********************************** address (of org) ***************************************/
+	@GET
+	@Path("/{aid}/org/{oid}/address")
+	@Produces(MediaType.APPLICATION_JSON)
+	public void listOrgAddresses(
+		@PathParam("aid") String aid,
+		@PathParam("oid") String oid,
+		@DefaultValue(DEFAULT_QUERY) @QueryParam("query") String query,
+		@DefaultValue(DEFAULT_QUERY_TYPE) @QueryParam("queryType") String queryType,
+		@DefaultValue(DEFAULT_POSITION) @QueryParam("position") int position,
+		@DefaultValue(DEFAULT_SIZE) @QueryParam("size") int size,
+		@DefaultValue("false") @QueryParam("trace") boolean trace,
+		@QueryParam("fields") String fields,
+		@Suspended AsyncResponse asyncResponse
+	) {
+		FieldProjection<AddressModel> _projection = FieldProjection.getInstance(AddressModel.class, fields);
+		checkCollectionModified(aid);
+		if (asp != null && !trace) {
+			resume(asyncResponse, asp.listOrgAddresses(aid, oid, query, queryType, position, size), ADDRESS_LIST_TYPE, _projection);
+			return;
+		}
+		QueryTrace _trace = QueryTrace.begin("listOrgAddresses", query, trace);
+		try {
+			asyncResponse.resume(toListResponse(QueryTrace.returned(_trace, sp.listOrgAddresses(aid, oid, query, queryType, position, size)), ADDRESS_LIST_TYPE, _projection));
+		}
+		finally {
+			QueryTrace.end(_trace);
+		}
+	}
+
+	@POST
+	@Path("/{aid}/org/{oid}/address")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void createOrgAddress(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid, 
+		@PathParam("oid") String oid,
+		AddressModel address,
+		@Suspended AsyncResponse asyncResponse
+	) throws DuplicateException, ValidationException {
+		if (asp != null) {
+			resume(asyncResponse, asp.createOrgAddress(request, aid, oid, address));
+		} else {
+			asyncResponse.resume(sp.createOrgAddress(request, aid, oid, address));
+		}
+	}
+
+	@GET
+	@Path("/{aid}/org/{oid}/address/{adrid}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public void readOrgAddress(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		@PathParam("oid") String oid,
+		@PathParam("adrid") String adrid,
+		@QueryParam("fields") String fields,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException {
+		final FieldProjection<AddressModel> _projection = FieldProjection.getInstance(AddressModel.class, fields);
+		if (asp != null && !isConditional(request)) {
+			asp.readOrgAddress(aid, oid, adrid).addCallback(new Resumer<AddressModel>(asyncResponse, asyncTimeout) {
+				@Override
+				protected Object toResponse(
+						AddressModel model) 
+				{
+					return modified(model.getId(), model.getModifiedAt(), projectModel(model, _projection));
+				}
+			});
+		} else {
+			AddressModel _model = sp.readOrgAddress(aid, oid, adrid);
+			asyncResponse.resume(projectModel(checkModified(_model.getId(), _model.getModifiedAt(), _model), _projection));
+		}
+	}
+
+	@PUT
+	@Path("/{aid}/org/{oid}/address/{adrid}")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void updateOrgAddress(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		@PathParam("oid") String oid,
+		@PathParam("adrid") String adrid,
+		AddressModel address,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException, ValidationException {
+		if (asp != null) {
+			resume(asyncResponse, asp.updateOrgAddress(request, aid, oid, adrid, address));
+		} else {
+			asyncResponse.resume(sp.updateOrgAddress(request, aid, oid, adrid, address));
+		}
+	}
+
+	@DELETE
+	@Path("/{aid}/org/{oid}/address/{adrid}")
+	public void deleteOrgAddress(
+		@PathParam("aid") String aid,
+		@PathParam("oid") String oid,
+		@PathParam("adrid") String adrid,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException, InternalServerErrorException {
+		if (asp != null) {
+			resume(asyncResponse, asp.deleteOrgAddress(aid, oid, adrid));
+		} else {
+			sp.deleteOrgAddress(aid, oid, adrid);
+			asyncResponse.resume(Response.noContent().build());
+		}
+	}
+
+	/********************************** bulk ***************************************/
+	/**
+	 * Create, update or delete many contacts of an addressbook and their addresses in one request.
+	 * @return one result per item, in the order of the request
+	 */
+	@POST
+	@Path("/{aid}/contact/_bulk")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void bulkContacts(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		List<BulkContactModel> contacts,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException, ValidationException {
+		if (asp != null) {
+			resume(asyncResponse, asp.bulkContacts(request, aid, contacts), BULK_RESULT_LIST_TYPE, null);
+		} else {
+			asyncResponse.resume(toListResponse(sp.bulkContacts(request, aid, contacts), BULK_RESULT_LIST_TYPE, null));
+		}
+	}
+
+	/**
+	 * Create, update or delete many orgs of an addressbook and their addresses in one request.
+	 * @return one result per item, in the order of the request
+	 */
+	@POST
+	@Path("/{aid}/org/_bulk")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void bulkOrgs(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		List<BulkOrgModel> orgs,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException, ValidationException {
+		if (asp != null) {
+			resume(asyncResponse, asp.bulkOrgs(request, aid, orgs), BULK_RESULT_LIST_TYPE, null);
+		} else {
+			asyncResponse.resume(toListResponse(sp.bulkOrgs(request, aid, orgs), BULK_RESULT_LIST_TYPE, null));
+		}
+	}
+
+	/**
+	 * Create, update or delete many addresses of a contact in one request.
+	 * @return one result per item, in the order of the request
+	 */
+	@POST
+	@Path("/{aid}/contact/{cid}/address/_bulk")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void bulkAddresses(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		@PathParam("cid") String cid,
+		List<BulkAddressModel> addresses,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException, ValidationException {
+		if (asp != null) {
+			resume(asyncResponse, asp.bulkAddresses(request, aid, cid, addresses), BULK_RESULT_LIST_TYPE, null);
+		} else {
+			asyncResponse.resume(toListResponse(sp.bulkAddresses(request, aid, cid, addresses), BULK_RESULT_LIST_TYPE, null));
+		}
+	}
+
+	/**
+	 * Create, update or delete many addresses of an org in one request.
+	 * @return one result per item, in the order of the request
+	 */
+	@POST
+	@Path("/{aid}/org/{oid}/address/_bulk")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public void bulkOrgAddresses(
+		@Context HttpServletRequest request,
+		@PathParam("aid") String aid,
+		@PathParam("oid") String oid,
+		List<BulkAddressModel> addresses,
+		@Suspended AsyncResponse asyncResponse
+	) throws NotFoundException, ValidationException {
+		if (asp != null) {
+			resume(asyncResponse, asp.bulkOrgAddresses(request, aid, oid, addresses), BULK_RESULT_LIST_TYPE, null);
+		} else {
+			asyncResponse.resume(toListResponse(sp.bulkOrgAddresses(request, aid, oid, addresses), BULK_RESULT_LIST_TYPE, null));
+		}
+	}
+
+	/********************************** helpers ***************************************/
+	/**
+	 * Build the response of an unconditional GET on a single object outside of the request thread, 
+	 * where the injected request and response are not available.
+	 * @param id the id of the object
+	 * @param modifiedAt the time of the last change of the object
+	 * @param model the object
+	 * @return the object with its ETag and Last-Modified headers
+	 */
+	private static Object modified(
+			String id, 
+			Date modifiedAt, 
+			Object model) 
+	{
+		if (modifiedAt == null) {
+			return model;
+		}
+		return Response.ok(model)
+				.tag(getEntityTag(id, modifiedAt))
+				.lastModified(new Date(modifiedAt.getTime() / 1000 * 1000))
+				.build();
+	}
+
+	/**
+	 * @return true if the request carries a precondition that must be evaluated on the request thread
+	 */
+	private static boolean isConditional(
+			HttpServletRequest request) 
+	{
+		return request != null 
+				&& (request.getHeader("If-None-Match") != null || request.getHeader("If-Modified-Since") != null);
+	}
+
+	/**
+	 * Resume a suspended request with the outcome of an asynchronous call.
+	 */
+	private <T> void resume(
+			AsyncResponse asyncResponse, 
+			ServiceFuture<T> future) 
+	{
+		future.addCallback(new Resumer<T>(asyncResponse, asyncTimeout));
+	}
+
+	/**
+	 * Resume a suspended request with the outcome of an asynchronous list call, projected to the requested fields.
+	 * @param listType the generic type of the list, see toListResponse()
+	 */
+	private <T> void resume(
+			AsyncResponse asyncResponse, 
+			ServiceFuture<List<T>> future, 
+			final Type listType, 
+			final FieldProjection<T> projection) 
+	{
+		future.addCallback(new Resumer<List<T>>(asyncResponse, asyncTimeout) {
+			@Override
+			protected Object toResponse(
+					List<T> result) 
+			{
+				return toListResponse(result, listType, projection);
+			}
+		});
+	}
+
+	/**
+	 * Resumes a suspended request with the result or failure of a ServiceFuture. 
+	 * Failures are mapped by the registered exception mappers, as if they were thrown synchronously.
+	 * Requests that are not resumed within the timeout are answered with 503 (Service Unavailable).
+	 */
+	private static class Resumer<T> implements ServiceCallback<T> {
+		private final AsyncResponse asyncResponse;
+
+		/**
+		 * @param asyncResponse the suspended request
+		 * @param timeout the seconds to wait for the outcome, 0 to wait forever
+		 */
+		Resumer(
+				AsyncResponse asyncResponse, 
+				int timeout) 
+		{
+			this.asyncResponse = asyncResponse;
+			if (timeout > 0) {
+				asyncResponse.setTimeout(timeout, TimeUnit.SECONDS);
+			}
+		}
+
+		@Override
+		public void completed(
+				T result) 
+		{
+			asyncResponse.resume(toResponse(result));
+		}
+
+		@Override
+		public void failed(
+				Throwable failure) 
+		{
+			asyncResponse.resume(failure);
+		}
+
+		/**
+		 * @return the entity or Response to resume with; operations without a result answer 204 (No Content)
+		 */
+		protected Object toResponse(
+				T result) 
+		{
+			return result == null ? Response.noContent().build() : result;
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Asynchronous counterpart of ServiceProvider: each operation returns at once with a ServiceFuture, which is
+ * completed with the result, or failed with the exception that ServiceProvider declares for the operation.
+ * AsyncAddressbooksService resumes its requests from the futures, so that no request thread waits for a slow backend.
+ * A synchronous ServiceProvider can be used through ExecutorAsyncServiceProvider.
+ * @author Bruno Kaiser
+ *
+ */
+public interface AsyncServiceProvider {
+	/******************************** addressbook *****************************************/
+	public ServiceFuture<List<AddressbookModel>> list(
+			String query,
+			String queryType,
+			int position,
+			int size);
+
+	public ServiceFuture<AddressbookModel> create(
+			HttpServletRequest request,
+			AddressbookModel addressbook);
+
+	public ServiceFuture<AddressbookModel> read(
+			String id);
+
+	public ServiceFuture<AddressbookModel> update(
+			HttpServletRequest request,
+			String id,
+			AddressbookModel addressbook);
+
+	public ServiceFuture<Void> delete(
+			String id);
+
+	public ServiceFuture<List<ContactModel>> listAllContacts(
+			String query,
+			String queryType,
+			int position,
+			int size);
+
+	public ServiceFuture<List<OrgModel>> listAllOrgs(
+			String query,
+			String queryType,
+			int position,
+			int size);
+
+	/******************************** contact *****************************************/
+	public ServiceFuture<List<ContactModel>> listContacts(
+			String aid,
+			String query,
+			String queryType,
+			int position,
+			int size);
+
+	public ServiceFuture<ContactModel> createContact(
+			HttpServletRequest request,
+			String aid,
+			ContactModel contact);
+
+	public ServiceFuture<ContactModel> readContact(
+			String aid,
+			String cid);
+
+	public ServiceFuture<ContactModel> updateContact(
+			HttpServletRequest request,
+			String aid,
+			String cid,
+			ContactModel contact);
+
+	public ServiceFuture<Void> deleteContact(
+			String aid,
+			String cid);
+
+	/******************************** org *****************************************/
+	public ServiceFuture<List<OrgModel>> listOrgs(
+			String aid,
+			String query,
+			String queryType,
+			int position,
+			int size);
+
+	public ServiceFuture<OrgModel> createOrg(
+			HttpServletRequest request,
+			String aid,
+			OrgModel org);
+
+	public ServiceFuture<OrgModel> readOrg(
+			String aid,
+			String oid);
+
+	public ServiceFuture<OrgModel> updateOrg(
+			HttpServletRequest request,
+			String aid,
+			String oid,
+			OrgModel org);
+
+	public ServiceFuture<Void> deleteOrg(
+			String aid,
+			String oid);
+
+	/******************************** address *****************************************/
+	public ServiceFuture<List<AddressModel>> listAddresses(
+			String aid,
+			String cid,
+			String query,
+			String queryType,
+			int position,
+			int size);
+
+	public ServiceFuture<AddressModel> createAddress(
+			HttpServletRequest request,
+			String aid,
+			String cid,
+			AddressModel address);
+
+	public ServiceFuture<AddressModel> readAddress(
+			String aid,
+			String cid,
+			String adrid);
+
+	public ServiceFuture<AddressModel> updateAddress(
+			HttpServletRequest request,
+			String aid,
+			String cid,
+			String adrid,
+			AddressModel address);
+
+	public ServiceFuture<Void> deleteAddress(
+			String aid,
+			String cid,
+			String adrid);
+
+	/******************************** org address *****************************************/
+	public ServiceFuture<List<AddressModel>> listOrgAddresses(
+			String aid,
+			String oid,
+			String query,
+			String queryType,
+			int position,
+			int size);
+
+	public ServiceFuture<AddressModel> createOrgAddress(
+			HttpServletRequest request,
+			String aid,
+			String oid,
+			AddressModel address);
+
+	public ServiceFuture<AddressModel> readOrgAddress(
+			String aid,
+			String oid,
+			String adrid);
+
+	public ServiceFuture<AddressModel> updateOrgAddress(
+			HttpServletRequest request,
+			String aid,
+			String oid,
+			String adrid,
+			AddressModel address);
+
+	public ServiceFuture<Void> deleteOrgAddress(
+			String aid,
+			String oid,
+			String adrid);
+
+	/******************************** bulk *****************************************/
+	public ServiceFuture<List<BulkResultModel>> bulkContacts(
+			HttpServletRequest request,
+			String aid,
+			List<BulkContactModel> contacts);
+
+	public ServiceFuture<List<BulkResultModel>> bulkOrgs(
+			HttpServletRequest request,
+			String aid,
+			List<BulkOrgModel> orgs);
+
+	public ServiceFuture<List<BulkResultModel>> bulkAddresses(
+			HttpServletRequest request,
+			String aid,
+			String cid,
+			List<BulkAddressModel> addresses);
+
+	public ServiceFuture<List<BulkResultModel>> bulkOrgAddresses(
+			HttpServletRequest request,
+			String aid,
+			String oid,
+			List<BulkAddressModel> addresses);
+}
@@ -0,0 +1,84 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * One item of a bulk request on contacts: the operation, the contact and its addresses.
+ * CREATE creates the contact together with its addresses.
+ * UPDATE replaces the contact with the given id; addresses with an id are replaced, addresses without an id are added.
+ * DELETE deletes the contact with the given id; addresses are ignored.
+ * @author Bruno Kaiser
+ *
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlRootElement
+public class BulkContactModel {
+	private BulkOperation op;			// default: CREATE
+	private ContactModel contact;			// mandatory
+	private List<AddressModel> addresses;
+
+	public BulkContactModel() {
+		
+	}
+
+	public BulkContactModel(
+			BulkOperation op, 
+			ContactModel contact, 
+			List<AddressModel> addresses) 
+	{
+		this.op = op;
+		this.contact = contact;
+		this.addresses = addresses;
+	}
+
+	public BulkOperation getOp() {
+		return op;
+	}
+
+	public void setOp(BulkOperation op) {
+		this.op = op;
+	}
+
+	public ContactModel getContact() {
+		return contact;
+	}
+
+	public void setContact(ContactModel contact) {
+		this.contact = contact;
+	}
+
+	public List<AddressModel> getAddresses() {
+		return addresses;
+	}
+
+	public void setAddresses(List<AddressModel> addresses) {
+		this.addresses = addresses;
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * The result of one item of a bulk request.
+ * The status is the HTTP status the corresponding single request would have returned.
+ * @author Bruno Kaiser
+ *
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlRootElement
+public class BulkResultModel {
+	public static final int STATUS_CREATED = 201;
+	public static final int STATUS_OK = 200;
+	public static final int STATUS_DELETED = 204;
+	public static final int STATUS_BAD_REQUEST = 400;
+	public static final int STATUS_NOT_FOUND = 404;
+	public static final int STATUS_CONFLICT = 409;
+	public static final int STATUS_INTERNAL_SERVER_ERROR = 500;
+
+	private int index;			// position of the item in the request
+	private BulkOperation op;
+	private String id;			// id of the created, updated or deleted object
+	private int status;
+	private String message;		// error message, null on success
+
+	public BulkResultModel() {
+		
+	}
+
+	public BulkResultModel(
+			int index, 
+			BulkOperation op, 
+			String id, 
+			int status, 
+			String message) 
+	{
+		this.index = index;
+		this.op = op;
+		this.id = id;
+		this.status = status;
+		this.message = message;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public void setIndex(int index) {
+		this.index = index;
+	}
+
+	public BulkOperation getOp() {
+		return op;
+	}
+
+	public void setOp(BulkOperation op) {
+		this.op = op;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public void setStatus(int status) {
+		this.status = status;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+}
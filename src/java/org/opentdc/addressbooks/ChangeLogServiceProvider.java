@@ -0,0 +1,52 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import org.opentdc.service.exception.NotFoundException;
+import org.opentdc.service.exception.ValidationException;
+
+/**
+ * Optional interface of a ServiceProvider that keeps a change log per addressbook,
+ * so that clients can synchronize incrementally instead of reloading whole addressbooks.
+ * @author Bruno Kaiser
+ *
+ */
+public interface ChangeLogServiceProvider {
+
+	/**
+	 * Return the changes of the contacts, orgs and addresses of an addressbook in the order they were made.
+	 * Consecutive changes of the same contact or org are reported once, with its current state.
+	 * @param aid the addressbook id
+	 * @param since the token returned by the previous call; null or empty to start a new sync
+	 * @param size the maximum number of changes to return
+	 * @return the changes and the token for the next call
+	 * @throws NotFoundException if no addressbook with this id exists
+	 * @throws ValidationException if the token is malformed
+	 */
+	public ChangesModel listChanges(
+			String aid,
+			String since,
+			int size)
+		throws NotFoundException, ValidationException;
+}
@@ -0,0 +1,119 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * One entry of the change log of an addressbook: the current state of a changed contact or org
+ * including its addresses (upsert), or a tombstone of a deleted one.
+ * Deleting a contact or org implicitly deletes its addresses.
+ * @author Bruno Kaiser
+ *
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlRootElement
+public class ChangeModel {
+	private long seq;				// position in the change log, ascending
+	private ChangeType type;		// CONTACT | ORG
+	private String id;				// cid or oid
+	private boolean deleted;		// true for tombstones
+	private ContactModel contact;	// set for contact upserts
+	private OrgModel org;			// set for org upserts
+	private List<AddressModel> addresses;	// all addresses of the contact or org, set for upserts
+
+	public ChangeModel() {
+		
+	}
+
+	public ChangeModel(
+			long seq, 
+			ChangeType type, 
+			String id) 
+	{
+		this.seq = seq;
+		this.type = type;
+		this.id = id;
+	}
+
+	public long getSeq() {
+		return seq;
+	}
+
+	public void setSeq(long seq) {
+		this.seq = seq;
+	}
+
+	public ChangeType getType() {
+		return type;
+	}
+
+	public void setType(ChangeType type) {
+		this.type = type;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public boolean isDeleted() {
+		return deleted;
+	}
+
+	public void setDeleted(boolean deleted) {
+		this.deleted = deleted;
+	}
+
+	public ContactModel getContact() {
+		return contact;
+	}
+
+	public void setContact(ContactModel contact) {
+		this.contact = contact;
+	}
+
+	public OrgModel getOrg() {
+		return org;
+	}
+
+	public void setOrg(OrgModel org) {
+		this.org = org;
+	}
+
+	public List<AddressModel> getAddresses() {
+		return addresses;
+	}
+
+	public void setAddresses(List<AddressModel> addresses) {
+		this.addresses = addresses;
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * The changes of an addressbook since a sync token.
+ * If resync is true, the token is too old (or missing) and the client must reload the addressbook
+ * with listContacts / listOrgs; the returned token is taken before that reload and is used for the next sync.
+ * If more is true, further changes are available with the returned token.
+ * @author Bruno Kaiser
+ *
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlRootElement
+public class ChangesModel {
+	private String token;			// the since parameter of the next request
+	private boolean resync;
+	private boolean more;
+	private List<ChangeModel> changes;
+
+	public ChangesModel() {
+		
+	}
+
+	public ChangesModel(
+			String token, 
+			boolean resync, 
+			boolean more, 
+			List<ChangeModel> changes) 
+	{
+		this.token = token;
+		this.resync = resync;
+		this.more = more;
+		this.changes = changes;
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public void setToken(String token) {
+		this.token = token;
+	}
+
+	public boolean isResync() {
+		return resync;
+	}
+
+	public void setResync(boolean resync) {
+		this.resync = resync;
+	}
+
+	public boolean isMore() {
+		return more;
+	}
+
+	public void setMore(boolean more) {
+		this.more = more;
+	}
+
+	public List<ChangeModel> getChanges() {
+		return changes;
+	}
+
+	public void setChanges(List<ChangeModel> changes) {
+		this.changes = changes;
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.Date;
+
+/**
+ * The version of a collection (all addressbooks, or the contents of one addressbook).
+ * The version number grows with every change to the collection; lastModified is the time of that change.
+ * @author Bruno Kaiser
+ *
+ */
+public class CollectionVersion {
+	private final long version;
+	private final long lastModified;
+
+	/**
+	 * Constructor.
+	 * @param version the version number
+	 * @param lastModified the time of the last change, in milliseconds since the epoch
+	 */
+	public CollectionVersion(
+			long version, 
+			long lastModified) 
+	{
+		this.version = version;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * @return the version number
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the time of the last change
+	 */
+	public Date getLastModified() {
+		return new Date(lastModified);
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable column-wise copy of the queryable attributes of a set of contacts.
+ * String attributes are dictionary-encoded (one int code per row), so that a predicate is evaluated once per 
+ * distinct value; date attributes are stored as long[] of epoch milliseconds. The ContactQueryHandler scans
+ * the columns in tight loops and returns the matching row numbers; only those rows are read as ContactModel.
+ * @author Bruno Kaiser
+ *
+ */
+public class ContactColumns {
+	private final ContactModel[] rows;
+	private final EnumMap<ContactQueryFeatureType, StringColumn> stringColumns = 
+			new EnumMap<ContactQueryFeatureType, StringColumn>(ContactQueryFeatureType.class);
+	private final EnumMap<ContactQueryFeatureType, long[]> dateColumns = 
+			new EnumMap<ContactQueryFeatureType, long[]>(ContactQueryFeatureType.class);
+
+	/**
+	 * Constructor.
+	 * @param contacts the contacts to copy; row numbers follow the iteration order
+	 */
+	public ContactColumns(
+			Collection<ContactModel> contacts) 
+	{
+		rows = contacts.toArray(new ContactModel[contacts.size()]);
+		for (ContactQueryFeatureType _featureType : ContactQueryFeatureType.values()) {
+			switch(_featureType) {
+			case FIRSTNAME:
+			case LASTNAME:
+			case FN:
+			case CREATEDBY:
+			case MODIFIEDBY:
+				stringColumns.put(_featureType, new StringColumn(rows, _featureType));
+				break;
+			case BIRTHDAY:
+			case CREATEDAT:
+			case MODIFIEDAT:
+				long[] _column = new long[rows.length];
+				for (int i = 0; i < rows.length; i++) {
+					_column[i] = getMillis(rows[i], _featureType);
+				}
+				dateColumns.put(_featureType, _column);
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int size() {
+		return rows.length;
+	}
+
+	/**
+	 * @param row a row number
+	 * @return the contact of the row
+	 */
+	public ContactModel getRow(
+			int row) 
+	{
+		return rows[row];
+	}
+
+	/**
+	 * @param featureType a string featureType
+	 * @return the dictionary-encoded column, or null if the featureType is not a string column
+	 */
+	StringColumn getStringColumn(
+			ContactQueryFeatureType featureType) 
+	{
+		return stringColumns.get(featureType);
+	}
+
+	/**
+	 * @param featureType a date featureType
+	 * @return the column of epoch milliseconds (Timestamps.NONE for null), or null if the featureType is not a date column
+	 */
+	long[] getDateColumn(
+			ContactQueryFeatureType featureType) 
+	{
+		return dateColumns.get(featureType);
+	}
+
+	private static String getString(
+			ContactModel model, 
+			ContactQueryFeatureType featureType) 
+	{
+		switch(featureType) {
+		case FIRSTNAME:		return model.getFirstName();
+		case LASTNAME:		return model.getLastName();
+		case FN:			return model.getFn();
+		case CREATEDBY:		return model.getCreatedBy();
+		case MODIFIEDBY:	return model.getModifiedBy();
+		default:			return null;
+		}
+	}
+
+	private static long getMillis(
+			ContactModel model, 
+			ContactQueryFeatureType featureType) 
+	{
+		switch(featureType) {
+		case BIRTHDAY:		return model.getBirthdayMillis();
+		case CREATEDAT:		return model.getCreatedAtMillis();
+		case MODIFIEDAT:	return model.getModifiedAtMillis();
+		default:			return Timestamps.NONE;
+		}
+	}
+
+	/**
+	 * A dictionary-encoded string column: row i has the value dictionary[codes[i]] (which may be null).
+	 */
+	static class StringColumn {
+		final String[] dictionary;
+		final int[] codes;
+
+		StringColumn(ContactModel[] rows, ContactQueryFeatureType featureType) {
+			Map<String, Integer> _codes = new HashMap<String, Integer>();
+			codes = new int[rows.length];
+			for (int i = 0; i < rows.length; i++) {
+				String _value = getString(rows[i], featureType);
+				Integer _code = _codes.get(_value);
+				if (_code == null) {
+					_code = _codes.size();
+					_codes.put(_value, _code);
+				}
+				codes[i] = _code;
+			}
+			dictionary = new String[_codes.size()];
+			for (Map.Entry<String, Integer> _entry : _codes.entrySet()) {
+				dictionary[_entry.getValue()] = _entry.getKey();
+			}
+		}
+	}
+}
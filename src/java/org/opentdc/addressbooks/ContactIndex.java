@@ -0,0 +1,59 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.Collection;
+
+/**
+ * A sorted secondary index over contact attributes, offered by a service provider
+ * to the ContactQueryHandler for range and prefix lookups.
+ * @author Bruno Kaiser
+ *
+ */
+public interface ContactIndex {
+
+	/**
+	 * @param featureType the feature of a query predicate
+	 * @return true if this index supports range lookups on the featureType
+	 */
+	public boolean isIndexed(
+			ContactQueryFeatureType featureType);
+
+	/**
+	 * Return all contacts whose featureType value lies within the range [from, to],
+	 * in the natural (String.compareTo) order of the values.
+	 * @param featureType an indexed featureType
+	 * @param from the lower bound; null means unbounded
+	 * @param fromInclusive true if the lower bound is part of the range
+	 * @param to the upper bound; null means unbounded
+	 * @param toInclusive true if the upper bound is part of the range
+	 * @return the contacts within the range
+	 */
+	public Collection<ContactModel> range(
+			ContactQueryFeatureType featureType,
+			String from,
+			boolean fromInclusive,
+			String to,
+			boolean toInclusive);
+}
@@ -28,7 +28,9 @@ import java.util.Date;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
 import org.opentdc.service.exception.ValidationException;
 
@@ -48,13 +50,16 @@ public class ContactModel {
 	private String jobTitle;
 	private String department;
 	private String company;
-	private Date birthday;
+	@XmlTransient
+	private transient long birthday = Timestamps.NONE;
 	private String note;
 	// TODO: dates: Type / Value   [Date]
 	// TODO: relatedName: type / value [String]
-	private Date createdAt;
+	@XmlTransient
+	private transient long createdAt = Timestamps.NONE;
 	private String createdBy;
-	private Date modifiedAt;
+	@XmlTransient
+	private transient long modifiedAt = Timestamps.NONE;
 	private String modifiedBy;
 	
 	public ContactModel() {
@@ -175,11 +180,20 @@ public class ContactModel {
 		this.company = company;
 	}
 
+	@XmlElement
 	public Date getBirthday() {
-		return birthday;
+		return Timestamps.toDate(birthday);
 	}
 
 	public void setBirthday(Date birthday) {
+		this.birthday = Timestamps.toMillis(birthday);
+	}
+
+	public long getBirthdayMillis() {
+		return birthday;
+	}
+
+	public void setBirthdayMillis(long birthday) {
 		this.birthday = birthday;
 	}
 
@@ -191,11 +205,20 @@ public class ContactModel {
 		this.note = note;
 	}
 
+	@XmlElement
 	public Date getCreatedAt() {
-		return createdAt;
+		return Timestamps.toDate(createdAt);
 	}
 
 	public void setCreatedAt(Date createdAt) {
+		this.createdAt = Timestamps.toMillis(createdAt);
+	}
+
+	public long getCreatedAtMillis() {
+		return createdAt;
+	}
+
+	public void setCreatedAtMillis(long createdAt) {
 		this.createdAt = createdAt;
 	}
 
@@ -207,11 +230,20 @@ public class ContactModel {
 		this.createdBy = createdBy;
 	}
 
+	@XmlElement
 	public Date getModifiedAt() {
-		return modifiedAt;
+		return Timestamps.toDate(modifiedAt);
 	}
 
 	public void setModifiedAt(Date modifiedAt) {
+		this.modifiedAt = Timestamps.toMillis(modifiedAt);
+	}
+
+	public long getModifiedAtMillis() {
+		return modifiedAt;
+	}
+
+	public void setModifiedAtMillis(long modifiedAt) {
 		this.modifiedAt = modifiedAt;
 	}
 
@@ -24,10 +24,18 @@
 package org.opentdc.addressbooks;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 
 import org.opentdc.query.AbstractQueryHandler;
+import org.opentdc.query.QueryOperator;
 import org.opentdc.query.QueryQuantor;
 import org.opentdc.query.SortPredicate;
 import org.opentdc.service.exception.NotImplementedException;
@@ -40,6 +48,12 @@ import org.opentdc.service.exception.ValidationException;
  */
 public class ContactQueryHandler extends AbstractQueryHandler {
 	protected List<ContactQueryPredicate> queryPredicates = null;
+	protected SortComparator sortComparator = null;
+	private ContactQueryFeatureType[] featureTypes = null;
+	private QueryOperator[] operators = null;
+	private String[][] values = null;
+	private DateRange[] dateRanges = null;
+	private EnumMap<ContactQueryFeatureType, KeyRange> indexRanges = null;
 
 	/**
 	 * Constructor.
@@ -49,7 +63,27 @@ public class ContactQueryHandler extends AbstractQueryHandler {
 	{
 		queryPredicates = new ArrayList<ContactQueryPredicate>();
 		sortPredicates = new ArrayList<SortPredicate>();
+		sortComparator = new SortComparator();
 		parsePredicates(query);
+		compile();
+	}
+
+	/**
+	 * Return the compiled query handler for a query string.
+	 * The query is parsed on the first use only; afterwards, the handler is taken from the QueryCache.
+	 * @param query the query string
+	 * @return the query handler; it is not modified after construction and can be shared between threads
+	 */
+	public static ContactQueryHandler getInstance(
+			String query) 
+	{
+		String _query = query == null ? "" : query;
+		ContactQueryHandler _handler = QueryCache.getInstance().get(ContactQueryHandler.class, _query);
+		if (_handler == null) {
+			_handler = new ContactQueryHandler(_query);
+			QueryCache.getInstance().put(ContactQueryHandler.class, _query, _handler);
+		}
+		return _handler;
 	}
 	
 	/**
@@ -65,52 +99,289 @@ public class ContactQueryHandler extends AbstractQueryHandler {
 			String _token = _st.nextToken();
 			if (_token.startsWith("orderBy")) {
 				sortPredicates.add(SortPredicate.parsePredicate(_token));
+				sortComparator.addSortPredicate(ContactQueryFeatureType.class, _token);
 			}
 			else {
 				queryPredicates.add(ContactQueryPredicate.parsePredicate(_token));
 			}
 		}
-		logger.info("parsePredicates(" + query + ") -> OK");
+		logger.fine("parsePredicates(" + query + ") -> OK");
 	}
 
 	/**
-	 * @param model
-	 * @return
+	 * Validate the query predicates and bind featureType, operator and values of each predicate,
+	 * so that evaluate() does not need to inspect the predicates for each contact.
+	 * @throws NotImplementedException if a predicate uses a quantor or multiple values
+	 * @throws ValidationException if a predicate has no value or an invalid featureType
 	 */
-	public boolean evaluate(
-			ContactModel model)
+	protected void compile()
 			throws NotImplementedException, ValidationException 
 	{
-		boolean _retVal = true;
-		for (ContactQueryPredicate _queryPredicate : queryPredicates) {
-			logger.info("evaluate(" + model.getId() + "): featureType=" + _queryPredicate.getFeatureType() + ", operator=" + _queryPredicate.getOperator() + ", value=" + _queryPredicate.getValues()[0]);
+		int _size = queryPredicates.size();
+		featureTypes = new ContactQueryFeatureType[_size];
+		operators = new QueryOperator[_size];
+		values = new String[_size][];
+		dateRanges = new DateRange[_size];
+		indexRanges = new EnumMap<ContactQueryFeatureType, KeyRange>(ContactQueryFeatureType.class);
+		for (int i = 0; i < _size; i++) {
+			ContactQueryPredicate _queryPredicate = queryPredicates.get(i);
 			if (_queryPredicate.getQuantor() != QueryQuantor.NONE) {
 				throw new NotImplementedException("support for QueryQuantor is not yet implemented");
 			}
-			if (_queryPredicate.getValues().length == 0) {
+			if (_queryPredicate.getValues() == null || _queryPredicate.getValues().length == 0) {
 				throw new ValidationException("expected value is missing");
 			}
 			if (_queryPredicate.getValues().length > 1) {
 				throw new NotImplementedException("Multi-valued queries are not yet supported");		
 			}
 			switch(_queryPredicate.getFeatureType()) {
-			case FIRSTNAME:		_retVal = evaluateStringOperation(model.getFirstName(), _queryPredicate.getOperator(), _queryPredicate.getValues()); break;
-			case LASTNAME:		_retVal = evaluateStringOperation(model.getLastName(), _queryPredicate.getOperator(), _queryPredicate.getValues()); break;
-			case FN:			_retVal = evaluateStringOperation(model.getFn(), _queryPredicate.getOperator(), _queryPredicate.getValues()); break;
-			case BIRTHDAY:		_retVal = evaluateDateOperation(model.getBirthday(), _queryPredicate.getOperator(), _queryPredicate.getValues()); break;
-			case CREATEDBY:		_retVal = evaluateStringOperation(model.getCreatedBy(), _queryPredicate.getOperator(), _queryPredicate.getValues()); break;
-			case CREATEDAT:		_retVal = evaluateDateOperation(model.getCreatedAt(), _queryPredicate.getOperator(), _queryPredicate.getValues()); break;
-			case MODIFIEDBY:	_retVal = evaluateStringOperation(model.getModifiedBy(), _queryPredicate.getOperator(), _queryPredicate.getValues()); break;
-			case MODIFIEDAT:	_retVal = evaluateDateOperation(model.getModifiedAt(), _queryPredicate.getOperator(), _queryPredicate.getValues()); break;
-		//	case TAGID:			_retVal = evaluateTagId(model, _queryPredicate.getOperator(), _queryPredicate.getValues()); break;
+			case FIRSTNAME:
+			case LASTNAME:
+			case FN:
+			case BIRTHDAY:
+			case CREATEDBY:
+			case CREATEDAT:
+			case MODIFIEDBY:
+			case MODIFIEDAT:
+				break;
 			default: 			throw new ValidationException("FeatureType <" + _queryPredicate.getFeatureType() + "> is invalid.");
 			}
+			featureTypes[i] = _queryPredicate.getFeatureType();
+			operators[i] = _queryPredicate.getOperator();
+			values[i] = _queryPredicate.getValues();
+			switch(featureTypes[i]) {
+			case FIRSTNAME:
+			case LASTNAME:
+			case FN:
+				addIndexRange(featureTypes[i], operators[i], values[i][0]);
+				break;
+			case BIRTHDAY:
+			case CREATEDAT:
+			case MODIFIEDAT:
+				dateRanges[i] = compileDateRange(operators[i], values[i]);
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Compile a date predicate, so that evaluate() compares the epoch milliseconds of a timestamp.
+	 * @param operator the operator of the predicate
+	 * @param value the expected value of the predicate
+	 * @return the compiled predicate
+	 */
+	private DateRange compileDateRange(
+			final QueryOperator operator, 
+			final String[] value) 
+	{
+		return DateRange.compile(operator, new DateRange.Predicate() {
+			@Override
+			public boolean matches(
+					Date date) 
+			{
+				return evaluateDateOperation(date, operator, value);
+			}
+		});
+	}
+
+	/**
+	 * Narrow the key range of an indexable featureType by a predicate.
+	 * EQUALTO, GREATERTHAN(OREQUALTO), LESSTHAN(OREQUALTO) and ISLIKE with a trailing wildcard
+	 * can be answered by an index range scan; all other operators leave the range unchanged.
+	 * @param featureType the featureType of the predicate
+	 * @param operator the operator of the predicate
+	 * @param value the expected value of the predicate
+	 */
+	private void addIndexRange(
+			ContactQueryFeatureType featureType,
+			QueryOperator operator,
+			String value)
+	{
+		if (value == null) {
+			return;
+		}
+		KeyRange _range = indexRanges.get(featureType);
+		if (_range == null) {
+			_range = new KeyRange();
+		}
+		switch(operator) {
+		case EQUALTO:				_range.restrictFrom(value, true); _range.restrictTo(value, true); break;
+		case GREATERTHAN:			_range.restrictFrom(value, false); break;
+		case GREATERTHANOREQUALTO:	_range.restrictFrom(value, true); break;
+		case LESSTHAN:				_range.restrictTo(value, false); break;
+		case LESSTHANOREQUALTO:		_range.restrictTo(value, true); break;
+		case ISLIKE:
+			String _prefix = getLikePrefix(value);
+			if (_prefix != null) {
+				_range.restrictFrom(_prefix, true);
+				char _last = _prefix.charAt(_prefix.length() - 1);
+				if (_last != Character.MAX_VALUE) {
+					_range.restrictTo(_prefix.substring(0, _prefix.length() - 1) + (char) (_last + 1), false);
+				}
+			}
+			break;
+		default:					break;
+		}
+		if (_range.from != null || _range.to != null) {
+			indexRanges.put(featureType, _range);
+		}
+	}
+
+	/**
+	 * @param pattern the value of an ISLIKE predicate
+	 * @return the prefix if the pattern is a plain prefix followed by a single trailing wildcard (* or %), otherwise null
+	 */
+	private static String getLikePrefix(
+			String pattern)
+	{
+		int _length = pattern.length();
+		if (_length < 2 || (pattern.charAt(_length - 1) != '*' && pattern.charAt(_length - 1) != '%')) {
+			return null;
+		}
+		String _prefix = pattern.substring(0, _length - 1);
+		for (int i = 0; i < _prefix.length(); i++) {
+			if ("*%?_.[]()^$+{}|\\".indexOf(_prefix.charAt(i)) >= 0) {
+				return null;
+			}
+		}
+		return _prefix;
+	}
+
+	/**
+	 * @return true if a predicate restricts lastName, firstName or fn to a range, which plan() may answer by an index range scan
+	 */
+	public boolean hasIndexRange() {
+		return !indexRanges.isEmpty();
+	}
+
+	/**
+	 * Choose an index range scan for this query.
+	 * The result contains every contact that can match the query, but it may contain more;
+	 * the caller still has to evaluate() each candidate.
+	 * @param index the sorted indexes of the service provider
+	 * @return the candidate contacts, or null if no predicate can be answered by the index and a full scan is needed
+	 */
+	public Collection<ContactModel> plan(
+			ContactIndex index)
+	{
+		if (index == null || indexRanges.isEmpty()) {
+			return null;
+		}
+		KeyRange _best = null;
+		ContactQueryFeatureType _bestFeatureType = null;
+		for (Map.Entry<ContactQueryFeatureType, KeyRange> _entry : indexRanges.entrySet()) {
+			if (!index.isIndexed(_entry.getKey())) {
+				continue;
+			}
+			KeyRange _range = _entry.getValue();
+			if (_range.isEmpty()) {
+				return Collections.emptyList();
+			}
+			if (_best == null || (_range.isClosed() && !_best.isClosed())) {
+				_best = _range;
+				_bestFeatureType = _entry.getKey();
+			}
+		}
+		if (_best == null) {
+			return null;
+		}
+		return index.range(_bestFeatureType, _best.from, _best.fromInclusive, _best.to, _best.toInclusive);
+	}
+
+	/**
+	 * @return the sort order given by the orderBy predicates of the query, 
+	 * or the default order of ContactModel.ContactComparator if there are none
+	 */
+	public Comparator<ContactModel> getComparator() {
+		if (sortComparator.isEmpty()) {
+			return ContactModel.ContactComparator;
+		}
+		return sortComparator;
+	}
+
+	/**
+	 * @return the sort order given by the orderBy predicates of the query, ordered by id if there are none;
+	 * this order is total and can be used with a QueryCursor
+	 */
+	public ModelComparator<ContactModel, ContactQueryFeatureType> getSortComparator() {
+		return sortComparator;
+	}
+
+	/**
+	 * @param model
+	 * @return
+	 */
+	public boolean evaluate(
+			ContactModel model)
+			throws NotImplementedException, ValidationException 
+	{
+		boolean _retVal = true;
+		for (int i = 0; i < featureTypes.length; i++) {
+			switch(featureTypes[i]) {
+			case FIRSTNAME:		_retVal = evaluateStringOperation(model.getFirstName(), operators[i], values[i]); break;
+			case LASTNAME:		_retVal = evaluateStringOperation(model.getLastName(), operators[i], values[i]); break;
+			case FN:			_retVal = evaluateStringOperation(model.getFn(), operators[i], values[i]); break;
+			case BIRTHDAY:		_retVal = dateRanges[i].matches(model.getBirthdayMillis()); break;
+			case CREATEDBY:		_retVal = evaluateStringOperation(model.getCreatedBy(), operators[i], values[i]); break;
+			case CREATEDAT:		_retVal = dateRanges[i].matches(model.getCreatedAtMillis()); break;
+			case MODIFIEDBY:	_retVal = evaluateStringOperation(model.getModifiedBy(), operators[i], values[i]); break;
+			case MODIFIEDAT:	_retVal = dateRanges[i].matches(model.getModifiedAtMillis()); break;
+		//	case TAGID:			_retVal = evaluateTagId(model, operators[i], values[i]); break;
+			default: 			throw new ValidationException("FeatureType <" + featureTypes[i] + "> is invalid.");
+			}
 			if (_retVal == false) break;
 		}
-		logger.info("evaluate() -> " + _retVal);
 		return _retVal;
 	}
 	
+	/**
+	 * Evaluate the query on a columnar copy of contacts; gives the same result as evaluate() on each row.
+	 * String predicates are evaluated once per distinct value of the column, date predicates compare the 
+	 * epoch milliseconds of the long[] column; each predicate only scans the rows that matched the previous ones.
+	 * @param columns the contacts in columnar form
+	 * @return the numbers of the matching rows, in ascending order
+	 */
+	public int[] select(
+			ContactColumns columns)
+			throws NotImplementedException, ValidationException 
+	{
+		int _size = columns.size();
+		int[] _rows = new int[_size];
+		for (int i = 0; i < _size; i++) {
+			_rows[i] = i;
+		}
+		for (int i = 0; i < featureTypes.length && _size > 0; i++) {
+			int _matched = 0;
+			ContactColumns.StringColumn _strings = columns.getStringColumn(featureTypes[i]);
+			long[] _dates = _strings == null ? columns.getDateColumn(featureTypes[i]) : null;
+			if (_strings != null) {
+				boolean[] _matches = new boolean[_strings.dictionary.length];
+				for (int _code = 0; _code < _matches.length; _code++) {
+					_matches[_code] = evaluateStringOperation(_strings.dictionary[_code], operators[i], values[i]);
+				}
+				int[] _codes = _strings.codes;
+				for (int j = 0; j < _size; j++) {
+					if (_matches[_codes[_rows[j]]]) {
+						_rows[_matched++] = _rows[j];
+					}
+				}
+			} else if (_dates != null) {
+				DateRange _range = dateRanges[i];
+				for (int j = 0; j < _size; j++) {
+					if (_range.matches(_dates[_rows[j]])) {
+						_rows[_matched++] = _rows[j];
+					}
+				}
+			} else {
+				throw new ValidationException("FeatureType <" + featureTypes[i] + "> is invalid.");
+			}
+			_size = _matched;
+		}
+		return _size == _rows.length ? _rows : Arrays.copyOf(_rows, _size);
+	}
+
 	/**
 	 * 
 	 * @param wr
@@ -140,4 +411,119 @@ public class ContactQueryHandler extends AbstractQueryHandler {
 
 	}
 	*/
+
+	/**
+	 * A range of index keys, narrowed by all predicates on one featureType.
+	 */
+	private static class KeyRange {
+		private String from = null;
+		private boolean fromInclusive = true;
+		private String to = null;
+		private boolean toInclusive = true;
+
+		void restrictFrom(String value, boolean inclusive) {
+			int _cmp = from == null ? 1 : value.compareTo(from);
+			if (_cmp > 0 || (_cmp == 0 && !inclusive)) {
+				from = value;
+				fromInclusive = inclusive;
+			}
+		}
+
+		void restrictTo(String value, boolean inclusive) {
+			int _cmp = to == null ? -1 : value.compareTo(to);
+			if (_cmp < 0 || (_cmp == 0 && !inclusive)) {
+				to = value;
+				toInclusive = inclusive;
+			}
+		}
+
+		boolean isClosed() {
+			return from != null && to != null;
+		}
+
+		boolean isEmpty() {
+			if (!isClosed()) {
+				return false;
+			}
+			int _cmp = from.compareTo(to);
+			return _cmp > 0 || (_cmp == 0 && !(fromInclusive && toInclusive));
+		}
+	}
+
+	/**
+	 * Compares contacts by the features of the orderBy predicates.
+	 */
+	protected static class SortComparator extends ModelComparator<ContactModel, ContactQueryFeatureType> {
+
+		@Override
+		protected boolean isSortable(
+				ContactQueryFeatureType featureType) 
+		{
+			switch(featureType) {
+			case FIRSTNAME:
+			case LASTNAME:
+			case FN:
+			case BIRTHDAY:
+			case CREATEDBY:
+			case CREATEDAT:
+			case MODIFIEDBY:
+			case MODIFIEDAT:
+				return true;
+			default:
+				return false;
+			}
+		}
+
+		@Override
+		protected Comparable<?> getSortValue(
+				ContactModel model, 
+				ContactQueryFeatureType featureType) 
+		{
+			switch(featureType) {
+			case FIRSTNAME:		return model.getFirstName();
+			case LASTNAME:		return model.getLastName();
+			case FN:			return model.getFn();
+			case BIRTHDAY:		return model.getBirthday();
+			case CREATEDBY:		return model.getCreatedBy();
+			case CREATEDAT:		return model.getCreatedAt();
+			case MODIFIEDBY:	return model.getModifiedBy();
+			case MODIFIEDAT:	return model.getModifiedAt();
+			default:			return null;
+			}
+		}
+
+		@Override
+		protected boolean isTimestamp(
+				ContactQueryFeatureType featureType) 
+		{
+			switch(featureType) {
+			case BIRTHDAY:
+			case CREATEDAT:
+			case MODIFIEDAT:
+				return true;
+			default:
+				return false;
+			}
+		}
+
+		@Override
+		protected long getTimestamp(
+				ContactModel model, 
+				ContactQueryFeatureType featureType) 
+		{
+			switch(featureType) {
+			case BIRTHDAY:		return model.getBirthdayMillis();
+			case CREATEDAT:		return model.getCreatedAtMillis();
+			case MODIFIEDAT:	return model.getModifiedAtMillis();
+			default:			return Timestamps.NONE;
+			}
+		}
+
+		@Override
+		protected String getId(
+				ContactModel model) 
+		{
+			return model.getId();
+		}
+	}
 }
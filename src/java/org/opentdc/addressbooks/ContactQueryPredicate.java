@@ -47,14 +47,10 @@ public class ContactQueryPredicate extends QueryPredicate {
 			throws ValidationException {
 		ContactQueryPredicate _queryPredicate = new ContactQueryPredicate(predicate);
 		_queryPredicate.setQuantor(parseQuantor(predicate));
-		
-		logger.info("parsePredicate(" + predicate + ")");
 		String[] _tokens = predicate.split("\\.");
 		if (_tokens.length != 2) {
 			throw new ValidationException("invalid predicate found: <" + predicate + ">. Split by . does not result in 2 tokens. Correct syntax is {quantor}{feature}().{operator}(values).");
 		}
-		logger.info("_tokens[0]=<" + _tokens[0] + "> {quantor}{feature}()");
-		logger.info("_tokens[1]=<" + _tokens[1] + "> {operator}(values)");
 		_queryPredicate.setFeature(parseFeature(predicate, _tokens[0], getOffset(_queryPredicate.getQuantor())));
 				
 		String[] _tokens2 = _tokens[1].split("\\(");
@@ -62,8 +58,6 @@ public class ContactQueryPredicate extends QueryPredicate {
 			throw new ValidationException("invalid predicate found: <" + predicate + ">. Operator or values missing. Correct syntax is {quantor}{feature}().{operator}(values).");
 		}
 		String _values = _tokens2[1].substring(0, _tokens2[1].length()-1); 		// cut the trailing )
-		logger.info("_tokens2[0]=<" + _tokens2[0] + "> {operator}");
-		logger.info("_tokens2[1]=<" + _values + "> values)");
 		_queryPredicate.setOperator(parseOperator(predicate, _tokens2[0]));
 		_queryPredicate.setValues(parseValues(predicate, _values));	
 		_queryPredicate.convertFeatureType();
@@ -0,0 +1,63 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+
+/**
+ * Reads the context parameters of the service and its service providers.
+ * @author Bruno Kaiser
+ *
+ */
+public final class ContextParameters {
+	private static final Logger logger = Logger.getLogger(ContextParameters.class.getName());
+
+	private ContextParameters() {
+	}
+
+	/**
+	 * @param context the servlet context
+	 * @param name the name of the context parameter, including the prefix of the service provider configuration
+	 * @param defaultValue the value if the parameter is not set or not a number
+	 * @return the value of the parameter
+	 */
+	public static int getIntParameter(
+			ServletContext context, 
+			String name, 
+			int defaultValue) 
+	{
+		String _value = context.getInitParameter(name);
+		if (_value == null || _value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(_value.trim());
+		} catch (NumberFormatException _ex) {
+			logger.warning("context parameter <" + name + "> is not a number: <" + _value + ">, using " + defaultValue);
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+/**
+ * Optional interface of a ServiceProvider that supports keyset (cursor) pagination
+ * over the contacts and orgs of all addressbooks.
+ * @author Bruno Kaiser
+ *
+ */
+public interface CursorServiceProvider {
+
+	/**
+	 * Return the contacts of all addressbooks following a cursor.
+	 * A page ordered by id, or by lastName, firstName or fn (without a range predicate on these), is read from sorted
+	 * indexes starting at the cursor. Other sort keys have no index: each page is then collected from all contacts,
+	 * so a walk through n contacts costs O(n * n / size).
+	 * @param query the query string
+	 * @param queryType the query type
+	 * @param cursor the cursor returned with the previous page; null or empty for the first page
+	 * @param size the maximum number of contacts to return
+	 * @return the page of contacts and the cursor of the next page
+	 */
+	public ResultPage<ContactModel> listAllContacts(
+			String query,
+			String queryType,
+			String cursor,
+			int size);
+
+	/**
+	 * Return the orgs of all addressbooks following a cursor.
+	 * A page ordered by id is read from the id-sorted orgs starting at the cursor. With an orderBy predicate,
+	 * each page is collected from all orgs, so a walk through n orgs costs O(n * n / size).
+	 * @param query the query string
+	 * @param queryType the query type
+	 * @param cursor the cursor returned with the previous page; null or empty for the first page
+	 * @param size the maximum number of orgs to return
+	 * @return the page of orgs and the cursor of the next page
+	 */
+	public ResultPage<OrgModel> listAllOrgs(
+			String query,
+			String queryType,
+			String cursor,
+			int size);
+}
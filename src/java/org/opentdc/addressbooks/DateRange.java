@@ -0,0 +1,158 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.Date;
+
+import org.opentdc.query.QueryOperator;
+
+/**
+ * A date predicate compiled into a range of epoch milliseconds, so that a timestamp is matched 
+ * by comparing primitives instead of creating a Date and evaluating the predicate on it.
+ * The bound is found once, by bisection on the predicate itself, which keeps the semantics of the 
+ * predicate (e.g. the parsing of the value) unchanged. Operators that do not describe a range 
+ * (and predicates that do not behave like one) are evaluated on a Date as before.
+ * @author Bruno Kaiser
+ *
+ */
+public class DateRange {
+	// the range that is searched for the bound: 0001-01-01 until 9999-12-31 (UTC)
+	private static final long MIN_MILLIS = -62135596800000L;
+	private static final long MAX_MILLIS = 253402300799999L;
+
+	/**
+	 * A date predicate, typically evaluateDateOperation() of a query handler bound to an operator and value.
+	 */
+	public interface Predicate {
+		boolean matches(Date date);
+	}
+
+	private final Predicate predicate;
+	private final boolean compiled;
+	private final long from;
+	private final long to;
+
+	private DateRange(
+			Predicate predicate, 
+			boolean compiled, 
+			long from, 
+			long to) 
+	{
+		this.predicate = predicate;
+		this.compiled = compiled;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Compile a date predicate.
+	 * @param operator the operator of the predicate; GREATERTHAN(OREQUALTO) and LESSTHAN(OREQUALTO) are compiled into a range
+	 * @param predicate the predicate
+	 * @return the compiled predicate
+	 */
+	public static DateRange compile(
+			QueryOperator operator, 
+			Predicate predicate) 
+	{
+		try {
+			switch (operator) {
+			case GREATERTHAN:
+			case GREATERTHANOREQUALTO:
+				if (!matches(predicate, MAX_MILLIS)) {
+					return new DateRange(predicate, true, MAX_MILLIS, MIN_MILLIS);
+				}
+				long _from = findBound(predicate, true);
+				if (_from == MIN_MILLIS || !matches(predicate, _from - 1)) {
+					return new DateRange(predicate, true, _from, MAX_MILLIS);
+				}
+				break;
+			case LESSTHAN:
+			case LESSTHANOREQUALTO:
+				if (!matches(predicate, MIN_MILLIS)) {
+					return new DateRange(predicate, true, MAX_MILLIS, MIN_MILLIS);
+				}
+				long _to = findBound(predicate, false);
+				if (_to == MAX_MILLIS || !matches(predicate, _to + 1)) {
+					return new DateRange(predicate, true, MIN_MILLIS, _to);
+				}
+				break;
+			default:
+				break;
+			}
+		} catch (RuntimeException _ex) {
+			// the predicate is evaluated on a Date, where the exception is reported as before
+		}
+		return new DateRange(predicate, false, 0, 0);
+	}
+
+	/**
+	 * Find the first matching millisecond (ascending) or the last matching millisecond (descending) 
+	 * of a predicate that matches an upper or lower part of the range.
+	 */
+	private static long findBound(
+			Predicate predicate, 
+			boolean ascending) 
+	{
+		long _lo = MIN_MILLIS;
+		long _hi = MAX_MILLIS;
+		while (_lo < _hi) {
+			long _mid = _lo + (_hi - _lo) / 2;
+			if (ascending) {
+				if (matches(predicate, _mid)) {
+					_hi = _mid;
+				} else {
+					_lo = _mid + 1;
+				}
+			} else {
+				_mid = _mid + 1;
+				if (matches(predicate, _mid)) {
+					_lo = _mid;
+				} else {
+					_hi = _mid - 1;
+				}
+			}
+		}
+		return _lo;
+	}
+
+	private static boolean matches(
+			Predicate predicate, 
+			long millis) 
+	{
+		return predicate.matches(new Date(millis));
+	}
+
+	/**
+	 * @param millis epoch milliseconds, or Timestamps.NONE
+	 * @return whether the timestamp matches the predicate
+	 */
+	public boolean matches(
+			long millis) 
+	{
+		if (compiled && millis >= MIN_MILLIS && millis <= MAX_MILLIS) {
+			return millis >= from && millis <= to;
+		}
+		return predicate.matches(millis == Timestamps.NONE ? null : new Date(millis));
+	}
+}
@@ -0,0 +1,157 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request and error counters, a latency histogram and row counters of one resource method.
+ * @author Bruno Kaiser
+ *
+ */
+public class EndpointMetrics implements EndpointMetricsMXBean {
+	private final String method;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong clientErrors = new AtomicLong();
+	private final AtomicLong serverErrors = new AtomicLong();
+	private final AtomicLong rowsScanned = new AtomicLong();
+	private final AtomicLong rowsReturned = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 * @param method the name of the resource method, e.g. listContacts
+	 */
+	public EndpointMetrics(
+			String method) 
+	{
+		this.method = method;
+	}
+
+	/**
+	 * Record a completed request.
+	 * @param nanos the time from the start of the request until the response status was known
+	 * @param status the HTTP status of the response
+	 */
+	public void recordRequest(
+			long nanos, 
+			int status) 
+	{
+		requests.incrementAndGet();
+		latency.record(nanos / 1000);
+		if (status >= 500) {
+			serverErrors.incrementAndGet();
+		} else if (status >= 400) {
+			clientErrors.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Record the rows of a list call.
+	 * @param scanned the number of rows evaluated by the service provider
+	 * @param returned the number of rows returned to the client
+	 */
+	public void recordRows(
+			long scanned, 
+			long returned) 
+	{
+		if (scanned > 0) {
+			rowsScanned.addAndGet(scanned);
+		}
+		if (returned > 0) {
+			rowsReturned.addAndGet(returned);
+		}
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	@Override
+	public String getMethod() {
+		return method;
+	}
+
+	@Override
+	public long getRequests() {
+		return requests.get();
+	}
+
+	@Override
+	public long getClientErrors() {
+		return clientErrors.get();
+	}
+
+	@Override
+	public long getServerErrors() {
+		return serverErrors.get();
+	}
+
+	@Override
+	public long getRowsScanned() {
+		return rowsScanned.get();
+	}
+
+	@Override
+	public long getRowsReturned() {
+		return rowsReturned.get();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		long _requests = requests.get();
+		return _requests == 0 ? 0 : latency.getTotal() / 1000.0 / _requests;
+	}
+
+	@Override
+	public double getMedianMillis() {
+		return getPercentileMillis(50);
+	}
+
+	@Override
+	public double get90thPercentileMillis() {
+		return getPercentileMillis(90);
+	}
+
+	@Override
+	public double get99thPercentileMillis() {
+		return getPercentileMillis(99);
+	}
+
+	@Override
+	public double get999thPercentileMillis() {
+		return getPercentileMillis(99.9);
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return latency.getMax() / 1000.0;
+	}
+
+	private double getPercentileMillis(
+			double percentile) 
+	{
+		return LatencyHistogram.getPercentile(latency.getCounts(), percentile) / 1000.0;
+	}
+}
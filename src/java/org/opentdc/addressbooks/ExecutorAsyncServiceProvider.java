@@ -0,0 +1,645 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.opentdc.service.exception.InternalServerErrorException;
+
+/**
+ * Runs a synchronous ServiceProvider as an AsyncServiceProvider on a dedicated, bounded thread pool.
+ * The request threads are released while the calls wait for the backend. When all threads are busy and the queue 
+ * is full, the calling thread runs the operation itself, which slows down the callers instead of failing requests.
+ * Operations submitted after shutdown() fail with an InternalServerErrorException.
+ * List operations run under a QueryTrace on the pool thread, so that their rows are counted in the RequestMetrics.
+ * @author Bruno Kaiser
+ *
+ */
+public class ExecutorAsyncServiceProvider implements AsyncServiceProvider {
+	private static final Logger logger = Logger.getLogger(ExecutorAsyncServiceProvider.class.getName());
+
+	private final ServiceProvider delegate;
+	private final ExecutorService executor;
+
+	/**
+	 * Constructor.
+	 * @param delegate the synchronous ServiceProvider
+	 * @param threads the number of threads that call the ServiceProvider
+	 * @param queueSize the number of operations that can wait for a thread
+	 */
+	public ExecutorAsyncServiceProvider(
+			ServiceProvider delegate, 
+			int threads, 
+			int queueSize) 
+	{
+		this.delegate = delegate;
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, 
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(
+							Runnable runnable) 
+					{
+						Thread _thread = new Thread(runnable, "addressbooks-async-" + count.incrementAndGet());
+						_thread.setDaemon(true);
+						return _thread;
+					}
+				}, new CallerRunsUnlessShutdown());
+		logger.info("ExecutorAsyncServiceProvider(" + delegate.getClass().getName() + ", " + threads + ", " + queueSize + ")");
+	}
+
+	/**
+	 * @return the synchronous ServiceProvider
+	 */
+	public ServiceProvider getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Stop the threads after the submitted operations are done, and wait for them (at most one minute).
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				logger.warning("shutdown(): operations are still running.");
+			}
+		} catch (InterruptedException _ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/******************************** addressbook *****************************************/
+	@Override
+	public ServiceFuture<List<AddressbookModel>> list(
+			final String query, 
+			final String queryType, 
+			final int position, 
+			final int size) 
+	{
+		return submit(new Callable<List<AddressbookModel>>() {
+			@Override
+			public List<AddressbookModel> call() {
+				QueryTrace _trace = QueryTrace.begin("list", query, false);
+				try {
+					return QueryTrace.returned(_trace, delegate.list(query, queryType, position, size));
+				}
+				finally {
+					QueryTrace.end(_trace);
+				}
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<AddressbookModel> create(
+			final HttpServletRequest request, 
+			final AddressbookModel addressbook) 
+	{
+		return submit(new Callable<AddressbookModel>() {
+			@Override
+			public AddressbookModel call() {
+				return delegate.create(request, addressbook);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<AddressbookModel> read(
+			final String id) 
+	{
+		return submit(new Callable<AddressbookModel>() {
+			@Override
+			public AddressbookModel call() {
+				return delegate.read(id);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<AddressbookModel> update(
+			final HttpServletRequest request, 
+			final String id, 
+			final AddressbookModel addressbook) 
+	{
+		return submit(new Callable<AddressbookModel>() {
+			@Override
+			public AddressbookModel call() {
+				return delegate.update(request, id, addressbook);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<Void> delete(
+			final String id) 
+	{
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				delegate.delete(id);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<List<ContactModel>> listAllContacts(
+			final String query, 
+			final String queryType, 
+			final int position, 
+			final int size) 
+	{
+		return submit(new Callable<List<ContactModel>>() {
+			@Override
+			public List<ContactModel> call() {
+				QueryTrace _trace = QueryTrace.begin("allContacts", query, false);
+				try {
+					return QueryTrace.returned(_trace, delegate.listAllContacts(query, queryType, position, size));
+				}
+				finally {
+					QueryTrace.end(_trace);
+				}
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<List<OrgModel>> listAllOrgs(
+			final String query, 
+			final String queryType, 
+			final int position, 
+			final int size) 
+	{
+		return submit(new Callable<List<OrgModel>>() {
+			@Override
+			public List<OrgModel> call() {
+				QueryTrace _trace = QueryTrace.begin("allOrgs", query, false);
+				try {
+					return QueryTrace.returned(_trace, delegate.listAllOrgs(query, queryType, position, size));
+				}
+				finally {
+					QueryTrace.end(_trace);
+				}
+			}
+		});
+	}
+
+	/******************************** contact *****************************************/
+	@Override
+	public ServiceFuture<List<ContactModel>> listContacts(
+			final String aid, 
+			final String query, 
+			final String queryType, 
+			final int position, 
+			final int size) 
+	{
+		return submit(new Callable<List<ContactModel>>() {
+			@Override
+			public List<ContactModel> call() {
+				QueryTrace _trace = QueryTrace.begin("listContacts", query, false);
+				try {
+					return QueryTrace.returned(_trace, delegate.listContacts(aid, query, queryType, position, size));
+				}
+				finally {
+					QueryTrace.end(_trace);
+				}
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<ContactModel> createContact(
+			final HttpServletRequest request, 
+			final String aid, 
+			final ContactModel contact) 
+	{
+		return submit(new Callable<ContactModel>() {
+			@Override
+			public ContactModel call() {
+				return delegate.createContact(request, aid, contact);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<ContactModel> readContact(
+			final String aid, 
+			final String cid) 
+	{
+		return submit(new Callable<ContactModel>() {
+			@Override
+			public ContactModel call() {
+				return delegate.readContact(aid, cid);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<ContactModel> updateContact(
+			final HttpServletRequest request, 
+			final String aid, 
+			final String cid, 
+			final ContactModel contact) 
+	{
+		return submit(new Callable<ContactModel>() {
+			@Override
+			public ContactModel call() {
+				return delegate.updateContact(request, aid, cid, contact);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<Void> deleteContact(
+			final String aid, 
+			final String cid) 
+	{
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				delegate.deleteContact(aid, cid);
+				return null;
+			}
+		});
+	}
+
+	/******************************** org *****************************************/
+	@Override
+	public ServiceFuture<List<OrgModel>> listOrgs(
+			final String aid, 
+			final String query, 
+			final String queryType, 
+			final int position, 
+			final int size) 
+	{
+		return submit(new Callable<List<OrgModel>>() {
+			@Override
+			public List<OrgModel> call() {
+				QueryTrace _trace = QueryTrace.begin("listOrgs", query, false);
+				try {
+					return QueryTrace.returned(_trace, delegate.listOrgs(aid, query, queryType, position, size));
+				}
+				finally {
+					QueryTrace.end(_trace);
+				}
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<OrgModel> createOrg(
+			final HttpServletRequest request, 
+			final String aid, 
+			final OrgModel org) 
+	{
+		return submit(new Callable<OrgModel>() {
+			@Override
+			public OrgModel call() {
+				return delegate.createOrg(request, aid, org);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<OrgModel> readOrg(
+			final String aid, 
+			final String oid) 
+	{
+		return submit(new Callable<OrgModel>() {
+			@Override
+			public OrgModel call() {
+				return delegate.readOrg(aid, oid);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<OrgModel> updateOrg(
+			final HttpServletRequest request, 
+			final String aid, 
+			final String oid, 
+			final OrgModel org) 
+	{
+		return submit(new Callable<OrgModel>() {
+			@Override
+			public OrgModel call() {
+				return delegate.updateOrg(request, aid, oid, org);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<Void> deleteOrg(
+			final String aid, 
+			final String oid) 
+	{
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				delegate.deleteOrg(aid, oid);
+				return null;
+			}
+		});
+	}
+
+	/******************************** address *****************************************/
+	@Override
+	public ServiceFuture<List<AddressModel>> listAddresses(
+			final String aid, 
+			final String cid, 
+			final String query, 
+			final String queryType, 
+			final int position, 
+			final int size) 
+	{
+		return submit(new Callable<List<AddressModel>>() {
+			@Override
+			public List<AddressModel> call() {
+				QueryTrace _trace = QueryTrace.begin("listAddresses", query, false);
+				try {
+					return QueryTrace.returned(_trace, delegate.listAddresses(aid, cid, query, queryType, position, size));
+				}
+				finally {
+					QueryTrace.end(_trace);
+				}
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<AddressModel> createAddress(
+			final HttpServletRequest request, 
+			final String aid, 
+			final String cid, 
+			final AddressModel address) 
+	{
+		return submit(new Callable<AddressModel>() {
+			@Override
+			public AddressModel call() {
+				return delegate.createAddress(request, aid, cid, address);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<AddressModel> readAddress(
+			final String aid, 
+			final String cid, 
+			final String adrid) 
+	{
+		return submit(new Callable<AddressModel>() {
+			@Override
+			public AddressModel call() {
+				return delegate.readAddress(aid, cid, adrid);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<AddressModel> updateAddress(
+			final HttpServletRequest request, 
+			final String aid, 
+			final String cid, 
+			final String adrid, 
+			final AddressModel address) 
+	{
+		return submit(new Callable<AddressModel>() {
+			@Override
+			public AddressModel call() {
+				return delegate.updateAddress(request, aid, cid, adrid, address);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<Void> deleteAddress(
+			final String aid, 
+			final String cid, 
+			final String adrid) 
+	{
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				delegate.deleteAddress(aid, cid, adrid);
+				return null;
+			}
+		});
+	}
+
+	/******************************** org address *****************************************/
+	@Override
+	public ServiceFuture<List<AddressModel>> listOrgAddresses(
+			final String aid, 
+			final String oid, 
+			final String query, 
+			final String queryType, 
+			final int position, 
+			final int size) 
+	{
+		return submit(new Callable<List<AddressModel>>() {
+			@Override
+			public List<AddressModel> call() {
+				QueryTrace _trace = QueryTrace.begin("listOrgAddresses", query, false);
+				try {
+					return QueryTrace.returned(_trace, delegate.listOrgAddresses(aid, oid, query, queryType, position, size));
+				}
+				finally {
+					QueryTrace.end(_trace);
+				}
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<AddressModel> createOrgAddress(
+			final HttpServletRequest request, 
+			final String aid, 
+			final String oid, 
+			final AddressModel address) 
+	{
+		return submit(new Callable<AddressModel>() {
+			@Override
+			public AddressModel call() {
+				return delegate.createOrgAddress(request, aid, oid, address);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<AddressModel> readOrgAddress(
+			final String aid, 
+			final String oid, 
+			final String adrid) 
+	{
+		return submit(new Callable<AddressModel>() {
+			@Override
+			public AddressModel call() {
+				return delegate.readOrgAddress(aid, oid, adrid);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<AddressModel> updateOrgAddress(
+			final HttpServletRequest request, 
+			final String aid, 
+			final String oid, 
+			final String adrid, 
+			final AddressModel address) 
+	{
+		return submit(new Callable<AddressModel>() {
+			@Override
+			public AddressModel call() {
+				return delegate.updateOrgAddress(request, aid, oid, adrid, address);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<Void> deleteOrgAddress(
+			final String aid, 
+			final String oid, 
+			final String adrid) 
+	{
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				delegate.deleteOrgAddress(aid, oid, adrid);
+				return null;
+			}
+		});
+	}
+
+	/******************************** bulk *****************************************/
+	@Override
+	public ServiceFuture<List<BulkResultModel>> bulkContacts(
+			final HttpServletRequest request, 
+			final String aid, 
+			final List<BulkContactModel> contacts) 
+	{
+		return submit(new Callable<List<BulkResultModel>>() {
+			@Override
+			public List<BulkResultModel> call() {
+				return delegate.bulkContacts(request, aid, contacts);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<List<BulkResultModel>> bulkOrgs(
+			final HttpServletRequest request, 
+			final String aid, 
+			final List<BulkOrgModel> orgs) 
+	{
+		return submit(new Callable<List<BulkResultModel>>() {
+			@Override
+			public List<BulkResultModel> call() {
+				return delegate.bulkOrgs(request, aid, orgs);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<List<BulkResultModel>> bulkAddresses(
+			final HttpServletRequest request, 
+			final String aid, 
+			final String cid, 
+			final List<BulkAddressModel> addresses) 
+	{
+		return submit(new Callable<List<BulkResultModel>>() {
+			@Override
+			public List<BulkResultModel> call() {
+				return delegate.bulkAddresses(request, aid, cid, addresses);
+			}
+		});
+	}
+
+	@Override
+	public ServiceFuture<List<BulkResultModel>> bulkOrgAddresses(
+			final HttpServletRequest request, 
+			final String aid, 
+			final String oid, 
+			final List<BulkAddressModel> addresses) 
+	{
+		return submit(new Callable<List<BulkResultModel>>() {
+			@Override
+			public List<BulkResultModel> call() {
+				return delegate.bulkOrgAddresses(request, aid, oid, addresses);
+			}
+		});
+	}
+
+	/******************************** helpers *****************************************/
+	private <T> ServiceFuture<T> submit(
+			final Callable<T> operation) 
+	{
+		final ServiceFuture<T> _future = new ServiceFuture<T>();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						_future.complete(operation.call());
+					} catch (Throwable _ex) {
+						_future.fail(_ex);
+					}
+				}
+			});
+		} catch (RejectedExecutionException _ex) {
+			_future.fail(new InternalServerErrorException("the service is stopping: " + _ex.getMessage()));
+		}
+		return _future;
+	}
+
+	/**
+	 * Runs a rejected operation on the calling thread while the pool is full; 
+	 * unlike ThreadPoolExecutor.CallerRunsPolicy, it does not silently drop the operations rejected after shutdown.
+	 */
+	private static class CallerRunsUnlessShutdown implements RejectedExecutionHandler {
+		@Override
+		public void rejectedExecution(
+				Runnable runnable, 
+				ThreadPoolExecutor executor) 
+		{
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("the executor is shut down.");
+			}
+			runnable.run();
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.bind.annotation.XmlTransient;
+
+import org.opentdc.service.exception.ValidationException;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Projects models to the attributes named in the fields parameter of a request, e.g. fields=id,fn,company.
+ * The attributes are those of the JSON representation: the persistent fields of the model and its timestamps.
+ * Only the requested attributes are read and serialized, so the cost of a response depends on the projection, 
+ * not on the size of the model. A projection is compiled once per model class and fields parameter, 
+ * and can be shared between threads.
+ * @author Bruno Kaiser
+ *
+ * @param <T> the model type
+ */
+public class FieldProjection<T> {
+	// the cache is bounded, as the fields parameters come from the clients
+	private static final int MAX_CACHED_PROJECTIONS = 1000;
+	private static final ConcurrentHashMap<Class<?>, Map<String, Member>> attributes = 
+			new ConcurrentHashMap<Class<?>, Map<String, Member>>();
+	private static final ConcurrentHashMap<String, FieldProjection<?>> projections = 
+			new ConcurrentHashMap<String, FieldProjection<?>>();
+
+	private final Class<T> type;
+	private final String[] names;
+	private final Member[] members;
+
+	private FieldProjection(
+			Class<T> type, 
+			String[] names, 
+			Member[] members) 
+	{
+		this.type = type;
+		this.names = names;
+		this.members = members;
+	}
+
+	/**
+	 * Return the projection of a model class to a comma-separated list of attributes.
+	 * @param type the model class
+	 * @param fields the fields parameter of the request
+	 * @return the projection, or null if fields is null or empty (i.e. the complete models are returned)
+	 * @throws ValidationException if an attribute does not exist in the model
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> FieldProjection<T> getInstance(
+			Class<T> type, 
+			String fields) 
+			throws ValidationException 
+	{
+		if (fields == null || fields.trim().isEmpty()) {
+			return null;
+		}
+		String _key = type.getName() + ":" + fields;
+		FieldProjection<T> _projection = (FieldProjection<T>) projections.get(_key);
+		if (_projection == null) {
+			_projection = compile(type, fields);
+			if (projections.size() < MAX_CACHED_PROJECTIONS) {
+				projections.putIfAbsent(_key, _projection);
+			}
+		}
+		return _projection;
+	}
+
+	/**
+	 * @return the model class
+	 */
+	public Class<T> getType() {
+		return type;
+	}
+
+	/**
+	 * @return the names of the projected attributes, in the requested order
+	 */
+	public List<String> getNames() {
+		return Arrays.asList(names);
+	}
+
+	/**
+	 * Write the projected attributes of a model as a JSON object; null attributes are omitted.
+	 * @param model the model
+	 * @param writer the JSON writer
+	 * @param gson the Gson to serialize attributes that are not strings
+	 * @throws IOException if the writer fails
+	 */
+	public void write(
+			T model, 
+			JsonWriter writer, 
+			Gson gson) 
+			throws IOException 
+	{
+		writer.beginObject();
+		for (int i = 0; i < members.length; i++) {
+			Object _value = getValue(members[i], model);
+			if (_value instanceof String) {
+				writer.name(names[i]);
+				writer.value((String) _value);
+			} else if (_value != null) {
+				writer.name(names[i]);
+				gson.toJson(_value, _value.getClass(), writer);
+			}
+		}
+		writer.endObject();
+	}
+
+	/**
+	 * @param models the models
+	 * @return the entity of a response with the projected models as a JSON array
+	 */
+	public StreamingOutput toArrayOutput(
+			List<T> models) 
+	{
+		return new JsonStreamingOutput<T>(models.iterator(), type, JsonStreamingOutput.FORMAT_JSON, this);
+	}
+
+	/**
+	 * @param model the model
+	 * @return the entity of a response with the projected model as a JSON object
+	 */
+	public StreamingOutput toObjectOutput(
+			final T model) 
+	{
+		return new StreamingOutput() {
+			@Override
+			public void write(
+					OutputStream output) 
+					throws IOException 
+			{
+				Writer _writer = new BufferedWriter(new OutputStreamWriter(output, "UTF-8"));
+				FieldProjection.this.write(model, new JsonWriter(_writer), JsonStreamingOutput.getGson());
+				_writer.flush();
+			}
+		};
+	}
+
+	private static <T> FieldProjection<T> compile(
+			Class<T> type, 
+			String fields) 
+			throws ValidationException 
+	{
+		Map<String, Member> _attributes = getAttributes(type);
+		Map<String, Member> _selected = new LinkedHashMap<String, Member>();
+		for (String _name : fields.split(",")) {
+			String _trimmed = _name.trim();
+			if (_trimmed.isEmpty()) {
+				continue;
+			}
+			Member _member = _attributes.get(_trimmed);
+			if (_member == null) {
+				throw new ValidationException("field <" + _trimmed + "> does not exist in " + type.getSimpleName() 
+						+ "; valid fields are " + _attributes.keySet());
+			}
+			_selected.put(_trimmed, _member);
+		}
+		return new FieldProjection<T>(type, 
+				_selected.keySet().toArray(new String[_selected.size()]), 
+				_selected.values().toArray(new Member[_selected.size()]));
+	}
+
+	/**
+	 * Find the attributes of the JSON representation of a model class: its persistent fields, 
+	 * and the timestamp getters that TimestampAdapterFactory adds.
+	 */
+	private static Map<String, Member> getAttributes(
+			Class<?> type) 
+	{
+		Map<String, Member> _attributes = attributes.get(type);
+		if (_attributes == null) {
+			_attributes = new LinkedHashMap<String, Member>();
+			for (Field _field : type.getDeclaredFields()) {
+				int _modifiers = _field.getModifiers();
+				if (!Modifier.isStatic(_modifiers) && !Modifier.isTransient(_modifiers) 
+						&& !_field.isAnnotationPresent(XmlTransient.class)) {
+					_field.setAccessible(true);
+					_attributes.put(_field.getName(), _field);
+				}
+			}
+			for (Method _getter : TimestampAdapterFactory.getTimestampGetters(type)) {
+				_attributes.put(TimestampAdapterFactory.getPropertyName(_getter), _getter);
+			}
+			attributes.putIfAbsent(type, _attributes);
+		}
+		return _attributes;
+	}
+
+	private static Object getValue(
+			Member member, 
+			Object model) 
+	{
+		try {
+			if (member instanceof Field) {
+				return ((Field) member).get(model);
+			}
+			return ((Method) member).invoke(model);
+		} catch (IllegalAccessException _ex) {
+			throw new IllegalStateException(_ex);
+		} catch (InvocationTargetException _ex) {
+			throw new IllegalStateException(_ex.getCause());
+		}
+	}
+}
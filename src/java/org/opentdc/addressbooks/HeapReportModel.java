@@ -0,0 +1,142 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Heap usage of the stored models: how much the interning of repetitive string attributes saves.
+ * Sizes are estimates for a 64-bit JVM with compressed oops.
+ * @author Bruno Kaiser
+ *
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlRootElement
+public class HeapReportModel {
+	private long contacts;
+	private long orgs;
+	private long addresses;
+	private long stringReferences;		// non-null values of the interned attributes
+	private long distinctStrings;		// String instances referenced by them
+	private long dictionarySize;		// values in the string dictionary
+	private long stringBytes;			// estimated size of the distinct instances
+	private long stringBytesWithoutInterning;	// estimated size with one instance per reference
+	private long bytesSaved;
+	private long heapUsed;
+	private long heapMax;
+
+	public HeapReportModel() {
+		
+	}
+
+	public long getContacts() {
+		return contacts;
+	}
+
+	public void setContacts(long contacts) {
+		this.contacts = contacts;
+	}
+
+	public long getOrgs() {
+		return orgs;
+	}
+
+	public void setOrgs(long orgs) {
+		this.orgs = orgs;
+	}
+
+	public long getAddresses() {
+		return addresses;
+	}
+
+	public void setAddresses(long addresses) {
+		this.addresses = addresses;
+	}
+
+	public long getStringReferences() {
+		return stringReferences;
+	}
+
+	public void setStringReferences(long stringReferences) {
+		this.stringReferences = stringReferences;
+	}
+
+	public long getDistinctStrings() {
+		return distinctStrings;
+	}
+
+	public void setDistinctStrings(long distinctStrings) {
+		this.distinctStrings = distinctStrings;
+	}
+
+	public long getDictionarySize() {
+		return dictionarySize;
+	}
+
+	public void setDictionarySize(long dictionarySize) {
+		this.dictionarySize = dictionarySize;
+	}
+
+	public long getStringBytes() {
+		return stringBytes;
+	}
+
+	public void setStringBytes(long stringBytes) {
+		this.stringBytes = stringBytes;
+	}
+
+	public long getStringBytesWithoutInterning() {
+		return stringBytesWithoutInterning;
+	}
+
+	public void setStringBytesWithoutInterning(long stringBytesWithoutInterning) {
+		this.stringBytesWithoutInterning = stringBytesWithoutInterning;
+	}
+
+	public long getBytesSaved() {
+		return bytesSaved;
+	}
+
+	public void setBytesSaved(long bytesSaved) {
+		this.bytesSaved = bytesSaved;
+	}
+
+	public long getHeapUsed() {
+		return heapUsed;
+	}
+
+	public void setHeapUsed(long heapUsed) {
+		this.heapUsed = heapUsed;
+	}
+
+	public long getHeapMax() {
+		return heapMax;
+	}
+
+	public void setHeapMax(long heapMax) {
+		this.heapMax = heapMax;
+	}
+}
@@ -0,0 +1,165 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes the models of an iterator incrementally, either as one JSON array or as
+ * newline-delimited JSON (one object per line). Only one model is held at a time,
+ * so the memory used does not depend on the size of the result.
+ * @author Bruno Kaiser
+ *
+ * @param <T> the model type
+ */
+public class JsonStreamingOutput<T> implements StreamingOutput {
+	private static final Logger logger = Logger.getLogger(JsonStreamingOutput.class.getName());
+	public static final String FORMAT_JSON = "json";
+	public static final String FORMAT_NDJSON = "ndjson";
+	public static final String APPLICATION_NDJSON = "application/x-ndjson";
+	private static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+	private static final Gson gson = new GsonBuilder().setDateFormat(DATE_FORMAT)
+			.registerTypeAdapterFactory(new TimestampAdapterFactory())
+			.create();
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Iterator<T> models;
+	private final Class<T> type;
+	private final boolean ndjson;
+	private final FieldProjection<T> projection;
+
+	/**
+	 * Constructor.
+	 * @param models the models to write
+	 * @param type the model class
+	 * @param format FORMAT_JSON or FORMAT_NDJSON
+	 */
+	public JsonStreamingOutput(
+			Iterator<T> models, 
+			Class<T> type, 
+			String format) 
+	{
+		this(models, type, format, null);
+	}
+
+	/**
+	 * Constructor.
+	 * @param models the models to write
+	 * @param type the model class
+	 * @param format FORMAT_JSON or FORMAT_NDJSON
+	 * @param projection the attributes to write, null for all
+	 */
+	public JsonStreamingOutput(
+			Iterator<T> models, 
+			Class<T> type, 
+			String format, 
+			FieldProjection<T> projection) 
+	{
+		this.models = models;
+		this.type = type;
+		this.ndjson = isNdjson(format);
+		this.projection = projection;
+	}
+
+	/**
+	 * @return the Gson that writes the models, with the date format of all JSON output of this service
+	 */
+	static Gson getGson() {
+		return gson;
+	}
+
+	/**
+	 * @param format the requested format
+	 * @return true if format requests newline-delimited JSON
+	 */
+	public static boolean isNdjson(
+			String format) 
+	{
+		return FORMAT_NDJSON.equalsIgnoreCase(format);
+	}
+
+	/**
+	 * @param format the requested format
+	 * @return the media type of the format
+	 */
+	public static String getMediaType(
+			String format) 
+	{
+		return isNdjson(format) ? APPLICATION_NDJSON : MediaType.APPLICATION_JSON;
+	}
+
+	@Override
+	public void write(
+			OutputStream output) 
+			throws IOException 
+	{
+		Writer _writer = new BufferedWriter(new OutputStreamWriter(output, "UTF-8"), BUFFER_SIZE);
+		int _count = 0;
+		if (ndjson) {
+			while (models.hasNext()) {
+				JsonWriter _jsonWriter = new JsonWriter(_writer);
+				// JsonWriter does not buffer, the record goes straight to _writer
+				write(models.next(), _jsonWriter);
+				_writer.write('\n');
+				_count++;
+			}
+		} else {
+			JsonWriter _jsonWriter = new JsonWriter(_writer);
+			_jsonWriter.beginArray();
+			while (models.hasNext()) {
+				write(models.next(), _jsonWriter);
+				_count++;
+			}
+			_jsonWriter.endArray();
+		}
+		_writer.flush();
+		logger.fine("write() -> " + _count + " " + type.getSimpleName() + "s streamed as " + 
+				(ndjson ? FORMAT_NDJSON : FORMAT_JSON) + ".");
+	}
+
+	private void write(
+			T model, 
+			JsonWriter jsonWriter) 
+			throws IOException 
+	{
+		if (projection == null) {
+			gson.toJson(model, type, jsonWriter);
+		} else {
+			projection.write(model, jsonWriter, gson);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram in the style of HdrHistogram: values (in microseconds) are counted in 
+ * log-linear buckets, 16 per power of two, so that every recorded value is known within 1/16 (6.25%) of its size.
+ * Recording is a few shifts and one atomic increment; percentiles are computed from a snapshot of the counts.
+ * @author Bruno Kaiser
+ *
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// values above 2^40 microseconds (about 12 days) are counted in the last bucket
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record one value.
+	 * @param micros the value in microseconds; negative values are counted as 0
+	 */
+	public void record(
+			long micros) 
+	{
+		long _value = micros < 0 ? 0 : micros;
+		counts.incrementAndGet(bucketOf(_value));
+		total.addAndGet(_value);
+		long _max = max.get();
+		while (_value > _max && !max.compareAndSet(_max, _value)) {
+			_max = max.get();
+		}
+	}
+
+	/**
+	 * @return a copy of the bucket counts; use with getUpperBound() and getPercentile()
+	 */
+	public long[] getCounts() {
+		long[] _counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			_counts[i] = counts.get(i);
+		}
+		return _counts;
+	}
+
+	/**
+	 * @return the sum of all recorded values in microseconds
+	 */
+	public long getTotal() {
+		return total.get();
+	}
+
+	/**
+	 * @return the largest recorded value in microseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param bucket the index of a bucket
+	 * @return the largest value counted in this bucket
+	 */
+	public static long getUpperBound(
+			int bucket) 
+	{
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int _shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		long _mantissa = SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((_mantissa + 1) << _shift) - 1;
+	}
+
+	/**
+	 * Compute a percentile from a snapshot of the counts.
+	 * @param counts the result of getCounts()
+	 * @param percentile between 0 and 100
+	 * @return the upper bound of the bucket holding the percentile, 0 if nothing was recorded
+	 */
+	public static long getPercentile(
+			long[] counts, 
+			double percentile) 
+	{
+		long _count = 0;
+		for (long _c : counts) {
+			_count += _c;
+		}
+		if (_count == 0) {
+			return 0;
+		}
+		long _rank = Math.max(1, (long) Math.ceil(_count * percentile / 100.0));
+		long _seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			_seen += counts[i];
+			if (_seen >= _rank) {
+				return getUpperBound(i);
+			}
+		}
+		return getUpperBound(counts.length - 1);
+	}
+
+	private static int bucketOf(
+			long value) 
+	{
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int _exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (_exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int _shift = _exponent - SUB_BUCKET_BITS;
+		return SUB_BUCKETS + _shift * SUB_BUCKETS + (int) ((value >>> _shift) - SUB_BUCKETS);
+	}
+}
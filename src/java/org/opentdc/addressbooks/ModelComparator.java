@@ -0,0 +1,256 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import org.opentdc.service.exception.ValidationException;
+
+/**
+ * Compares models by the features of the orderBy predicates of a query, e.g. orderBy(lastName,desc).
+ * Ties are broken by the id, so that the order is total and stable between calls.
+ * Null values sort first, as in the default comparators of the models.
+ * Timestamps are compared as epoch milliseconds (see getTimestamp()), so that sorting creates no Dates.
+ * @author Bruno Kaiser
+ *
+ * @param <T> the model type
+ * @param <F> the query feature type of the model
+ */
+public abstract class ModelComparator<T, F extends Enum<F>> implements Comparator<T> {
+	private final List<F> features = new ArrayList<F>();
+	private final List<Boolean> descending = new ArrayList<Boolean>();
+	private final List<Boolean> timestamps = new ArrayList<Boolean>();
+
+	/**
+	 * Add a sort key from an orderBy predicate.
+	 * The feature is the first word after orderBy; asc or desc may follow, e.g.
+	 * orderBy(lastName), orderBy(lastName,desc) or orderBy.lastName(desc).
+	 * @param featureType the query feature type class
+	 * @param sortPredicate the stringified orderBy predicate
+	 * @throws ValidationException if the feature is missing or invalid
+	 */
+	public void addSortPredicate(
+			Class<F> featureType, 
+			String sortPredicate) 
+			throws ValidationException 
+	{
+		String _feature = null;
+		boolean _descending = false;
+		for (String _word : sortPredicate.substring("orderBy".length()).split("[^A-Za-z]+")) {
+			if (_word.isEmpty()) {
+				continue;
+			}
+			if (_feature == null) {
+				_feature = _word;
+			} else if (_word.equalsIgnoreCase("desc") || _word.equalsIgnoreCase("descending")) {
+				_descending = true;
+			} else if (!_word.equalsIgnoreCase("asc") && !_word.equalsIgnoreCase("ascending")) {
+				throw new ValidationException("invalid sort predicate found: <" + sortPredicate + ">. Correct syntax is orderBy({feature}[,asc|desc]).");
+			}
+		}
+		if (_feature == null) {
+			throw new ValidationException("invalid sort predicate found: <" + sortPredicate + ">. Correct syntax is orderBy({feature}[,asc|desc]).");
+		}
+		F _featureType = null;
+		try {
+			_featureType = Enum.valueOf(featureType, _feature.toUpperCase());
+		}
+		catch (IllegalArgumentException _ex) {
+			throw new ValidationException("feature <" + _feature + "> is not a valid FeatureType");
+		}
+		if (!isSortable(_featureType)) {
+			throw new ValidationException("FeatureType <" + _featureType + "> can not be used to sort.");
+		}
+		features.add(_featureType);
+		descending.add(_descending);
+		timestamps.add(isTimestamp(_featureType));
+	}
+
+	/**
+	 * @return true if no orderBy predicate was added
+	 */
+	public boolean isEmpty() {
+		return features.isEmpty();
+	}
+
+	/**
+	 * @return the feature of the first sort key, or null if no orderBy predicate was added
+	 */
+	public F getPrimaryFeature() {
+		return features.isEmpty() ? null : features.get(0);
+	}
+
+	/**
+	 * @return true if the first sort key is sorted in descending order
+	 */
+	public boolean isPrimaryDescending() {
+		return !descending.isEmpty() && descending.get(0);
+	}
+
+	/**
+	 * @param featureType a query feature type
+	 * @return true if the models can be sorted by this feature
+	 */
+	protected abstract boolean isSortable(
+			F featureType);
+
+	/**
+	 * Return the value of a model to sort by.
+	 * @param model the model
+	 * @param featureType a sortable feature
+	 * @return the value to sort by, may be null
+	 */
+	protected abstract Comparable<?> getSortValue(
+			T model, 
+			F featureType);
+
+	/**
+	 * @param featureType a sortable feature
+	 * @return true if the feature is a timestamp, which is compared by getTimestamp()
+	 */
+	protected boolean isTimestamp(
+			F featureType) 
+	{
+		return false;
+	}
+
+	/**
+	 * Return the timestamp of a model to sort by, without creating a Date.
+	 * @param model the model
+	 * @param featureType a timestamp feature
+	 * @return the epoch milliseconds, or Timestamps.NONE if the timestamp is not set
+	 */
+	protected long getTimestamp(
+			T model, 
+			F featureType) 
+	{
+		return Timestamps.toMillis((Date) getSortValue(model, featureType));
+	}
+
+	/**
+	 * @param model the model
+	 * @return the id of the model
+	 */
+	protected abstract String getId(
+			T model);
+
+	/**
+	 * @param model the model
+	 * @return the values of the model to sort by, in the order of the sort keys
+	 */
+	public Comparable<?>[] getSortValues(
+			T model) 
+	{
+		Comparable<?>[] _values = new Comparable<?>[features.size()];
+		for (int i = 0; i < _values.length; i++) {
+			_values[i] = getSortValue(model, features.get(i));
+		}
+		return _values;
+	}
+
+	/**
+	 * @param model the model
+	 * @return the cursor pointing behind this model
+	 */
+	public QueryCursor getCursor(
+			T model) 
+	{
+		return new QueryCursor(getSortValues(model), getId(model));
+	}
+
+	/**
+	 * Compare a model with the position of a cursor.
+	 * @param model the model
+	 * @param cursor the cursor
+	 * @return a positive value if the model sorts after the cursor
+	 * @throws ValidationException if the cursor was created with other sort keys
+	 */
+	public int compareToCursor(
+			T model, 
+			QueryCursor cursor) 
+			throws ValidationException 
+	{
+		Comparable<?>[] _cursorValues = cursor.getSortValues();
+		if (_cursorValues.length != features.size()) {
+			throw new ValidationException("cursor does not match the sort order of the query.");
+		}
+		for (int i = 0; i < _cursorValues.length; i++) {
+			int _result;
+			if (timestamps.get(i)) {
+				if (_cursorValues[i] != null && !(_cursorValues[i] instanceof Date)) {
+					throw new ValidationException("cursor does not match the sort order of the query.");
+				}
+				_result = compareTimestamps(getTimestamp(model, features.get(i)), Timestamps.toMillis((Date) _cursorValues[i]));
+			} else {
+				_result = compareValues(getSortValue(model, features.get(i)), _cursorValues[i]);
+			}
+			if (_result != 0) {
+				return descending.get(i) ? -_result : _result;
+			}
+		}
+		return compareValues(getId(model), cursor.getId());
+	}
+
+	@Override
+	public int compare(
+			T obj1, 
+			T obj2) 
+	{
+		for (int i = 0; i < features.size(); i++) {
+			F _feature = features.get(i);
+			int _result = timestamps.get(i) 
+					? compareTimestamps(getTimestamp(obj1, _feature), getTimestamp(obj2, _feature)) 
+					: compareValues(getSortValue(obj1, _feature), getSortValue(obj2, _feature));
+			if (_result != 0) {
+				return descending.get(i) ? -_result : _result;
+			}
+		}
+		return compareValues(getId(obj1), getId(obj2));
+	}
+
+	private static int compareTimestamps(
+			long millis1, 
+			long millis2) 
+	{
+		// Timestamps.NONE is the smallest long, so that timestamps which are not set sort first like null values
+		return millis1 < millis2 ? -1 : (millis1 == millis2 ? 0 : 1);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int compareValues(
+			Comparable value1, 
+			Comparable value2) 
+	{
+		if (value1 == null) {
+			return value2 == null ? 0 : -1;
+		}
+		if (value2 == null) {
+			return 1;
+		}
+		return value1.compareTo(value2);
+	}
+}
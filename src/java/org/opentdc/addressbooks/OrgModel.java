@@ -28,7 +28,9 @@ import java.util.Date;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlRootElement
@@ -41,9 +43,11 @@ public class OrgModel {
 	private String tickerSymbol;
 	private OrgType orgType; 	// mandatory, default: default OrgType
 	private String logoUrl;
-	private Date createdAt;
+	@XmlTransient
+	private transient long createdAt = Timestamps.NONE;
 	private String createdBy;
-	private Date modifiedAt;
+	@XmlTransient
+	private transient long modifiedAt = Timestamps.NONE;
 	private String modifiedBy;
 	
 	public OrgModel() {
@@ -119,11 +123,20 @@ public class OrgModel {
 		this.logoUrl = logoUrl;
 	}
 
+	@XmlElement
 	public Date getCreatedAt() {
-		return createdAt;
+		return Timestamps.toDate(createdAt);
 	}
 
 	public void setCreatedAt(Date createdAt) {
+		this.createdAt = Timestamps.toMillis(createdAt);
+	}
+
+	public long getCreatedAtMillis() {
+		return createdAt;
+	}
+
+	public void setCreatedAtMillis(long createdAt) {
 		this.createdAt = createdAt;
 	}
 
@@ -135,11 +148,20 @@ public class OrgModel {
 		this.createdBy = createdBy;
 	}
 
+	@XmlElement
 	public Date getModifiedAt() {
-		return modifiedAt;
+		return Timestamps.toDate(modifiedAt);
 	}
 
 	public void setModifiedAt(Date modifiedAt) {
+		this.modifiedAt = Timestamps.toMillis(modifiedAt);
+	}
+
+	public long getModifiedAtMillis() {
+		return modifiedAt;
+	}
+
+	public void setModifiedAtMillis(long modifiedAt) {
 		this.modifiedAt = modifiedAt;
 	}
 
@@ -0,0 +1,245 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache of compiled query handlers, keyed by handler type and raw query string.
+ * It is shared by the addressbook, contact and org query handlers, so that repeated
+ * queries are parsed only once.
+ * Lookups do not lock: each entry records the clock of its last use, the clock advances with each miss,
+ * and when the cache is full, the least recently used eighth of the entries is evicted by a single thread
+ * (approximate LRU).
+ * @author Bruno Kaiser
+ *
+ */
+public class QueryCache {
+	public static final String CAPACITY_PROPERTY = "org.opentdc.addressbooks.queryCacheSize";
+	public static final int DEFAULT_CAPACITY = 512;
+	private static final QueryCache instance = new QueryCache(
+			Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+
+	private final int capacity;
+	private final ConcurrentHashMap<Key, Entry> entries;
+	private final ReentrantLock evictor = new ReentrantLock();
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	// hits of the entries that were evicted or cleared
+	private final AtomicLong retiredHits = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 * @param capacity the maximum number of compiled queries to keep
+	 */
+	public QueryCache(
+			final int capacity) 
+	{
+		this.capacity = capacity;
+		this.entries = new ConcurrentHashMap<Key, Entry>(Math.max(16, capacity * 4 / 3 + 1));
+	}
+
+	/**
+	 * @return the cache shared by all query handlers
+	 */
+	public static QueryCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Look up a compiled query.
+	 * @param type the query handler class
+	 * @param query the raw query string
+	 * @return the cached query handler or null if the query was not compiled yet
+	 */
+	public <T> T get(
+			Class<T> type, 
+			String query) 
+	{
+		Entry _entry = entries.get(new Key(type, query));
+		if (_entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		_entry.touch(clock.get());
+		return type.cast(_entry.handler);
+	}
+
+	/**
+	 * Add a compiled query to the cache, evicting the least recently used ones if full.
+	 * @param type the query handler class
+	 * @param query the raw query string
+	 * @param handler the compiled query handler
+	 */
+	public <T> void put(
+			Class<T> type, 
+			String query, 
+			T handler) 
+	{
+		if (capacity <= 0) {
+			return;
+		}
+		entries.put(new Key(type, query), new Entry(handler, clock.incrementAndGet()));
+		// the size is checked again after the eviction, as the puts that ran meanwhile did not get the lock
+		while (entries.size() > capacity && evictor.tryLock()) {
+			try {
+				evict();
+			} finally {
+				evictor.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Remove the least recently used entries until an eighth of the capacity is free again.
+	 * Only called by the thread holding the evictor lock.
+	 */
+	private void evict() {
+		int _excess = entries.size() - (capacity - capacity / 8);
+		if (_excess <= 0) {
+			return;
+		}
+		// the clocks are copied first, as they keep moving while the candidates are sorted
+		List<Candidate> _candidates = new ArrayList<Candidate>(entries.size());
+		for (Map.Entry<Key, Entry> _entry : entries.entrySet()) {
+			_candidates.add(new Candidate(_entry.getKey(), _entry.getValue()));
+		}
+		Collections.sort(_candidates, new Comparator<Candidate>() {
+			@Override
+			public int compare(Candidate c1, Candidate c2) {
+				return c1.lastUsed < c2.lastUsed ? -1 : (c1.lastUsed == c2.lastUsed ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < _excess && i < _candidates.size(); i++) {
+			Candidate _candidate = _candidates.get(i);
+			if (entries.remove(_candidate.key, _candidate.entry)) {
+				retiredHits.addAndGet(_candidate.entry.hits);
+			}
+		}
+	}
+
+	/**
+	 * Remove all compiled queries.
+	 */
+	public void clear() {
+		for (Key _key : entries.keySet()) {
+			Entry _entry = entries.remove(_key);
+			if (_entry != null) {
+				retiredHits.addAndGet(_entry.hits);
+			}
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the number of lookups that found a compiled query; approximate under concurrent lookups of the same query
+	 */
+	public long getHits() {
+		long _hits = retiredHits.get();
+		for (Entry _entry : entries.values()) {
+			_hits += _entry.hits;
+		}
+		return _hits;
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * A compiled query with the clock of its last use.
+	 * Both fields are updated without synchronization; a lost update only makes the LRU order and the hit count approximate.
+	 */
+	private static final class Entry {
+		private final Object handler;
+		private volatile long lastUsed;
+		private volatile long hits;
+
+		Entry(Object handler, long lastUsed) {
+			this.handler = handler;
+			this.lastUsed = lastUsed;
+		}
+
+		void touch(long now) {
+			lastUsed = now;
+			hits++;
+		}
+	}
+
+	/**
+	 * An entry considered for eviction, with the clock of its last use at the time of the eviction.
+	 */
+	private static final class Candidate {
+		private final Key key;
+		private final Entry entry;
+		private final long lastUsed;
+
+		Candidate(Key key, Entry entry) {
+			this.key = key;
+			this.entry = entry;
+			this.lastUsed = entry.lastUsed;
+		}
+	}
+
+	/**
+	 * Cache key: the handler type plus the raw query string.
+	 */
+	private static final class Key {
+		private final Class<?> type;
+		private final String query;
+
+		Key(Class<?> type, String query) {
+			this.type = type;
+			this.query = query;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * type.hashCode() + query.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key _other = (Key) obj;
+			return type == _other.type && query.equals(_other.query);
+		}
+	}
+}
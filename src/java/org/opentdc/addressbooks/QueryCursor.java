@@ -0,0 +1,172 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.opentdc.service.exception.ValidationException;
+
+/**
+ * An opaque position within a sorted result, used for keyset pagination.
+ * It contains the sort values and the id of the last element of a page, and the hash of the query
+ * it belongs to. Clients receive it base64url-encoded and pass it back unchanged to get the next page.
+ * @author Bruno Kaiser
+ *
+ */
+public class QueryCursor {
+	private static final byte VERSION = 1;
+	private static final byte TYPE_NULL = 0;
+	private static final byte TYPE_STRING = 1;
+	private static final byte TYPE_DATE = 2;
+	private static final byte TYPE_LONG = 3;
+
+	private final Comparable<?>[] sortValues;
+	private final String id;
+
+	/**
+	 * Constructor.
+	 * @param sortValues the sort values of the last element of a page
+	 * @param id the id of the last element of a page
+	 */
+	public QueryCursor(
+			Comparable<?>[] sortValues, 
+			String id) 
+	{
+		this.sortValues = sortValues;
+		this.id = id;
+	}
+
+	/**
+	 * @return the sort values of the last element of the previous page
+	 */
+	public Comparable<?>[] getSortValues() {
+		return sortValues;
+	}
+
+	/**
+	 * @return the id of the last element of the previous page
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Encode this cursor for the client.
+	 * @param query the query string the cursor belongs to
+	 * @return the opaque cursor token
+	 */
+	public String encode(
+			String query) 
+	{
+		try {
+			ByteArrayOutputStream _bytes = new ByteArrayOutputStream();
+			DataOutputStream _out = new DataOutputStream(_bytes);
+			_out.writeByte(VERSION);
+			_out.writeInt(hash(query));
+			_out.writeByte(sortValues.length);
+			for (Comparable<?> _value : sortValues) {
+				if (_value == null) {
+					_out.writeByte(TYPE_NULL);
+				} else if (_value instanceof Date) {
+					_out.writeByte(TYPE_DATE);
+					_out.writeLong(((Date) _value).getTime());
+				} else if (_value instanceof Long) {
+					_out.writeByte(TYPE_LONG);
+					_out.writeLong((Long) _value);
+				} else {
+					_out.writeByte(TYPE_STRING);
+					_out.writeUTF(_value.toString());
+				}
+			}
+			_out.writeUTF(id);
+			_out.flush();
+			return DatatypeConverter.printBase64Binary(_bytes.toByteArray())
+					.replace('+', '-').replace('/', '_').replace("=", "");
+		}
+		catch (IOException _ex) {
+			throw new IllegalStateException(_ex);
+		}
+	}
+
+	/**
+	 * Decode a cursor token received from a client.
+	 * @param token the opaque cursor token; null or empty means the start of the result
+	 * @param query the query string the cursor must belong to
+	 * @return the cursor, or null for the start of the result
+	 * @throws ValidationException if the token is invalid or belongs to another query
+	 */
+	public static QueryCursor decode(
+			String token, 
+			String query) 
+			throws ValidationException 
+	{
+		if (token == null || token.isEmpty()) {
+			return null;
+		}
+		try {
+			StringBuilder _base64 = new StringBuilder(token.replace('-', '+').replace('_', '/'));
+			while (_base64.length() % 4 != 0) {
+				_base64.append('=');
+			}
+			DataInputStream _in = new DataInputStream(new ByteArrayInputStream(
+					DatatypeConverter.parseBase64Binary(_base64.toString())));
+			if (_in.readByte() != VERSION) {
+				throw new ValidationException("cursor <" + token + "> is invalid.");
+			}
+			if (_in.readInt() != hash(query)) {
+				throw new ValidationException("cursor <" + token + "> does not belong to query <" + query + ">.");
+			}
+			Comparable<?>[] _sortValues = new Comparable<?>[_in.readByte()];
+			for (int i = 0; i < _sortValues.length; i++) {
+				switch (_in.readByte()) {
+				case TYPE_NULL:		_sortValues[i] = null; break;
+				case TYPE_DATE:		_sortValues[i] = new Date(_in.readLong()); break;
+				case TYPE_LONG:		_sortValues[i] = _in.readLong(); break;
+				case TYPE_STRING:	_sortValues[i] = _in.readUTF(); break;
+				default:			throw new ValidationException("cursor <" + token + "> is invalid.");
+				}
+			}
+			return new QueryCursor(_sortValues, _in.readUTF());
+		}
+		catch (IOException _ex) {
+			throw new ValidationException("cursor <" + token + "> is invalid.");
+		}
+		catch (IllegalArgumentException _ex) {
+			throw new ValidationException("cursor <" + token + "> is invalid.");
+		}
+	}
+
+	private static int hash(
+			String query) 
+	{
+		return query == null ? 0 : query.hashCode();
+	}
+}
@@ -0,0 +1,206 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Collects the execution statistics of one query and logs them as a single summary record.
+ * A trace is started either on request (e.g. by the trace=true query parameter) or for every n-th query,
+ * where n is given by the system property org.opentdc.addressbooks.traceSampleRate (0 = no sampling).
+ * The trace is bound to the current thread (and to worker threads with attach()); service providers add 
+ * the number of scanned and matched rows with record() once per scan, not per row.
+ * While request metrics are enabled, every query gets a silent trace, whose rows are added to the 
+ * RequestMetrics of its operation when it ends; only requested and sampled traces are logged.
+ * @author Bruno Kaiser
+ *
+ */
+public class QueryTrace {
+	private static final Logger logger = Logger.getLogger(QueryTrace.class.getName());
+	public static final String SAMPLE_RATE_PROPERTY = "org.opentdc.addressbooks.traceSampleRate";
+	private static final int sampleRate = Integer.getInteger(SAMPLE_RATE_PROPERTY, 0);
+	private static final AtomicLong queryCounter = new AtomicLong();
+	private static final ThreadLocal<QueryTrace> currentTrace = new ThreadLocal<QueryTrace>();
+
+	private final String operation;
+	private final String query;
+	private final boolean sampled;
+	private final boolean logged;
+	private final long startTime;
+	private long scanned = 0;
+	private long matched = 0;
+	private int returned = -1;
+
+	/**
+	 * Constructor.
+	 * @param operation the name of the service operation, e.g. listContacts
+	 * @param query the query string
+	 * @param sampled true if the trace was started by sampling, false if it was requested
+	 * @param logged true if the summary record is logged at the end
+	 */
+	private QueryTrace(
+			String operation, 
+			String query, 
+			boolean sampled, 
+			boolean logged) 
+	{
+		this.operation = operation;
+		this.query = query;
+		this.sampled = sampled;
+		this.logged = logged;
+		this.startTime = System.nanoTime();
+	}
+
+	/**
+	 * Start tracing a query on the current thread.
+	 * @param operation the name of the service operation, e.g. listContacts
+	 * @param query the query string
+	 * @param requested true if the client requested a trace
+	 * @return the trace, or null if this query is not traced
+	 */
+	public static QueryTrace begin(
+			String operation, 
+			String query, 
+			boolean requested) 
+	{
+		boolean _sampled = !requested && sampleRate > 0 && queryCounter.incrementAndGet() % sampleRate == 0;
+		if (!requested && !_sampled && !RequestMetrics.isEnabled()) {
+			return null;
+		}
+		QueryTrace _trace = new QueryTrace(operation, query, _sampled, requested || _sampled);
+		currentTrace.set(_trace);
+		return _trace;
+	}
+
+	/**
+	 * @return the trace of the current thread, or null if the current query is not traced
+	 */
+	public static QueryTrace current() {
+		return currentTrace.get();
+	}
+
+	/**
+	 * Bind a trace to the current thread, so that a worker thread scanning on behalf of a query records into its trace.
+	 * @param trace the trace of the query, may be null
+	 * @return the trace previously bound to the current thread; pass it to attach() again to restore it
+	 */
+	public static QueryTrace attach(
+			QueryTrace trace) 
+	{
+		QueryTrace _previous = currentTrace.get();
+		if (trace == null) {
+			currentTrace.remove();
+		} else {
+			currentTrace.set(trace);
+		}
+		return _previous;
+	}
+
+	/**
+	 * Add the result of a scan to the trace of the current thread, if any.
+	 * @param scanned the number of rows that were evaluated
+	 * @param matched the number of rows that matched the query
+	 */
+	public static void record(
+			long scanned, 
+			long matched) 
+	{
+		QueryTrace _trace = currentTrace.get();
+		if (_trace != null) {
+			// scans of one query may run on several threads
+			synchronized (_trace) {
+				_trace.scanned += scanned;
+				_trace.matched += matched;
+			}
+		}
+	}
+
+	/**
+	 * Note the number of rows returned to the client.
+	 * @param trace the trace, may be null
+	 * @param result the result list
+	 * @return the result list
+	 */
+	public static <T> List<T> returned(
+			QueryTrace trace, 
+			List<T> result) 
+	{
+		if (trace != null && result != null) {
+			trace.returned = result.size();
+		}
+		return result;
+	}
+
+	/**
+	 * Finish a trace, add its rows to the request metrics and log its summary record, if it was requested or sampled.
+	 * @param trace the trace, may be null
+	 */
+	public static void end(
+			QueryTrace trace) 
+	{
+		if (trace == null) {
+			return;
+		}
+		currentTrace.remove();
+		synchronized (trace) {
+			RequestMetrics.recordRows(trace.operation, trace.scanned, trace.returned);
+		}
+		if (trace.logged) {
+			logger.info(trace.toString());
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "queryTrace operation=" + operation 
+				+ " query=<" + query + ">" 
+				+ " sampled=" + sampled
+				+ " scanned=" + scanned 
+				+ " matched=" + matched 
+				+ " returned=" + returned 
+				+ " elapsedMicros=" + (System.nanoTime() - startTime) / 1000;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	public long getScanned() {
+		return scanned;
+	}
+
+	public long getMatched() {
+		return matched;
+	}
+
+	public int getReturned() {
+		return returned;
+	}
+}
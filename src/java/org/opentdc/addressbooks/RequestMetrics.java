@@ -0,0 +1,227 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of all resource methods of AddressbooksService, keyed by method name.
+ * Each EndpointMetrics is registered as an MXBean (org.opentdc.addressbooks:type=EndpointMetrics,name=<method>) 
+ * when the method is first called, and all of them are rendered in the Prometheus text format by writePrometheus().
+ * The MXBeans are unregistered by unregister() when the application is stopped.
+ * Recording can be switched off with the system property org.opentdc.addressbooks.metrics=false.
+ * @author Bruno Kaiser
+ *
+ */
+public class RequestMetrics {
+	private static final Logger logger = Logger.getLogger(RequestMetrics.class.getName());
+	public static final String ENABLED_PROPERTY = "org.opentdc.addressbooks.metrics";
+	public static final String JMX_DOMAIN = "org.opentdc.addressbooks";
+	public static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4";
+	private static final String PREFIX = "addressbooks_";
+	private static final boolean enabled = Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+	// upper bounds of the exported latency buckets, in microseconds
+	private static final long[] BUCKET_BOUNDS = { 
+		500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000, 2500000, 5000000, 10000000 
+	};
+	private static final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+
+	private RequestMetrics() {
+	}
+
+	/**
+	 * @return false if recording was switched off with ENABLED_PROPERTY
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Get the metrics of a resource method, creating and registering them on first use.
+	 * @param method the name of the resource method, e.g. listContacts
+	 * @return the metrics
+	 */
+	public static EndpointMetrics get(
+			String method) 
+	{
+		EndpointMetrics _metrics = endpoints.get(method);
+		if (_metrics == null) {
+			EndpointMetrics _new = new EndpointMetrics(method);
+			_metrics = endpoints.putIfAbsent(method, _new);
+			if (_metrics == null) {
+				_metrics = _new;
+				register(_new);
+			}
+		}
+		return _metrics;
+	}
+
+	/**
+	 * Unregister the MXBeans of all resource methods, and forget their metrics, 
+	 * so that an undeployed application does not stay referenced by the platform MBeanServer.
+	 */
+	public static void unregister() {
+		endpoints.clear();
+		MBeanServer _server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for (ObjectName _name : _server.queryNames(new ObjectName(JMX_DOMAIN + ":type=EndpointMetrics,*"), null)) {
+				try {
+					_server.unregisterMBean(_name);
+				}
+				catch (JMException _ex) {
+					// e.g. unregistered concurrently
+					logger.log(Level.WARNING, "could not unregister " + _name + " from JMX", _ex);
+				}
+			}
+		}
+		catch (JMException _ex) {
+			logger.log(Level.WARNING, "could not unregister the metrics from JMX", _ex);
+		}
+	}
+
+	/**
+	 * Add the rows of a list call to the metrics of its resource method.
+	 * @param method the name of the resource method
+	 * @param scanned the number of rows evaluated by the service provider
+	 * @param returned the number of rows returned to the client, -1 if unknown
+	 */
+	public static void recordRows(
+			String method, 
+			long scanned, 
+			long returned) 
+	{
+		if (enabled) {
+			get(method).recordRows(scanned, returned);
+		}
+	}
+
+	/**
+	 * Render the metrics of all resource methods in the Prometheus text exposition format.
+	 * @param providerMetrics additional counters (name ending with _total) and gauges of the service provider, may be null
+	 * @return the exposition
+	 */
+	public static String toPrometheus(
+			Map<String, Number> providerMetrics) 
+	{
+		SortedMap<String, EndpointMetrics> _endpoints = new TreeMap<String, EndpointMetrics>(endpoints);
+		StringBuilder _out = new StringBuilder();
+		header(_out, "requests_total", "counter", "Requests per resource method.");
+		for (EndpointMetrics _m : _endpoints.values()) {
+			sample(_out, "requests_total", _m.getMethod(), null, _m.getRequests());
+		}
+		header(_out, "request_errors_total", "counter", "Responses with a 4xx or 5xx status per resource method.");
+		for (EndpointMetrics _m : _endpoints.values()) {
+			sample(_out, "request_errors_total", _m.getMethod(), "class=\"4xx\"", _m.getClientErrors());
+			sample(_out, "request_errors_total", _m.getMethod(), "class=\"5xx\"", _m.getServerErrors());
+		}
+		header(_out, "request_duration_seconds", "histogram", "Request latency per resource method.");
+		for (EndpointMetrics _m : _endpoints.values()) {
+			long[] _counts = _m.getLatency().getCounts();
+			long _cumulative = 0;
+			int _bucket = 0;
+			for (long _bound : BUCKET_BOUNDS) {
+				// a bucket is counted below a bound only if all of its values are
+				while (_bucket < _counts.length && LatencyHistogram.getUpperBound(_bucket) <= _bound) {
+					_cumulative += _counts[_bucket++];
+				}
+				sample(_out, "request_duration_seconds_bucket", _m.getMethod(), "le=\"" + _bound / 1e6 + "\"", _cumulative);
+			}
+			while (_bucket < _counts.length) {
+				_cumulative += _counts[_bucket++];
+			}
+			sample(_out, "request_duration_seconds_bucket", _m.getMethod(), "le=\"+Inf\"", _cumulative);
+			sample(_out, "request_duration_seconds_sum", _m.getMethod(), null, _m.getLatency().getTotal() / 1e6);
+			sample(_out, "request_duration_seconds_count", _m.getMethod(), null, _cumulative);
+		}
+		header(_out, "rows_scanned_total", "counter", "Rows evaluated by the service provider for list calls.");
+		for (EndpointMetrics _m : _endpoints.values()) {
+			sample(_out, "rows_scanned_total", _m.getMethod(), null, _m.getRowsScanned());
+		}
+		header(_out, "rows_returned_total", "counter", "Rows returned to the client by list calls.");
+		for (EndpointMetrics _m : _endpoints.values()) {
+			sample(_out, "rows_returned_total", _m.getMethod(), null, _m.getRowsReturned());
+		}
+		if (providerMetrics != null) {
+			for (Map.Entry<String, Number> _e : new TreeMap<String, Number>(providerMetrics).entrySet()) {
+				header(_out, _e.getKey(), _e.getKey().endsWith("_total") ? "counter" : "gauge", null);
+				sample(_out, _e.getKey(), null, null, _e.getValue());
+			}
+		}
+		return _out.toString();
+	}
+
+	private static void header(
+			StringBuilder out, 
+			String name, 
+			String type, 
+			String help) 
+	{
+		if (help != null) {
+			out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+		}
+		out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(
+			StringBuilder out, 
+			String name, 
+			String method, 
+			String labels, 
+			Number value) 
+	{
+		out.append(PREFIX).append(name);
+		if (method != null) {
+			out.append("{method=\"").append(method).append('"');
+			if (labels != null) {
+				out.append(',').append(labels);
+			}
+			out.append('}');
+		}
+		out.append(' ').append(value).append('\n');
+	}
+
+	private static void register(
+			EndpointMetrics metrics) 
+	{
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, 
+					new ObjectName(JMX_DOMAIN + ":type=EndpointMetrics,name=" + ObjectName.quote(metrics.getMethod())));
+		}
+		catch (JMException _ex) {
+			// e.g. a second instance of the service in the same JVM
+			logger.log(Level.WARNING, "could not register the metrics of " + metrics.getMethod() + " in JMX", _ex);
+		}
+	}
+}
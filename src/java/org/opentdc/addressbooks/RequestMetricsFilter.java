@@ -0,0 +1,81 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Measures the latency and the response status of each call of a resource method of AddressbooksService
+ * (or AsyncAddressbooksService).
+ * The time is taken after matching and before the response is written; for suspended requests 
+ * it ends when the request is resumed. Register this filter as a JAX-RS provider of the service endpoint.
+ * @author Bruno Kaiser
+ *
+ */
+@Provider
+public class RequestMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+	private static final String METRICS_PROPERTY = RequestMetricsFilter.class.getName() + ".metrics";
+	private static final String START_PROPERTY = RequestMetricsFilter.class.getName() + ".start";
+
+	@Context
+	private ResourceInfo resourceInfo;
+
+	@Override
+	public void filter(
+			ContainerRequestContext request) 
+			throws IOException 
+	{
+		if (!RequestMetrics.isEnabled() || resourceInfo == null) {
+			return;
+		}
+		Method _method = resourceInfo.getResourceMethod();
+		if (_method == null || !AbstractAddressbooksService.class.isAssignableFrom(_method.getDeclaringClass())) {
+			return;
+		}
+		request.setProperty(METRICS_PROPERTY, RequestMetrics.get(_method.getName()));
+		request.setProperty(START_PROPERTY, System.nanoTime());
+	}
+
+	@Override
+	public void filter(
+			ContainerRequestContext request, 
+			ContainerResponseContext response) 
+			throws IOException 
+	{
+		Object _metrics = request.getProperty(METRICS_PROPERTY);
+		Object _start = request.getProperty(START_PROPERTY);
+		if (_metrics instanceof EndpointMetrics && _start instanceof Long) {
+			((EndpointMetrics) _metrics).recordRequest(System.nanoTime() - (Long) _start, response.getStatus());
+		}
+	}
+}
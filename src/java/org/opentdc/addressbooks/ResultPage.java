@@ -0,0 +1,64 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.List;
+
+/**
+ * One page of a result with keyset pagination.
+ * @author Bruno Kaiser
+ *
+ * @param <T> the model type
+ */
+public class ResultPage<T> {
+	private final List<T> items;
+	private final String nextCursor;
+
+	/**
+	 * Constructor.
+	 * @param items the elements of this page
+	 * @param nextCursor the cursor of the next page, or null if this is the last page
+	 */
+	public ResultPage(
+			List<T> items, 
+			String nextCursor) 
+	{
+		this.items = items;
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * @return the elements of this page
+	 */
+	public List<T> getItems() {
+		return items;
+	}
+
+	/**
+	 * @return the cursor of the next page, or null if this is the last page
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+}
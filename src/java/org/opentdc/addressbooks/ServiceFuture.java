@@ -0,0 +1,193 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of an AsyncServiceProvider operation. Callbacks are invoked by the thread that completes 
+ * the future, or immediately by addCallback() if it is already done; a future is completed only once.
+ * @author Bruno Kaiser
+ *
+ * @param <T> the result type
+ */
+public class ServiceFuture<T> implements Future<T> {
+	private final CountDownLatch done = new CountDownLatch(1);
+	// null once the future is done
+	private List<ServiceCallback<? super T>> callbacks = new ArrayList<ServiceCallback<? super T>>(2);
+	private T result;
+	private Throwable failure;
+
+	/**
+	 * @param result the result
+	 * @return a future that is completed with the result
+	 */
+	public static <T> ServiceFuture<T> completed(
+			T result) 
+	{
+		ServiceFuture<T> _future = new ServiceFuture<T>();
+		_future.complete(result);
+		return _future;
+	}
+
+	/**
+	 * @param failure the exception
+	 * @return a future that is failed with the exception
+	 */
+	public static <T> ServiceFuture<T> failed(
+			Throwable failure) 
+	{
+		ServiceFuture<T> _future = new ServiceFuture<T>();
+		_future.fail(failure);
+		return _future;
+	}
+
+	/**
+	 * Complete the future with a result.
+	 * @param result the result
+	 * @return false if the future was already done
+	 */
+	public boolean complete(
+			T result) 
+	{
+		return finish(result, null);
+	}
+
+	/**
+	 * Complete the future with an exception.
+	 * @param failure the exception
+	 * @return false if the future was already done
+	 */
+	public boolean fail(
+			Throwable failure) 
+	{
+		return finish(null, failure);
+	}
+
+	/**
+	 * Register a callback for the outcome of the future.
+	 * @param callback the callback
+	 */
+	public void addCallback(
+			ServiceCallback<? super T> callback) 
+	{
+		synchronized (this) {
+			if (callbacks != null) {
+				callbacks.add(callback);
+				return;
+			}
+		}
+		invoke(callback);
+	}
+
+	private boolean finish(
+			T result, 
+			Throwable failure) 
+	{
+		List<ServiceCallback<? super T>> _callbacks;
+		synchronized (this) {
+			if (callbacks == null) {
+				return false;
+			}
+			this.result = result;
+			this.failure = failure;
+			_callbacks = callbacks;
+			callbacks = null;
+		}
+		done.countDown();
+		for (ServiceCallback<? super T> _callback : _callbacks) {
+			invoke(_callback);
+		}
+		return true;
+	}
+
+	private void invoke(
+			ServiceCallback<? super T> callback) 
+	{
+		if (failure != null) {
+			callback.failed(failure);
+		} else {
+			callback.completed(result);
+		}
+	}
+
+	/**
+	 * Fail the future with a CancellationException; the operation itself is not interrupted.
+	 */
+	@Override
+	public boolean cancel(
+			boolean mayInterruptIfRunning) 
+	{
+		return fail(new CancellationException());
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return isDone() && failure instanceof CancellationException;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	@Override
+	public T get() 
+			throws InterruptedException, ExecutionException 
+	{
+		done.await();
+		return getResult();
+	}
+
+	@Override
+	public T get(
+			long timeout, 
+			TimeUnit unit) 
+			throws InterruptedException, ExecutionException, TimeoutException 
+	{
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return getResult();
+	}
+
+	private T getResult() 
+			throws ExecutionException 
+	{
+		if (failure instanceof CancellationException) {
+			throw (CancellationException) failure;
+		}
+		if (failure != null) {
+			throw new ExecutionException(failure);
+		}
+		return result;
+	}
+}
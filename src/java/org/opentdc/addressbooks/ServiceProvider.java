@@ -203,4 +203,49 @@ public interface ServiceProvider {
 		String oid,
 		String adrid
 	) throws NotFoundException, InternalServerErrorException;
-}
\ No newline at end of file
+
+	/************************* bulk *****************************/
+	/**
+	 * Create, update or delete many contacts of an addressbook, including their addresses.
+	 * All items are validated first and then applied together; a failing item does not stop the others.
+	 * @return one result per item, in the order of the items
+	 */
+	public abstract List<BulkResultModel> bulkContacts(
+			HttpServletRequest request,
+			String aid,
+			List<BulkContactModel> contacts
+	) throws NotFoundException, ValidationException;
+
+	/**
+	 * Create, update or delete many orgs of an addressbook, including their addresses.
+	 * All items are validated first and then applied together; a failing item does not stop the others.
+	 * @return one result per item, in the order of the items
+	 */
+	public abstract List<BulkResultModel> bulkOrgs(
+			HttpServletRequest request,
+			String aid,
+			List<BulkOrgModel> orgs
+	) throws NotFoundException, ValidationException;
+
+	/**
+	 * Create, update or delete many addresses of a contact.
+	 * @return one result per item, in the order of the items
+	 */
+	public abstract List<BulkResultModel> bulkAddresses(
+			HttpServletRequest request,
+			String aid,
+			String cid,
+			List<BulkAddressModel> addresses
+	) throws NotFoundException, ValidationException;
+
+	/**
+	 * Create, update or delete many addresses of an org.
+	 * @return one result per item, in the order of the items
+	 */
+	public abstract List<BulkResultModel> bulkOrgAddresses(
+			HttpServletRequest request,
+			String aid,
+			String oid,
+			List<BulkAddressModel> addresses
+	) throws NotFoundException, ValidationException;
+}
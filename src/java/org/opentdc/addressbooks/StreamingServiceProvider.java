@@ -0,0 +1,98 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.Iterator;
+
+/**
+ * Optional interface of a ServiceProvider that returns query results lazily,
+ * so that large results can be streamed to the client without materializing them.
+ * The iterators are weakly consistent: they reflect the data at some point at or after their creation.
+ * @author Bruno Kaiser
+ *
+ */
+public interface StreamingServiceProvider {
+
+	/**
+	 * Iterate over the contacts of all addressbooks that match a query.
+	 * @param query the query string
+	 * @param queryType the query type
+	 * @param position the number of matching contacts to skip
+	 * @param size the maximum number of contacts to return
+	 * @return an iterator over the matching contacts, in the same order as listAllContacts
+	 */
+	public Iterator<ContactModel> iterateAllContacts(
+			String query,
+			String queryType,
+			int position,
+			int size);
+
+	/**
+	 * Iterate over the orgs of all addressbooks that match a query.
+	 * @param query the query string
+	 * @param queryType the query type
+	 * @param position the number of matching orgs to skip
+	 * @param size the maximum number of orgs to return
+	 * @return an iterator over the matching orgs, in the same order as listAllOrgs
+	 */
+	public Iterator<OrgModel> iterateAllOrgs(
+			String query,
+			String queryType,
+			int position,
+			int size);
+
+	/**
+	 * Iterate over the contacts of an addressbook that match a query.
+	 * @param aid the addressbook id
+	 * @param query the query string
+	 * @param queryType the query type
+	 * @param position the number of matching contacts to skip
+	 * @param size the maximum number of contacts to return
+	 * @return an iterator over the matching contacts, in the same order as listContacts
+	 * @throws NotFoundException if no addressbook with this id exists
+	 */
+	public Iterator<ContactModel> iterateContacts(
+			String aid,
+			String query,
+			String queryType,
+			int position,
+			int size);
+
+	/**
+	 * Iterate over the orgs of an addressbook that match a query.
+	 * @param aid the addressbook id
+	 * @param query the query string
+	 * @param queryType the query type
+	 * @param position the number of matching orgs to skip
+	 * @param size the maximum number of orgs to return
+	 * @return an iterator over the matching orgs, in the same order as listOrgs
+	 * @throws NotFoundException if no addressbook with this id exists
+	 */
+	public Iterator<OrgModel> iterateOrgs(
+			String aid,
+			String query,
+			String queryType,
+			int position,
+			int size);
+}
@@ -0,0 +1,246 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.bind.annotation.XmlElement;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Reads and writes the models with gson including their timestamps. The models keep their timestamps in transient 
+ * long fields, which gson skips; the timestamps are read and written through the Date getters and setters 
+ * that JAXB binds with @XmlElement, so that gson and JAXB produce the same properties.
+ * Every Gson that reads or writes AddressbookModel, ContactModel, OrgModel or AddressModel must register this factory, 
+ * e.g. new GsonBuilder().registerTypeAdapterFactory(new TimestampAdapterFactory()).
+ * The fields, getters and setters of a model class are resolved once, when gson asks for its adapter; 
+ * the models are then read and written field by field, without building a JSON tree.
+ * @author Bruno Kaiser
+ *
+ */
+public class TimestampAdapterFactory implements TypeAdapterFactory {
+	private static final ConcurrentHashMap<Class<?>, List<Method>> timestampGetters = new ConcurrentHashMap<Class<?>, List<Method>>();
+	private static final List<Class<?>> types = Arrays.<Class<?>>asList(
+			AddressbookModel.class, ContactModel.class, OrgModel.class, AddressModel.class);
+
+	@Override
+	public <T> TypeAdapter<T> create(
+			Gson gson, 
+			TypeToken<T> type) 
+	{
+		if (!types.contains(type.getRawType())) {
+			return null;
+		}
+		@SuppressWarnings("unchecked")
+		Class<T> _type = (Class<T>) type.getRawType();
+		Constructor<T> _constructor;
+		try {
+			_constructor = _type.getDeclaredConstructor();
+			_constructor.setAccessible(true);
+		} catch (NoSuchMethodException _ex) {
+			throw new IllegalStateException(_type.getName() + " has no default constructor.");
+		}
+		List<Field> _fields = new ArrayList<Field>();
+		List<TypeAdapter<Object>> _fieldAdapters = new ArrayList<TypeAdapter<Object>>();
+		// the fields gson serializes, in the order of its default adapter
+		for (Class<?> _class = _type; _class != Object.class; _class = _class.getSuperclass()) {
+			for (Field _field : _class.getDeclaredFields()) {
+				int _modifiers = _field.getModifiers();
+				if (!Modifier.isStatic(_modifiers) && !Modifier.isTransient(_modifiers) && !_field.isSynthetic()) {
+					_field.setAccessible(true);
+					_fields.add(_field);
+					_fieldAdapters.add(getAdapter(gson, _field));
+				}
+			}
+		}
+		return new TimestampAdapter<T>(_constructor, _fields, _fieldAdapters, getTimestampGetters(_type), 
+				gson.getAdapter(Date.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static TypeAdapter<Object> getAdapter(
+			Gson gson, 
+			Field field) 
+	{
+		return (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(field.getGenericType()));
+	}
+
+	static List<Method> getTimestampGetters(
+			Class<?> type) 
+	{
+		List<Method> _getters = timestampGetters.get(type);
+		if (_getters == null) {
+			_getters = new ArrayList<Method>();
+			for (Method _method : type.getMethods()) {
+				if (_method.isAnnotationPresent(XmlElement.class) && _method.getReturnType() == Date.class 
+						&& _method.getParameterTypes().length == 0 && _method.getName().startsWith("get")) {
+					_getters.add(_method);
+				}
+			}
+			timestampGetters.putIfAbsent(type, _getters);
+		}
+		return _getters;
+	}
+
+	static String getPropertyName(
+			Method getter) 
+	{
+		String _name = getter.getName().substring("get".length());
+		return Character.toLowerCase(_name.charAt(0)) + _name.substring(1);
+	}
+
+	/**
+	 * Reads and writes the fields of a model, then its timestamps.
+	 */
+	private static class TimestampAdapter<T> extends TypeAdapter<T> {
+		private final Constructor<T> constructor;
+		private final Field[] fields;
+		private final String[] fieldNames;
+		private final List<TypeAdapter<Object>> fieldAdapters;
+		private final Method[] getters;
+		private final Method[] setters;
+		private final String[] getterNames;
+		private final TypeAdapter<Date> dateAdapter;
+		// property name -> index of the field, or -1 - index of the timestamp
+		private final Map<String, Integer> properties = new HashMap<String, Integer>();
+
+		TimestampAdapter(
+				Constructor<T> constructor, 
+				List<Field> fields, 
+				List<TypeAdapter<Object>> fieldAdapters, 
+				List<Method> getters, 
+				TypeAdapter<Date> dateAdapter) 
+		{
+			this.constructor = constructor;
+			this.fields = fields.toArray(new Field[fields.size()]);
+			this.fieldNames = new String[this.fields.length];
+			for (int i = 0; i < this.fields.length; i++) {
+				fieldNames[i] = this.fields[i].getName();
+				properties.put(fieldNames[i], i);
+			}
+			this.fieldAdapters = fieldAdapters;
+			this.getters = getters.toArray(new Method[getters.size()]);
+			this.setters = new Method[this.getters.length];
+			this.getterNames = new String[this.getters.length];
+			for (int i = 0; i < this.getters.length; i++) {
+				getterNames[i] = getPropertyName(this.getters[i]);
+				try {
+					setters[i] = constructor.getDeclaringClass().getMethod(
+							"set" + this.getters[i].getName().substring("get".length()), Date.class);
+					properties.put(getterNames[i], -1 - i);
+				} catch (NoSuchMethodException _ex) {
+					// a read-only timestamp is written, but skipped when read
+				}
+			}
+			this.dateAdapter = dateAdapter;
+		}
+
+		@Override
+		public void write(
+				JsonWriter out, 
+				T model) 
+				throws IOException 
+		{
+			if (model == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			try {
+				for (int i = 0; i < fields.length; i++) {
+					// null values are skipped by the writer unless gson serializes nulls
+					out.name(fieldNames[i]);
+					fieldAdapters.get(i).write(out, fields[i].get(model));
+				}
+				for (int i = 0; i < getters.length; i++) {
+					Date _value = (Date) getters[i].invoke(model);
+					if (_value != null) {
+						out.name(getterNames[i]);
+						dateAdapter.write(out, _value);
+					}
+				}
+			} catch (IllegalAccessException _ex) {
+				throw new IllegalStateException(_ex);
+			} catch (InvocationTargetException _ex) {
+				throw new IllegalStateException(_ex.getCause());
+			}
+			out.endObject();
+		}
+
+		@Override
+		public T read(
+				JsonReader in) 
+				throws IOException 
+		{
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			try {
+				T _model = constructor.newInstance();
+				in.beginObject();
+				while (in.hasNext()) {
+					Integer _index = properties.get(in.nextName());
+					if (_index == null) {
+						in.skipValue();
+					} else if (_index >= 0) {
+						Object _value = fieldAdapters.get(_index).read(in);
+						if (_value != null || !fields[_index].getType().isPrimitive()) {
+							fields[_index].set(_model, _value);
+						}
+					} else {
+						setters[-1 - _index].invoke(_model, dateAdapter.read(in));
+					}
+				}
+				in.endObject();
+				return _model;
+			} catch (InstantiationException _ex) {
+				throw new IllegalStateException(_ex);
+			} catch (IllegalAccessException _ex) {
+				throw new IllegalStateException(_ex);
+			} catch (InvocationTargetException _ex) {
+				throw new IllegalStateException(_ex.getCause());
+			}
+		}
+	}
+}
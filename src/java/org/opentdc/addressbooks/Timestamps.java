@@ -0,0 +1,57 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.Date;
+
+/**
+ * Conversions between java.util.Date and the epoch milliseconds that the models store their timestamps in.
+ * A model keeps a timestamp as a primitive long; a Date is only created at the API (and JSON) boundary.
+ * @author Bruno Kaiser
+ *
+ */
+public class Timestamps {
+	// the value of a timestamp that is not set (null)
+	public static final long NONE = Long.MIN_VALUE;
+
+	/**
+	 * @param date a date, may be null
+	 * @return the epoch milliseconds of the date, or NONE if it is null
+	 */
+	public static long toMillis(
+			Date date) 
+	{
+		return date == null ? NONE : date.getTime();
+	}
+
+	/**
+	 * @param millis epoch milliseconds or NONE
+	 * @return a new Date, or null if millis is NONE
+	 */
+	public static Date toDate(
+			long millis) 
+	{
+		return millis == NONE ? null : new Date(millis);
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects the first position+size elements of a sort order out of an unsorted stream of elements.
+ * It keeps a bounded max-heap of k = position+size elements, so that a page costs O(n log k)
+ * instead of a full sort of all n matching elements.
+ * @author Bruno Kaiser
+ *
+ * @param <T> the model type
+ */
+public class TopKCollector<T> {
+	private static final int MAX_INITIAL_CAPACITY = 1024;
+	private final Comparator<? super T> comparator;
+	private final int position;
+	private final int size;
+	private final int limit;
+	private final PriorityQueue<T> heap;
+	private int count = 0;
+
+	/**
+	 * Constructor.
+	 * @param comparator the sort order
+	 * @param position the position of the first element of the page
+	 * @param size the maximum number of elements of the page
+	 */
+	public TopKCollector(
+			Comparator<? super T> comparator, 
+			int position, 
+			int size) 
+	{
+		this.comparator = comparator;
+		this.position = Math.max(0, position);
+		this.size = Math.max(0, size);
+		this.limit = this.size == 0 ? 0 : (int) Math.min((long) this.position + this.size, Integer.MAX_VALUE);
+		this.heap = new PriorityQueue<T>(Math.min(limit, MAX_INITIAL_CAPACITY) + 1, Collections.reverseOrder(comparator));
+	}
+
+	/**
+	 * Offer an element; it is kept only if it belongs to the first position+size elements seen so far.
+	 * @param element the element
+	 */
+	public void add(
+			T element) 
+	{
+		count++;
+		if (heap.size() < limit) {
+			heap.offer(element);
+		} else if (limit > 0 && comparator.compare(element, heap.peek()) < 0) {
+			heap.poll();
+			heap.offer(element);
+		}
+	}
+
+	/**
+	 * @return the number of elements offered
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the sort order
+	 */
+	public Comparator<? super T> getComparator() {
+		return comparator;
+	}
+
+	/**
+	 * @return the elements from position to position+size of the sort order
+	 */
+	public List<T> getPage() {
+		List<T> _sorted = new ArrayList<T>(heap);
+		Collections.sort(_sorted, comparator);
+		if (position >= _sorted.size()) {
+			return new ArrayList<T>();
+		}
+		return new ArrayList<T>(_sorted.subList(position, _sorted.size()));
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks;
+
+import org.opentdc.service.exception.NotFoundException;
+
+/**
+ * Optional interface of a ServiceProvider that tracks collection versions,
+ * so that list requests can be answered with 304 Not Modified.
+ * A version must only change after the change it describes is visible to readers.
+ * @author Bruno Kaiser
+ *
+ */
+public interface VersionedServiceProvider {
+
+	/**
+	 * @return the version of all addressbooks including their contents
+	 */
+	public CollectionVersion getVersion();
+
+	/**
+	 * @param aid the addressbook id
+	 * @return the version of the addressbook including its contacts, orgs and addresses, or null if it is not known yet
+	 * @throws NotFoundException if no addressbook with this id exists
+	 */
+	public CollectionVersion getVersion(
+			String aid)
+		throws NotFoundException;
+}
@@ -0,0 +1,747 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+
+import org.opentdc.addressbooks.AddressLookupModel;
+import org.opentdc.addressbooks.AddressLookupServiceProvider;
+import org.opentdc.addressbooks.AddressModel;
+import org.opentdc.addressbooks.AddressType;
+import org.opentdc.addressbooks.AddressbookModel;
+import org.opentdc.addressbooks.BulkAddressModel;
+import org.opentdc.addressbooks.BulkContactModel;
+import org.opentdc.addressbooks.BulkOrgModel;
+import org.opentdc.addressbooks.BulkResultModel;
+import org.opentdc.addressbooks.ChangeLogServiceProvider;
+import org.opentdc.addressbooks.ChangesModel;
+import org.opentdc.addressbooks.CollectionVersion;
+import org.opentdc.addressbooks.ContextParameters;
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.CursorServiceProvider;
+import org.opentdc.addressbooks.HeapReportModel;
+import org.opentdc.addressbooks.HeapReportServiceProvider;
+import org.opentdc.addressbooks.MetricsServiceProvider;
+import org.opentdc.addressbooks.OrgModel;
+import org.opentdc.addressbooks.ResultPage;
+import org.opentdc.addressbooks.SearchHitModel;
+import org.opentdc.addressbooks.SearchServiceProvider;
+import org.opentdc.addressbooks.ServiceProvider;
+import org.opentdc.addressbooks.StreamingServiceProvider;
+import org.opentdc.addressbooks.VersionedServiceProvider;
+import org.opentdc.service.exception.DuplicateException;
+import org.opentdc.service.exception.InternalServerErrorException;
+import org.opentdc.service.exception.NotFoundException;
+import org.opentdc.service.exception.NotImplementedException;
+import org.opentdc.service.exception.ValidationException;
+
+/**
+ * ServiceProvider that caches the addressbooks, contacts, orgs and addresses read from another ServiceProvider.
+ * Writes go to the other ServiceProvider and invalidate the affected entries; lists and queries are not cached.
+ * To enable it, configure this class as the service provider and set these context parameters 
+ * (with the prefix of the service provider configuration):
+ * <ul>
+ * <li>cache.delegate: the class name of the ServiceProvider to cache (mandatory)</li>
+ * <li>cache.size: the maximum number of cached models (default: 10000)</li>
+ * <li>cache.ttl: the time to live of a cached model in seconds, 0 for no expiry (default: 60)</li>
+ * </ul>
+ * Writes that do not go through this ServiceProvider become visible after at most cache.ttl.
+ * @author Bruno Kaiser
+ *
+ */
+public class CachingServiceProvider implements ServiceProvider, CursorServiceProvider, StreamingServiceProvider, 
+		VersionedServiceProvider, ChangeLogServiceProvider, SearchServiceProvider, AddressLookupServiceProvider, 
+		HeapReportServiceProvider, MetricsServiceProvider, Closeable {
+	private static final Logger logger = Logger.getLogger(CachingServiceProvider.class.getName());
+	public static final String DELEGATE_PARAM = "cache.delegate";
+	public static final String SIZE_PARAM = "cache.size";
+	public static final String TTL_PARAM = "cache.ttl";
+	public static final int DEFAULT_SIZE = 10000;
+	public static final int DEFAULT_TTL = 60;
+
+	private final ServiceProvider delegate;
+	private final ModelCache<Object> cache;
+
+	/**
+	 * Constructor.
+	 * @param delegate the ServiceProvider to cache
+	 * @param size the maximum number of cached models
+	 * @param ttl the time to live of a cached model in seconds, 0 for no expiry
+	 */
+	public CachingServiceProvider(
+			ServiceProvider delegate, 
+			int size, 
+			int ttl) 
+	{
+		this.delegate = delegate;
+		this.cache = new ModelCache<Object>(size, ttl * 1000L);
+		logger.info("CachingServiceProvider(" + delegate.getClass().getName() + ", " + size + ", " + ttl + ")");
+	}
+
+	/**
+	 * Constructor used by GenericService.getServiceProvider().
+	 * @param context the servlet context
+	 * @param prefix the prefix of the service provider configuration
+	 * @throws ReflectiveOperationException if the configured delegate cannot be instantiated
+	 */
+	public CachingServiceProvider(
+			ServletContext context, 
+			String prefix) 
+			throws ReflectiveOperationException 
+	{
+		this(newDelegate(context, prefix), 
+				ContextParameters.getIntParameter(context, prefix + SIZE_PARAM, DEFAULT_SIZE), 
+				ContextParameters.getIntParameter(context, prefix + TTL_PARAM, DEFAULT_TTL));
+	}
+
+	/**
+	 * @return the cache, e.g. to read its hit, miss and eviction counters
+	 */
+	public ModelCache<Object> getCache() {
+		return cache;
+	}
+
+	/******************************** addressbook *****************************************/
+	@Override
+	public List<AddressbookModel> list(
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		return delegate.list(query, queryType, position, size);
+	}
+
+	@Override
+	public AddressbookModel create(
+			HttpServletRequest request, 
+			AddressbookModel addressbook) 
+			throws DuplicateException, ValidationException 
+	{
+		return delegate.create(request, addressbook);
+	}
+
+	@Override
+	public AddressbookModel read(
+			String id) 
+			throws NotFoundException 
+	{
+		String _key = addressbookKey(id);
+		AddressbookModel _model = (AddressbookModel) cache.get(_key);
+		if (_model == null) {
+			long _stamp = cache.stamp();
+			_model = delegate.read(id);
+			cache.put(_key, _model, _stamp);
+		}
+		return _model;
+	}
+
+	@Override
+	public AddressbookModel update(
+			HttpServletRequest request, 
+			String id, 
+			AddressbookModel addressbook) 
+			throws NotFoundException, ValidationException 
+	{
+		try {
+			return delegate.update(request, id, addressbook);
+		} finally {
+			cache.invalidate(addressbookKey(id));
+		}
+	}
+
+	@Override
+	public void delete(
+			String id) 
+			throws NotFoundException, InternalServerErrorException 
+	{
+		try {
+			delegate.delete(id);
+		} finally {
+			cache.invalidatePrefix(addressbookKey(id));
+		}
+	}
+
+	/******************************** contact *****************************************/
+	@Override
+	public List<ContactModel> listAllContacts(
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		return delegate.listAllContacts(query, queryType, position, size);
+	}
+
+	@Override
+	public List<ContactModel> listContacts(
+			String aid, 
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		return delegate.listContacts(aid, query, queryType, position, size);
+	}
+
+	@Override
+	public ContactModel createContact(
+			HttpServletRequest request, 
+			String aid, 
+			ContactModel contact) 
+			throws DuplicateException, ValidationException 
+	{
+		return delegate.createContact(request, aid, contact);
+	}
+
+	@Override
+	public ContactModel readContact(
+			String aid, 
+			String cid) 
+			throws NotFoundException 
+	{
+		String _key = contactKey(aid, cid);
+		ContactModel _model = (ContactModel) cache.get(_key);
+		if (_model == null) {
+			long _stamp = cache.stamp();
+			_model = delegate.readContact(aid, cid);
+			cache.put(_key, _model, _stamp);
+		}
+		return _model;
+	}
+
+	@Override
+	public ContactModel updateContact(
+			HttpServletRequest request, 
+			String aid, 
+			String cid, 
+			ContactModel contact) 
+			throws NotFoundException, ValidationException 
+	{
+		try {
+			return delegate.updateContact(request, aid, cid, contact);
+		} finally {
+			cache.invalidate(contactKey(aid, cid));
+		}
+	}
+
+	@Override
+	public void deleteContact(
+			String aid, 
+			String cid) 
+			throws NotFoundException, InternalServerErrorException 
+	{
+		try {
+			delegate.deleteContact(aid, cid);
+		} finally {
+			// the contact and its addresses
+			cache.invalidatePrefix(contactKey(aid, cid));
+		}
+	}
+
+	/******************************** org *****************************************/
+	@Override
+	public List<OrgModel> listAllOrgs(
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		return delegate.listAllOrgs(query, queryType, position, size);
+	}
+
+	@Override
+	public List<OrgModel> listOrgs(
+			String aid, 
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		return delegate.listOrgs(aid, query, queryType, position, size);
+	}
+
+	@Override
+	public OrgModel createOrg(
+			HttpServletRequest request, 
+			String aid, 
+			OrgModel org) 
+			throws DuplicateException, ValidationException 
+	{
+		return delegate.createOrg(request, aid, org);
+	}
+
+	@Override
+	public OrgModel readOrg(
+			String aid, 
+			String oid) 
+			throws NotFoundException 
+	{
+		String _key = orgKey(aid, oid);
+		OrgModel _model = (OrgModel) cache.get(_key);
+		if (_model == null) {
+			long _stamp = cache.stamp();
+			_model = delegate.readOrg(aid, oid);
+			cache.put(_key, _model, _stamp);
+		}
+		return _model;
+	}
+
+	@Override
+	public OrgModel updateOrg(
+			HttpServletRequest request, 
+			String aid, 
+			String oid, 
+			OrgModel org) 
+			throws NotFoundException, ValidationException 
+	{
+		try {
+			return delegate.updateOrg(request, aid, oid, org);
+		} finally {
+			cache.invalidate(orgKey(aid, oid));
+		}
+	}
+
+	@Override
+	public void deleteOrg(
+			String aid, 
+			String oid) 
+			throws NotFoundException, InternalServerErrorException 
+	{
+		try {
+			delegate.deleteOrg(aid, oid);
+		} finally {
+			// the org and its addresses
+			cache.invalidatePrefix(orgKey(aid, oid));
+		}
+	}
+
+	/******************************** address (of contacts) *****************************************/
+	@Override
+	public List<AddressModel> listAddresses(
+			String aid, 
+			String cid, 
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		return delegate.listAddresses(aid, cid, query, queryType, position, size);
+	}
+
+	@Override
+	public AddressModel createAddress(
+			HttpServletRequest request, 
+			String aid, 
+			String cid, 
+			AddressModel address) 
+			throws DuplicateException, ValidationException 
+	{
+		return delegate.createAddress(request, aid, cid, address);
+	}
+
+	@Override
+	public AddressModel readAddress(
+			String aid, 
+			String cid, 
+			String adrid) 
+			throws NotFoundException 
+	{
+		String _key = addressKey(contactKey(aid, cid), adrid);
+		AddressModel _model = (AddressModel) cache.get(_key);
+		if (_model == null) {
+			long _stamp = cache.stamp();
+			_model = delegate.readAddress(aid, cid, adrid);
+			cache.put(_key, _model, _stamp);
+		}
+		return _model;
+	}
+
+	@Override
+	public AddressModel updateAddress(
+			HttpServletRequest request, 
+			String aid, 
+			String cid, 
+			String adrid, 
+			AddressModel address) 
+			throws NotFoundException, ValidationException 
+	{
+		try {
+			return delegate.updateAddress(request, aid, cid, adrid, address);
+		} finally {
+			cache.invalidate(addressKey(contactKey(aid, cid), adrid));
+		}
+	}
+
+	@Override
+	public void deleteAddress(
+			String aid, 
+			String cid, 
+			String adrid) 
+			throws NotFoundException, InternalServerErrorException 
+	{
+		try {
+			delegate.deleteAddress(aid, cid, adrid);
+		} finally {
+			cache.invalidate(addressKey(contactKey(aid, cid), adrid));
+		}
+	}
+
+	/******************************** address (of orgs) *****************************************/
+	@Override
+	public List<AddressModel> listOrgAddresses(
+			String aid, 
+			String oid, 
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		return delegate.listOrgAddresses(aid, oid, query, queryType, position, size);
+	}
+
+	@Override
+	public AddressModel createOrgAddress(
+			HttpServletRequest request, 
+			String aid, 
+			String oid, 
+			AddressModel address) 
+			throws DuplicateException, ValidationException 
+	{
+		return delegate.createOrgAddress(request, aid, oid, address);
+	}
+
+	@Override
+	public AddressModel readOrgAddress(
+			String aid, 
+			String oid, 
+			String adrid) 
+			throws NotFoundException 
+	{
+		String _key = addressKey(orgKey(aid, oid), adrid);
+		AddressModel _model = (AddressModel) cache.get(_key);
+		if (_model == null) {
+			long _stamp = cache.stamp();
+			_model = delegate.readOrgAddress(aid, oid, adrid);
+			cache.put(_key, _model, _stamp);
+		}
+		return _model;
+	}
+
+	@Override
+	public AddressModel updateOrgAddress(
+			HttpServletRequest request, 
+			String aid, 
+			String oid, 
+			String adrid, 
+			AddressModel address) 
+			throws NotFoundException, ValidationException 
+	{
+		try {
+			return delegate.updateOrgAddress(request, aid, oid, adrid, address);
+		} finally {
+			cache.invalidate(addressKey(orgKey(aid, oid), adrid));
+		}
+	}
+
+	@Override
+	public void deleteOrgAddress(
+			String aid, 
+			String oid, 
+			String adrid) 
+			throws NotFoundException, InternalServerErrorException 
+	{
+		try {
+			delegate.deleteOrgAddress(aid, oid, adrid);
+		} finally {
+			cache.invalidate(addressKey(orgKey(aid, oid), adrid));
+		}
+	}
+
+	/******************************** bulk *****************************************/
+	@Override
+	public List<BulkResultModel> bulkContacts(
+			HttpServletRequest request, 
+			String aid, 
+			List<BulkContactModel> contacts) 
+			throws NotFoundException, ValidationException 
+	{
+		try {
+			return delegate.bulkContacts(request, aid, contacts);
+		} finally {
+			cache.invalidatePrefix(addressbookKey(aid) + "c/");
+		}
+	}
+
+	@Override
+	public List<BulkResultModel> bulkOrgs(
+			HttpServletRequest request, 
+			String aid, 
+			List<BulkOrgModel> orgs) 
+			throws NotFoundException, ValidationException 
+	{
+		try {
+			return delegate.bulkOrgs(request, aid, orgs);
+		} finally {
+			cache.invalidatePrefix(addressbookKey(aid) + "o/");
+		}
+	}
+
+	@Override
+	public List<BulkResultModel> bulkAddresses(
+			HttpServletRequest request, 
+			String aid, 
+			String cid, 
+			List<BulkAddressModel> addresses) 
+			throws NotFoundException, ValidationException 
+	{
+		try {
+			return delegate.bulkAddresses(request, aid, cid, addresses);
+		} finally {
+			cache.invalidatePrefix(contactKey(aid, cid) + "a/");
+		}
+	}
+
+	@Override
+	public List<BulkResultModel> bulkOrgAddresses(
+			HttpServletRequest request, 
+			String aid, 
+			String oid, 
+			List<BulkAddressModel> addresses) 
+			throws NotFoundException, ValidationException 
+	{
+		try {
+			return delegate.bulkOrgAddresses(request, aid, oid, addresses);
+		} finally {
+			cache.invalidatePrefix(orgKey(aid, oid) + "a/");
+		}
+	}
+
+	/******************************** optional features (not cached) *****************************************/
+	@Override
+	public ResultPage<ContactModel> listAllContacts(
+			String query, 
+			String queryType, 
+			String cursor, 
+			int size) 
+	{
+		return getDelegate(CursorServiceProvider.class, "cursor pagination").listAllContacts(query, queryType, cursor, size);
+	}
+
+	@Override
+	public ResultPage<OrgModel> listAllOrgs(
+			String query, 
+			String queryType, 
+			String cursor, 
+			int size) 
+	{
+		return getDelegate(CursorServiceProvider.class, "cursor pagination").listAllOrgs(query, queryType, cursor, size);
+	}
+
+	@Override
+	public Iterator<ContactModel> iterateAllContacts(
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		return getDelegate(StreamingServiceProvider.class, "streaming").iterateAllContacts(query, queryType, position, size);
+	}
+
+	@Override
+	public Iterator<OrgModel> iterateAllOrgs(
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		return getDelegate(StreamingServiceProvider.class, "streaming").iterateAllOrgs(query, queryType, position, size);
+	}
+
+	@Override
+	public Iterator<ContactModel> iterateContacts(
+			String aid, 
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		return getDelegate(StreamingServiceProvider.class, "streaming").iterateContacts(aid, query, queryType, position, size);
+	}
+
+	@Override
+	public Iterator<OrgModel> iterateOrgs(
+			String aid, 
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		return getDelegate(StreamingServiceProvider.class, "streaming").iterateOrgs(aid, query, queryType, position, size);
+	}
+
+	@Override
+	public CollectionVersion getVersion() {
+		// without versions, conditional requests are answered with the full response
+		return delegate instanceof VersionedServiceProvider ? ((VersionedServiceProvider) delegate).getVersion() : null;
+	}
+
+	@Override
+	public CollectionVersion getVersion(
+			String aid) 
+			throws NotFoundException 
+	{
+		return delegate instanceof VersionedServiceProvider ? ((VersionedServiceProvider) delegate).getVersion(aid) : null;
+	}
+
+	@Override
+	public ChangesModel listChanges(
+			String aid, 
+			String since, 
+			int size) 
+			throws NotFoundException, ValidationException 
+	{
+		return getDelegate(ChangeLogServiceProvider.class, "change log").listChanges(aid, since, size);
+	}
+
+	@Override
+	public List<SearchHitModel> search(
+			String q, 
+			int position, 
+			int size) 
+			throws ValidationException 
+	{
+		return getDelegate(SearchServiceProvider.class, "full-text search").search(q, position, size);
+	}
+
+	@Override
+	public List<AddressLookupModel> lookupAddress(
+			AddressType addressType, 
+			String value) 
+			throws ValidationException 
+	{
+		return getDelegate(AddressLookupServiceProvider.class, "address lookup").lookupAddress(addressType, value);
+	}
+
+	@Override
+	public HeapReportModel getHeapReport() {
+		return getDelegate(HeapReportServiceProvider.class, "heap report").getHeapReport();
+	}
+
+	/**
+	 * @return the counters of the cache, and the metrics of the delegate if it has any
+	 */
+	@Override
+	public Map<String, Number> getMetrics() {
+		Map<String, Number> _metrics = new HashMap<String, Number>();
+		if (delegate instanceof MetricsServiceProvider) {
+			_metrics.putAll(((MetricsServiceProvider) delegate).getMetrics());
+		}
+		_metrics.put("cache_hits_total", cache.getHits());
+		_metrics.put("cache_misses_total", cache.getMisses());
+		_metrics.put("cache_evictions_total", cache.getEvictions());
+		_metrics.put("cache_size", cache.size());
+		return _metrics;
+	}
+
+	/**
+	 * Close the delegate, if it holds resources.
+	 */
+	@Override
+	public void close() 
+			throws IOException 
+	{
+		if (delegate instanceof Closeable) {
+			((Closeable) delegate).close();
+		}
+	}
+
+	/******************************** helpers *****************************************/
+	private <T> T getDelegate(
+			Class<T> feature, 
+			String name) 
+			throws NotImplementedException 
+	{
+		if (!feature.isInstance(delegate)) {
+			throw new NotImplementedException(name + " is not supported by this service provider.");
+		}
+		return feature.cast(delegate);
+	}
+
+	// keys are hierarchical, so that a prefix invalidates a model with all models it contains
+	private static String addressbookKey(
+			String aid) 
+	{
+		return aid + "/";
+	}
+
+	private static String contactKey(
+			String aid, 
+			String cid) 
+	{
+		return aid + "/c/" + cid + "/";
+	}
+
+	private static String orgKey(
+			String aid, 
+			String oid) 
+	{
+		return aid + "/o/" + oid + "/";
+	}
+
+	private static String addressKey(
+			String ownerKey, 
+			String adrid) 
+	{
+		return ownerKey + "a/" + adrid;
+	}
+
+	private static ServiceProvider newDelegate(
+			ServletContext context, 
+			String prefix) 
+			throws ReflectiveOperationException 
+	{
+		String _className = context.getInitParameter(prefix + DELEGATE_PARAM);
+		if (_className == null || _className.isEmpty()) {
+			throw new ClassNotFoundException("context parameter <" + prefix + DELEGATE_PARAM + 
+					"> must name the ServiceProvider to cache.");
+		}
+		Class<? extends ServiceProvider> _class = Class.forName(_className).asSubclass(ServiceProvider.class);
+		try {
+			return _class.getConstructor(ServletContext.class, String.class).newInstance(context, prefix);
+		} catch (NoSuchMethodException _ex) {
+			return _class.getConstructor().newInstance();
+		}
+	}
+
+}
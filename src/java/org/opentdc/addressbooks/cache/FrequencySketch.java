@@ -0,0 +1,113 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.cache;
+
+/**
+ * Approximate access frequencies of cache keys (count-min sketch with 4-bit counters).
+ * All counters are halved after a sample of accesses, so that the frequencies follow recent popularity.
+ * Not thread-safe; ModelCache guards it with the lock of its eviction policy.
+ * @author Bruno Kaiser
+ *
+ */
+class FrequencySketch {
+	private static final int DEPTH = 4;
+	private static final int MAX_COUNT = 15;
+	private static final int[] SEEDS = { 0x9e3779b9, 0x85ebca6b, 0xc2b2ae35, 0x27d4eb2f };
+
+	private final int[] counters;
+	private final int mask;
+	private final int sampleSize;
+	private int additions = 0;
+
+	/**
+	 * Constructor.
+	 * @param capacity the maximum number of entries of the cache
+	 */
+	FrequencySketch(
+			int capacity) 
+	{
+		int _width = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+		this.counters = new int[_width];
+		this.mask = _width - 1;
+		this.sampleSize = 10 * _width;
+	}
+
+	/**
+	 * Record an access to a key.
+	 * @param key the key
+	 */
+	void increment(
+			Object key) 
+	{
+		int _hash = spread(key.hashCode());
+		boolean _added = false;
+		for (int _i = 0; _i < DEPTH; _i++) {
+			int _index = index(_hash, _i);
+			if (counters[_index] < MAX_COUNT) {
+				counters[_index]++;
+				_added = true;
+			}
+		}
+		if (_added && ++additions >= sampleSize) {
+			reset();
+		}
+	}
+
+	/**
+	 * @param key the key
+	 * @return the estimated number of recent accesses to the key
+	 */
+	int frequency(
+			Object key) 
+	{
+		int _hash = spread(key.hashCode());
+		int _frequency = MAX_COUNT;
+		for (int _i = 0; _i < DEPTH; _i++) {
+			_frequency = Math.min(_frequency, counters[index(_hash, _i)]);
+		}
+		return _frequency;
+	}
+
+	private void reset() {
+		for (int _i = 0; _i < counters.length; _i++) {
+			counters[_i] >>>= 1;
+		}
+		additions /= 2;
+	}
+
+	private int index(
+			int hash, 
+			int row) 
+	{
+		int _hash = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+		return (_hash ^ (_hash >>> 16)) & mask;
+	}
+
+	private static int spread(
+			int hash) 
+	{
+		int _hash = hash * 0x9e3779b9;
+		return _hash ^ (_hash >>> 15);
+	}
+}
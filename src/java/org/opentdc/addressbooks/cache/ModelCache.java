@@ -0,0 +1,363 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size- and TTL-bounded cache with W-TinyLFU admission: new entries enter a small LRU window;
+ * an entry leaving the window is admitted to the main area only if it was accessed more often
+ * than the entry it would evict. The main area is a segmented LRU, where entries accessed twice
+ * move from the probation to the protected segment.
+ * The values are kept in a sorted concurrent map, so that get() does not lock and all keys with a prefix
+ * are invalidated with a range removal. The eviction policy is guarded by a lock; reads are applied to it
+ * only when the lock is free, otherwise they are buffered (and dropped if the buffer is full).
+ * Loads that overlap with an invalidation are not cached, so that a write is never hidden by the value read before it.
+ * @author Bruno Kaiser
+ *
+ * @param <V> the type of the cached values
+ */
+public class ModelCache<V> {
+	private static final int WINDOW_PERCENT = 1;
+	private static final int PROTECTED_PERCENT = 80;
+	private static final int READ_BUFFER_SIZE = 256;
+	private static final int NONE = 0;
+	private static final int WINDOW = 1;
+	private static final int PROBATION = 2;
+	private static final int PROTECTED = 3;
+
+	private final int windowCapacity;
+	private final int mainCapacity;
+	private final int protectedCapacity;
+	private final long ttl;
+	private final ConcurrentSkipListMap<String, Entry<V>> entries = new ConcurrentSkipListMap<String, Entry<V>>();
+	private final AtomicLong invalidations = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final ConcurrentLinkedQueue<String> readBuffer = new ConcurrentLinkedQueue<String>();
+	private final AtomicInteger readBufferSize = new AtomicInteger();
+
+	// the eviction policy, guarded by policyLock
+	private final ReentrantLock policyLock = new ReentrantLock();
+	private final FrequencySketch sketch;
+	private final LinkedHashMap<String, Entry<V>> window = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true);
+	private final LinkedHashMap<String, Entry<V>> probation = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true);
+	private final LinkedHashMap<String, Entry<V>> protectedEntries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true);
+	private volatile long evictions = 0;
+
+	/**
+	 * Constructor.
+	 * @param capacity the maximum number of entries
+	 * @param ttl the time to live of an entry in milliseconds, 0 for no expiry
+	 */
+	public ModelCache(
+			int capacity, 
+			long ttl) 
+	{
+		this.windowCapacity = Math.max(1, capacity * WINDOW_PERCENT / 100);
+		this.mainCapacity = Math.max(1, capacity - windowCapacity);
+		this.protectedCapacity = Math.max(1, mainCapacity * PROTECTED_PERCENT / 100);
+		this.ttl = ttl;
+		this.sketch = new FrequencySketch(capacity);
+	}
+
+	/**
+	 * @param key the key
+	 * @return the cached value, or null if it is not cached or expired
+	 */
+	public V get(
+			String key) 
+	{
+		Entry<V> _entry = entries.get(key);
+		if (_entry != null && _entry.isExpired()) {
+			discard(key, _entry);
+			_entry = null;
+		}
+		if (policyLock.tryLock()) {
+			try {
+				drainReads();
+				applyRead(key);
+			} finally {
+				policyLock.unlock();
+			}
+		} else if (readBufferSize.get() < READ_BUFFER_SIZE) {
+			readBufferSize.incrementAndGet();
+			readBuffer.offer(key);
+		}
+		if (_entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return _entry.value;
+	}
+
+	/**
+	 * @return a stamp to pass to put() with a value that is loaded after this call
+	 */
+	public long stamp() {
+		return invalidations.get();
+	}
+
+	/**
+	 * Cache a loaded value, unless an invalidation happened since the load started.
+	 * @param key the key
+	 * @param value the value
+	 * @param stamp the result of stamp() before the value was loaded
+	 */
+	public void put(
+			String key, 
+			V value, 
+			long stamp) 
+	{
+		if (stamp != invalidations.get()) {
+			return;
+		}
+		Entry<V> _entry = new Entry<V>(value, ttl == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + ttl);
+		policyLock.lock();
+		try {
+			drainReads();
+			Entry<V> _previous = entries.put(key, _entry);
+			if (_previous != null) {
+				removePolicy(key, _previous);
+			}
+			window.put(key, _entry);
+			_entry.segment = WINDOW;
+			if (window.size() > windowCapacity) {
+				Iterator<Map.Entry<String, Entry<V>>> _eldest = window.entrySet().iterator();
+				Map.Entry<String, Entry<V>> _candidate = _eldest.next();
+				_eldest.remove();
+				admit(_candidate.getKey(), _candidate.getValue());
+			}
+		} finally {
+			policyLock.unlock();
+		}
+		// an invalidation that started before the value was added may have missed it
+		if (stamp != invalidations.get()) {
+			discard(key, _entry);
+		}
+	}
+
+	/**
+	 * Remove an entry.
+	 * @param key the key
+	 */
+	public void invalidate(
+			String key) 
+	{
+		invalidations.incrementAndGet();
+		Entry<V> _entry = entries.remove(key);
+		if (_entry != null) {
+			policyLock.lock();
+			try {
+				removePolicy(key, _entry);
+			} finally {
+				policyLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Remove all entries whose keys start with a prefix.
+	 * @param prefix the key prefix
+	 */
+	public void invalidatePrefix(
+			String prefix) 
+	{
+		invalidations.incrementAndGet();
+		List<Map.Entry<String, Entry<V>>> _removed = new ArrayList<Map.Entry<String, Entry<V>>>();
+		for (Map.Entry<String, Entry<V>> _entry : entries.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+			if (entries.remove(_entry.getKey(), _entry.getValue())) {
+				_removed.add(_entry);
+			}
+		}
+		if (!_removed.isEmpty()) {
+			policyLock.lock();
+			try {
+				for (Map.Entry<String, Entry<V>> _entry : _removed) {
+					removePolicy(_entry.getKey(), _entry.getValue());
+				}
+			} finally {
+				policyLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of cached entries; counts the entries, so it is meant for metrics only
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of get() calls that returned a cached value
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of get() calls that found no valid entry
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of entries dropped because the cache was full
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public String toString() {
+		return "ModelCache[size=" + size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+
+	/**
+	 * Remove an entry unless it was replaced meanwhile.
+	 */
+	private void discard(
+			String key, 
+			Entry<V> entry) 
+	{
+		if (entries.remove(key, entry)) {
+			policyLock.lock();
+			try {
+				removePolicy(key, entry);
+			} finally {
+				policyLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Apply the buffered reads to the policy; called with policyLock held.
+	 */
+	private void drainReads() {
+		String _key;
+		while ((_key = readBuffer.poll()) != null) {
+			readBufferSize.decrementAndGet();
+			applyRead(_key);
+		}
+	}
+
+	/**
+	 * Record a read in the policy; called with policyLock held.
+	 */
+	private void applyRead(
+			String key) 
+	{
+		sketch.increment(key);
+		if (window.get(key) == null && protectedEntries.get(key) == null) {
+			Entry<V> _entry = probation.remove(key);
+			if (_entry != null) {
+				promote(key, _entry);
+			}
+		}
+	}
+
+	private void admit(
+			String key, 
+			Entry<V> entry) 
+	{
+		if (probation.size() + protectedEntries.size() < mainCapacity) {
+			probation.put(key, entry);
+			entry.segment = PROBATION;
+			return;
+		}
+		LinkedHashMap<String, Entry<V>> _segment = probation.isEmpty() ? protectedEntries : probation;
+		Iterator<Map.Entry<String, Entry<V>>> _eldest = _segment.entrySet().iterator();
+		Map.Entry<String, Entry<V>> _victim = _eldest.next();
+		evictions++;
+		if (sketch.frequency(key) > sketch.frequency(_victim.getKey())) {
+			_eldest.remove();
+			_victim.getValue().segment = NONE;
+			entries.remove(_victim.getKey(), _victim.getValue());
+			probation.put(key, entry);
+			entry.segment = PROBATION;
+		} else {
+			entry.segment = NONE;
+			entries.remove(key, entry);
+		}
+	}
+
+	private void promote(
+			String key, 
+			Entry<V> entry) 
+	{
+		protectedEntries.put(key, entry);
+		entry.segment = PROTECTED;
+		if (protectedEntries.size() > protectedCapacity) {
+			Iterator<Map.Entry<String, Entry<V>>> _eldest = protectedEntries.entrySet().iterator();
+			Map.Entry<String, Entry<V>> _demoted = _eldest.next();
+			_eldest.remove();
+			probation.put(_demoted.getKey(), _demoted.getValue());
+			_demoted.getValue().segment = PROBATION;
+		}
+	}
+
+	/**
+	 * Remove an entry from the policy segment that holds it, if any; called with policyLock held.
+	 */
+	private void removePolicy(
+			String key, 
+			Entry<V> entry) 
+	{
+		switch (entry.segment) {
+		case WINDOW:	window.remove(key); break;
+		case PROBATION:	probation.remove(key); break;
+		case PROTECTED:	protectedEntries.remove(key); break;
+		default:		break;
+		}
+		entry.segment = NONE;
+	}
+
+	private static class Entry<V> {
+		private final V value;
+		private final long expiresAt;
+		// the policy segment that holds the entry, guarded by policyLock
+		private int segment = NONE;
+
+		Entry(V value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired() {
+			return System.currentTimeMillis() >= expiresAt;
+		}
+	}
+}
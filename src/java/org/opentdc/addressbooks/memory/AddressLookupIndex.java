@@ -0,0 +1,194 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opentdc.addressbooks.AddressLookupModel;
+import org.opentdc.addressbooks.AddressModel;
+import org.opentdc.addressbooks.AddressNormalizer;
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.OrgModel;
+
+/**
+ * Hash index from the normalized value of phone and email addresses to the addresses and their owners,
+ * across all addressbooks. The addresses of a contact or org are reindexed whenever it or one of them changes.
+ * Updates are serialized by the index; lookups do not lock, as each value maps to an immutable array.
+ * @author Bruno Kaiser
+ *
+ */
+class AddressLookupIndex {
+	private static final Ref[] NO_REFS = new Ref[0];
+
+	private final ConcurrentHashMap<String, Ref[]> refs = new ConcurrentHashMap<String, Ref[]>();
+	private final IdentityHashMap<ModelEntry<?>, Set<Ref>> owners = new IdentityHashMap<ModelEntry<?>, Set<Ref>>();
+
+	/**
+	 * Index the phone and email addresses of a new or changed contact or org.
+	 * @param aid the addressbook of the contact or org
+	 * @param entry the contact or org entry
+	 */
+	synchronized void index(
+			String aid, 
+			ModelEntry<?> entry) 
+	{
+		Set<Ref> _refs = new HashSet<Ref>();
+		for (AddressModel _address : entry.getAddresses().values()) {
+			String _key = AddressNormalizer.normalize(_address.getAddressType(), _address.getValue());
+			if (_key != null) {
+				_refs.add(new Ref(aid, entry, _address.getId(), _key));
+			}
+		}
+		Set<Ref> _old = _refs.isEmpty() ? owners.remove(entry) : owners.put(entry, _refs);
+		if (_old == null) {
+			_old = Collections.emptySet();
+		}
+		for (Ref _ref : _refs) {
+			if (!_old.contains(_ref)) {
+				add(_ref);
+			}
+		}
+		for (Ref _ref : _old) {
+			if (!_refs.contains(_ref)) {
+				remove(_ref);
+			}
+		}
+	}
+
+	/**
+	 * Remove the addresses of a deleted contact or org from the index.
+	 * @param entry the contact or org entry
+	 */
+	synchronized void remove(
+			ModelEntry<?> entry) 
+	{
+		Set<Ref> _old = owners.remove(entry);
+		if (_old != null) {
+			for (Ref _ref : _old) {
+				remove(_ref);
+			}
+		}
+	}
+
+	/**
+	 * @param key a normalized address value
+	 * @param addressbooks the existing addressbooks; addresses in addressbooks that were deleted meanwhile are skipped
+	 * @return the addresses with this value and their owners
+	 */
+	List<AddressLookupModel> lookup(
+			String key, 
+			Map<String, ?> addressbooks) 
+	{
+		Ref[] _refs = refs.get(key);
+		if (_refs == null) {
+			return Collections.emptyList();
+		}
+		List<AddressLookupModel> _result = new ArrayList<AddressLookupModel>(_refs.length);
+		for (Ref _ref : _refs) {
+			if (addressbooks.containsKey(_ref.aid)) {
+				AddressModel _address = _ref.entry.getAddresses().get(_ref.adrid);
+				// the address may have been changed or removed since the array was read
+				if (_address != null && key.equals(AddressNormalizer.normalize(_address.getAddressType(), _address.getValue()))) {
+					_result.add(_ref.toLookupModel(_address));
+				}
+			}
+		}
+		return _result;
+	}
+
+	private void add(
+			Ref ref) 
+	{
+		Ref[] _refs = refs.get(ref.key);
+		if (_refs == null) {
+			_refs = NO_REFS;
+		}
+		Ref[] _newRefs = Arrays.copyOf(_refs, _refs.length + 1);
+		_newRefs[_refs.length] = ref;
+		refs.put(ref.key, _newRefs);
+	}
+
+	private void remove(
+			Ref ref) 
+	{
+		Ref[] _refs = refs.get(ref.key);
+		if (_refs == null) {
+			return;
+		}
+		List<Ref> _newRefs = new ArrayList<Ref>(Arrays.asList(_refs));
+		_newRefs.remove(ref);
+		if (_newRefs.isEmpty()) {
+			refs.remove(ref.key);
+		} else {
+			refs.put(ref.key, _newRefs.toArray(NO_REFS));
+		}
+	}
+
+	/**
+	 * An indexed address: its normalized value, its id and its owner.
+	 */
+	private static class Ref {
+		private final String aid;
+		private final ModelEntry<?> entry;
+		private final String adrid;
+		private final String key;
+
+		Ref(String aid, ModelEntry<?> entry, String adrid, String key) {
+			this.aid = aid;
+			this.entry = entry;
+			this.adrid = adrid;
+			this.key = key;
+		}
+
+		AddressLookupModel toLookupModel(AddressModel address) {
+			Object _model = entry.getModel();
+			if (_model instanceof ContactModel) {
+				return new AddressLookupModel(aid, ((ContactModel) _model).getId(), null, address);
+			}
+			return new AddressLookupModel(aid, null, ((OrgModel) _model).getId(), address);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Ref)) {
+				return false;
+			}
+			Ref _other = (Ref) other;
+			return _other.entry == entry && _other.adrid.equals(adrid) && _other.key.equals(key);
+		}
+
+		@Override
+		public int hashCode() {
+			return (System.identityHashCode(entry) * 31 + adrid.hashCode()) * 31 + key.hashCode();
+		}
+	}
+}
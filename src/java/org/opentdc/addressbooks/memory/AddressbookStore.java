@@ -0,0 +1,417 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.opentdc.addressbooks.AddressbookModel;
+import org.opentdc.addressbooks.CollectionVersion;
+import org.opentdc.addressbooks.ContactColumns;
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.OrgModel;
+import org.opentdc.service.exception.NotFoundException;
+
+/**
+ * All data of one addressbook: the addressbook itself, its contacts and its orgs.
+ * Reads never lock; writes to one addressbook are serialized by its write lock.
+ * @author Bruno Kaiser
+ *
+ */
+class AddressbookStore {
+	public static final String COLUMNAR_THRESHOLD_PROPERTY = "org.opentdc.addressbooks.columnarThreshold";
+	// 0 = contacts are always scanned row by row
+	public static final int DEFAULT_COLUMNAR_THRESHOLD = 0;
+	private static final int columnarThreshold = Integer.getInteger(COLUMNAR_THRESHOLD_PROPERTY, DEFAULT_COLUMNAR_THRESHOLD);
+
+	private volatile AddressbookModel model;
+	private final ReentrantLock writeLock = new ReentrantLock();
+	private final ConcurrentHashMap<String, ModelEntry<ContactModel>> contacts = new ConcurrentHashMap<String, ModelEntry<ContactModel>>();
+	private final ConcurrentHashMap<String, ModelEntry<OrgModel>> orgs = new ConcurrentHashMap<String, ModelEntry<OrgModel>>();
+	private final ConcurrentSkipListMap<String, ModelEntry<ContactModel>> contactsById = new ConcurrentSkipListMap<String, ModelEntry<ContactModel>>();
+	private final ConcurrentSkipListMap<String, ModelEntry<OrgModel>> orgsById = new ConcurrentSkipListMap<String, ModelEntry<OrgModel>>();
+	private final ContactNameIndex contactIndex = new ContactNameIndex();
+	private final ContactResultCache contactResults = new ContactResultCache();
+	// counts the contact writes; a columnar snapshot is valid while it has the same count
+	private volatile long contactWrites = 0;
+	private volatile ColumnSnapshot contactColumns;
+	// builds the columnar snapshots in the background; true while a build of this addressbook is pending
+	private final Executor columnBuilder;
+	private final AtomicBoolean columnsBuilding = new AtomicBoolean();
+	private volatile CollectionVersion version;
+	private final ChangeLog changeLog = new ChangeLog();
+	private final SearchIndex searchIndex;
+	private final AddressLookupIndex lookupIndex;
+	private final Journal journal;
+	// set by remove() while holding the write lock
+	private boolean removed = false;
+
+	/**
+	 * Constructor.
+	 * @param model the addressbook
+	 * @param searchIndex the full-text index shared by all addressbooks
+	 * @param lookupIndex the address lookup index shared by all addressbooks
+	 * @param journal receives the changes of the contacts and orgs, or null
+	 * @param columnBuilder runs the builds of the columnar snapshots
+	 */
+	AddressbookStore(AddressbookModel model, SearchIndex searchIndex, AddressLookupIndex lookupIndex, Journal journal, 
+			Executor columnBuilder) {
+		this.model = model;
+		this.searchIndex = searchIndex;
+		this.lookupIndex = lookupIndex;
+		this.journal = journal;
+		this.columnBuilder = columnBuilder;
+	}
+
+	/**
+	 * @return the addressbook
+	 */
+	AddressbookModel getModel() {
+		return model;
+	}
+
+	/**
+	 * Replace the addressbook.
+	 * @param model the new version of the addressbook
+	 */
+	void setModel(AddressbookModel model) {
+		this.model = model;
+	}
+
+	/**
+	 * @return the version of this addressbook including its contents, null before the first change is recorded
+	 */
+	CollectionVersion getVersion() {
+		return version;
+	}
+
+	/**
+	 * Set the version after a change is applied.
+	 * @param version the new version
+	 */
+	void setVersion(CollectionVersion version) {
+		this.version = version;
+	}
+
+	/**
+	 * @return the lock that serializes all writes to this addressbook
+	 */
+	ReentrantLock getWriteLock() {
+		return writeLock;
+	}
+
+	/**
+	 * Acquire the write lock for a change of this addressbook.
+	 * @throws NotFoundException if the addressbook was deleted after it was looked up; the lock is not held then
+	 */
+	void lockForWrite() 
+			throws NotFoundException 
+	{
+		writeLock.lock();
+		if (removed) {
+			writeLock.unlock();
+			throw new NotFoundException("addressbook <" + model.getId() + "> was not found.");
+		}
+	}
+
+	/**
+	 * @return true if the addressbook was deleted; read it while holding the write lock
+	 */
+	boolean isRemoved() {
+		return removed;
+	}
+
+	/**
+	 * @return the contacts of this addressbook, keyed by cid
+	 */
+	ConcurrentHashMap<String, ModelEntry<ContactModel>> getContacts() {
+		return contacts;
+	}
+
+	/**
+	 * @return the contacts of this addressbook, sorted by cid
+	 */
+	ConcurrentSkipListMap<String, ModelEntry<ContactModel>> getContactsById() {
+		return contactsById;
+	}
+
+	/**
+	 * @return the sorted secondary indexes on the contacts of this addressbook
+	 */
+	ContactNameIndex getContactIndex() {
+		return contactIndex;
+	}
+
+	/**
+	 * @return the cached results of the contact queries on this addressbook
+	 */
+	ContactResultCache getContactResults() {
+		return contactResults;
+	}
+
+	/**
+	 * Return the contacts in columnar form for a full scan. A scan that finds the snapshot missing or outdated 
+	 * by a change starts a build in the background and scans the rows, so that no request waits for a build.
+	 * @return the columnar snapshot of the contacts, or null if the contacts must be scanned row by row: 
+	 * the snapshot is not up to date, or this addressbook has less contacts than 
+	 * the org.opentdc.addressbooks.columnarThreshold property (0 = never)
+	 */
+	ContactColumns getContactColumns() {
+		if (columnarThreshold <= 0 || contacts.size() < columnarThreshold) {
+			return null;
+		}
+		ColumnSnapshot _snapshot = contactColumns;
+		if (_snapshot != null && _snapshot.writes == contactWrites) {
+			return _snapshot.columns;
+		}
+		if (columnsBuilding.compareAndSet(false, true)) {
+			try {
+				columnBuilder.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							buildContactColumns();
+						}
+						finally {
+							columnsBuilding.set(false);
+						}
+					}
+				});
+			} catch (RejectedExecutionException _ex) {
+				// the provider is closed
+				columnsBuilding.set(false);
+			}
+		}
+		return null;
+	}
+
+	private void buildContactColumns() {
+		// the count is incremented after a change is applied, so the snapshot contains at least the counted changes
+		long _writes = contactWrites;
+		List<ContactModel> _models = new ArrayList<ContactModel>(contacts.size());
+		for (ModelEntry<ContactModel> _entry : contacts.values()) {
+			_models.add(_entry.getModel());
+		}
+		contactColumns = new ColumnSnapshot(_writes, new ContactColumns(_models));
+	}
+
+	/**
+	 * @return the orgs of this addressbook, keyed by oid
+	 */
+	ConcurrentHashMap<String, ModelEntry<OrgModel>> getOrgs() {
+		return orgs;
+	}
+
+	/**
+	 * @return the orgs of this addressbook, sorted by oid
+	 */
+	ConcurrentSkipListMap<String, ModelEntry<OrgModel>> getOrgsById() {
+		return orgsById;
+	}
+
+	/**
+	 * @return the change log of the contacts and orgs of this addressbook
+	 */
+	ChangeLog getChangeLog() {
+		return changeLog;
+	}
+
+	/**
+	 * Add a new contact; must be called while holding the write lock.
+	 * @param entry the contact entry
+	 */
+	void addContact(
+			ModelEntry<ContactModel> entry) 
+	{
+		StringDictionary.getInstance().intern(entry.getModel());
+		String _cid = entry.getModel().getId();
+		contacts.put(_cid, entry);
+		contactsById.put(_cid, entry);
+		contactIndex.add(entry);
+		contactResults.contactChanged(null, entry.getModel());
+		contactWrites++;
+		contactChanged(entry);
+	}
+
+	/**
+	 * Replace the model of a contact; must be called while holding the write lock.
+	 * @param entry the contact entry
+	 * @param model the new version of the contact
+	 */
+	void replaceContact(
+			ModelEntry<ContactModel> entry, 
+			ContactModel model) 
+	{
+		StringDictionary.getInstance().intern(model);
+		ContactModel _oldModel = entry.getModel();
+		contactIndex.remove(_oldModel);
+		entry.setModel(model);
+		contactIndex.add(entry);
+		contactResults.contactChanged(_oldModel, model);
+		contactWrites++;
+		contactChanged(entry);
+	}
+
+	/**
+	 * Remove a contact; must be called while holding the write lock.
+	 * @param cid the contact id
+	 * @return the removed contact entry, or null if there is no such contact
+	 */
+	ModelEntry<ContactModel> removeContact(
+			String cid) 
+	{
+		ModelEntry<ContactModel> _entry = cid == null ? null : contacts.remove(cid);
+		if (_entry != null) {
+			contactsById.remove(cid);
+			contactIndex.remove(_entry.getModel());
+			contactResults.contactChanged(_entry.getModel(), null);
+			contactWrites++;
+			changeLog.deleteContact(cid);
+			searchIndex.remove(_entry);
+			lookupIndex.remove(_entry);
+			if (journal != null) {
+				journal.deleteContact(model.getId(), cid);
+			}
+		}
+		return _entry;
+	}
+
+	/**
+	 * Add a new org; must be called while holding the write lock.
+	 * @param entry the org entry
+	 */
+	void addOrg(
+			ModelEntry<OrgModel> entry) 
+	{
+		StringDictionary.getInstance().intern(entry.getModel());
+		String _oid = entry.getModel().getId();
+		orgs.put(_oid, entry);
+		orgsById.put(_oid, entry);
+		orgChanged(entry);
+	}
+
+	/**
+	 * Replace the model of an org; must be called while holding the write lock.
+	 * @param entry the org entry
+	 * @param model the new version of the org
+	 */
+	void replaceOrg(
+			ModelEntry<OrgModel> entry, 
+			OrgModel model) 
+	{
+		StringDictionary.getInstance().intern(model);
+		entry.setModel(model);
+		orgChanged(entry);
+	}
+
+	/**
+	 * Remove an org; must be called while holding the write lock.
+	 * @param oid the org id
+	 * @return the removed org entry, or null if there is no such org
+	 */
+	ModelEntry<OrgModel> removeOrg(
+			String oid) 
+	{
+		ModelEntry<OrgModel> _entry = oid == null ? null : orgs.remove(oid);
+		if (_entry != null) {
+			orgsById.remove(oid);
+			changeLog.deleteOrg(oid);
+			searchIndex.remove(_entry);
+			lookupIndex.remove(_entry);
+			if (journal != null) {
+				journal.deleteOrg(model.getId(), oid);
+			}
+		}
+		return _entry;
+	}
+
+	/**
+	 * Record a change of a contact or of its addresses; must be called while holding the write lock.
+	 * @param entry the contact entry
+	 */
+	void contactChanged(
+			ModelEntry<ContactModel> entry) 
+	{
+		changeLog.upsertContact(entry);
+		searchIndex.indexContact(model.getId(), entry);
+		lookupIndex.index(model.getId(), entry);
+		if (journal != null) {
+			journal.putContact(model.getId(), entry);
+		}
+	}
+
+	/**
+	 * Record a change of an org or of its addresses; must be called while holding the write lock.
+	 * @param entry the org entry
+	 */
+	void orgChanged(
+			ModelEntry<OrgModel> entry) 
+	{
+		changeLog.upsertOrg(entry);
+		searchIndex.indexOrg(model.getId(), entry);
+		lookupIndex.index(model.getId(), entry);
+		if (journal != null) {
+			journal.putOrg(model.getId(), entry);
+		}
+	}
+
+	/**
+	 * Mark this addressbook as deleted, so that later writes fail in lockForWrite(), 
+	 * and remove its contacts and orgs from the full-text and lookup indexes. Called while holding the write lock.
+	 */
+	void remove() {
+		removed = true;
+		unindex();
+	}
+
+	private void unindex() {
+		for (ModelEntry<ContactModel> _entry : contacts.values()) {
+			searchIndex.remove(_entry);
+			lookupIndex.remove(_entry);
+		}
+		for (ModelEntry<OrgModel> _entry : orgs.values()) {
+			searchIndex.remove(_entry);
+			lookupIndex.remove(_entry);
+		}
+	}
+
+	/**
+	 * A columnar snapshot of the contacts and the number of contact writes it reflects.
+	 */
+	private static class ColumnSnapshot {
+		private final long writes;
+		private final ContactColumns columns;
+
+		ColumnSnapshot(long writes, ContactColumns columns) {
+			this.writes = writes;
+			this.columns = columns;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.opentdc.addressbooks.AddressModel;
+import org.opentdc.addressbooks.ChangeModel;
+import org.opentdc.addressbooks.ChangeType;
+import org.opentdc.addressbooks.ChangesModel;
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.OrgModel;
+import org.opentdc.service.exception.ValidationException;
+
+/**
+ * The change log of one addressbook. Every contact or org has at most one record, at the position of its
+ * latest change; records of upserts refer to the stored entry, so that readers get its current state.
+ * The log is bounded: when it is full, the oldest records are dropped and clients that have not seen them must resync.
+ * Records are written while holding the write lock of the addressbook, and read without locking.
+ * @author Bruno Kaiser
+ *
+ */
+class ChangeLog {
+	public static final String CAPACITY_PROPERTY = "org.opentdc.addressbooks.changeLogSize";
+	public static final int DEFAULT_CAPACITY = 100000;
+	private static final int capacity = Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY);
+	private static final char TOKEN_SEPARATOR = '.';
+
+	// distinguishes the tokens of this log from those of a previous instance of the same addressbook
+	private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+	private final ConcurrentSkipListMap<Long, Record> records = new ConcurrentSkipListMap<Long, Record>();
+	private final HashMap<String, Long> latest = new HashMap<String, Long>();
+	private int size = 0;
+	private volatile long lastSeq = 0;
+	private volatile long floor = 0;		// all changes after floor are in the log
+
+	/**
+	 * Record that a contact or one of its addresses was created or changed.
+	 * @param entry the contact entry
+	 */
+	void upsertContact(
+			ModelEntry<ContactModel> entry) 
+	{
+		record(new Record(ChangeType.CONTACT, entry.getModel().getId(), entry, null));
+	}
+
+	/**
+	 * Record that an org or one of its addresses was created or changed.
+	 * @param entry the org entry
+	 */
+	void upsertOrg(
+			ModelEntry<OrgModel> entry) 
+	{
+		record(new Record(ChangeType.ORG, entry.getModel().getId(), null, entry));
+	}
+
+	/**
+	 * Record that a contact was deleted.
+	 * @param cid the contact id
+	 */
+	void deleteContact(
+			String cid) 
+	{
+		record(new Record(ChangeType.CONTACT, cid, null, null));
+	}
+
+	/**
+	 * Record that an org was deleted.
+	 * @param oid the org id
+	 */
+	void deleteOrg(
+			String oid) 
+	{
+		record(new Record(ChangeType.ORG, oid, null, null));
+	}
+
+	private void record(
+			Record record) 
+	{
+		long _seq = lastSeq + 1;
+		// the new record is added before the old one is removed, so that a concurrent reader cannot miss both
+		records.put(_seq, record);
+		Long _previous = latest.put(record.getKey(), _seq);
+		if (_previous == null) {
+			size++;
+		} else {
+			records.remove(_previous);
+		}
+		lastSeq = _seq;
+		while (size > capacity) {
+			Map.Entry<Long, Record> _oldest = records.pollFirstEntry();
+			latest.remove(_oldest.getValue().getKey());
+			size--;
+			floor = _oldest.getKey();
+		}
+	}
+
+	/**
+	 * Read the changes after a token.
+	 * @param since the token of the previous call; null or empty to start a new sync
+	 * @param size the maximum number of changes to return
+	 * @return the changes and the token of the next call
+	 * @throws ValidationException if the token is malformed
+	 */
+	ChangesModel getChanges(
+			String since, 
+			int size) 
+			throws ValidationException 
+	{
+		long _lastSeq = lastSeq;
+		long _since = parseToken(since);
+		if (_since < floor || _since > _lastSeq) {
+			return new ChangesModel(getToken(_lastSeq), true, false, new ArrayList<ChangeModel>());
+		}
+		List<ChangeModel> _changes = new ArrayList<ChangeModel>();
+		long _next = _since;
+		boolean _more = false;
+		for (Map.Entry<Long, Record> _record : records.tailMap(_since, false).entrySet()) {
+			if (_changes.size() >= size) {
+				_more = true;
+				break;
+			}
+			_changes.add(_record.getValue().toChangeModel(_record.getKey()));
+			_next = _record.getKey();
+		}
+		if (_since < floor) {
+			// records after the token were dropped while reading
+			return new ChangesModel(getToken(_lastSeq), true, false, new ArrayList<ChangeModel>());
+		}
+		return new ChangesModel(getToken(_next), false, _more, _changes);
+	}
+
+	private String getToken(
+			long seq) 
+	{
+		return epoch + TOKEN_SEPARATOR + Long.toString(seq, 36);
+	}
+
+	/**
+	 * @return the position of the token, or -1 if a resync is needed
+	 */
+	private long parseToken(
+			String token) 
+			throws ValidationException 
+	{
+		if (token == null || token.isEmpty()) {
+			return -1;
+		}
+		int _separator = token.indexOf(TOKEN_SEPARATOR);
+		if (_separator < 0) {
+			throw new ValidationException("sync token <" + token + "> is invalid.");
+		}
+		if (!epoch.equals(token.substring(0, _separator))) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(token.substring(_separator + 1), 36);
+		}
+		catch (NumberFormatException _ex) {
+			throw new ValidationException("sync token <" + token + "> is invalid.");
+		}
+	}
+
+	/**
+	 * The latest change of one contact or org.
+	 */
+	private static class Record {
+		private final ChangeType type;
+		private final String id;
+		private final ModelEntry<ContactModel> contact;
+		private final ModelEntry<OrgModel> org;
+
+		Record(ChangeType type, String id, ModelEntry<ContactModel> contact, ModelEntry<OrgModel> org) {
+			this.type = type;
+			this.id = id;
+			this.contact = contact;
+			this.org = org;
+		}
+
+		String getKey() {
+			return type + "/" + id;
+		}
+
+		ChangeModel toChangeModel(long seq) {
+			ChangeModel _change = new ChangeModel(seq, type, id);
+			if (contact != null) {
+				_change.setContact(contact.getModel());
+				_change.setAddresses(new ArrayList<AddressModel>(contact.getAddresses().values()));
+			} else if (org != null) {
+				_change.setOrg(org.getModel());
+				_change.setAddresses(new ArrayList<AddressModel>(org.getAddresses().values()));
+			} else {
+				_change.setDeleted(true);
+			}
+			return _change;
+		}
+	}
+}
@@ -0,0 +1,279 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.opentdc.addressbooks.ContactIndex;
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.ContactQueryFeatureType;
+
+/**
+ * Sorted secondary indexes on lastName, firstName and fn of the contacts of one addressbook.
+ * Each index maps an attribute value to the contacts having this value; the contacts without a value
+ * are kept apart, so that the index can also be walked in sort order (see iterate()).
+ * The index is modified under the write lock of the addressbook only; lookups do not lock.
+ * @author Bruno Kaiser
+ *
+ */
+class ContactNameIndex implements ContactIndex {
+	private final EnumMap<ContactQueryFeatureType, ConcurrentSkipListMap<String, Map<String, ModelEntry<ContactModel>>>> indexes = 
+			new EnumMap<ContactQueryFeatureType, ConcurrentSkipListMap<String, Map<String, ModelEntry<ContactModel>>>>(ContactQueryFeatureType.class);
+	private final EnumMap<ContactQueryFeatureType, Map<String, ModelEntry<ContactModel>>> nulls = 
+			new EnumMap<ContactQueryFeatureType, Map<String, ModelEntry<ContactModel>>>(ContactQueryFeatureType.class);
+
+	/**
+	 * Constructor.
+	 */
+	ContactNameIndex() {
+		indexes.put(ContactQueryFeatureType.LASTNAME, new ConcurrentSkipListMap<String, Map<String, ModelEntry<ContactModel>>>());
+		indexes.put(ContactQueryFeatureType.FIRSTNAME, new ConcurrentSkipListMap<String, Map<String, ModelEntry<ContactModel>>>());
+		indexes.put(ContactQueryFeatureType.FN, new ConcurrentSkipListMap<String, Map<String, ModelEntry<ContactModel>>>());
+		for (ContactQueryFeatureType _featureType : indexes.keySet()) {
+			nulls.put(_featureType, new ConcurrentHashMap<String, ModelEntry<ContactModel>>());
+		}
+	}
+
+	@Override
+	public boolean isIndexed(
+			ContactQueryFeatureType featureType) 
+	{
+		return indexes.containsKey(featureType);
+	}
+
+	@Override
+	public Collection<ContactModel> range(
+			ContactQueryFeatureType featureType, 
+			String from,
+			boolean fromInclusive, 
+			String to, 
+			boolean toInclusive) 
+	{
+		NavigableMap<String, Map<String, ModelEntry<ContactModel>>> _range = indexes.get(featureType);
+		if (from != null && to != null) {
+			_range = _range.subMap(from, fromInclusive, to, toInclusive);
+		} else if (from != null) {
+			_range = _range.tailMap(from, fromInclusive);
+		} else if (to != null) {
+			_range = _range.headMap(to, toInclusive);
+		}
+		List<ContactModel> _contacts = new ArrayList<ContactModel>();
+		for (Map<String, ModelEntry<ContactModel>> _entries : _range.values()) {
+			for (ModelEntry<ContactModel> _entry : _entries.values()) {
+				_contacts.add(_entry.getModel());
+			}
+		}
+		return _contacts;
+	}
+
+	/**
+	 * Iterate the contacts in the order of a sort comparator whose first sort key is an indexed featureType,
+	 * so that a page of a sorted keyset walk starts at the cursor instead of sorting all contacts.
+	 * As in ModelComparator, contacts without a value sort first; contacts with the same value are sorted by the comparator.
+	 * @param featureType an indexed featureType, the first sort key of the comparator
+	 * @param comparator the sort order
+	 * @param descending true if the featureType is sorted in descending order
+	 * @param seek true to start at the contacts whose value equals from, false to start at the beginning
+	 * @param from the value to start at; null for the contacts without a value
+	 * @return the contacts in the order of the comparator
+	 */
+	Iterator<ContactModel> iterate(
+			ContactQueryFeatureType featureType, 
+			Comparator<ContactModel> comparator, 
+			boolean descending, 
+			boolean seek, 
+			String from) 
+	{
+		NavigableMap<String, Map<String, ModelEntry<ContactModel>>> _index = indexes.get(featureType);
+		Map<String, ModelEntry<ContactModel>> _nulls = nulls.get(featureType);
+		if (descending) {
+			if (seek && from == null) {
+				return new SortedGroups(null, Collections.<Map<String, ModelEntry<ContactModel>>>emptyIterator(), _nulls, comparator);
+			}
+			if (seek) {
+				_index = _index.headMap(from, true);
+			}
+			return new SortedGroups(null, _index.descendingMap().values().iterator(), _nulls, comparator);
+		}
+		if (seek && from != null) {
+			return new SortedGroups(null, _index.tailMap(from, true).values().iterator(), null, comparator);
+		}
+		return new SortedGroups(_nulls, _index.values().iterator(), null, comparator);
+	}
+
+	/**
+	 * Add a contact to the indexes.
+	 * @param entry the contact entry
+	 */
+	void add(
+			ModelEntry<ContactModel> entry) 
+	{
+		ContactModel _model = entry.getModel();
+		add(ContactQueryFeatureType.LASTNAME, _model.getLastName(), _model.getId(), entry);
+		add(ContactQueryFeatureType.FIRSTNAME, _model.getFirstName(), _model.getId(), entry);
+		add(ContactQueryFeatureType.FN, _model.getFn(), _model.getId(), entry);
+	}
+
+	/**
+	 * Remove a contact from the indexes.
+	 * @param model the contact as it was indexed
+	 */
+	void remove(
+			ContactModel model) 
+	{
+		remove(ContactQueryFeatureType.LASTNAME, model.getLastName(), model.getId());
+		remove(ContactQueryFeatureType.FIRSTNAME, model.getFirstName(), model.getId());
+		remove(ContactQueryFeatureType.FN, model.getFn(), model.getId());
+	}
+
+	private void add(
+			ContactQueryFeatureType featureType, 
+			String value, 
+			String cid, 
+			ModelEntry<ContactModel> entry) 
+	{
+		if (value == null) {
+			nulls.get(featureType).put(cid, entry);
+			return;
+		}
+		ConcurrentSkipListMap<String, Map<String, ModelEntry<ContactModel>>> _index = indexes.get(featureType);
+		Map<String, ModelEntry<ContactModel>> _entries = _index.get(value);
+		if (_entries == null) {
+			_entries = new ConcurrentHashMap<String, ModelEntry<ContactModel>>(4);
+			_index.put(value, _entries);
+		}
+		_entries.put(cid, entry);
+	}
+
+	private void remove(
+			ContactQueryFeatureType featureType, 
+			String value, 
+			String cid) 
+	{
+		if (value == null) {
+			nulls.get(featureType).remove(cid);
+			return;
+		}
+		ConcurrentSkipListMap<String, Map<String, ModelEntry<ContactModel>>> _index = indexes.get(featureType);
+		Map<String, ModelEntry<ContactModel>> _entries = _index.get(value);
+		if (_entries != null) {
+			_entries.remove(cid);
+			if (_entries.isEmpty()) {
+				_index.remove(value);
+			}
+		}
+	}
+
+	/**
+	 * The contacts of a sequence of index groups (the contacts with one value), each group sorted by a comparator.
+	 * The groups are read lazily, so that a page only reads the groups it returns.
+	 */
+	private static class SortedGroups implements Iterator<ContactModel> {
+		private Map<String, ModelEntry<ContactModel>> first;
+		private final Iterator<Map<String, ModelEntry<ContactModel>>> groups;
+		private Map<String, ModelEntry<ContactModel>> last;
+		private final Comparator<ContactModel> comparator;
+		private List<ContactModel> group = Collections.emptyList();
+		private int position = 0;
+
+		/**
+		 * Constructor.
+		 * @param first the group before the groups, may be null
+		 * @param groups the groups in the order of their values
+		 * @param last the group after the groups, may be null
+		 * @param comparator the order within a group
+		 */
+		SortedGroups(
+				Map<String, ModelEntry<ContactModel>> first, 
+				Iterator<Map<String, ModelEntry<ContactModel>>> groups, 
+				Map<String, ModelEntry<ContactModel>> last, 
+				Comparator<ContactModel> comparator) 
+		{
+			this.first = first;
+			this.groups = groups;
+			this.last = last;
+			this.comparator = comparator;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (position >= group.size()) {
+				Map<String, ModelEntry<ContactModel>> _next = nextGroup();
+				if (_next == null) {
+					return false;
+				}
+				group = new ArrayList<ContactModel>(_next.size());
+				for (ModelEntry<ContactModel> _entry : _next.values()) {
+					ContactModel _model = _entry.getModel();
+					if (_model != null) {
+						group.add(_model);
+					}
+				}
+				if (group.size() > 1) {
+					Collections.sort(group, comparator);
+				}
+				position = 0;
+			}
+			return true;
+		}
+
+		@Override
+		public ContactModel next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return group.get(position++);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private Map<String, ModelEntry<ContactModel>> nextGroup() {
+			Map<String, ModelEntry<ContactModel>> _group = null;
+			if (first != null) {
+				_group = first;
+				first = null;
+			} else if (groups.hasNext()) {
+				_group = groups.next();
+			} else if (last != null) {
+				_group = last;
+				last = null;
+			}
+			return _group;
+		}
+	}
+}
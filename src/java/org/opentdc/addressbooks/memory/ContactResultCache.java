@@ -0,0 +1,238 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.ContactQueryHandler;
+
+/**
+ * Cache of the complete, sorted results of the contact queries of one addressbook, so that repeated 
+ * listContacts calls with the same query only copy a slice of an array. 
+ * A query is cached when it is seen the second time; the least recently used queries are dropped.
+ * The queries seen once are tracked apart from the results, so that one-off queries do not evict cached results.
+ * Contact writes patch the cached results in place (remove the old version, insert the new one if it 
+ * matches), instead of invalidating them. A patch copies the array, so results of more than patchLimit contacts 
+ * are dropped by the writes that change them, and cached again when the query is repeated.
+ * Results are patched while holding the write lock of the addressbook.
+ * @author Bruno Kaiser
+ *
+ */
+class ContactResultCache {
+	public static final String CAPACITY_PROPERTY = "org.opentdc.addressbooks.resultCacheSize";
+	public static final int DEFAULT_CAPACITY = 32;
+	public static final String PATCH_LIMIT_PROPERTY = "org.opentdc.addressbooks.resultCachePatchLimit";
+	public static final int DEFAULT_PATCH_LIMIT = 4096;
+	private static final int capacity = Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY);
+	private static final int patchLimit = Integer.getInteger(PATCH_LIMIT_PROPERTY, DEFAULT_PATCH_LIMIT);
+	private static final ContactModel[] NO_CONTACTS = new ContactModel[0];
+	private static final int SEEN_PER_RESULT = 4;
+
+	private final LinkedHashMap<String, Result> results = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+			return size() > capacity;
+		}
+	};
+	// the queries seen once whose results are not cached, least recently seen first
+	private final LinkedHashMap<String, Boolean> seen = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > SEEN_PER_RESULT * capacity;
+		}
+	};
+	private long writes = 0;
+
+	/**
+	 * Look up the cached result of a query.
+	 * @param query the query string
+	 * @return the sorted contacts matching the query, or null if the query is not cached
+	 */
+	synchronized ContactModel[] get(
+			String query) 
+	{
+		Result _result = results.get(normalize(query));
+		return _result == null ? null : _result.contacts;
+	}
+
+	/**
+	 * Decide whether to cache the result of a query that is not cached.
+	 * @param query the query string
+	 * @return a stamp to pass to put() with the result computed after this call, 
+	 * or -1 if the query is seen the first time and its result should not be cached yet
+	 */
+	synchronized long admit(
+			String query) 
+	{
+		String _key = normalize(query);
+		if (seen.get(_key) == null) {
+			// remember the query, so that it is cached if it is seen again
+			seen.put(_key, Boolean.TRUE);
+			return -1;
+		}
+		return writes;
+	}
+
+	/**
+	 * Cache the result of a query, unless a contact was written since the computation started.
+	 * @param query the query string
+	 * @param queryHandler the parsed query
+	 * @param contacts all contacts matching the query, in any order
+	 * @param stamp the result of admit() before the computation started
+	 */
+	synchronized void put(
+			String query, 
+			ContactQueryHandler queryHandler, 
+			List<ContactModel> contacts, 
+			long stamp) 
+	{
+		if (stamp != writes) {
+			return;
+		}
+		ContactModel[] _contacts = contacts.toArray(NO_CONTACTS);
+		Arrays.sort(_contacts, queryHandler.getSortComparator());
+		String _key = normalize(query);
+		results.put(_key, new Result(queryHandler, _contacts));
+		seen.remove(_key);
+	}
+
+	/**
+	 * Patch the cached results after a contact was added, replaced or removed.
+	 * @param oldModel the previous version of the contact, null if it was added
+	 * @param newModel the new version of the contact, null if it was removed
+	 */
+	synchronized void contactChanged(
+			ContactModel oldModel, 
+			ContactModel newModel) 
+	{
+		writes++;
+		Iterator<Map.Entry<String, Result>> _entries = results.entrySet().iterator();
+		while (_entries.hasNext()) {
+			Map.Entry<String, Result> _entry = _entries.next();
+			if (!_entry.getValue().patch(oldModel, newModel)) {
+				_entries.remove();
+				// keep the query known, so that its result is cached again when it is repeated
+				seen.put(_entry.getKey(), Boolean.TRUE);
+			}
+		}
+	}
+
+	/**
+	 * Normalize a query, so that queries differing only in whitespace or in the order of their filter predicates 
+	 * share the same result. The order of the orderBy predicates is significant and kept.
+	 */
+	static String normalize(
+			String query) 
+	{
+		if (query == null) {
+			return "";
+		}
+		List<String> _filters = new ArrayList<String>();
+		StringBuilder _orderBy = new StringBuilder();
+		for (String _predicate : query.split(";")) {
+			String _trimmed = _predicate.trim();
+			if (_trimmed.startsWith("orderBy")) {
+				_orderBy.append(';').append(_trimmed);
+			} else if (!_trimmed.isEmpty()) {
+				_filters.add(_trimmed);
+			}
+		}
+		Collections.sort(_filters);
+		StringBuilder _key = new StringBuilder();
+		for (String _filter : _filters) {
+			_key.append(_filter).append(';');
+		}
+		return _key.append(_orderBy).toString();
+	}
+
+	/**
+	 * The cached result of one query.
+	 * The array is replaced, never modified, so readers can use it without locking.
+	 */
+	private static class Result {
+		private final ContactQueryHandler queryHandler;
+		private volatile ContactModel[] contacts;
+
+		Result(
+				ContactQueryHandler queryHandler, 
+				ContactModel[] contacts) 
+		{
+			this.queryHandler = queryHandler;
+			this.contacts = contacts;
+		}
+
+		/**
+		 * Remove the old version of a contact and insert the new one if it matches the query.
+		 * @return false if the result is changed but too large to be copied; it must be dropped
+		 */
+		boolean patch(
+				ContactModel oldModel, 
+				ContactModel newModel) 
+		{
+			Comparator<ContactModel> _comparator = queryHandler.getSortComparator();
+			ContactModel[] _contacts = contacts;
+			if (oldModel != null) {
+				// the sort order is total, so the old version is found by binary search
+				int _index = Arrays.binarySearch(_contacts, oldModel, _comparator);
+				if (_index >= 0 && _contacts[_index] == oldModel) {
+					if (_contacts.length > patchLimit) {
+						return false;
+					}
+					ContactModel[] _removed = new ContactModel[_contacts.length - 1];
+					System.arraycopy(_contacts, 0, _removed, 0, _index);
+					System.arraycopy(_contacts, _index + 1, _removed, _index, _contacts.length - _index - 1);
+					_contacts = _removed;
+				}
+			}
+			if (newModel != null && queryHandler.evaluate(newModel)) {
+				int _index = Arrays.binarySearch(_contacts, newModel, _comparator);
+				if (_index < 0) {
+					if (_contacts.length > patchLimit) {
+						return false;
+					}
+					_index = -_index - 1;
+					ContactModel[] _inserted = new ContactModel[_contacts.length + 1];
+					System.arraycopy(_contacts, 0, _inserted, 0, _index);
+					_inserted[_index] = newModel;
+					System.arraycopy(_contacts, _index, _inserted, _index + 1, _contacts.length - _index);
+					_contacts = _inserted;
+				}
+			}
+			contacts = _contacts;
+			return true;
+		}
+	}
+}
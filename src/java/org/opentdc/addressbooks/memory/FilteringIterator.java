@@ -0,0 +1,94 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily filters the models of an iterator over ModelEntries, skipping the first position matches
+ * and stopping after size matches. Used to stream query results without materializing them.
+ * @author Bruno Kaiser
+ *
+ * @param <T> the model type
+ */
+abstract class FilteringIterator<T> implements Iterator<T> {
+	private final Iterator<ModelEntry<T>> source;
+	private int skip;
+	private int remaining;
+	private T next;
+
+	/**
+	 * Constructor.
+	 * @param source the entries to filter
+	 * @param position the number of matching models to skip
+	 * @param size the maximum number of models to return
+	 */
+	FilteringIterator(
+			Iterator<ModelEntry<T>> source, 
+			int position, 
+			int size) 
+	{
+		this.source = source;
+		this.skip = Math.max(0, position);
+		this.remaining = Math.max(0, size);
+	}
+
+	/**
+	 * @param model a model
+	 * @return true if the model matches the query
+	 */
+	protected abstract boolean accept(T model);
+
+	@Override
+	public boolean hasNext() {
+		while (next == null && remaining > 0 && source.hasNext()) {
+			T _model = source.next().getModel();
+			if (_model != null && accept(_model)) {
+				if (skip > 0) {
+					skip--;
+				} else {
+					next = _model;
+				}
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		T _model = next;
+		next = null;
+		remaining--;
+		return _model;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+}
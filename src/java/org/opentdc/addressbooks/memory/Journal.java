@@ -0,0 +1,71 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import org.opentdc.addressbooks.AddressbookModel;
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.OrgModel;
+
+/**
+ * Receives every change of the stored data, e.g. to persist it. A change is reported with the complete new state 
+ * of the changed addressbook, contact or org (including its addresses), after it is applied and while the 
+ * write lock of the addressbook is held; the changes of one addressbook are therefore reported in order.
+ * @author Bruno Kaiser
+ *
+ */
+interface Journal {
+	/**
+	 * @param model the created or updated addressbook
+	 */
+	void putAddressbook(AddressbookModel model);
+
+	/**
+	 * @param aid the id of the deleted addressbook
+	 */
+	void deleteAddressbook(String aid);
+
+	/**
+	 * @param aid the addressbook id
+	 * @param entry the created or updated contact with its addresses
+	 */
+	void putContact(String aid, ModelEntry<ContactModel> entry);
+
+	/**
+	 * @param aid the addressbook id
+	 * @param cid the id of the deleted contact
+	 */
+	void deleteContact(String aid, String cid);
+
+	/**
+	 * @param aid the addressbook id
+	 * @param entry the created or updated org with its addresses
+	 */
+	void putOrg(String aid, ModelEntry<OrgModel> entry);
+
+	/**
+	 * @param aid the addressbook id
+	 * @param oid the id of the deleted org
+	 */
+	void deleteOrg(String aid, String oid);
+}
@@ -0,0 +1,2102 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+
+import org.opentdc.addressbooks.AddressLookupModel;
+import org.opentdc.addressbooks.AddressLookupServiceProvider;
+import org.opentdc.addressbooks.AddressModel;
+import org.opentdc.addressbooks.AddressNormalizer;
+import org.opentdc.addressbooks.AddressType;
+import org.opentdc.addressbooks.AddressbookModel;
+import org.opentdc.addressbooks.AddressbookQueryHandler;
+import org.opentdc.addressbooks.AttributeType;
+import org.opentdc.addressbooks.BulkAddressModel;
+import org.opentdc.addressbooks.BulkContactModel;
+import org.opentdc.addressbooks.BulkOperation;
+import org.opentdc.addressbooks.BulkOrgModel;
+import org.opentdc.addressbooks.BulkResultModel;
+import org.opentdc.addressbooks.ChangeLogServiceProvider;
+import org.opentdc.addressbooks.ChangesModel;
+import org.opentdc.addressbooks.CollectionVersion;
+import org.opentdc.addressbooks.ContextParameters;
+import org.opentdc.addressbooks.ContactColumns;
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.ContactQueryFeatureType;
+import org.opentdc.addressbooks.ContactQueryHandler;
+import org.opentdc.addressbooks.CursorServiceProvider;
+import org.opentdc.addressbooks.HeapReportModel;
+import org.opentdc.addressbooks.HeapReportServiceProvider;
+import org.opentdc.addressbooks.MessageType;
+import org.opentdc.addressbooks.ModelComparator;
+import org.opentdc.addressbooks.OrgModel;
+import org.opentdc.addressbooks.OrgQueryFeatureType;
+import org.opentdc.addressbooks.OrgQueryHandler;
+import org.opentdc.addressbooks.OrgType;
+import org.opentdc.addressbooks.QueryCursor;
+import org.opentdc.addressbooks.QueryTrace;
+import org.opentdc.addressbooks.ResultPage;
+import org.opentdc.addressbooks.SearchHitModel;
+import org.opentdc.addressbooks.SearchServiceProvider;
+import org.opentdc.addressbooks.ServiceProvider;
+import org.opentdc.addressbooks.StreamingServiceProvider;
+import org.opentdc.addressbooks.VersionedServiceProvider;
+import org.opentdc.addressbooks.TopKCollector;
+import org.opentdc.service.exception.DuplicateException;
+import org.opentdc.service.exception.InternalServerErrorException;
+import org.opentdc.service.exception.NotFoundException;
+import org.opentdc.service.exception.ValidationException;
+
+/**
+ * In-memory implementation of the addressbooks ServiceProvider.
+ * Addressbooks, contacts, orgs and addresses are kept in nested concurrent maps
+ * keyed by aid/cid/oid/adrid, so that all read operations are lock-free lookups.
+ * Writes are serialized per addressbook only.
+ * The data can be kept across restarts by periodic snapshots to a local file; to enable them, set these 
+ * context parameters (with the prefix of the service provider configuration):
+ * <ul>
+ * <li>snapshot.file: the path of the snapshot file; it is restored on startup if it exists</li>
+ * <li>snapshot.interval: the seconds between two snapshots, 0 to write snapshots only on writeSnapshot() (default: 300)</li>
+ * </ul>
+ * @author Bruno Kaiser
+ *
+ */
+public class MemoryServiceProvider implements ServiceProvider, CursorServiceProvider, StreamingServiceProvider, 
+		VersionedServiceProvider, ChangeLogServiceProvider, SearchServiceProvider, AddressLookupServiceProvider, 
+		HeapReportServiceProvider, Closeable {
+	private static final Logger logger = Logger.getLogger(MemoryServiceProvider.class.getName());
+	protected static final String DEFAULT_PRINCIPAL = "DUMMY_USER";
+	public static final String SNAPSHOT_FILE_PARAM = "snapshot.file";
+	public static final String SNAPSHOT_INTERVAL_PARAM = "snapshot.interval";
+	public static final int DEFAULT_SNAPSHOT_INTERVAL = 300;
+	// the context attribute that holds the provider owning the data of a servlet context
+	private static final String OWNER_ATTRIBUTE = MemoryServiceProvider.class.getName() + ".owner";
+
+	protected final ConcurrentHashMap<String, AddressbookStore> addressbooks = new ConcurrentHashMap<String, AddressbookStore>();
+	protected final SearchIndex searchIndex = new SearchIndex();
+	protected final AddressLookupIndex lookupIndex = new AddressLookupIndex();
+	// builds the columnar snapshots of large addressbooks (see AddressbookStore.getContactColumns())
+	protected final ExecutorService columnBuilder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(
+				Runnable runnable) 
+		{
+			Thread _thread = new Thread(runnable, "addressbooks-columns");
+			_thread.setDaemon(true);
+			_thread.setPriority(Thread.MIN_PRIORITY);
+			return _thread;
+		}
+	});
+	// runs the scans of allContacts and allOrgs in parallel; null if they run on the calling thread
+	private final ForkJoinPool parallelPool = ParallelCollector.newPool();
+	// versions are assigned without a lock, so that writers of different addressbooks do not wait for each other
+	private final AtomicLong lastVersion = new AtomicLong();
+	private final AtomicReference<CollectionVersion> version = 
+			new AtomicReference<CollectionVersion>(new CollectionVersion(0, System.currentTimeMillis()));
+	// receives all changes, e.g. to persist them; null if the changes are not persisted
+	protected Journal journal = null;
+	private File snapshotFile = null;
+	// serializes the snapshot writers and guards snapshotVersion; never held by writers of the addressbooks, 
+	// as a snapshot takes the write lock of each addressbook while holding it
+	private final Object snapshotLock = new Object();
+	private long snapshotVersion = -1;
+	private ScheduledExecutorService snapshotScheduler = null;
+	// the servlet context claimed by this provider; null if it was not created for a servlet context
+	private ServletContext context = null;
+
+	/**
+	 * Constructor.
+	 */
+	public MemoryServiceProvider() {
+		logger.info("MemoryServiceProvider()");
+	}
+
+	/**
+	 * Constructor used by GenericService.getServiceProvider().
+	 * @param context the servlet context
+	 * @param prefix the prefix of the service provider configuration
+	 */
+	public MemoryServiceProvider(
+			ServletContext context, 
+			String prefix) 
+	{
+		this();
+		claim(context);
+		String _file = context.getInitParameter(prefix + SNAPSHOT_FILE_PARAM);
+		if (_file != null && !_file.isEmpty()) {
+			snapshotFile = new File(_file);
+			restoreSnapshot();
+			scheduleSnapshots(ContextParameters.getIntParameter(context, prefix + SNAPSHOT_INTERVAL_PARAM, DEFAULT_SNAPSHOT_INTERVAL));
+		}
+	}
+
+	/******************************** addressbook *****************************************/
+	@Override
+	public List<AddressbookModel> list(
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		AddressbookQueryHandler _queryHandler = AddressbookQueryHandler.getInstance(query);
+		TopKCollector<AddressbookModel> _collector = new TopKCollector<AddressbookModel>(
+				_queryHandler.getComparator(), position, size);
+		int _scanned = 0;
+		for (AddressbookStore _store : addressbooks.values()) {
+			AddressbookModel _model = _store.getModel();
+			_scanned++;
+			if (_queryHandler.evaluate(_model)) {
+				_collector.add(_model);
+			}
+		}
+		QueryTrace.record(_scanned, _collector.getCount());
+		List<AddressbookModel> _selection = _collector.getPage();
+		logger.info("list(<" + query + ">, <" + queryType + ">, <" + position + ">, <" + size + ">) -> " + 
+				_selection.size() + " addressbooks.");
+		return _selection;
+	}
+
+	@Override
+	public AddressbookModel create(
+			HttpServletRequest request,
+			AddressbookModel addressbook) 
+			throws DuplicateException, ValidationException 
+	{
+		String _id = addressbook.getId();
+		if (_id == null || _id.isEmpty()) {
+			_id = UUID.randomUUID().toString();
+		} else {
+			if (addressbooks.containsKey(_id)) {
+				throw new DuplicateException("addressbook <" + _id + "> exists already.");
+			}
+			throw new ValidationException("addressbook <" + _id + 
+					"> contains an ID generated on the client. This is not allowed.");
+		}
+		validateAddressbook(_id, addressbook);
+		long _now = System.currentTimeMillis();
+		String _principal = getPrincipal(request);
+		addressbook.setId(_id);
+		addressbook.setCreatedAtMillis(_now);
+		addressbook.setCreatedBy(_principal);
+		addressbook.setModifiedAtMillis(_now);
+		addressbook.setModifiedBy(_principal);
+		AddressbookStore _store = new AddressbookStore(addressbook, searchIndex, lookupIndex, journal, columnBuilder);
+		// the addressbook is journaled before any contact can be added to it
+		_store.getWriteLock().lock();
+		try {
+			if (addressbooks.putIfAbsent(_id, _store) != null) {
+				throw new DuplicateException("addressbook <" + _id + "> exists already.");
+			}
+			if (journal != null) {
+				journal.putAddressbook(addressbook);
+			}
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("create() -> " + _id);
+		return addressbook;
+	}
+
+	@Override
+	public AddressbookModel read(
+			String id) 
+			throws NotFoundException 
+	{
+		return getStore(id).getModel();
+	}
+
+	@Override
+	public AddressbookModel update(
+			HttpServletRequest request, 
+			String id,
+			AddressbookModel addressbook) 
+			throws NotFoundException, ValidationException 
+	{
+		AddressbookStore _store = getStore(id);
+		validateAddressbook(id, addressbook);
+		_store.lockForWrite();
+		try {
+			AddressbookModel _oldModel = _store.getModel();
+			addressbook.setId(id);
+			addressbook.setCreatedAtMillis(_oldModel.getCreatedAtMillis());
+			addressbook.setCreatedBy(_oldModel.getCreatedBy());
+			addressbook.setModifiedAtMillis(System.currentTimeMillis());
+			addressbook.setModifiedBy(getPrincipal(request));
+			_store.setModel(addressbook);
+			if (journal != null) {
+				journal.putAddressbook(addressbook);
+			}
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("update(" + id + ") -> OK");
+		return addressbook;
+	}
+
+	@Override
+	public void delete(
+			String id) 
+			throws NotFoundException, InternalServerErrorException 
+	{
+		AddressbookStore _store = getStore(id);
+		// writers that looked up the store before it is removed fail when they get the lock
+		_store.lockForWrite();
+		try {
+			addressbooks.remove(id, _store);
+			_store.remove();
+			if (journal != null) {
+				journal.deleteAddressbook(id);
+			}
+			touch(_store);
+		} finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("delete(" + id + ") -> OK");
+	}
+
+	@Override
+	public List<ContactModel> listAllContacts(
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		final ContactQueryHandler _queryHandler = ContactQueryHandler.getInstance(query);
+		List<ContactModel> _selection = new ParallelCollector<ContactModel>(parallelPool) {
+			@Override
+			protected int count(AddressbookStore store) {
+				return store.getContacts().size();
+			}
+
+			@Override
+			protected void collect(AddressbookStore store, TopKCollector<ContactModel> collector) {
+				collectContacts(store, _queryHandler, null, collector);
+			}
+		}.collectAll(addressbooks.values(), _queryHandler.getComparator(), position, size).getPage();
+		logger.info("listAllContacts(<" + query + ">, <" + queryType + ">, <" + position + ">, <" + size + ">) -> " + 
+				_selection.size() + " contacts.");
+		return _selection;
+	}
+
+	@Override
+	public List<OrgModel> listAllOrgs(
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		final OrgQueryHandler _queryHandler = OrgQueryHandler.getInstance(query);
+		List<OrgModel> _selection = new ParallelCollector<OrgModel>(parallelPool) {
+			@Override
+			protected int count(AddressbookStore store) {
+				return store.getOrgs().size();
+			}
+
+			@Override
+			protected void collect(AddressbookStore store, TopKCollector<OrgModel> collector) {
+				collectOrgs(store, _queryHandler, null, collector);
+			}
+		}.collectAll(addressbooks.values(), _queryHandler.getComparator(), position, size).getPage();
+		logger.info("listAllOrgs(<" + query + ">, <" + queryType + ">, <" + position + ">, <" + size + ">) -> " + 
+				_selection.size() + " orgs.");
+		return _selection;
+	}
+
+	/******************************** contact *****************************************/
+	@Override
+	public List<ContactModel> listContacts(
+			String aid, 
+			String query,
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		AddressbookStore _store = getStore(aid);
+		ContactQueryHandler _queryHandler = ContactQueryHandler.getInstance(query);
+		ContactResultCache _results = _store.getContactResults();
+		ContactModel[] _cached = _results.get(query);
+		List<ContactModel> _selection;
+		if (_cached != null) {
+			QueryTrace.record(0, _cached.length);
+			_selection = getPage(_cached, position, size);
+		} else {
+			long _stamp = _results.admit(query);
+			if (_stamp < 0) {
+				TopKCollector<ContactModel> _collector = new TopKCollector<ContactModel>(
+						_queryHandler.getComparator(), position, size);
+				collectContacts(_store, _queryHandler, null, _collector);
+				_selection = _collector.getPage();
+			} else {
+				// a repeated query: collect all matches once and cache them
+				TopKCollector<ContactModel> _collector = new TopKCollector<ContactModel>(
+						_queryHandler.getComparator(), 0, Integer.MAX_VALUE);
+				collectContacts(_store, _queryHandler, null, _collector);
+				List<ContactModel> _all = _collector.getPage();
+				_results.put(query, _queryHandler, _all, _stamp);
+				_selection = getPage(_all.toArray(new ContactModel[_all.size()]), position, size);
+			}
+		}
+		logger.info("listContacts(" + aid + ", <" + query + ">, <" + queryType + ">, <" + position + ">, <" + size + ">) -> " + 
+				_selection.size() + " contacts.");
+		return _selection;
+	}
+
+	@Override
+	public ContactModel createContact(
+			HttpServletRequest request, 
+			String aid,
+			ContactModel contact) 
+			throws DuplicateException, ValidationException 
+	{
+		AddressbookStore _store = getStore(aid);
+		_store.lockForWrite();
+		try {
+			String _id = checkNewId("contact", contact.getId(), _store.getContacts());
+			validateContact(_id, contact);
+			long _now = System.currentTimeMillis();
+			String _principal = getPrincipal(request);
+			contact.setId(_id);
+			contact.setFn(ContactModel.createFullName(contact.getFirstName(), contact.getLastName()));
+			contact.setCreatedAtMillis(_now);
+			contact.setCreatedBy(_principal);
+			contact.setModifiedAtMillis(_now);
+			contact.setModifiedBy(_principal);
+			_store.addContact(new ModelEntry<ContactModel>(contact));
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("createContact(" + aid + ") -> " + contact.getId());
+		return contact;
+	}
+
+	@Override
+	public ContactModel readContact(
+			String aid, 
+			String cid) 
+			throws NotFoundException 
+	{
+		return getContactEntry(getStore(aid), cid).getModel();
+	}
+
+	@Override
+	public ContactModel updateContact(
+			HttpServletRequest request, 
+			String aid, 
+			String cid,
+			ContactModel contact) 
+			throws NotFoundException, ValidationException 
+	{
+		AddressbookStore _store = getStore(aid);
+		validateContact(cid, contact);
+		_store.lockForWrite();
+		try {
+			ModelEntry<ContactModel> _entry = getContactEntry(_store, cid);
+			ContactModel _oldModel = _entry.getModel();
+			contact.setId(cid);
+			contact.setFn(ContactModel.createFullName(contact.getFirstName(), contact.getLastName()));
+			contact.setCreatedAtMillis(_oldModel.getCreatedAtMillis());
+			contact.setCreatedBy(_oldModel.getCreatedBy());
+			contact.setModifiedAtMillis(System.currentTimeMillis());
+			contact.setModifiedBy(getPrincipal(request));
+			_store.replaceContact(_entry, contact);
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("updateContact(" + aid + ", " + cid + ") -> OK");
+		return contact;
+	}
+
+	@Override
+	public void deleteContact(
+			String aid, 
+			String cid) 
+			throws NotFoundException, InternalServerErrorException 
+	{
+		AddressbookStore _store = getStore(aid);
+		_store.lockForWrite();
+		try {
+			if (_store.removeContact(cid) == null) {
+				throw new NotFoundException("contact <" + aid + "/" + cid + "> was not found.");
+			}
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("deleteContact(" + aid + ", " + cid + ") -> OK");
+	}
+
+	/******************************** org *****************************************/
+	@Override
+	public List<OrgModel> listOrgs(
+			String aid, 
+			String query, 
+			String queryType,
+			int position, 
+			int size) 
+	{
+		AddressbookStore _store = getStore(aid);
+		OrgQueryHandler _queryHandler = OrgQueryHandler.getInstance(query);
+		TopKCollector<OrgModel> _collector = new TopKCollector<OrgModel>(
+				_queryHandler.getComparator(), position, size);
+		collectOrgs(_store, _queryHandler, null, _collector);
+		List<OrgModel> _selection = _collector.getPage();
+		logger.info("listOrgs(" + aid + ", <" + query + ">, <" + queryType + ">, <" + position + ">, <" + size + ">) -> " + 
+				_selection.size() + " orgs.");
+		return _selection;
+	}
+
+	@Override
+	public OrgModel createOrg(
+			HttpServletRequest request, 
+			String aid, 
+			OrgModel org)
+			throws DuplicateException, ValidationException 
+	{
+		AddressbookStore _store = getStore(aid);
+		_store.lockForWrite();
+		try {
+			String _id = checkNewId("org", org.getId(), _store.getOrgs());
+			validateOrg(_id, org);
+			long _now = System.currentTimeMillis();
+			String _principal = getPrincipal(request);
+			org.setId(_id);
+			org.setCreatedAtMillis(_now);
+			org.setCreatedBy(_principal);
+			org.setModifiedAtMillis(_now);
+			org.setModifiedBy(_principal);
+			_store.addOrg(new ModelEntry<OrgModel>(org));
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("createOrg(" + aid + ") -> " + org.getId());
+		return org;
+	}
+
+	@Override
+	public OrgModel readOrg(
+			String aid, 
+			String oid) 
+			throws NotFoundException 
+	{
+		return getOrgEntry(getStore(aid), oid).getModel();
+	}
+
+	@Override
+	public OrgModel updateOrg(
+			HttpServletRequest request, 
+			String aid, 
+			String oid,
+			OrgModel org) 
+			throws NotFoundException, ValidationException 
+	{
+		AddressbookStore _store = getStore(aid);
+		validateOrg(oid, org);
+		_store.lockForWrite();
+		try {
+			ModelEntry<OrgModel> _entry = getOrgEntry(_store, oid);
+			OrgModel _oldModel = _entry.getModel();
+			org.setId(oid);
+			org.setCreatedAtMillis(_oldModel.getCreatedAtMillis());
+			org.setCreatedBy(_oldModel.getCreatedBy());
+			org.setModifiedAtMillis(System.currentTimeMillis());
+			org.setModifiedBy(getPrincipal(request));
+			_store.replaceOrg(_entry, org);
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("updateOrg(" + aid + ", " + oid + ") -> OK");
+		return org;
+	}
+
+	@Override
+	public void deleteOrg(
+			String aid, 
+			String oid) 
+			throws NotFoundException, InternalServerErrorException 
+	{
+		AddressbookStore _store = getStore(aid);
+		_store.lockForWrite();
+		try {
+			if (_store.removeOrg(oid) == null) {
+				throw new NotFoundException("org <" + aid + "/" + oid + "> was not found.");
+			}
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("deleteOrg(" + aid + ", " + oid + ") -> OK");
+	}
+
+	/******************************** address (of contacts) *****************************************/
+	@Override
+	public List<AddressModel> listAddresses(
+			String aid, 
+			String cid,
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		ModelEntry<ContactModel> _entry = getContactEntry(getStore(aid), cid);
+		List<AddressModel> _selection = listAddresses(_entry, position, size);
+		logger.info("listAddresses(" + aid + ", " + cid + ", <" + query + ">, <" + queryType + ">, <" + position + ">, <" + size + ">) -> " + 
+				_selection.size() + " addresses.");
+		return _selection;
+	}
+
+	@Override
+	public AddressModel createAddress(
+			HttpServletRequest request, 
+			String aid, 
+			String cid,
+			AddressModel address) 
+			throws DuplicateException, ValidationException 
+	{
+		AddressbookStore _store = getStore(aid);
+		_store.lockForWrite();
+		try {
+			ModelEntry<ContactModel> _entry = getContactEntry(_store, cid);
+			createAddress(request, _entry, address);
+			_store.contactChanged(_entry);
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("createAddress(" + aid + ", " + cid + ") -> " + address.getId());
+		return address;
+	}
+
+	@Override
+	public AddressModel readAddress(
+			String aid, 
+			String cid, 
+			String adrid)
+			throws NotFoundException 
+	{
+		return getAddress(getContactEntry(getStore(aid), cid), adrid);
+	}
+
+	@Override
+	public AddressModel updateAddress(
+			HttpServletRequest request, 
+			String aid, 
+			String cid,
+			String adrid, 
+			AddressModel address) 
+			throws NotFoundException, ValidationException 
+	{
+		AddressbookStore _store = getStore(aid);
+		validateAddress(adrid, address);
+		_store.lockForWrite();
+		try {
+			ModelEntry<ContactModel> _entry = getContactEntry(_store, cid);
+			updateAddress(request, _entry, adrid, address);
+			_store.contactChanged(_entry);
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("updateAddress(" + aid + ", " + cid + ", " + adrid + ") -> OK");
+		return address;
+	}
+
+	@Override
+	public void deleteAddress(
+			String aid, 
+			String cid, 
+			String adrid)
+			throws NotFoundException, InternalServerErrorException 
+	{
+		AddressbookStore _store = getStore(aid);
+		_store.lockForWrite();
+		try {
+			ModelEntry<ContactModel> _entry = getContactEntry(_store, cid);
+			deleteAddress(_entry, adrid);
+			_store.contactChanged(_entry);
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("deleteAddress(" + aid + ", " + cid + ", " + adrid + ") -> OK");
+	}
+
+	/******************************** address (of orgs) *****************************************/
+	@Override
+	public List<AddressModel> listOrgAddresses(
+			String aid, 
+			String oid,
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		ModelEntry<OrgModel> _entry = getOrgEntry(getStore(aid), oid);
+		List<AddressModel> _selection = listAddresses(_entry, position, size);
+		logger.info("listOrgAddresses(" + aid + ", " + oid + ", <" + query + ">, <" + queryType + ">, <" + position + ">, <" + size + ">) -> " + 
+				_selection.size() + " addresses.");
+		return _selection;
+	}
+
+	@Override
+	public AddressModel createOrgAddress(
+			HttpServletRequest request, 
+			String aid, 
+			String oid,
+			AddressModel address) 
+			throws DuplicateException, ValidationException 
+	{
+		AddressbookStore _store = getStore(aid);
+		_store.lockForWrite();
+		try {
+			ModelEntry<OrgModel> _entry = getOrgEntry(_store, oid);
+			createAddress(request, _entry, address);
+			_store.orgChanged(_entry);
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("createOrgAddress(" + aid + ", " + oid + ") -> " + address.getId());
+		return address;
+	}
+
+	@Override
+	public AddressModel readOrgAddress(
+			String aid, 
+			String oid, 
+			String adrid)
+			throws NotFoundException 
+	{
+		return getAddress(getOrgEntry(getStore(aid), oid), adrid);
+	}
+
+	@Override
+	public AddressModel updateOrgAddress(
+			HttpServletRequest request, 
+			String aid, 
+			String oid,
+			String adrid, 
+			AddressModel address) 
+			throws NotFoundException, ValidationException 
+	{
+		AddressbookStore _store = getStore(aid);
+		validateAddress(adrid, address);
+		_store.lockForWrite();
+		try {
+			ModelEntry<OrgModel> _entry = getOrgEntry(_store, oid);
+			updateAddress(request, _entry, adrid, address);
+			_store.orgChanged(_entry);
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("updateOrgAddress(" + aid + ", " + oid + ", " + adrid + ") -> OK");
+		return address;
+	}
+
+	@Override
+	public void deleteOrgAddress(
+			String aid, 
+			String oid, 
+			String adrid)
+			throws NotFoundException, InternalServerErrorException 
+	{
+		AddressbookStore _store = getStore(aid);
+		_store.lockForWrite();
+		try {
+			ModelEntry<OrgModel> _entry = getOrgEntry(_store, oid);
+			deleteAddress(_entry, adrid);
+			_store.orgChanged(_entry);
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("deleteOrgAddress(" + aid + ", " + oid + ", " + adrid + ") -> OK");
+	}
+
+	/******************************** bulk *****************************************/
+	@Override
+	public List<BulkResultModel> bulkContacts(
+			HttpServletRequest request, 
+			String aid, 
+			List<BulkContactModel> contacts) 
+			throws NotFoundException, ValidationException 
+	{
+		AddressbookStore _store = getStore(aid);
+		if (contacts == null) {
+			throw new ValidationException("bulk request on addressbook <" + aid + "> must contain a list of contacts.");
+		}
+		BulkResultModel[] _results = new BulkResultModel[contacts.size()];
+		// validate all items before taking the lock, so that the lock is held only to apply them
+		for (int i = 0; i < _results.length; i++) {
+			BulkContactModel _item = contacts.get(i);
+			BulkOperation _op = getBulkOperation(_item == null ? null : _item.getOp());
+			try {
+				validateBulkContact(_op, _item);
+			}
+			catch (Exception _ex) {
+				_results[i] = getBulkFailure(i, _op, _item == null || _item.getContact() == null ? null : _item.getContact().getId(), _ex);
+			}
+		}
+		long _now = System.currentTimeMillis();
+		String _principal = getPrincipal(request);
+		int _failed = 0;
+		_store.lockForWrite();
+		try {
+			for (int i = 0; i < _results.length; i++) {
+				if (_results[i] != null) {
+					_failed++;
+					continue;
+				}
+				BulkContactModel _item = contacts.get(i);
+				BulkOperation _op = getBulkOperation(_item.getOp());
+				try {
+					_results[i] = applyBulkContact(request, _store, i, _op, _item, _now, _principal);
+				}
+				catch (Exception _ex) {
+					_results[i] = getBulkFailure(i, _op, _item.getContact().getId(), _ex);
+					_failed++;
+				}
+			}
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("bulkContacts(" + aid + ", " + _results.length + " items) -> " + _failed + " failed.");
+		return Arrays.asList(_results);
+	}
+
+	@Override
+	public List<BulkResultModel> bulkOrgs(
+			HttpServletRequest request, 
+			String aid, 
+			List<BulkOrgModel> orgs) 
+			throws NotFoundException, ValidationException 
+	{
+		AddressbookStore _store = getStore(aid);
+		if (orgs == null) {
+			throw new ValidationException("bulk request on addressbook <" + aid + "> must contain a list of orgs.");
+		}
+		BulkResultModel[] _results = new BulkResultModel[orgs.size()];
+		// validate all items before taking the lock, so that the lock is held only to apply them
+		for (int i = 0; i < _results.length; i++) {
+			BulkOrgModel _item = orgs.get(i);
+			BulkOperation _op = getBulkOperation(_item == null ? null : _item.getOp());
+			try {
+				validateBulkOrg(_op, _item);
+			}
+			catch (Exception _ex) {
+				_results[i] = getBulkFailure(i, _op, _item == null || _item.getOrg() == null ? null : _item.getOrg().getId(), _ex);
+			}
+		}
+		long _now = System.currentTimeMillis();
+		String _principal = getPrincipal(request);
+		int _failed = 0;
+		_store.lockForWrite();
+		try {
+			for (int i = 0; i < _results.length; i++) {
+				if (_results[i] != null) {
+					_failed++;
+					continue;
+				}
+				BulkOrgModel _item = orgs.get(i);
+				BulkOperation _op = getBulkOperation(_item.getOp());
+				try {
+					_results[i] = applyBulkOrg(request, _store, i, _op, _item, _now, _principal);
+				}
+				catch (Exception _ex) {
+					_results[i] = getBulkFailure(i, _op, _item.getOrg().getId(), _ex);
+					_failed++;
+				}
+			}
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("bulkOrgs(" + aid + ", " + _results.length + " items) -> " + _failed + " failed.");
+		return Arrays.asList(_results);
+	}
+
+	@Override
+	public List<BulkResultModel> bulkAddresses(
+			HttpServletRequest request, 
+			String aid, 
+			String cid, 
+			List<BulkAddressModel> addresses) 
+			throws NotFoundException, ValidationException 
+	{
+		AddressbookStore _store = getStore(aid);
+		List<BulkResultModel> _results = null;
+		_store.lockForWrite();
+		try {
+			ModelEntry<ContactModel> _entry = getContactEntry(_store, cid);
+			_results = bulkAddresses(request, _entry, addresses);
+			_store.contactChanged(_entry);
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("bulkAddresses(" + aid + ", " + cid + ", " + _results.size() + " items) -> OK");
+		return _results;
+	}
+
+	@Override
+	public List<BulkResultModel> bulkOrgAddresses(
+			HttpServletRequest request, 
+			String aid, 
+			String oid, 
+			List<BulkAddressModel> addresses) 
+			throws NotFoundException, ValidationException 
+	{
+		AddressbookStore _store = getStore(aid);
+		List<BulkResultModel> _results = null;
+		_store.lockForWrite();
+		try {
+			ModelEntry<OrgModel> _entry = getOrgEntry(_store, oid);
+			_results = bulkAddresses(request, _entry, addresses);
+			_store.orgChanged(_entry);
+			touch(_store);
+		}
+		finally {
+			_store.getWriteLock().unlock();
+		}
+		logger.info("bulkOrgAddresses(" + aid + ", " + oid + ", " + _results.size() + " items) -> OK");
+		return _results;
+	}
+
+	/******************************** keyset pagination *****************************************/
+	@Override
+	public ResultPage<ContactModel> listAllContacts(
+			String query, 
+			String queryType, 
+			String cursor, 
+			int size) 
+	{
+		ContactQueryHandler _queryHandler = ContactQueryHandler.getInstance(query);
+		ModelComparator<ContactModel, ContactQueryFeatureType> _comparator = _queryHandler.getSortComparator();
+		QueryCursor _after = QueryCursor.decode(cursor, query);
+		List<ContactModel> _page = new ArrayList<ContactModel>();
+		if (_comparator.isEmpty()) {
+			// ordered by id: merge the id-sorted contacts of all addressbooks, starting behind the cursor
+			List<Iterator<Map.Entry<String, ModelEntry<ContactModel>>>> _iterators = new ArrayList<Iterator<Map.Entry<String, ModelEntry<ContactModel>>>>();
+			for (AddressbookStore _store : addressbooks.values()) {
+				NavigableMap<String, ModelEntry<ContactModel>> _contacts = _store.getContactsById();
+				if (_after != null) {
+					_contacts = _contacts.tailMap(_after.getId(), false);
+				}
+				_iterators.add(_contacts.entrySet().iterator());
+			}
+			Iterator<ModelEntry<ContactModel>> _merged = new MergingIterator<ModelEntry<ContactModel>>(_iterators);
+			int _scanned = 0;
+			while (_page.size() < size && _merged.hasNext()) {
+				ContactModel _model = _merged.next().getModel();
+				_scanned++;
+				if (_queryHandler.evaluate(_model)) {
+					_page.add(_model);
+				}
+			}
+			QueryTrace.record(_scanned, _page.size());
+		} else if (isSeekable(_queryHandler)) {
+			// ordered by lastName, firstName or fn: merge the name indexes of all addressbooks, starting at the value of the cursor
+			boolean _descending = _comparator.isPrimaryDescending();
+			String _from = _after == null ? null : getPrimaryValue(_after);
+			List<Iterator<ContactModel>> _iterators = new ArrayList<Iterator<ContactModel>>();
+			for (AddressbookStore _store : addressbooks.values()) {
+				_iterators.add(_store.getContactIndex().iterate(
+						_comparator.getPrimaryFeature(), _comparator, _descending, _after != null, _from));
+			}
+			Iterator<ContactModel> _merged = new SortedMergingIterator<ContactModel>(_iterators, _comparator);
+			int _scanned = 0;
+			while (_page.size() < size && _merged.hasNext()) {
+				ContactModel _model = _merged.next();
+				_scanned++;
+				if (isAfter(_comparator, _model, _after) && _queryHandler.evaluate(_model)) {
+					_page.add(_model);
+				}
+			}
+			QueryTrace.record(_scanned, _page.size());
+		} else {
+			// any other sort key: collect the page from all contacts behind the cursor
+			TopKCollector<ContactModel> _collector = new TopKCollector<ContactModel>(_comparator, 0, size);
+			for (AddressbookStore _store : addressbooks.values()) {
+				collectContacts(_store, _queryHandler, _after, _collector);
+			}
+			_page = _collector.getPage();
+		}
+		String _nextCursor = size > 0 && _page.size() == size ? 
+				_comparator.getCursor(_page.get(size - 1)).encode(query) : null;
+		logger.info("listAllContacts(<" + query + ">, <" + queryType + ">, <" + cursor + ">, <" + size + ">) -> " + 
+				_page.size() + " contacts.");
+		return new ResultPage<ContactModel>(_page, _nextCursor);
+	}
+
+	@Override
+	public ResultPage<OrgModel> listAllOrgs(
+			String query, 
+			String queryType, 
+			String cursor, 
+			int size) 
+	{
+		OrgQueryHandler _queryHandler = OrgQueryHandler.getInstance(query);
+		ModelComparator<OrgModel, OrgQueryFeatureType> _comparator = _queryHandler.getSortComparator();
+		QueryCursor _after = QueryCursor.decode(cursor, query);
+		List<OrgModel> _page = new ArrayList<OrgModel>();
+		if (_comparator.isEmpty()) {
+			// ordered by id: merge the id-sorted orgs of all addressbooks, starting behind the cursor
+			List<Iterator<Map.Entry<String, ModelEntry<OrgModel>>>> _iterators = new ArrayList<Iterator<Map.Entry<String, ModelEntry<OrgModel>>>>();
+			for (AddressbookStore _store : addressbooks.values()) {
+				NavigableMap<String, ModelEntry<OrgModel>> _orgs = _store.getOrgsById();
+				if (_after != null) {
+					_orgs = _orgs.tailMap(_after.getId(), false);
+				}
+				_iterators.add(_orgs.entrySet().iterator());
+			}
+			Iterator<ModelEntry<OrgModel>> _merged = new MergingIterator<ModelEntry<OrgModel>>(_iterators);
+			int _scanned = 0;
+			while (_page.size() < size && _merged.hasNext()) {
+				OrgModel _model = _merged.next().getModel();
+				_scanned++;
+				if (_queryHandler.evaluate(_model)) {
+					_page.add(_model);
+				}
+			}
+			QueryTrace.record(_scanned, _page.size());
+		} else {
+			// there is no sorted index on orgs: collect the page from all orgs behind the cursor
+			TopKCollector<OrgModel> _collector = new TopKCollector<OrgModel>(_comparator, 0, size);
+			for (AddressbookStore _store : addressbooks.values()) {
+				collectOrgs(_store, _queryHandler, _after, _collector);
+			}
+			_page = _collector.getPage();
+		}
+		String _nextCursor = size > 0 && _page.size() == size ? 
+				_comparator.getCursor(_page.get(size - 1)).encode(query) : null;
+		logger.info("listAllOrgs(<" + query + ">, <" + queryType + ">, <" + cursor + ">, <" + size + ">) -> " + 
+				_page.size() + " orgs.");
+		return new ResultPage<OrgModel>(_page, _nextCursor);
+	}
+
+	/******************************** streaming *****************************************/
+	@Override
+	public Iterator<ContactModel> iterateAllContacts(
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		final ContactQueryHandler _queryHandler = ContactQueryHandler.getInstance(query);
+		if (!_queryHandler.getSortComparator().isEmpty()) {
+			// a sorted result needs all matches before the first one is known; the page is bounded by position + size
+			return listAllContacts(query, queryType, position, size).iterator();
+		}
+		// ordered by id: filter the id-sorted contacts lazily
+		List<Iterator<Map.Entry<String, ModelEntry<ContactModel>>>> _iterators = new ArrayList<Iterator<Map.Entry<String, ModelEntry<ContactModel>>>>();
+		for (AddressbookStore _store : addressbooks.values()) {
+			_iterators.add(_store.getContactsById().entrySet().iterator());
+		}
+		Iterator<ModelEntry<ContactModel>> _entries = new MergingIterator<ModelEntry<ContactModel>>(_iterators);
+		logger.info("iterateAllContacts(<" + query + ">, <" + queryType + ">, <" + position + ">, <" + size + ">) -> streaming.");
+		return new FilteringIterator<ContactModel>(_entries, position, size) {
+			@Override
+			protected boolean accept(ContactModel model) {
+				return _queryHandler.evaluate(model);
+			}
+		};
+	}
+
+	@Override
+	public Iterator<OrgModel> iterateAllOrgs(
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		final OrgQueryHandler _queryHandler = OrgQueryHandler.getInstance(query);
+		if (!_queryHandler.getSortComparator().isEmpty()) {
+			// a sorted result needs all matches before the first one is known; the page is bounded by position + size
+			return listAllOrgs(query, queryType, position, size).iterator();
+		}
+		// ordered by id: filter the id-sorted orgs lazily
+		List<Iterator<Map.Entry<String, ModelEntry<OrgModel>>>> _iterators = new ArrayList<Iterator<Map.Entry<String, ModelEntry<OrgModel>>>>();
+		for (AddressbookStore _store : addressbooks.values()) {
+			_iterators.add(_store.getOrgsById().entrySet().iterator());
+		}
+		Iterator<ModelEntry<OrgModel>> _entries = new MergingIterator<ModelEntry<OrgModel>>(_iterators);
+		logger.info("iterateAllOrgs(<" + query + ">, <" + queryType + ">, <" + position + ">, <" + size + ">) -> streaming.");
+		return new FilteringIterator<OrgModel>(_entries, position, size) {
+			@Override
+			protected boolean accept(OrgModel model) {
+				return _queryHandler.evaluate(model);
+			}
+		};
+	}
+
+	@Override
+	public Iterator<ContactModel> iterateContacts(
+			String aid, 
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		AddressbookStore _store = getStore(aid);
+		final ContactQueryHandler _queryHandler = ContactQueryHandler.getInstance(query);
+		if (!_queryHandler.getSortComparator().isEmpty()) {
+			// a sorted result needs all matches before the first one is known; the page is bounded by position + size
+			return listContacts(aid, query, queryType, position, size).iterator();
+		}
+		// ordered by id: filter the id-sorted contacts lazily
+		Iterator<ModelEntry<ContactModel>> _entries = _store.getContactsById().values().iterator();
+		logger.info("iterateContacts(" + aid + ", <" + query + ">, <" + queryType + ">, <" + position + ">, <" + size + ">) -> streaming.");
+		return new FilteringIterator<ContactModel>(_entries, position, size) {
+			@Override
+			protected boolean accept(ContactModel model) {
+				return _queryHandler.evaluate(model);
+			}
+		};
+	}
+
+	@Override
+	public Iterator<OrgModel> iterateOrgs(
+			String aid, 
+			String query, 
+			String queryType, 
+			int position, 
+			int size) 
+	{
+		AddressbookStore _store = getStore(aid);
+		final OrgQueryHandler _queryHandler = OrgQueryHandler.getInstance(query);
+		if (!_queryHandler.getSortComparator().isEmpty()) {
+			// a sorted result needs all matches before the first one is known; the page is bounded by position + size
+			return listOrgs(aid, query, queryType, position, size).iterator();
+		}
+		// ordered by id: filter the id-sorted orgs lazily
+		Iterator<ModelEntry<OrgModel>> _entries = _store.getOrgsById().values().iterator();
+		logger.info("iterateOrgs(" + aid + ", <" + query + ">, <" + queryType + ">, <" + position + ">, <" + size + ">) -> streaming.");
+		return new FilteringIterator<OrgModel>(_entries, position, size) {
+			@Override
+			protected boolean accept(OrgModel model) {
+				return _queryHandler.evaluate(model);
+			}
+		};
+	}
+
+	/******************************** change log *****************************************/
+	@Override
+	public ChangesModel listChanges(
+			String aid, 
+			String since, 
+			int size) 
+			throws NotFoundException, ValidationException 
+	{
+		ChangesModel _changes = getStore(aid).getChangeLog().getChanges(since, size);
+		logger.info("listChanges(" + aid + ", <" + since + ">, <" + size + ">) -> " + 
+				_changes.getChanges().size() + " changes" + (_changes.isResync() ? ", resync." : "."));
+		return _changes;
+	}
+
+	/******************************** search *****************************************/
+	@Override
+	public List<SearchHitModel> search(
+			String q, 
+			int position, 
+			int size) 
+			throws ValidationException 
+	{
+		List<SearchHitModel> _hits = searchIndex.search(q, addressbooks, position, size);
+		if (_hits == null) {
+			throw new ValidationException("search query <" + q + "> must contain at least one word.");
+		}
+		logger.info("search(<" + q + ">, <" + position + ">, <" + size + ">) -> " + _hits.size() + " hits.");
+		return _hits;
+	}
+
+	/******************************** address lookup *****************************************/
+	@Override
+	public List<AddressLookupModel> lookupAddress(
+			AddressType addressType, 
+			String value) 
+			throws ValidationException 
+	{
+		if (addressType != AddressType.PHONE && addressType != AddressType.EMAIL) {
+			throw new ValidationException("address lookup supports addressType PHONE or EMAIL, not <" + addressType + ">.");
+		}
+		String _key = AddressNormalizer.normalize(addressType, value);
+		if (_key == null) {
+			throw new ValidationException("<" + value + "> is not a valid " + addressType + " address.");
+		}
+		List<AddressLookupModel> _result = lookupIndex.lookup(_key, addressbooks);
+		logger.info("lookupAddress(" + addressType + ", <" + value + ">) -> " + _result.size() + " addresses.");
+		return _result;
+	}
+
+	/******************************** heap report *****************************************/
+	@Override
+	public HeapReportModel getHeapReport() {
+		HeapReportModel _report = new HeapReportModel();
+		StringDictionary.Usage _usage = new StringDictionary.Usage();
+		for (AddressbookStore _store : addressbooks.values()) {
+			for (ModelEntry<ContactModel> _entry : _store.getContacts().values()) {
+				_usage.add(_entry.getModel());
+				_report.setContacts(_report.getContacts() + 1);
+				_report.setAddresses(_report.getAddresses() + _entry.getAddresses().size());
+				for (AddressModel _address : _entry.getAddresses().values()) {
+					_usage.add(_address);
+				}
+			}
+			for (ModelEntry<OrgModel> _entry : _store.getOrgs().values()) {
+				_usage.add(_entry.getModel());
+				_report.setOrgs(_report.getOrgs() + 1);
+				_report.setAddresses(_report.getAddresses() + _entry.getAddresses().size());
+				for (AddressModel _address : _entry.getAddresses().values()) {
+					_usage.add(_address);
+				}
+			}
+		}
+		_report.setStringReferences(_usage.getReferences());
+		_report.setDistinctStrings(_usage.getDistinct());
+		_report.setStringBytes(_usage.getBytes());
+		_report.setStringBytesWithoutInterning(_usage.getBytesWithoutInterning());
+		_report.setBytesSaved(_usage.getBytesWithoutInterning() - _usage.getBytes());
+		_report.setDictionarySize(StringDictionary.getInstance().size());
+		Runtime _runtime = Runtime.getRuntime();
+		_report.setHeapUsed(_runtime.totalMemory() - _runtime.freeMemory());
+		_report.setHeapMax(_runtime.maxMemory());
+		logger.info("getHeapReport() -> " + _report.getBytesSaved() + " bytes saved by interning.");
+		return _report;
+	}
+
+	/******************************** versions *****************************************/
+	@Override
+	public CollectionVersion getVersion() {
+		return version.get();
+	}
+
+	@Override
+	public CollectionVersion getVersion(
+			String aid) 
+			throws NotFoundException 
+	{
+		return getStore(aid).getVersion();
+	}
+
+	/******************************** snapshot *****************************************/
+	/**
+	 * Write a snapshot of all addressbooks to the configured snapshot file, unless nothing changed since the last one.
+	 * @return true if a snapshot was written
+	 * @throws InternalServerErrorException if no snapshot file is configured or the snapshot cannot be written
+	 */
+	public boolean writeSnapshot() 
+			throws InternalServerErrorException 
+	{
+		if (snapshotFile == null) {
+			throw new InternalServerErrorException("context parameter <" + SNAPSHOT_FILE_PARAM + "> is not set.");
+		}
+		synchronized (snapshotLock) {
+			long _version = version.get().getVersion();
+			if (_version == snapshotVersion) {
+				return false;
+			}
+			long _start = System.nanoTime();
+			try {
+				int _contacts = StoreSnapshot.write(snapshotFile, addressbooks.values());
+				snapshotVersion = _version;
+				logger.info("writeSnapshot() -> " + addressbooks.size() + " addressbooks, " + _contacts + " contacts in " + 
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - _start) + "ms.");
+				return true;
+			} catch (IOException _ex) {
+				throw new InternalServerErrorException("snapshot <" + snapshotFile + "> could not be written: " + _ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Load the addressbooks from the snapshot file, if it exists. A snapshot that cannot be read is renamed 
+	 * to *.corrupt (so that the next snapshot does not overwrite it) and the service starts empty.
+	 */
+	private void restoreSnapshot() {
+		if (!snapshotFile.isFile()) {
+			logger.info("restoreSnapshot(): <" + snapshotFile + "> does not exist; starting empty.");
+			return;
+		}
+		long _start = System.nanoTime();
+		int _contacts;
+		try {
+			_contacts = loadSnapshot(snapshotFile);
+		} catch (IOException _ex) {
+			File _corrupt = new File(snapshotFile.getPath() + ".corrupt");
+			logger.log(Level.SEVERE, "restoreSnapshot(): <" + snapshotFile + "> could not be read; moved to <" + 
+					_corrupt + ">, starting empty.", _ex);
+			if (!snapshotFile.renameTo(_corrupt)) {
+				throw new InternalServerErrorException("snapshot <" + snapshotFile + "> could not be read nor moved away.");
+			}
+			return;
+		}
+		synchronized (snapshotLock) {
+			snapshotVersion = version.get().getVersion();
+		}
+		logger.info("restoreSnapshot() -> " + addressbooks.size() + " addressbooks, " + _contacts + " contacts in " + 
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - _start) + "ms.");
+	}
+
+	/**
+	 * Add the addressbooks of a snapshot file, e.g. on startup.
+	 * @param file the snapshot file
+	 * @return the number of contacts loaded
+	 * @throws IOException if the snapshot cannot be read; nothing is loaded in this case
+	 */
+	protected int loadSnapshot(
+			File file) 
+			throws IOException 
+	{
+		List<StoreSnapshot.Addressbook> _addressbooks = StoreSnapshot.read(file);
+		int _contacts = 0;
+		for (StoreSnapshot.Addressbook _addressbook : _addressbooks) {
+			AddressbookStore _store = new AddressbookStore(_addressbook.model, searchIndex, lookupIndex, journal, columnBuilder);
+			_store.getWriteLock().lock();
+			try {
+				for (ModelEntry<ContactModel> _entry : _addressbook.contacts) {
+					_store.addContact(_entry);
+				}
+				for (ModelEntry<OrgModel> _entry : _addressbook.orgs) {
+					_store.addOrg(_entry);
+				}
+				addressbooks.put(_addressbook.model.getId(), _store);
+				touch(_store);
+			}
+			finally {
+				_store.getWriteLock().unlock();
+			}
+			_contacts += _addressbook.contacts.size();
+		}
+		return _contacts;
+	}
+
+	/**
+	 * Write a snapshot periodically, on a daemon thread.
+	 * @param interval the seconds between two snapshots, 0 for none
+	 */
+	private void scheduleSnapshots(
+			int interval) 
+	{
+		if (interval <= 0) {
+			return;
+		}
+		snapshotScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(
+					Runnable runnable) 
+			{
+				Thread _thread = new Thread(runnable, "addressbooks-snapshot");
+				_thread.setDaemon(true);
+				return _thread;
+			}
+		});
+		snapshotScheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					writeSnapshot();
+				} catch (RuntimeException _ex) {
+					logger.log(Level.SEVERE, "periodic snapshot failed", _ex);
+				}
+			}
+		}, interval, interval, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stop the periodic snapshots and the threads of parallel queries and of columnar snapshots,
+	 * and write a last snapshot, so that a clean shutdown loses no changes.
+	 * Called when the application is stopped; the provider must not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		release();
+		if (snapshotScheduler != null) {
+			snapshotScheduler.shutdown();
+			try {
+				// a running snapshot is completed, and the last one below is skipped if nothing changed since
+				snapshotScheduler.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException _ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (parallelPool != null) {
+			parallelPool.shutdown();
+		}
+		columnBuilder.shutdownNow();
+		if (snapshotFile != null) {
+			try {
+				writeSnapshot();
+			} catch (InternalServerErrorException _ex) {
+				logger.log(Level.SEVERE, "close(): the last snapshot could not be written", _ex);
+			}
+		}
+		logger.info("close()");
+	}
+
+	/******************************** helpers *****************************************/
+	/**
+	 * Make this provider the owner of the data of a servlet context.
+	 * The data lives in the provider instance, so all requests of an application must share one provider 
+	 * (see AddressbooksService.resolveServiceProvider()); a second provider would silently serve other data.
+	 * @param context the servlet context
+	 * @throws InternalServerErrorException if another provider that was not closed owns the servlet context
+	 */
+	protected void claim(
+			ServletContext context) 
+			throws InternalServerErrorException 
+	{
+		synchronized (MemoryServiceProvider.class) {
+			Object _owner = context.getAttribute(OWNER_ATTRIBUTE);
+			if (_owner != null && _owner != this) {
+				throw new InternalServerErrorException("the data of this application is already held by " + 
+						_owner.getClass().getSimpleName() + "; the service provider must be shared by all requests.");
+			}
+			context.setAttribute(OWNER_ATTRIBUTE, this);
+			this.context = context;
+		}
+	}
+
+	/**
+	 * Give up the ownership of the servlet context, so that a new provider can be created for it.
+	 */
+	private void release() {
+		synchronized (MemoryServiceProvider.class) {
+			if (context != null && context.getAttribute(OWNER_ATTRIBUTE) == this) {
+				context.removeAttribute(OWNER_ATTRIBUTE);
+			}
+			context = null;
+		}
+	}
+
+	/**
+	 * Record a change of an addressbook: assigns a new version to the addressbook and to the whole collection.
+	 * Must be called after the change is applied; writes to an existing addressbook call it while holding its write lock.
+	 * @param store the changed addressbook store
+	 */
+	protected void touch(
+			AddressbookStore store) 
+	{
+		CollectionVersion _version = new CollectionVersion(lastVersion.incrementAndGet(), System.currentTimeMillis());
+		// concurrent writers may publish out of order; the collection version only moves forward
+		CollectionVersion _current = version.get();
+		while (_current.getVersion() < _version.getVersion() && !version.compareAndSet(_current, _version)) {
+			_current = version.get();
+		}
+		store.setVersion(_version);
+	}
+
+	/**
+	 * Retrieve the store of an addressbook.
+	 * @param aid the addressbook id
+	 * @return the store of the addressbook
+	 * @throws NotFoundException if no addressbook with this id exists
+	 */
+	protected AddressbookStore getStore(
+			String aid) 
+			throws NotFoundException 
+	{
+		AddressbookStore _store = aid == null ? null : addressbooks.get(aid);
+		if (_store == null) {
+			throw new NotFoundException("addressbook <" + aid + "> was not found.");
+		}
+		return _store;
+	}
+
+	/**
+	 * Retrieve a contact entry from an addressbook.
+	 * @param store the addressbook store
+	 * @param cid the contact id
+	 * @return the contact entry
+	 * @throws NotFoundException if no contact with this id exists in the addressbook
+	 */
+	protected ModelEntry<ContactModel> getContactEntry(
+			AddressbookStore store, 
+			String cid) 
+			throws NotFoundException 
+	{
+		ModelEntry<ContactModel> _entry = cid == null ? null : store.getContacts().get(cid);
+		if (_entry == null) {
+			throw new NotFoundException("contact <" + store.getModel().getId() + "/" + cid + "> was not found.");
+		}
+		return _entry;
+	}
+
+	/**
+	 * Retrieve an org entry from an addressbook.
+	 * @param store the addressbook store
+	 * @param oid the org id
+	 * @return the org entry
+	 * @throws NotFoundException if no org with this id exists in the addressbook
+	 */
+	protected ModelEntry<OrgModel> getOrgEntry(
+			AddressbookStore store, 
+			String oid) 
+			throws NotFoundException 
+	{
+		ModelEntry<OrgModel> _entry = oid == null ? null : store.getOrgs().get(oid);
+		if (_entry == null) {
+			throw new NotFoundException("org <" + store.getModel().getId() + "/" + oid + "> was not found.");
+		}
+		return _entry;
+	}
+
+	/**
+	 * A sorted keyset page can be read from the name indexes if the first sort key is indexed
+	 * and no predicate is answered by an index range scan (which reads fewer contacts than a walk in sort order).
+	 * @param queryHandler the parsed query
+	 * @return true if the contacts can be walked in sort order through the name indexes
+	 */
+	private boolean isSeekable(
+			ContactQueryHandler queryHandler) 
+	{
+		ContactQueryFeatureType _featureType = queryHandler.getSortComparator().getPrimaryFeature();
+		if (_featureType == null || queryHandler.hasIndexRange()) {
+			return false;
+		}
+		for (AddressbookStore _store : addressbooks.values()) {
+			if (!_store.getContactIndex().isIndexed(_featureType)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param cursor a cursor of a query sorted by lastName, firstName or fn
+	 * @return the value of the first sort key of the cursor, may be null
+	 * @throws ValidationException if the cursor was created with other sort keys
+	 */
+	private static String getPrimaryValue(
+			QueryCursor cursor) 
+			throws ValidationException 
+	{
+		Comparable<?>[] _values = cursor.getSortValues();
+		if (_values.length == 0 || (_values[0] != null && !(_values[0] instanceof String))) {
+			throw new ValidationException("cursor does not match the sort order of the query.");
+		}
+		return (String) _values[0];
+	}
+
+	/**
+	 * @param comparator the sort order of the query
+	 * @param model a model
+	 * @param after a cursor, may be null
+	 * @return true if there is no cursor or the model sorts after it
+	 */
+	private static <T> boolean isAfter(
+			ModelComparator<T, ?> comparator, 
+			T model, 
+			QueryCursor after) 
+	{
+		return after == null || comparator.compareToCursor(model, after) > 0;
+	}
+
+	/**
+	 * Offer all contacts of an addressbook that match the query to a collector.
+	 * Predicates on lastName, firstName and fn are answered by an index range scan if possible;
+	 * otherwise large addressbooks are scanned in columnar form (see AddressbookStore.getContactColumns()).
+	 * @param store the addressbook store
+	 * @param queryHandler the parsed query
+	 * @param after only contacts sorting after this cursor are collected; null for all
+	 * @param result the collector of the requested page
+	 */
+	protected void collectContacts(
+			AddressbookStore store, 
+			ContactQueryHandler queryHandler, 
+			QueryCursor after, 
+			TopKCollector<ContactModel> result) 
+	{
+		int _scanned = 0;
+		int _matched = 0;
+		Collection<ContactModel> _candidates = queryHandler.plan(store.getContactIndex());
+		ContactColumns _columns = _candidates == null ? store.getContactColumns() : null;
+		if (_candidates != null) {
+			for (ContactModel _model : _candidates) {
+				_scanned++;
+				if (isAfter(queryHandler.getSortComparator(), _model, after) && queryHandler.evaluate(_model)) {
+					result.add(_model);
+					_matched++;
+				}
+			}
+		} else if (_columns != null) {
+			// full scan over the columnar snapshot
+			_scanned = _columns.size();
+			for (int _row : queryHandler.select(_columns)) {
+				ContactModel _model = _columns.getRow(_row);
+				if (isAfter(queryHandler.getSortComparator(), _model, after)) {
+					result.add(_model);
+					_matched++;
+				}
+			}
+		} else {
+			for (ModelEntry<ContactModel> _entry : store.getContacts().values()) {
+				ContactModel _model = _entry.getModel();
+				_scanned++;
+				if (isAfter(queryHandler.getSortComparator(), _model, after) && queryHandler.evaluate(_model)) {
+					result.add(_model);
+					_matched++;
+				}
+			}
+		}
+		QueryTrace.record(_scanned, _matched);
+	}
+
+	/**
+	 * Offer all orgs of an addressbook that match the query to a collector.
+	 * @param store the addressbook store
+	 * @param queryHandler the parsed query
+	 * @param after only orgs sorting after this cursor are collected; null for all
+	 * @param result the collector of the requested page
+	 */
+	protected void collectOrgs(
+			AddressbookStore store, 
+			OrgQueryHandler queryHandler, 
+			QueryCursor after, 
+			TopKCollector<OrgModel> result) 
+	{
+		int _scanned = 0;
+		int _matched = 0;
+		for (ModelEntry<OrgModel> _entry : store.getOrgs().values()) {
+			OrgModel _model = _entry.getModel();
+			_scanned++;
+			if (isAfter(queryHandler.getSortComparator(), _model, after) && queryHandler.evaluate(_model)) {
+				result.add(_model);
+				_matched++;
+			}
+		}
+		QueryTrace.record(_scanned, _matched);
+	}
+
+	/**
+	 * @return the models from position to position+size of a sorted array
+	 */
+	private static <T> List<T> getPage(
+			T[] sorted, 
+			int position, 
+			int size) 
+	{
+		int _from = Math.min(Math.max(0, position), sorted.length);
+		int _to = (int) Math.min((long) _from + Math.max(0, size), sorted.length);
+		return new ArrayList<T>(Arrays.asList(sorted).subList(_from, _to));
+	}
+
+	private List<AddressModel> listAddresses(
+			ModelEntry<?> entry, 
+			int position, 
+			int size) 
+	{
+		TopKCollector<AddressModel> _collector = new TopKCollector<AddressModel>(
+				AddressModel.AddressComparator, position, size);
+		for (AddressModel _address : entry.getAddresses().values()) {
+			_collector.add(_address);
+		}
+		return _collector.getPage();
+	}
+
+	private void createAddress(
+			HttpServletRequest request, 
+			ModelEntry<?> entry, 
+			AddressModel address) 
+			throws DuplicateException, ValidationException 
+	{
+		String _id = checkNewId("address", address.getId(), entry.getAddresses());
+		validateAddress(_id, address);
+		long _now = System.currentTimeMillis();
+		String _principal = getPrincipal(request);
+		address.setId(_id);
+		address.setCreatedAtMillis(_now);
+		address.setCreatedBy(_principal);
+		address.setModifiedAtMillis(_now);
+		address.setModifiedBy(_principal);
+		StringDictionary.getInstance().intern(address);
+		entry.getAddresses().put(_id, address);
+	}
+
+	private AddressModel getAddress(
+			ModelEntry<?> entry, 
+			String adrid) 
+			throws NotFoundException 
+	{
+		AddressModel _address = adrid == null ? null : entry.getAddresses().get(adrid);
+		if (_address == null) {
+			throw new NotFoundException("address <" + adrid + "> was not found.");
+		}
+		return _address;
+	}
+
+	private void updateAddress(
+			HttpServletRequest request, 
+			ModelEntry<?> entry, 
+			String adrid, 
+			AddressModel address) 
+			throws NotFoundException 
+	{
+		AddressModel _oldModel = getAddress(entry, adrid);
+		address.setId(adrid);
+		address.setCreatedAtMillis(_oldModel.getCreatedAtMillis());
+		address.setCreatedBy(_oldModel.getCreatedBy());
+		address.setModifiedAtMillis(System.currentTimeMillis());
+		address.setModifiedBy(getPrincipal(request));
+		StringDictionary.getInstance().intern(address);
+		entry.getAddresses().put(adrid, address);
+	}
+
+	private void deleteAddress(
+			ModelEntry<?> entry, 
+			String adrid) 
+			throws NotFoundException 
+	{
+		if (adrid == null || entry.getAddresses().remove(adrid) == null) {
+			throw new NotFoundException("address <" + adrid + "> was not found.");
+		}
+	}
+
+	/**
+	 * Apply one validated bulk item on a contact. Must be called with the write lock of the store held.
+	 * Address ids are checked before anything is changed, so that an item is applied completely or not at all.
+	 */
+	private BulkResultModel applyBulkContact(
+			HttpServletRequest request, 
+			AddressbookStore store, 
+			int index, 
+			BulkOperation op, 
+			BulkContactModel item, 
+			long now, 
+			String principal) 
+			throws DuplicateException, NotFoundException, ValidationException 
+	{
+		ContactModel _contact = item.getContact();
+		switch (op) {
+		case CREATE: {
+			String _id = checkNewId("contact", _contact.getId(), store.getContacts());
+			_contact.setId(_id);
+			_contact.setFn(ContactModel.createFullName(_contact.getFirstName(), _contact.getLastName()));
+			_contact.setCreatedAtMillis(now);
+			_contact.setCreatedBy(principal);
+			_contact.setModifiedAtMillis(now);
+			_contact.setModifiedBy(principal);
+			ModelEntry<ContactModel> _entry = new ModelEntry<ContactModel>(_contact);
+			if (item.getAddresses() != null) {
+				for (AddressModel _address : item.getAddresses()) {
+					createAddress(request, _entry, _address);
+				}
+			}
+			// the contact becomes visible together with its addresses
+			store.addContact(_entry);
+			return new BulkResultModel(index, op, _id, BulkResultModel.STATUS_CREATED, null);
+		}
+		case UPDATE: {
+			ModelEntry<ContactModel> _entry = getContactEntry(store, _contact.getId());
+			checkBulkAddressIds(_entry, item.getAddresses());
+			ContactModel _oldModel = _entry.getModel();
+			_contact.setFn(ContactModel.createFullName(_contact.getFirstName(), _contact.getLastName()));
+			_contact.setCreatedAtMillis(_oldModel.getCreatedAtMillis());
+			_contact.setCreatedBy(_oldModel.getCreatedBy());
+			_contact.setModifiedAtMillis(now);
+			_contact.setModifiedBy(principal);
+			store.replaceContact(_entry, _contact);
+			if (item.getAddresses() != null && !item.getAddresses().isEmpty()) {
+				putBulkAddresses(request, _entry, item.getAddresses());
+				store.contactChanged(_entry);
+			}
+			return new BulkResultModel(index, op, _contact.getId(), BulkResultModel.STATUS_OK, null);
+		}
+		default:
+			if (store.removeContact(_contact.getId()) == null) {
+				throw new NotFoundException("contact <" + store.getModel().getId() + "/" + _contact.getId() + "> was not found.");
+			}
+			return new BulkResultModel(index, op, _contact.getId(), BulkResultModel.STATUS_DELETED, null);
+		}
+	}
+
+	/**
+	 * Apply one validated bulk item on an org. Must be called with the write lock of the store held.
+	 * Address ids are checked before anything is changed, so that an item is applied completely or not at all.
+	 */
+	private BulkResultModel applyBulkOrg(
+			HttpServletRequest request, 
+			AddressbookStore store, 
+			int index, 
+			BulkOperation op, 
+			BulkOrgModel item, 
+			long now, 
+			String principal) 
+			throws DuplicateException, NotFoundException, ValidationException 
+	{
+		OrgModel _org = item.getOrg();
+		switch (op) {
+		case CREATE: {
+			String _id = checkNewId("org", _org.getId(), store.getOrgs());
+			_org.setId(_id);
+			_org.setCreatedAtMillis(now);
+			_org.setCreatedBy(principal);
+			_org.setModifiedAtMillis(now);
+			_org.setModifiedBy(principal);
+			ModelEntry<OrgModel> _entry = new ModelEntry<OrgModel>(_org);
+			if (item.getAddresses() != null) {
+				for (AddressModel _address : item.getAddresses()) {
+					createAddress(request, _entry, _address);
+				}
+			}
+			// the org becomes visible together with its addresses
+			store.addOrg(_entry);
+			return new BulkResultModel(index, op, _id, BulkResultModel.STATUS_CREATED, null);
+		}
+		case UPDATE: {
+			ModelEntry<OrgModel> _entry = getOrgEntry(store, _org.getId());
+			checkBulkAddressIds(_entry, item.getAddresses());
+			OrgModel _oldModel = _entry.getModel();
+			_org.setCreatedAtMillis(_oldModel.getCreatedAtMillis());
+			_org.setCreatedBy(_oldModel.getCreatedBy());
+			_org.setModifiedAtMillis(now);
+			_org.setModifiedBy(principal);
+			store.replaceOrg(_entry, _org);
+			if (item.getAddresses() != null && !item.getAddresses().isEmpty()) {
+				putBulkAddresses(request, _entry, item.getAddresses());
+				store.orgChanged(_entry);
+			}
+			return new BulkResultModel(index, op, _org.getId(), BulkResultModel.STATUS_OK, null);
+		}
+		default:
+			if (store.removeOrg(_org.getId()) == null) {
+				throw new NotFoundException("org <" + store.getModel().getId() + "/" + _org.getId() + "> was not found.");
+			}
+			return new BulkResultModel(index, op, _org.getId(), BulkResultModel.STATUS_DELETED, null);
+		}
+	}
+
+	/**
+	 * Apply bulk items on the addresses of a contact or org. Must be called with the write lock of the store held.
+	 */
+	private List<BulkResultModel> bulkAddresses(
+			HttpServletRequest request, 
+			ModelEntry<?> entry, 
+			List<BulkAddressModel> addresses) 
+			throws ValidationException 
+	{
+		if (addresses == null) {
+			throw new ValidationException("bulk request must contain a list of addresses.");
+		}
+		List<BulkResultModel> _results = new ArrayList<BulkResultModel>(addresses.size());
+		for (int i = 0; i < addresses.size(); i++) {
+			BulkAddressModel _item = addresses.get(i);
+			BulkOperation _op = getBulkOperation(_item == null ? null : _item.getOp());
+			AddressModel _address = _item == null ? null : _item.getAddress();
+			try {
+				if (_address == null) {
+					throw new ValidationException("bulk item <" + i + "> must contain an address.");
+				}
+				switch (_op) {
+				case CREATE:
+					createAddress(request, entry, _address);
+					_results.add(new BulkResultModel(i, _op, _address.getId(), BulkResultModel.STATUS_CREATED, null));
+					break;
+				case UPDATE:
+					validateAddress(_address.getId(), _address);
+					updateAddress(request, entry, _address.getId(), _address);
+					_results.add(new BulkResultModel(i, _op, _address.getId(), BulkResultModel.STATUS_OK, null));
+					break;
+				default:
+					deleteAddress(entry, _address.getId());
+					_results.add(new BulkResultModel(i, _op, _address.getId(), BulkResultModel.STATUS_DELETED, null));
+				}
+			}
+			catch (Exception _ex) {
+				_results.add(getBulkFailure(i, _op, _address == null ? null : _address.getId(), _ex));
+			}
+		}
+		return _results;
+	}
+
+	/**
+	 * @throws NotFoundException if an address with an id does not exist in entry
+	 */
+	private void checkBulkAddressIds(
+			ModelEntry<?> entry, 
+			List<AddressModel> addresses) 
+			throws NotFoundException 
+	{
+		if (addresses != null) {
+			for (AddressModel _address : addresses) {
+				if (_address.getId() != null && !_address.getId().isEmpty()) {
+					getAddress(entry, _address.getId());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replace the addresses with an id and add the addresses without an id.
+	 */
+	private void putBulkAddresses(
+			HttpServletRequest request, 
+			ModelEntry<?> entry, 
+			List<AddressModel> addresses) 
+	{
+		if (addresses != null) {
+			for (AddressModel _address : addresses) {
+				if (_address.getId() == null || _address.getId().isEmpty()) {
+					createAddress(request, entry, _address);
+				} else {
+					updateAddress(request, entry, _address.getId(), _address);
+				}
+			}
+		}
+	}
+
+	private static BulkOperation getBulkOperation(
+			BulkOperation op) 
+	{
+		return op == null ? BulkOperation.getDefaultBulkOperation() : op;
+	}
+
+	/**
+	 * @return the result of a failed bulk item, with the status the single request would have returned
+	 */
+	protected static BulkResultModel getBulkFailure(
+			int index, 
+			BulkOperation op, 
+			String id, 
+			Exception ex) 
+	{
+		int _status = BulkResultModel.STATUS_INTERNAL_SERVER_ERROR;
+		if (ex instanceof ValidationException) {
+			_status = BulkResultModel.STATUS_BAD_REQUEST;
+		} else if (ex instanceof NotFoundException) {
+			_status = BulkResultModel.STATUS_NOT_FOUND;
+		} else if (ex instanceof DuplicateException) {
+			_status = BulkResultModel.STATUS_CONFLICT;
+		} else {
+			logger.warning("bulk item <" + index + "> failed: " + ex);
+		}
+		return new BulkResultModel(index, op, id, _status, ex.getMessage());
+	}
+
+	/**
+	 * Checks the id of a new object and generates a new one.
+	 * @param type the type of object, used in error messages
+	 * @param id the id given by the client
+	 * @param existing the existing objects of this type, keyed by id
+	 * @return a newly generated id
+	 * @throws DuplicateException if an object with this id exists already
+	 * @throws ValidationException if the client provided an id
+	 */
+	protected static String checkNewId(
+			String type, 
+			String id, 
+			Map<String, ?> existing) 
+			throws DuplicateException, ValidationException 
+	{
+		if (id == null || id.isEmpty()) {
+			return UUID.randomUUID().toString();
+		}
+		if (existing.containsKey(id)) {
+			throw new DuplicateException(type + " <" + id + "> exists already.");
+		}
+		throw new ValidationException(type + " <" + id + 
+				"> contains an ID generated on the client. This is not allowed.");
+	}
+
+	protected static void validateAddressbook(
+			String id, 
+			AddressbookModel addressbook) 
+			throws ValidationException 
+	{
+		if (addressbook.getName() == null || addressbook.getName().isEmpty()) {
+			throw new ValidationException("addressbook <" + id + "> must contain a valid name.");
+		}
+	}
+
+	protected static void validateContact(
+			String id, 
+			ContactModel contact) 
+			throws ValidationException 
+	{
+		if (contact.getFirstName() == null || contact.getFirstName().isEmpty()) {
+			throw new ValidationException("contact <" + id + "> must contain a valid firstName.");
+		}
+		if (contact.getLastName() == null || contact.getLastName().isEmpty()) {
+			throw new ValidationException("contact <" + id + "> must contain a valid lastName.");
+		}
+	}
+
+	protected static void validateOrg(
+			String id, 
+			OrgModel org) 
+			throws ValidationException 
+	{
+		if (org.getName() == null || org.getName().isEmpty()) {
+			throw new ValidationException("org <" + id + "> must contain a valid name.");
+		}
+		if (org.getOrgType() == null) {
+			org.setOrgType(OrgType.getDefaultOrgType());
+		}
+	}
+
+	protected static void validateAddress(
+			String id, 
+			AddressModel address) 
+			throws ValidationException 
+	{
+		if (address.getAddressType() == null) {
+			throw new ValidationException("address <" + id + "> must contain a valid addressType.");
+		}
+		if (address.getAttributeType() == null) {
+			address.setAttributeType(AttributeType.getDefaultAttributeType());
+		}
+		if (address.getAddressType() == AddressType.MESSAGING && address.getMsgType() == null) {
+			address.setMsgType(MessageType.getDefaultMessageType());
+		}
+		if (address.getAddressType() != AddressType.POSTAL && 
+				(address.getValue() == null || address.getValue().isEmpty())) {
+			throw new ValidationException("address <" + id + "> of type " + address.getAddressType() + " must contain a valid value.");
+		}
+	}
+
+	/**
+	 * Validate a bulk item on a contact without looking at the store.
+	 */
+	protected static void validateBulkContact(
+			BulkOperation op, 
+			BulkContactModel item) 
+			throws ValidationException 
+	{
+		if (item == null || item.getContact() == null) {
+			throw new ValidationException("bulk item must contain a contact.");
+		}
+		String _id = item.getContact().getId();
+		if (op != BulkOperation.CREATE && (_id == null || _id.isEmpty())) {
+			throw new ValidationException("bulk " + op + " of a contact requires its id.");
+		}
+		if (op != BulkOperation.DELETE) {
+			validateContact(_id, item.getContact());
+			validateBulkAddresses(op, item.getAddresses());
+		}
+	}
+
+	/**
+	 * Validate a bulk item on an org without looking at the store.
+	 */
+	protected static void validateBulkOrg(
+			BulkOperation op, 
+			BulkOrgModel item) 
+			throws ValidationException 
+	{
+		if (item == null || item.getOrg() == null) {
+			throw new ValidationException("bulk item must contain an org.");
+		}
+		String _id = item.getOrg().getId();
+		if (op != BulkOperation.CREATE && (_id == null || _id.isEmpty())) {
+			throw new ValidationException("bulk " + op + " of an org requires its id.");
+		}
+		if (op != BulkOperation.DELETE) {
+			validateOrg(_id, item.getOrg());
+			validateBulkAddresses(op, item.getAddresses());
+		}
+	}
+
+	private static void validateBulkAddresses(
+			BulkOperation op, 
+			List<AddressModel> addresses) 
+			throws ValidationException 
+	{
+		if (addresses == null) {
+			return;
+		}
+		for (AddressModel _address : addresses) {
+			if (_address == null) {
+				throw new ValidationException("bulk item must not contain empty addresses.");
+			}
+			String _id = _address.getId();
+			if (op == BulkOperation.CREATE && _id != null && !_id.isEmpty()) {
+				throw new ValidationException("address <" + _id + 
+						"> contains an ID generated on the client. This is not allowed.");
+			}
+			validateAddress(_id, _address);
+		}
+	}
+
+	/**
+	 * @param request the http request
+	 * @return the login id of the caller
+	 */
+	protected static String getPrincipal(
+			HttpServletRequest request) 
+	{
+		if (request == null || request.getUserPrincipal() == null) {
+			return DEFAULT_PRINCIPAL;
+		}
+		return request.getUserPrincipal().getName();
+	}
+
+}
@@ -0,0 +1,105 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges several iterators over maps sorted by a String key into one iterator in key order.
+ * Used to walk the contacts or orgs of all addressbooks ordered by id without sorting them.
+ * @author Bruno Kaiser
+ *
+ * @param <V> the value type
+ */
+class MergingIterator<V> implements Iterator<V> {
+	private final PriorityQueue<Source<V>> sources;
+
+	/**
+	 * Constructor.
+	 * @param iterators iterators over map entries, each one in ascending key order
+	 */
+	MergingIterator(
+			List<Iterator<Map.Entry<String, V>>> iterators) 
+	{
+		sources = new PriorityQueue<Source<V>>(Math.max(1, iterators.size()));
+		for (Iterator<Map.Entry<String, V>> _iterator : iterators) {
+			if (_iterator.hasNext()) {
+				sources.add(new Source<V>(_iterator));
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !sources.isEmpty();
+	}
+
+	@Override
+	public V next() {
+		Source<V> _source = sources.poll();
+		if (_source == null) {
+			throw new NoSuchElementException();
+		}
+		V _value = _source.head.getValue();
+		if (_source.advance()) {
+			sources.add(_source);
+		}
+		return _value;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * One of the merged iterators together with its current entry.
+	 */
+	private static class Source<V> implements Comparable<Source<V>> {
+		private final Iterator<Map.Entry<String, V>> iterator;
+		private Map.Entry<String, V> head;
+
+		Source(Iterator<Map.Entry<String, V>> iterator) {
+			this.iterator = iterator;
+			this.head = iterator.next();
+		}
+
+		boolean advance() {
+			if (iterator.hasNext()) {
+				head = iterator.next();
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public int compareTo(Source<V> other) {
+			return head.getKey().compareTo(other.head.getKey());
+		}
+	}
+}
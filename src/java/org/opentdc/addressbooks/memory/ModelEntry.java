@@ -0,0 +1,69 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opentdc.addressbooks.AddressModel;
+
+/**
+ * Holds a stored contact or org together with its addresses.
+ * @author Bruno Kaiser
+ *
+ * @param <T> ContactModel or OrgModel
+ */
+class ModelEntry<T> {
+	private volatile T model;
+	private final ConcurrentHashMap<String, AddressModel> addresses = new ConcurrentHashMap<String, AddressModel>();
+
+	/**
+	 * Constructor.
+	 * @param model the contact or org to store
+	 */
+	ModelEntry(T model) {
+		this.model = model;
+	}
+
+	/**
+	 * @return the stored contact or org
+	 */
+	T getModel() {
+		return model;
+	}
+
+	/**
+	 * Replace the stored contact or org.
+	 * @param model the new version of the model
+	 */
+	void setModel(T model) {
+		this.model = model;
+	}
+
+	/**
+	 * @return the addresses of this contact or org, keyed by adrid
+	 */
+	ConcurrentHashMap<String, AddressModel> getAddresses() {
+		return addresses;
+	}
+}
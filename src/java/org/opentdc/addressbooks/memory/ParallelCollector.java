@@ -0,0 +1,179 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.opentdc.addressbooks.QueryTrace;
+import org.opentdc.addressbooks.TopKCollector;
+
+/**
+ * Collects the matches of a query over all addressbooks into a page, in parallel if there are enough rows:
+ * the addressbooks are split into partitions that are scanned by fork/join tasks, each keeping its own 
+ * top position+size matches; the partial results are then merged by the sort order of the query.
+ * Queries over less than parallelThreshold rows, or with parallelism 1, run on the calling thread.
+ * The pool belongs to the service provider, which shuts it down when it is closed.
+ * @author Bruno Kaiser
+ *
+ * @param <T> ContactModel or OrgModel
+ */
+abstract class ParallelCollector<T> {
+	public static final String PARALLELISM_PROPERTY = "org.opentdc.addressbooks.parallelism";
+	public static final String THRESHOLD_PROPERTY = "org.opentdc.addressbooks.parallelThreshold";
+	public static final int DEFAULT_THRESHOLD = 10000;
+	// partitions per thread, so that threads that finish early can steal work
+	private static final int PARTITIONS_PER_THREAD = 4;
+	private static final int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors());
+	private static final int threshold = Integer.getInteger(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD);
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Constructor.
+	 * @param pool the pool of the service provider (see newPool()), null to collect on the calling thread
+	 */
+	ParallelCollector(
+			ForkJoinPool pool) 
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * @return a pool for the configured parallelism, or null if queries are not run in parallel;
+	 * its threads are only started when a query runs in parallel
+	 */
+	static ForkJoinPool newPool() {
+		return parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+	}
+
+	/**
+	 * @param store an addressbook store
+	 * @return the number of rows the query scans in the store, used to size the partitions
+	 */
+	protected abstract int count(
+			AddressbookStore store);
+
+	/**
+	 * Offer the matches of the query in one addressbook to a collector.
+	 * @param store the addressbook store
+	 * @param collector the collector
+	 */
+	protected abstract void collect(
+			AddressbookStore store, 
+			TopKCollector<T> collector);
+
+	/**
+	 * Collect the matches of the query in all addressbooks.
+	 * @param stores the addressbook stores
+	 * @param comparator the sort order of the query
+	 * @param position the position of the first element of the page
+	 * @param size the maximum number of elements of the page
+	 * @return the collector of the page
+	 */
+	TopKCollector<T> collectAll(
+			Collection<AddressbookStore> stores, 
+			Comparator<? super T> comparator, 
+			int position, 
+			int size) 
+	{
+		TopKCollector<T> _result = new TopKCollector<T>(comparator, position, size);
+		List<AddressbookStore> _stores = new ArrayList<AddressbookStore>(stores);
+		long[] _offsets = new long[_stores.size() + 1];
+		for (int _i = 0; _i < _stores.size(); _i++) {
+			_offsets[_i + 1] = _offsets[_i] + count(_stores.get(_i));
+		}
+		long _rows = _offsets[_stores.size()];
+		if (pool == null || pool.isShutdown() || _stores.size() < 2 || _rows < threshold) {
+			for (AddressbookStore _store : _stores) {
+				collect(_store, _result);
+			}
+			return _result;
+		}
+		int _limit = (int) Math.min((long) Math.max(0, position) + Math.max(0, size), Integer.MAX_VALUE);
+		long _partitionRows = Math.max(1, _rows / (parallelism * PARTITIONS_PER_THREAD));
+		TopKCollector<T> _partial = pool.invoke(new PartitionTask(_stores, _offsets, 0, _stores.size(), 
+				_partitionRows, comparator, _limit, QueryTrace.current()));
+		for (T _element : _partial.getPage()) {
+			_result.add(_element);
+		}
+		return _result;
+	}
+
+	/**
+	 * Collects the top limit matches of the addressbooks from..to, splitting them while they have too many rows.
+	 */
+	private class PartitionTask extends RecursiveTask<TopKCollector<T>> {
+		private static final long serialVersionUID = 1L;
+		private final List<AddressbookStore> stores;
+		private final long[] offsets;
+		private final int from;
+		private final int to;
+		private final long partitionRows;
+		private final Comparator<? super T> comparator;
+		private final int limit;
+		private final QueryTrace trace;
+
+		PartitionTask(List<AddressbookStore> stores, long[] offsets, int from, int to, long partitionRows, 
+				Comparator<? super T> comparator, int limit, QueryTrace trace) {
+			this.stores = stores;
+			this.offsets = offsets;
+			this.from = from;
+			this.to = to;
+			this.partitionRows = partitionRows;
+			this.comparator = comparator;
+			this.limit = limit;
+			this.trace = trace;
+		}
+
+		@Override
+		protected TopKCollector<T> compute() {
+			if (to - from > 1 && offsets[to] - offsets[from] > partitionRows) {
+				int _middle = (from + to) >>> 1;
+				PartitionTask _left = new PartitionTask(stores, offsets, from, _middle, partitionRows, comparator, limit, trace);
+				PartitionTask _right = new PartitionTask(stores, offsets, _middle, to, partitionRows, comparator, limit, trace);
+				_left.fork();
+				TopKCollector<T> _result = _right.compute();
+				for (T _element : _left.join().getPage()) {
+					_result.add(_element);
+				}
+				return _result;
+			}
+			TopKCollector<T> _result = new TopKCollector<T>(comparator, 0, limit);
+			QueryTrace _previous = QueryTrace.attach(trace);
+			try {
+				for (int _i = from; _i < to; _i++) {
+					collect(stores.get(_i), _result);
+				}
+			} finally {
+				QueryTrace.attach(_previous);
+			}
+			return _result;
+		}
+	}
+}
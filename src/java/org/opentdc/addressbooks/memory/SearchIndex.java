@@ -0,0 +1,347 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+import org.opentdc.addressbooks.AddressModel;
+import org.opentdc.addressbooks.AddressType;
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.OrgModel;
+import org.opentdc.addressbooks.SearchHitModel;
+import org.opentdc.addressbooks.SearchHitType;
+import org.opentdc.addressbooks.TopKCollector;
+
+/**
+ * Inverted index over the text fields of the contacts and orgs of all addressbooks, including their addresses.
+ * Words are lower-cased and stripped of accents; a search word matches all indexed words it is a prefix of.
+ * Each posting carries the weight of the most important field the word occurs in; an exact word match
+ * counts twice as much as a prefix match. The score of a hit is the sum over all search words.
+ * Updates are serialized by the index; searches do not lock.
+ * @author Bruno Kaiser
+ *
+ */
+class SearchIndex {
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+	private static final Pattern NON_DIGITS = Pattern.compile("[^0-9]+");
+	private static final int WEIGHT_NAME = 4;
+	private static final int WEIGHT_ALIAS = 3;
+	private static final int WEIGHT_VALUE = 2;
+	private static final int WEIGHT_TEXT = 1;
+	private static final int EXACT_MATCH_FACTOR = 2;
+
+	// word -> document -> weight
+	private final ConcurrentSkipListMap<String, ConcurrentHashMap<Document, Integer>> postings = 
+			new ConcurrentSkipListMap<String, ConcurrentHashMap<Document, Integer>>();
+	private final IdentityHashMap<ModelEntry<?>, Document> documents = new IdentityHashMap<ModelEntry<?>, Document>();
+
+	/**
+	 * Index a new or changed contact and its addresses.
+	 * @param aid the addressbook of the contact
+	 * @param entry the contact entry
+	 */
+	void indexContact(
+			String aid, 
+			ModelEntry<ContactModel> entry) 
+	{
+		ContactModel _contact = entry.getModel();
+		Map<String, Integer> _words = new HashMap<String, Integer>();
+		addWords(_words, _contact.getFn(), WEIGHT_NAME);
+		addWords(_words, _contact.getNickName(), WEIGHT_ALIAS);
+		addWords(_words, _contact.getCompany(), WEIGHT_VALUE);
+		addWords(_words, _contact.getJobTitle(), WEIGHT_TEXT);
+		addWords(_words, _contact.getDepartment(), WEIGHT_TEXT);
+		addWords(_words, _contact.getNote(), WEIGHT_TEXT);
+		addAddressWords(_words, entry);
+		index(new Document(aid, SearchHitType.CONTACT, entry), _words);
+	}
+
+	/**
+	 * Index a new or changed org and its addresses.
+	 * @param aid the addressbook of the org
+	 * @param entry the org entry
+	 */
+	void indexOrg(
+			String aid, 
+			ModelEntry<OrgModel> entry) 
+	{
+		OrgModel _org = entry.getModel();
+		Map<String, Integer> _words = new HashMap<String, Integer>();
+		addWords(_words, _org.getName(), WEIGHT_NAME);
+		addWords(_words, _org.getTickerSymbol(), WEIGHT_ALIAS);
+		addWords(_words, _org.getDescription(), WEIGHT_TEXT);
+		addAddressWords(_words, entry);
+		index(new Document(aid, SearchHitType.ORG, entry), _words);
+	}
+
+	/**
+	 * Remove a deleted contact or org from the index.
+	 * @param entry the contact or org entry
+	 */
+	synchronized void remove(
+			ModelEntry<?> entry) 
+	{
+		Document _document = documents.remove(entry);
+		if (_document != null) {
+			for (String _word : _document.words.keySet()) {
+				removePosting(_word, _document);
+			}
+		}
+	}
+
+	private synchronized void index(
+			Document document, 
+			Map<String, Integer> words) 
+	{
+		Document _old = documents.put(document.entry, document);
+		document.words = words;
+		// postings are keyed by entry, so the new document replaces the old one in all words it still has
+		for (Map.Entry<String, Integer> _word : words.entrySet()) {
+			ConcurrentHashMap<Document, Integer> _posting = postings.get(_word.getKey());
+			if (_posting == null) {
+				_posting = new ConcurrentHashMap<Document, Integer>();
+				postings.put(_word.getKey(), _posting);
+			}
+			_posting.remove(document);
+			_posting.put(document, _word.getValue());
+		}
+		if (_old != null) {
+			for (String _word : _old.words.keySet()) {
+				if (!words.containsKey(_word)) {
+					removePosting(_word, _old);
+				}
+			}
+		}
+	}
+
+	private void removePosting(
+			String word, 
+			Document document) 
+	{
+		ConcurrentHashMap<Document, Integer> _posting = postings.get(word);
+		if (_posting != null) {
+			_posting.remove(document);
+			if (_posting.isEmpty()) {
+				postings.remove(word);
+			}
+		}
+	}
+
+	/**
+	 * Search the index.
+	 * @param q the search words
+	 * @param addressbooks the existing addressbooks; hits in addressbooks that were deleted meanwhile are skipped
+	 * @param position the position of the first hit
+	 * @param size the maximum number of hits
+	 * @return the hits ordered by descending score, or null if q contains no word
+	 */
+	List<SearchHitModel> search(
+			String q, 
+			Map<String, ?> addressbooks, 
+			int position, 
+			int size) 
+	{
+		Set<String> _terms = new LinkedHashSet<String>(tokenize(q));
+		if (_terms.isEmpty()) {
+			return null;
+		}
+		Map<Document, Integer> _scores = null;
+		for (String _term : _terms) {
+			Map<Document, Integer> _termScores = new HashMap<Document, Integer>();
+			for (Map.Entry<String, ConcurrentHashMap<Document, Integer>> _posting : 
+					postings.subMap(_term, true, _term + Character.MAX_VALUE, false).entrySet()) {
+				int _factor = _posting.getKey().equals(_term) ? EXACT_MATCH_FACTOR : 1;
+				for (Map.Entry<Document, Integer> _hit : _posting.getValue().entrySet()) {
+					if (_scores != null && !_scores.containsKey(_hit.getKey())) {
+						continue;
+					}
+					int _score = _hit.getValue() * _factor;
+					Integer _best = _termScores.get(_hit.getKey());
+					if (_best == null || _best < _score) {
+						_termScores.put(_hit.getKey(), _score);
+					}
+				}
+			}
+			if (_scores != null) {
+				for (Map.Entry<Document, Integer> _hit : _termScores.entrySet()) {
+					_hit.setValue(_hit.getValue() + _scores.get(_hit.getKey()));
+				}
+			}
+			_scores = _termScores;
+			if (_scores.isEmpty()) {
+				break;
+			}
+		}
+		TopKCollector<Map.Entry<Document, Integer>> _collector = new TopKCollector<Map.Entry<Document, Integer>>(
+				HitComparator, position, size);
+		for (Map.Entry<Document, Integer> _hit : _scores.entrySet()) {
+			if (addressbooks.containsKey(_hit.getKey().aid)) {
+				_collector.add(_hit);
+			}
+		}
+		List<SearchHitModel> _hits = new ArrayList<SearchHitModel>();
+		for (Map.Entry<Document, Integer> _hit : _collector.getPage()) {
+			_hits.add(_hit.getKey().toSearchHit(_hit.getValue()));
+		}
+		return _hits;
+	}
+
+	private static void addAddressWords(
+			Map<String, Integer> words, 
+			ModelEntry<?> entry) 
+	{
+		for (AddressModel _address : entry.getAddresses().values()) {
+			String _value = _address.getValue();
+			addWords(words, _value, WEIGHT_VALUE);
+			if (_value != null) {
+				// whole email addresses and phone numbers without separators
+				addWord(words, normalize(_value.trim()), WEIGHT_VALUE);
+				if (_address.getAddressType() == AddressType.PHONE) {
+					addWord(words, NON_DIGITS.matcher(_value).replaceAll(""), WEIGHT_VALUE);
+				}
+			}
+			addWords(words, _address.getStreet(), WEIGHT_TEXT);
+			addWords(words, _address.getCity(), WEIGHT_TEXT);
+			addWords(words, _address.getPostalCode(), WEIGHT_TEXT);
+		}
+	}
+
+	private static void addWords(
+			Map<String, Integer> words, 
+			String text, 
+			int weight) 
+	{
+		for (String _word : tokenize(text)) {
+			addWord(words, _word, weight);
+		}
+	}
+
+	private static void addWord(
+			Map<String, Integer> words, 
+			String word, 
+			int weight) 
+	{
+		if (word.isEmpty()) {
+			return;
+		}
+		Integer _weight = words.get(word);
+		if (_weight == null || _weight < weight) {
+			words.put(word, weight);
+		}
+	}
+
+	/**
+	 * @param text a text, may be null
+	 * @return the normalized words of the text
+	 */
+	static List<String> tokenize(
+			String text) 
+	{
+		if (text == null || text.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<String> _words = new ArrayList<String>();
+		for (String _word : SEPARATORS.split(normalize(text))) {
+			if (!_word.isEmpty()) {
+				_words.add(_word);
+			}
+		}
+		return _words;
+	}
+
+	private static String normalize(
+			String text) 
+	{
+		return MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+	}
+
+	private static final Comparator<Map.Entry<Document, Integer>> HitComparator = new Comparator<Map.Entry<Document, Integer>>() {
+		public int compare(Map.Entry<Document, Integer> hit1, Map.Entry<Document, Integer> hit2) {
+			int _result = hit2.getValue().compareTo(hit1.getValue());
+			if (_result == 0) {
+				_result = hit1.getKey().getId().compareTo(hit2.getKey().getId());
+			}
+			return _result;
+		}
+	};
+
+	/**
+	 * An indexed contact or org. Documents are equal if they refer to the same entry.
+	 */
+	private static class Document {
+		private final String aid;
+		private final SearchHitType type;
+		private final ModelEntry<?> entry;
+		private Map<String, Integer> words;
+
+		Document(String aid, SearchHitType type, ModelEntry<?> entry) {
+			this.aid = aid;
+			this.type = type;
+			this.entry = entry;
+		}
+
+		String getId() {
+			Object _model = entry.getModel();
+			return _model instanceof ContactModel ? ((ContactModel) _model).getId() : ((OrgModel) _model).getId();
+		}
+
+		SearchHitModel toSearchHit(int score) {
+			SearchHitModel _hit = new SearchHitModel();
+			_hit.setAid(aid);
+			_hit.setType(type);
+			_hit.setId(getId());
+			_hit.setScore(score);
+			if (type == SearchHitType.CONTACT) {
+				_hit.setContact((ContactModel) entry.getModel());
+			} else {
+				_hit.setOrg((OrgModel) entry.getModel());
+			}
+			return _hit;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Document && ((Document) other).entry == entry;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(entry);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges several iterators, each one sorted by a comparator, into one iterator in that order.
+ * Used to walk the contacts of all addressbooks ordered by a sort key without sorting them.
+ * @author Bruno Kaiser
+ *
+ * @param <T> the element type
+ */
+class SortedMergingIterator<T> implements Iterator<T> {
+	private final PriorityQueue<Source<T>> sources;
+
+	/**
+	 * Constructor.
+	 * @param iterators the iterators, each one in the order of the comparator
+	 * @param comparator the order
+	 */
+	SortedMergingIterator(
+			List<Iterator<T>> iterators, 
+			final Comparator<? super T> comparator) 
+	{
+		sources = new PriorityQueue<Source<T>>(Math.max(1, iterators.size()), new Comparator<Source<T>>() {
+			@Override
+			public int compare(Source<T> source1, Source<T> source2) {
+				return comparator.compare(source1.head, source2.head);
+			}
+		});
+		for (Iterator<T> _iterator : iterators) {
+			if (_iterator.hasNext()) {
+				sources.add(new Source<T>(_iterator));
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !sources.isEmpty();
+	}
+
+	@Override
+	public T next() {
+		Source<T> _source = sources.poll();
+		if (_source == null) {
+			throw new NoSuchElementException();
+		}
+		T _value = _source.head;
+		if (_source.advance()) {
+			sources.add(_source);
+		}
+		return _value;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * One of the merged iterators together with its current element.
+	 */
+	private static class Source<T> {
+		private final Iterator<T> iterator;
+		private T head;
+
+		Source(Iterator<T> iterator) {
+			this.iterator = iterator;
+			this.head = iterator.next();
+		}
+
+		boolean advance() {
+			if (iterator.hasNext()) {
+				head = iterator.next();
+				return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,506 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.opentdc.addressbooks.AddressModel;
+import org.opentdc.addressbooks.AddressType;
+import org.opentdc.addressbooks.AddressbookModel;
+import org.opentdc.addressbooks.AttributeType;
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.MessageType;
+import org.opentdc.addressbooks.OrgModel;
+import org.opentdc.addressbooks.OrgType;
+
+/**
+ * Compact binary snapshot of addressbook stores.
+ * The file starts with a magic number and the format version, followed by one record per addressbook, 
+ * contact and org (each contact and org with its addresses), and an end record. Strings are written as 
+ * UTF-8 with a length prefix, timestamps as epoch milliseconds and enums by name.
+ * A snapshot is written to a temporary file that replaces the previous snapshot only when it is complete;
+ * it is read through memory-mapped windows of the file, so that restoring does not copy the file through the heap.
+ * @author Bruno Kaiser
+ *
+ */
+class StoreSnapshot {
+	private static final long MAGIC = 0x4f54444341444253L;	// "OTDCADBS"
+	private static final int FORMAT_VERSION = 1;
+	private static final byte ADDRESSBOOK = 'A';
+	private static final byte CONTACT = 'C';
+	private static final byte ORG = 'O';
+	private static final byte END = 'E';
+	private static final int NULL_LENGTH = -1;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int WINDOW_SIZE = 1 << 26;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The contents of one addressbook read from a snapshot.
+	 */
+	static class Addressbook {
+		final AddressbookModel model;
+		final List<ModelEntry<ContactModel>> contacts = new ArrayList<ModelEntry<ContactModel>>();
+		final List<ModelEntry<OrgModel>> orgs = new ArrayList<ModelEntry<OrgModel>>();
+
+		Addressbook(AddressbookModel model) {
+			this.model = model;
+		}
+	}
+
+	/**
+	 * Write a snapshot of the stores. Each addressbook is written while holding its write lock, 
+	 * so that it is consistent in itself; the snapshot is not a point in time across addressbooks.
+	 * @param file the snapshot file; it is replaced atomically after the new snapshot is synced to disk,
+	 *   and the rename is synced before this returns
+	 * @param stores the addressbook stores
+	 * @return the number of contacts written
+	 * @throws IOException if the snapshot cannot be written; the previous snapshot is kept
+	 */
+	static int write(
+			File file, 
+			Collection<AddressbookStore> stores) 
+			throws IOException 
+	{
+		File _tmpFile = new File(file.getPath() + ".tmp");
+		int _contacts = 0;
+		FileOutputStream _fileOut = new FileOutputStream(_tmpFile);
+		try {
+			DataOutputStream _out = new DataOutputStream(new BufferedOutputStream(_fileOut, BUFFER_SIZE));
+			_out.writeLong(MAGIC);
+			_out.writeInt(FORMAT_VERSION);
+			for (AddressbookStore _store : stores) {
+				_store.getWriteLock().lock();
+				try {
+					if (_store.isRemoved()) {
+						// deleted while the snapshot was written
+						continue;
+					}
+					_out.writeByte(ADDRESSBOOK);
+					writeAddressbook(_out, _store.getModel());
+					for (ModelEntry<ContactModel> _entry : _store.getContacts().values()) {
+						_out.writeByte(CONTACT);
+						writeContact(_out, _entry.getModel());
+						writeAddresses(_out, _entry.getAddresses());
+						_contacts++;
+					}
+					for (ModelEntry<OrgModel> _entry : _store.getOrgs().values()) {
+						_out.writeByte(ORG);
+						writeOrg(_out, _entry.getModel());
+						writeAddresses(_out, _entry.getAddresses());
+					}
+				}
+				finally {
+					_store.getWriteLock().unlock();
+				}
+			}
+			_out.writeByte(END);
+			_out.flush();
+			_fileOut.getChannel().force(true);
+		}
+		finally {
+			_fileOut.close();
+		}
+		Files.move(_tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(file.getAbsoluteFile().getParentFile());
+		return _contacts;
+	}
+
+	/**
+	 * Sync a directory to disk, so that the files created, renamed or truncated in it survive a crash.
+	 * Windows cannot open a directory, and syncs its entries with the files; there the call does nothing.
+	 * @param directory the directory
+	 * @throws IOException if the directory cannot be synced
+	 */
+	static void syncDirectory(
+			File directory) 
+			throws IOException 
+	{
+		FileChannel _channel;
+		try {
+			_channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+		} catch (IOException _ex) {
+			if (System.getProperty("os.name").startsWith("Windows")) {
+				return;
+			}
+			throw _ex;
+		}
+		try {
+			_channel.force(true);
+		}
+		finally {
+			_channel.close();
+		}
+	}
+
+	/**
+	 * Read a snapshot.
+	 * @param file the snapshot file
+	 * @return the addressbooks of the snapshot
+	 * @throws IOException if the file cannot be read, or if it is not a complete snapshot
+	 */
+	static List<Addressbook> read(
+			File file) 
+			throws IOException 
+	{
+		List<Addressbook> _addressbooks = new ArrayList<Addressbook>();
+		RandomAccessFile _file = new RandomAccessFile(file, "r");
+		try {
+			Reader _in = new Reader(_file.getChannel());
+			if (_in.readLong() != MAGIC) {
+				throw new IOException(file + " is not an addressbook snapshot.");
+			}
+			int _version = _in.readInt();
+			if (_version != FORMAT_VERSION) {
+				throw new IOException(file + " has the unsupported snapshot format " + _version + ".");
+			}
+			Addressbook _addressbook = null;
+			while (true) {
+				byte _type = _in.readByte();
+				if (_type == END) {
+					break;
+				} else if (_type == ADDRESSBOOK) {
+					_addressbook = new Addressbook(readAddressbook(_in));
+					_addressbooks.add(_addressbook);
+				} else if (_type == CONTACT && _addressbook != null) {
+					ModelEntry<ContactModel> _entry = new ModelEntry<ContactModel>(readContact(_in));
+					readAddresses(_in, _entry.getAddresses());
+					_addressbook.contacts.add(_entry);
+				} else if (_type == ORG && _addressbook != null) {
+					ModelEntry<OrgModel> _entry = new ModelEntry<OrgModel>(readOrg(_in));
+					readAddresses(_in, _entry.getAddresses());
+					_addressbook.orgs.add(_entry);
+				} else {
+					throw new IOException(file + " is corrupt: unexpected record type <" + _type + ">.");
+				}
+			}
+		}
+		finally {
+			_file.close();
+		}
+		return _addressbooks;
+	}
+
+	/******************************** models *****************************************/
+	// the models are encoded the same way in snapshots and in the WriteAheadLog
+	static void writeAddressbook(
+			DataOutputStream out, 
+			AddressbookModel model) 
+			throws IOException 
+	{
+		writeString(out, model.getId());
+		writeString(out, model.getName());
+		out.writeLong(model.getCreatedAtMillis());
+		writeString(out, model.getCreatedBy());
+		out.writeLong(model.getModifiedAtMillis());
+		writeString(out, model.getModifiedBy());
+	}
+
+	static AddressbookModel readAddressbook(
+			Reader in) 
+			throws IOException 
+	{
+		AddressbookModel _model = new AddressbookModel();
+		_model.setId(in.readString());
+		_model.setName(in.readString());
+		_model.setCreatedAtMillis(in.readLong());
+		_model.setCreatedBy(in.readString());
+		_model.setModifiedAtMillis(in.readLong());
+		_model.setModifiedBy(in.readString());
+		return _model;
+	}
+
+	static void writeContact(
+			DataOutputStream out, 
+			ContactModel model) 
+			throws IOException 
+	{
+		writeString(out, model.getId());
+		writeString(out, model.getPhotoUrl());
+		writeString(out, model.getFn());
+		writeString(out, model.getFirstName());
+		writeString(out, model.getLastName());
+		writeString(out, model.getMiddleName());
+		writeString(out, model.getMaidenName());
+		writeString(out, model.getPrefix());
+		writeString(out, model.getSuffix());
+		writeString(out, model.getNickName());
+		writeString(out, model.getJobTitle());
+		writeString(out, model.getDepartment());
+		writeString(out, model.getCompany());
+		out.writeLong(model.getBirthdayMillis());
+		writeString(out, model.getNote());
+		out.writeLong(model.getCreatedAtMillis());
+		writeString(out, model.getCreatedBy());
+		out.writeLong(model.getModifiedAtMillis());
+		writeString(out, model.getModifiedBy());
+	}
+
+	static ContactModel readContact(
+			Reader in) 
+			throws IOException 
+	{
+		ContactModel _model = new ContactModel();
+		_model.setId(in.readString());
+		_model.setPhotoUrl(in.readString());
+		_model.setFn(in.readString());
+		_model.setFirstName(in.readString());
+		_model.setLastName(in.readString());
+		_model.setMiddleName(in.readString());
+		_model.setMaidenName(in.readString());
+		_model.setPrefix(in.readString());
+		_model.setSuffix(in.readString());
+		_model.setNickName(in.readString());
+		_model.setJobTitle(in.readString());
+		_model.setDepartment(in.readString());
+		_model.setCompany(in.readString());
+		_model.setBirthdayMillis(in.readLong());
+		_model.setNote(in.readString());
+		_model.setCreatedAtMillis(in.readLong());
+		_model.setCreatedBy(in.readString());
+		_model.setModifiedAtMillis(in.readLong());
+		_model.setModifiedBy(in.readString());
+		return _model;
+	}
+
+	static void writeOrg(
+			DataOutputStream out, 
+			OrgModel model) 
+			throws IOException 
+	{
+		writeString(out, model.getId());
+		writeString(out, model.getName());
+		writeString(out, model.getDescription());
+		writeString(out, model.getCostCenter());
+		writeString(out, model.getStockExchange());
+		writeString(out, model.getTickerSymbol());
+		writeEnum(out, model.getOrgType());
+		writeString(out, model.getLogoUrl());
+		out.writeLong(model.getCreatedAtMillis());
+		writeString(out, model.getCreatedBy());
+		out.writeLong(model.getModifiedAtMillis());
+		writeString(out, model.getModifiedBy());
+	}
+
+	static OrgModel readOrg(
+			Reader in) 
+			throws IOException 
+	{
+		OrgModel _model = new OrgModel();
+		_model.setId(in.readString());
+		_model.setName(in.readString());
+		_model.setDescription(in.readString());
+		_model.setCostCenter(in.readString());
+		_model.setStockExchange(in.readString());
+		_model.setTickerSymbol(in.readString());
+		_model.setOrgType(in.readEnum(OrgType.class));
+		_model.setLogoUrl(in.readString());
+		_model.setCreatedAtMillis(in.readLong());
+		_model.setCreatedBy(in.readString());
+		_model.setModifiedAtMillis(in.readLong());
+		_model.setModifiedBy(in.readString());
+		return _model;
+	}
+
+	static void writeAddresses(
+			DataOutputStream out, 
+			Map<String, AddressModel> addresses) 
+			throws IOException 
+	{
+		List<AddressModel> _addresses = new ArrayList<AddressModel>(addresses.values());
+		out.writeInt(_addresses.size());
+		for (AddressModel _model : _addresses) {
+			writeString(out, _model.getId());
+			writeEnum(out, _model.getAddressType());
+			writeEnum(out, _model.getAttributeType());
+			writeEnum(out, _model.getMsgType());
+			writeString(out, _model.getValue());
+			writeString(out, _model.getStreet());
+			writeString(out, _model.getPostalCode());
+			writeString(out, _model.getCity());
+			out.writeShort(_model.getCountryCode());
+			out.writeLong(_model.getCreatedAtMillis());
+			writeString(out, _model.getCreatedBy());
+			out.writeLong(_model.getModifiedAtMillis());
+			writeString(out, _model.getModifiedBy());
+		}
+	}
+
+	static void readAddresses(
+			Reader in, 
+			Map<String, AddressModel> addresses) 
+			throws IOException 
+	{
+		int _size = in.readInt();
+		for (int i = 0; i < _size; i++) {
+			AddressModel _model = new AddressModel();
+			_model.setId(in.readString());
+			_model.setAddressType(in.readEnum(AddressType.class));
+			_model.setAttributeType(in.readEnum(AttributeType.class));
+			_model.setMsgType(in.readEnum(MessageType.class));
+			_model.setValue(in.readString());
+			_model.setStreet(in.readString());
+			_model.setPostalCode(in.readString());
+			_model.setCity(in.readString());
+			_model.setCountryCode(in.readShort());
+			_model.setCreatedAtMillis(in.readLong());
+			_model.setCreatedBy(in.readString());
+			_model.setModifiedAtMillis(in.readLong());
+			_model.setModifiedBy(in.readString());
+			addresses.put(_model.getId(), _model);
+		}
+	}
+
+	/******************************** encoding *****************************************/
+	static void writeString(
+			DataOutputStream out, 
+			String value) 
+			throws IOException 
+	{
+		if (value == null) {
+			out.writeInt(NULL_LENGTH);
+		} else {
+			byte[] _bytes = value.getBytes(UTF8);
+			out.writeInt(_bytes.length);
+			out.write(_bytes);
+		}
+	}
+
+	private static void writeEnum(
+			DataOutputStream out, 
+			Enum<?> value) 
+			throws IOException 
+	{
+		writeString(out, value == null ? null : value.name());
+	}
+
+	/**
+	 * Reads a snapshot through a memory-mapped window of the file, which is moved forward as the file is read;
+	 * or reads one record from a buffer.
+	 */
+	static class Reader {
+		private final FileChannel channel;
+		private final long size;
+		private long windowStart = 0;
+		private ByteBuffer window;
+		private byte[] bytes = new byte[256];
+
+		Reader(FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.size = channel.size();
+			map(0, 0);
+		}
+
+		Reader(ByteBuffer buffer) {
+			this.channel = null;
+			this.size = buffer.remaining();
+			this.window = buffer;
+		}
+
+		/**
+		 * Make sure the window holds the next length bytes.
+		 */
+		private void require(
+				int length) 
+				throws IOException 
+		{
+			if (window.remaining() < length) {
+				long _position = windowStart + window.position();
+				if (channel == null || _position + length > size) {
+					throw new IOException("snapshot is truncated at " + _position + ".");
+				}
+				map(_position, length);
+			}
+		}
+
+		private void map(
+				long position, 
+				int length) 
+				throws IOException 
+		{
+			windowStart = position;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, Math.max(WINDOW_SIZE, length)));
+		}
+
+		byte readByte() throws IOException {
+			require(1);
+			return window.get();
+		}
+
+		short readShort() throws IOException {
+			require(2);
+			return window.getShort();
+		}
+
+		int readInt() throws IOException {
+			require(4);
+			return window.getInt();
+		}
+
+		long readLong() throws IOException {
+			require(8);
+			return window.getLong();
+		}
+
+		String readString() throws IOException {
+			int _length = readInt();
+			if (_length == NULL_LENGTH) {
+				return null;
+			}
+			if (_length < 0) {
+				throw new IOException("snapshot is corrupt: string length " + _length + ".");
+			}
+			require(_length);
+			if (bytes.length < _length) {
+				bytes = new byte[Math.max(_length, bytes.length * 2)];
+			}
+			window.get(bytes, 0, _length);
+			return new String(bytes, 0, _length, UTF8);
+		}
+
+		<E extends Enum<E>> E readEnum(Class<E> type) throws IOException {
+			String _name = readString();
+			try {
+				return _name == null ? null : Enum.valueOf(type, _name);
+			} catch (IllegalArgumentException _ex) {
+				throw new IOException("snapshot contains the unknown " + type.getSimpleName() + " <" + _name + ">.");
+			}
+		}
+	}
+}
@@ -0,0 +1,236 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opentdc.addressbooks.AddressModel;
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.OrgModel;
+
+/**
+ * Process-wide dictionary of the low-cardinality string attributes of the stored models (e.g. createdBy, company, city),
+ * so that all models share one copy of each value instead of the copies created by deserialization.
+ * Values are held weakly: a value that is no longer used by any model is dropped from the dictionary by the garbage collector.
+ * @author Bruno Kaiser
+ *
+ */
+class StringDictionary {
+	private static final StringDictionary instance = new StringDictionary();
+
+	private final ConcurrentHashMap<WeakKey, WeakKey> values = new ConcurrentHashMap<WeakKey, WeakKey>();
+	private final ReferenceQueue<String> collected = new ReferenceQueue<String>();
+
+	/**
+	 * @return the dictionary shared by all service providers
+	 */
+	static StringDictionary getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @param value a string, may be null
+	 * @return the shared copy of the value
+	 */
+	String intern(
+			String value) 
+	{
+		if (value == null) {
+			return null;
+		}
+		purge();
+		WeakKey _existing = values.get(new WeakKey(value, null));
+		while (true) {
+			if (_existing != null) {
+				String _shared = _existing.get();
+				if (_shared != null) {
+					return _shared;
+				}
+				// collected but not yet purged
+				values.remove(_existing);
+			}
+			WeakKey _key = new WeakKey(value, collected);
+			_existing = values.putIfAbsent(_key, _key);
+			if (_existing == null) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Intern the repetitive attributes of a contact before it is stored.
+	 * @param contact the contact
+	 */
+	void intern(
+			ContactModel contact) 
+	{
+		contact.setCompany(intern(contact.getCompany()));
+		contact.setDepartment(intern(contact.getDepartment()));
+		contact.setJobTitle(intern(contact.getJobTitle()));
+		contact.setCreatedBy(intern(contact.getCreatedBy()));
+		contact.setModifiedBy(intern(contact.getModifiedBy()));
+	}
+
+	/**
+	 * Intern the repetitive attributes of an org before it is stored.
+	 * @param org the org
+	 */
+	void intern(
+			OrgModel org) 
+	{
+		org.setStockExchange(intern(org.getStockExchange()));
+		org.setCreatedBy(intern(org.getCreatedBy()));
+		org.setModifiedBy(intern(org.getModifiedBy()));
+	}
+
+	/**
+	 * Intern the repetitive attributes of an address before it is stored.
+	 * @param address the address
+	 */
+	void intern(
+			AddressModel address) 
+	{
+		address.setCity(intern(address.getCity()));
+		address.setPostalCode(intern(address.getPostalCode()));
+		address.setCreatedBy(intern(address.getCreatedBy()));
+		address.setModifiedBy(intern(address.getModifiedBy()));
+	}
+
+	/**
+	 * @return the number of values in the dictionary
+	 */
+	int size() {
+		purge();
+		return values.size();
+	}
+
+	/**
+	 * @param value a string
+	 * @return the estimated heap size of the string including its char[], on a 64-bit JVM with compressed oops
+	 */
+	static long estimateSize(
+			String value) 
+	{
+		return 24 + ((16 + 2L * value.length() + 7) & ~7L);
+	}
+
+	private void purge() {
+		Reference<? extends String> _key;
+		while ((_key = collected.poll()) != null) {
+			values.remove(_key);
+		}
+	}
+
+	/**
+	 * Counts the interned attributes of models: references, distinct instances and their estimated sizes.
+	 */
+	static class Usage {
+		private final IdentityHashMap<String, Boolean> instances = new IdentityHashMap<String, Boolean>();
+		private long references = 0;
+		private long bytes = 0;
+		private long bytesWithoutInterning = 0;
+
+		void add(ContactModel contact) {
+			add(contact.getCompany());
+			add(contact.getDepartment());
+			add(contact.getJobTitle());
+			add(contact.getCreatedBy());
+			add(contact.getModifiedBy());
+		}
+
+		void add(OrgModel org) {
+			add(org.getStockExchange());
+			add(org.getCreatedBy());
+			add(org.getModifiedBy());
+		}
+
+		void add(AddressModel address) {
+			add(address.getCity());
+			add(address.getPostalCode());
+			add(address.getCreatedBy());
+			add(address.getModifiedBy());
+		}
+
+		private void add(String value) {
+			if (value == null) {
+				return;
+			}
+			long _size = estimateSize(value);
+			references++;
+			bytesWithoutInterning += _size;
+			if (instances.put(value, Boolean.TRUE) == null) {
+				bytes += _size;
+			}
+		}
+
+		long getReferences() {
+			return references;
+		}
+
+		long getDistinct() {
+			return instances.size();
+		}
+
+		long getBytes() {
+			return bytes;
+		}
+
+		long getBytesWithoutInterning() {
+			return bytesWithoutInterning;
+		}
+	}
+
+	/**
+	 * A weak reference to a value that compares by the value, as long as it is not collected.
+	 */
+	private static class WeakKey extends WeakReference<String> {
+		private final int hash;
+
+		WeakKey(String value, ReferenceQueue<String> queue) {
+			super(value, queue);
+			this.hash = value.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (other == this) {
+				return true;
+			}
+			if (!(other instanceof WeakKey)) {
+				return false;
+			}
+			String _value = get();
+			return _value != null && _value.equals(((WeakKey) other).get());
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
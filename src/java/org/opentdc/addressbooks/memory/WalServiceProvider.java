@@ -0,0 +1,514 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+
+import org.opentdc.addressbooks.AddressModel;
+import org.opentdc.addressbooks.AddressbookModel;
+import org.opentdc.addressbooks.BulkAddressModel;
+import org.opentdc.addressbooks.BulkContactModel;
+import org.opentdc.addressbooks.BulkOrgModel;
+import org.opentdc.addressbooks.BulkResultModel;
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.ContextParameters;
+import org.opentdc.addressbooks.OrgModel;
+import org.opentdc.service.exception.DuplicateException;
+import org.opentdc.service.exception.InternalServerErrorException;
+import org.opentdc.service.exception.NotFoundException;
+import org.opentdc.service.exception.ValidationException;
+
+/**
+ * In-memory ServiceProvider that persists all changes in a WriteAheadLog, so that no change is lost on a restart 
+ * or a crash. A write returns only after its change is on disk; concurrent writes share the fsync (group commit).
+ * On startup, the latest snapshot of the log is loaded and the changes after it are replayed.
+ * To enable it, configure this class as the service provider and set these context parameters 
+ * (with the prefix of the service provider configuration):
+ * <ul>
+ * <li>wal.dir: the directory of the log (mandatory)</li>
+ * <li>wal.segmentSize: the size of a log segment in MB (default: 64)</li>
+ * <li>wal.compactSize: the size of the segments in MB after which a new snapshot is written, 0 for never (default: 256)</li>
+ * <li>wal.commitDelay: the milliseconds a commit waits for more writes before the fsync (default: 2)</li>
+ * </ul>
+ * The snapshot.* parameters of MemoryServiceProvider are not used; the log writes its own snapshots.
+ * @author Bruno Kaiser
+ *
+ */
+public class WalServiceProvider extends MemoryServiceProvider {
+	private static final Logger logger = Logger.getLogger(WalServiceProvider.class.getName());
+	public static final String DIR_PARAM = "wal.dir";
+	public static final String SEGMENT_SIZE_PARAM = "wal.segmentSize";
+	public static final String COMPACT_SIZE_PARAM = "wal.compactSize";
+	public static final String COMMIT_DELAY_PARAM = "wal.commitDelay";
+	public static final int DEFAULT_SEGMENT_SIZE = 64;
+	public static final int DEFAULT_COMPACT_SIZE = 256;
+	public static final int DEFAULT_COMMIT_DELAY = 2;
+	private static final long MB = 1024L * 1024L;
+
+	private final WriteAheadLog wal;
+
+	/**
+	 * Constructor; recovers the data from the log.
+	 * @param directory the directory of the log
+	 * @param segmentSize the size of a log segment in MB
+	 * @param compactSize the size of the segments in MB after which a new snapshot is written, 0 for never
+	 * @param commitDelay the milliseconds a commit waits for more writes before the fsync
+	 * @throws InternalServerErrorException if the log cannot be recovered
+	 */
+	public WalServiceProvider(
+			File directory, 
+			int segmentSize, 
+			int compactSize, 
+			int commitDelay) 
+			throws InternalServerErrorException 
+	{
+		long _start = System.nanoTime();
+		try {
+			wal = new WriteAheadLog(directory, addressbooks.values(), segmentSize * MB, compactSize * MB, commitDelay);
+		} catch (IOException _ex) {
+			throw new InternalServerErrorException("write-ahead log <" + directory + "> could not be opened: " + 
+					_ex.getMessage());
+		}
+		try {
+			journal = wal;
+			File _snapshot = wal.getSnapshot();
+			int _contacts = _snapshot == null ? 0 : loadSnapshot(_snapshot);
+			int _records = wal.replay(new Replay());
+			wal.open();
+			logger.info("WalServiceProvider(" + directory + ") -> " + _contacts + " contacts from " + 
+					(_snapshot == null ? "no snapshot" : _snapshot.getName()) + ", " + _records + " records replayed in " + 
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - _start) + "ms.");
+		} catch (IOException _ex) {
+			wal.close();
+			throw new InternalServerErrorException("write-ahead log <" + directory + "> could not be recovered: " + 
+					_ex.getMessage());
+		}
+	}
+
+	/**
+	 * Constructor used by GenericService.getServiceProvider().
+	 * @param context the servlet context
+	 * @param prefix the prefix of the service provider configuration
+	 * @throws InternalServerErrorException if wal.dir is not set, the log cannot be recovered
+	 *   or another provider holds the data of the servlet context
+	 */
+	public WalServiceProvider(
+			ServletContext context, 
+			String prefix) 
+			throws InternalServerErrorException 
+	{
+		this(getDirectory(context, prefix), 
+				ContextParameters.getIntParameter(context, prefix + SEGMENT_SIZE_PARAM, DEFAULT_SEGMENT_SIZE), 
+				ContextParameters.getIntParameter(context, prefix + COMPACT_SIZE_PARAM, DEFAULT_COMPACT_SIZE), 
+				ContextParameters.getIntParameter(context, prefix + COMMIT_DELAY_PARAM, DEFAULT_COMMIT_DELAY));
+		try {
+			claim(context);
+		} catch (InternalServerErrorException _ex) {
+			wal.close();
+			throw _ex;
+		}
+	}
+
+	/**
+	 * Commit the pending changes, stop the threads of the log and release its directory; later writes fail.
+	 */
+	@Override
+	public void close() {
+		wal.close();
+		super.close();
+	}
+
+	/******************************** addressbook *****************************************/
+	@Override
+	public AddressbookModel create(
+			HttpServletRequest request, 
+			AddressbookModel addressbook) 
+			throws DuplicateException, ValidationException 
+	{
+		AddressbookModel _result = super.create(request, addressbook);
+		wal.sync();
+		return _result;
+	}
+
+	@Override
+	public AddressbookModel update(
+			HttpServletRequest request, 
+			String id, 
+			AddressbookModel addressbook) 
+			throws NotFoundException, ValidationException 
+	{
+		AddressbookModel _result = super.update(request, id, addressbook);
+		wal.sync();
+		return _result;
+	}
+
+	@Override
+	public void delete(
+			String id) 
+			throws NotFoundException, InternalServerErrorException 
+	{
+		super.delete(id);
+		wal.sync();
+	}
+
+	/******************************** contact *****************************************/
+	@Override
+	public ContactModel createContact(
+			HttpServletRequest request, 
+			String aid, 
+			ContactModel contact) 
+			throws DuplicateException, ValidationException 
+	{
+		ContactModel _result = super.createContact(request, aid, contact);
+		wal.sync();
+		return _result;
+	}
+
+	@Override
+	public ContactModel updateContact(
+			HttpServletRequest request, 
+			String aid, 
+			String cid, 
+			ContactModel contact) 
+			throws NotFoundException, ValidationException 
+	{
+		ContactModel _result = super.updateContact(request, aid, cid, contact);
+		wal.sync();
+		return _result;
+	}
+
+	@Override
+	public void deleteContact(
+			String aid, 
+			String cid) 
+			throws NotFoundException, InternalServerErrorException 
+	{
+		super.deleteContact(aid, cid);
+		wal.sync();
+	}
+
+	/******************************** org *****************************************/
+	@Override
+	public OrgModel createOrg(
+			HttpServletRequest request, 
+			String aid, 
+			OrgModel org) 
+			throws DuplicateException, ValidationException 
+	{
+		OrgModel _result = super.createOrg(request, aid, org);
+		wal.sync();
+		return _result;
+	}
+
+	@Override
+	public OrgModel updateOrg(
+			HttpServletRequest request, 
+			String aid, 
+			String oid, 
+			OrgModel org) 
+			throws NotFoundException, ValidationException 
+	{
+		OrgModel _result = super.updateOrg(request, aid, oid, org);
+		wal.sync();
+		return _result;
+	}
+
+	@Override
+	public void deleteOrg(
+			String aid, 
+			String oid) 
+			throws NotFoundException, InternalServerErrorException 
+	{
+		super.deleteOrg(aid, oid);
+		wal.sync();
+	}
+
+	/******************************** address *****************************************/
+	@Override
+	public AddressModel createAddress(
+			HttpServletRequest request, 
+			String aid, 
+			String cid, 
+			AddressModel address) 
+			throws DuplicateException, ValidationException 
+	{
+		AddressModel _result = super.createAddress(request, aid, cid, address);
+		wal.sync();
+		return _result;
+	}
+
+	@Override
+	public AddressModel updateAddress(
+			HttpServletRequest request, 
+			String aid, 
+			String cid, 
+			String adrid, 
+			AddressModel address) 
+			throws NotFoundException, ValidationException 
+	{
+		AddressModel _result = super.updateAddress(request, aid, cid, adrid, address);
+		wal.sync();
+		return _result;
+	}
+
+	@Override
+	public void deleteAddress(
+			String aid, 
+			String cid, 
+			String adrid) 
+			throws NotFoundException, InternalServerErrorException 
+	{
+		super.deleteAddress(aid, cid, adrid);
+		wal.sync();
+	}
+
+	/******************************** org address *****************************************/
+	@Override
+	public AddressModel createOrgAddress(
+			HttpServletRequest request, 
+			String aid, 
+			String oid, 
+			AddressModel address) 
+			throws DuplicateException, ValidationException 
+	{
+		AddressModel _result = super.createOrgAddress(request, aid, oid, address);
+		wal.sync();
+		return _result;
+	}
+
+	@Override
+	public AddressModel updateOrgAddress(
+			HttpServletRequest request, 
+			String aid, 
+			String oid, 
+			String adrid, 
+			AddressModel address) 
+			throws NotFoundException, ValidationException 
+	{
+		AddressModel _result = super.updateOrgAddress(request, aid, oid, adrid, address);
+		wal.sync();
+		return _result;
+	}
+
+	@Override
+	public void deleteOrgAddress(
+			String aid, 
+			String oid, 
+			String adrid) 
+			throws NotFoundException, InternalServerErrorException 
+	{
+		super.deleteOrgAddress(aid, oid, adrid);
+		wal.sync();
+	}
+
+	/******************************** bulk *****************************************/
+	@Override
+	public List<BulkResultModel> bulkContacts(
+			HttpServletRequest request, 
+			String aid, 
+			List<BulkContactModel> contacts) 
+			throws NotFoundException, ValidationException 
+	{
+		List<BulkResultModel> _result = super.bulkContacts(request, aid, contacts);
+		wal.sync();
+		return _result;
+	}
+
+	@Override
+	public List<BulkResultModel> bulkOrgs(
+			HttpServletRequest request, 
+			String aid, 
+			List<BulkOrgModel> orgs) 
+			throws NotFoundException, ValidationException 
+	{
+		List<BulkResultModel> _result = super.bulkOrgs(request, aid, orgs);
+		wal.sync();
+		return _result;
+	}
+
+	@Override
+	public List<BulkResultModel> bulkAddresses(
+			HttpServletRequest request, 
+			String aid, 
+			String cid, 
+			List<BulkAddressModel> addresses) 
+			throws NotFoundException, ValidationException 
+	{
+		List<BulkResultModel> _result = super.bulkAddresses(request, aid, cid, addresses);
+		wal.sync();
+		return _result;
+	}
+
+	@Override
+	public List<BulkResultModel> bulkOrgAddresses(
+			HttpServletRequest request, 
+			String aid, 
+			String oid, 
+			List<BulkAddressModel> addresses) 
+			throws NotFoundException, ValidationException 
+	{
+		List<BulkResultModel> _result = super.bulkOrgAddresses(request, aid, oid, addresses);
+		wal.sync();
+		return _result;
+	}
+
+	/******************************** helpers *****************************************/
+	private static File getDirectory(
+			ServletContext context, 
+			String prefix) 
+	{
+		String _dir = context.getInitParameter(prefix + DIR_PARAM);
+		if (_dir == null || _dir.isEmpty()) {
+			throw new InternalServerErrorException("context parameter <" + prefix + DIR_PARAM + 
+					"> must name the directory of the write-ahead log.");
+		}
+		return new File(_dir);
+	}
+
+	/**
+	 * Applies the records of the log to the addressbooks during the recovery.
+	 */
+	private class Replay implements Journal {
+		@Override
+		public void putAddressbook(
+				AddressbookModel model) 
+		{
+			AddressbookStore _store = addressbooks.get(model.getId());
+			if (_store == null) {
+				_store = new AddressbookStore(model, searchIndex, lookupIndex, journal, columnBuilder);
+				addressbooks.put(model.getId(), _store);
+			} else {
+				_store.setModel(model);
+			}
+			touch(_store);
+		}
+
+		@Override
+		public void deleteAddressbook(
+				String aid) 
+		{
+			AddressbookStore _store = addressbooks.remove(aid);
+			if (_store != null) {
+				_store.remove();
+			}
+		}
+
+		@Override
+		public void putContact(
+				String aid, 
+				ModelEntry<ContactModel> entry) 
+		{
+			AddressbookStore _store = addressbooks.get(aid);
+			if (_store == null) {
+				return;
+			}
+			_store.getWriteLock().lock();
+			try {
+				ModelEntry<ContactModel> _entry = _store.getContacts().get(entry.getModel().getId());
+				if (_entry == null) {
+					_store.addContact(entry);
+				} else {
+					_entry.getAddresses().clear();
+					_entry.getAddresses().putAll(entry.getAddresses());
+					_store.replaceContact(_entry, entry.getModel());
+				}
+				touch(_store);
+			}
+			finally {
+				_store.getWriteLock().unlock();
+			}
+		}
+
+		@Override
+		public void deleteContact(
+				String aid, 
+				String cid) 
+		{
+			AddressbookStore _store = addressbooks.get(aid);
+			if (_store == null) {
+				return;
+			}
+			_store.getWriteLock().lock();
+			try {
+				_store.removeContact(cid);
+				touch(_store);
+			}
+			finally {
+				_store.getWriteLock().unlock();
+			}
+		}
+
+		@Override
+		public void putOrg(
+				String aid, 
+				ModelEntry<OrgModel> entry) 
+		{
+			AddressbookStore _store = addressbooks.get(aid);
+			if (_store == null) {
+				return;
+			}
+			_store.getWriteLock().lock();
+			try {
+				ModelEntry<OrgModel> _entry = _store.getOrgs().get(entry.getModel().getId());
+				if (_entry == null) {
+					_store.addOrg(entry);
+				} else {
+					_entry.getAddresses().clear();
+					_entry.getAddresses().putAll(entry.getAddresses());
+					_store.replaceOrg(_entry, entry.getModel());
+				}
+				touch(_store);
+			}
+			finally {
+				_store.getWriteLock().unlock();
+			}
+		}
+
+		@Override
+		public void deleteOrg(
+				String aid, 
+				String oid) 
+		{
+			AddressbookStore _store = addressbooks.get(aid);
+			if (_store == null) {
+				return;
+			}
+			_store.getWriteLock().lock();
+			try {
+				_store.removeOrg(oid);
+				touch(_store);
+			}
+			finally {
+				_store.getWriteLock().unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,666 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.addressbooks.memory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.opentdc.addressbooks.AddressModel;
+import org.opentdc.addressbooks.AddressbookModel;
+import org.opentdc.addressbooks.ContactModel;
+import org.opentdc.addressbooks.OrgModel;
+import org.opentdc.service.exception.InternalServerErrorException;
+
+/**
+ * Append-only log of all changes, kept in a directory of numbered segment files (wal.N.log) and snapshots (snapshot.N).
+ * <p>
+ * Each change is appended as one record (length, CRC32 and the complete new state of the changed model, encoded 
+ * as in StoreSnapshot) to an in-memory buffer; a single commit thread writes the buffer to the current segment and 
+ * forces it to disk, so that one fsync commits the changes of all writers that are waiting at that time (group commit).
+ * A writer calls sync() after its change to wait until its records are on disk.
+ * <p>
+ * When the segments written since the last snapshot exceed the compaction size, the log rolls to a new segment N 
+ * and writes snapshot.N of all addressbooks in the background; then the older segments and snapshots are deleted.
+ * As the records hold complete states, replaying the segments from N on top of snapshot.N gives the latest state,
+ * even though the snapshot already contains some of the later changes.
+ * @author Bruno Kaiser
+ *
+ */
+class WriteAheadLog implements Journal {
+	private static final Logger logger = Logger.getLogger(WriteAheadLog.class.getName());
+	private static final String SEGMENT_PREFIX = "wal.";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String SNAPSHOT_PREFIX = "snapshot.";
+	private static final String LOCK_FILE = "lock";
+	private static final byte PUT_ADDRESSBOOK = 1;
+	private static final byte DELETE_ADDRESSBOOK = 2;
+	private static final byte PUT_CONTACT = 3;
+	private static final byte DELETE_CONTACT = 4;
+	private static final byte PUT_ORG = 5;
+	private static final byte DELETE_ORG = 6;
+	// length and CRC32 of a record
+	private static final int HEADER_SIZE = 8;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final File directory;
+	private final Collection<AddressbookStore> stores;
+	private final long segmentSize;
+	private final long compactSize;
+	private final int commitDelay;
+	// held from the constructor to close(), so that no other log (of this or another process) writes to the directory
+	private final RandomAccessFile lockFile;
+	private final FileLock directoryLock;
+	// the sequence number of the last record appended by a thread
+	private final ThreadLocal<long[]> lastAppended = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	// guards the fields below; the commit thread waits on it for records, writers wait on it for the commit
+	private final Object lock = new Object();
+	private ByteArrayOutputStream pending = new ByteArrayOutputStream(BUFFER_SIZE);
+	private final DataOutputStream pendingOut = new DataOutputStream(pending);
+	private long appended = 0;
+	private long durable = 0;
+	private IOException failure = null;
+	private boolean recovering = true;
+	private boolean closed = false;
+	private boolean rollRequested = false;
+	private boolean compacting = false;
+
+	// used by the commit thread only (and by open() before it is started)
+	private long segment;
+	private FileChannel channel;
+	private long writtenSinceSnapshot = 0;
+	private Thread committer;
+	private ExecutorService compactor;
+
+	/**
+	 * Constructor. The log is in recovery mode until open() is called: it can be replayed, and changes are not appended.
+	 * @param directory the directory of the segments and snapshots; it is created if it does not exist
+	 * @param stores the addressbooks that are written to the snapshots
+	 * @param segmentSize the size in bytes after which the log rolls to a new segment
+	 * @param compactSize the size in bytes of the segments after which a new snapshot is written
+	 * @param commitDelay the milliseconds the commit thread waits for more records before it forces them to disk
+	 * @throws IOException if the directory cannot be created, or is used by another log
+	 */
+	WriteAheadLog(
+			File directory, 
+			Collection<AddressbookStore> stores, 
+			long segmentSize, 
+			long compactSize, 
+			int commitDelay) 
+			throws IOException 
+	{
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("directory <" + directory + "> could not be created.");
+		}
+		this.directory = directory;
+		this.stores = stores;
+		this.segmentSize = segmentSize;
+		this.compactSize = compactSize;
+		this.commitDelay = commitDelay;
+		lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+		FileLock _lock = null;
+		try {
+			_lock = lockFile.getChannel().tryLock();
+		} catch (OverlappingFileLockException _ex) {
+			// held by another log of this JVM, e.g. of an application that was redeployed without being stopped
+		} finally {
+			if (_lock == null) {
+				lockFile.close();
+			}
+		}
+		if (_lock == null) {
+			throw new IOException("directory <" + directory + "> is used by another write-ahead log.");
+		}
+		directoryLock = _lock;
+	}
+
+	/******************************** recovery *****************************************/
+	/**
+	 * @return the latest snapshot, or null if there is none
+	 */
+	File getSnapshot() {
+		List<Long> _snapshots = list(SNAPSHOT_PREFIX, "");
+		return _snapshots.isEmpty() ? null : getSnapshotFile(_snapshots.get(_snapshots.size() - 1));
+	}
+
+	/**
+	 * Replay the segments that follow the latest snapshot, in order. A torn record at the end of the last segment 
+	 * (a write that was not committed before a crash) is cut off.
+	 * @param target receives the changes of the records
+	 * @return the number of records replayed
+	 * @throws IOException if a segment cannot be read, or if a record before the end of the log is corrupt
+	 */
+	int replay(
+			Journal target) 
+			throws IOException 
+	{
+		List<Long> _snapshots = list(SNAPSHOT_PREFIX, "");
+		long _first = _snapshots.isEmpty() ? 0 : _snapshots.get(_snapshots.size() - 1);
+		List<Long> _segments = list(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+		int _records = 0;
+		for (int i = 0; i < _segments.size(); i++) {
+			if (_segments.get(i) >= _first) {
+				_records += replaySegment(getSegmentFile(_segments.get(i)), target, i == _segments.size() - 1);
+			}
+		}
+		return _records;
+	}
+
+	private int replaySegment(
+			File file, 
+			Journal target, 
+			boolean last) 
+			throws IOException 
+	{
+		int _records = 0;
+		RandomAccessFile _file = new RandomAccessFile(file, last ? "rw" : "r");
+		try {
+			// read into the heap rather than mapped, so that a torn tail can be cut off on all platforms
+			byte[] _segment = new byte[(int) _file.length()];
+			_file.readFully(_segment);
+			ByteBuffer _buffer = ByteBuffer.wrap(_segment);
+			CRC32 _crc = new CRC32();
+			byte[] _bytes = new byte[256];
+			while (_buffer.hasRemaining()) {
+				int _position = _buffer.position();
+				int _length = _buffer.remaining() >= HEADER_SIZE ? _buffer.getInt() : -1;
+				int _checksum = _length > 0 ? _buffer.getInt() : 0;
+				boolean _valid = _length > 0 && _length <= _buffer.remaining();
+				if (_valid) {
+					if (_bytes.length < _length) {
+						_bytes = new byte[Math.max(_length, _bytes.length * 2)];
+					}
+					_buffer.get(_bytes, 0, _length);
+					_crc.reset();
+					_crc.update(_bytes, 0, _length);
+					_valid = (int) _crc.getValue() == _checksum;
+				}
+				if (!_valid) {
+					if (!last) {
+						throw new IOException("segment <" + file + "> is corrupt at " + _position + ".");
+					}
+					logger.warning("replay(): cutting off the torn record at " + _position + " of <" + file + ">.");
+					_file.setLength(_position);
+					_file.getChannel().force(true);
+					break;
+				}
+				apply(new StoreSnapshot.Reader(ByteBuffer.wrap(_bytes, 0, _length)), target);
+				_records++;
+			}
+		}
+		finally {
+			_file.close();
+		}
+		return _records;
+	}
+
+	private static void apply(
+			StoreSnapshot.Reader in, 
+			Journal target) 
+			throws IOException 
+	{
+		byte _type = in.readByte();
+		switch (_type) {
+		case PUT_ADDRESSBOOK:
+			target.putAddressbook(StoreSnapshot.readAddressbook(in));
+			break;
+		case DELETE_ADDRESSBOOK:
+			target.deleteAddressbook(in.readString());
+			break;
+		case PUT_CONTACT: {
+			String _aid = in.readString();
+			ModelEntry<ContactModel> _entry = new ModelEntry<ContactModel>(StoreSnapshot.readContact(in));
+			StoreSnapshot.readAddresses(in, _entry.getAddresses());
+			target.putContact(_aid, _entry);
+			break;
+		}
+		case DELETE_CONTACT:
+			target.deleteContact(in.readString(), in.readString());
+			break;
+		case PUT_ORG: {
+			String _aid = in.readString();
+			ModelEntry<OrgModel> _entry = new ModelEntry<OrgModel>(StoreSnapshot.readOrg(in));
+			StoreSnapshot.readAddresses(in, _entry.getAddresses());
+			target.putOrg(_aid, _entry);
+			break;
+		}
+		case DELETE_ORG:
+			target.deleteOrg(in.readString(), in.readString());
+			break;
+		default:
+			throw new IOException("unknown record type <" + _type + ">.");
+		}
+	}
+
+	/**
+	 * End the recovery: start a new segment, the commit thread and the background compaction.
+	 * @throws IOException if the new segment cannot be created
+	 */
+	void open() 
+			throws IOException 
+	{
+		List<Long> _segments = list(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+		List<Long> _snapshots = list(SNAPSHOT_PREFIX, "");
+		long _last = Math.max(_segments.isEmpty() ? 0 : _segments.get(_segments.size() - 1), 
+				_snapshots.isEmpty() ? 0 : _snapshots.get(_snapshots.size() - 1));
+		for (Long _segment : _segments) {
+			if (_snapshots.isEmpty() || _segment >= _snapshots.get(_snapshots.size() - 1)) {
+				writtenSinceSnapshot += getSegmentFile(_segment).length();
+			}
+		}
+		openSegment(_last + 1);
+		ThreadFactory _threadFactory = new ThreadFactory() {
+			@Override
+			public Thread newThread(
+					Runnable runnable) 
+			{
+				Thread _thread = new Thread(runnable, "addressbooks-wal-compactor");
+				_thread.setDaemon(true);
+				return _thread;
+			}
+		};
+		compactor = Executors.newSingleThreadExecutor(_threadFactory);
+		committer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				commit();
+			}
+		}, "addressbooks-wal-commit");
+		committer.setDaemon(true);
+		synchronized (lock) {
+			recovering = false;
+		}
+		committer.start();
+		logger.info("open() -> segment " + segment + " in <" + directory + ">");
+	}
+
+	/**
+	 * Commit the pending records and stop the commit thread; changes after close() are rejected.
+	 */
+	void close() {
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+		try {
+			if (committer != null) {
+				committer.join();
+			}
+			if (compactor != null) {
+				compactor.shutdown();
+			}
+			if (channel != null) {
+				channel.close();
+			}
+			directoryLock.release();
+			lockFile.close();
+		} catch (InterruptedException _ex) {
+			Thread.currentThread().interrupt();
+		} catch (IOException _ex) {
+			logger.log(Level.WARNING, "close(): segment " + segment + " could not be closed", _ex);
+		}
+	}
+
+	/******************************** journal *****************************************/
+	@Override
+	public void putAddressbook(
+			AddressbookModel model) 
+	{
+		append(PUT_ADDRESSBOOK, null, model, null);
+	}
+
+	@Override
+	public void deleteAddressbook(
+			String aid) 
+	{
+		append(DELETE_ADDRESSBOOK, null, aid, null);
+	}
+
+	@Override
+	public void putContact(
+			String aid, 
+			ModelEntry<ContactModel> entry) 
+	{
+		append(PUT_CONTACT, aid, entry.getModel(), entry.getAddresses());
+	}
+
+	@Override
+	public void deleteContact(
+			String aid, 
+			String cid) 
+	{
+		append(DELETE_CONTACT, aid, cid, null);
+	}
+
+	@Override
+	public void putOrg(
+			String aid, 
+			ModelEntry<OrgModel> entry) 
+	{
+		append(PUT_ORG, aid, entry.getModel(), entry.getAddresses());
+	}
+
+	@Override
+	public void deleteOrg(
+			String aid, 
+			String oid) 
+	{
+		append(DELETE_ORG, aid, oid, null);
+	}
+
+	/**
+	 * Wait until all records appended by the calling thread are on disk.
+	 * @throws InternalServerErrorException if the log cannot be written
+	 */
+	void sync() 
+			throws InternalServerErrorException 
+	{
+		long _seq = lastAppended.get()[0];
+		synchronized (lock) {
+			while (durable < _seq) {
+				if (failure != null) {
+					throw new InternalServerErrorException("write-ahead log <" + directory + "> failed: " + failure.getMessage());
+				}
+				try {
+					lock.wait();
+				} catch (InterruptedException _ex) {
+					Thread.currentThread().interrupt();
+					throw new InternalServerErrorException("interrupted while waiting for the write-ahead log.");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Encode a record and add it to the pending records.
+	 * @param model the new state of the model, or the id of the deleted model
+	 */
+	private void append(
+			byte type, 
+			String aid, 
+			Object model, 
+			Map<String, AddressModel> addresses) 
+			throws InternalServerErrorException 
+	{
+		ByteArrayOutputStream _bytes = new ByteArrayOutputStream(256);
+		DataOutputStream _out = new DataOutputStream(_bytes);
+		try {
+			_out.writeByte(type);
+			if (aid != null) {
+				StoreSnapshot.writeString(_out, aid);
+			}
+			switch (type) {
+			case PUT_ADDRESSBOOK:	StoreSnapshot.writeAddressbook(_out, (AddressbookModel) model); break;
+			case PUT_CONTACT:		StoreSnapshot.writeContact(_out, (ContactModel) model); break;
+			case PUT_ORG:			StoreSnapshot.writeOrg(_out, (OrgModel) model); break;
+			default:				StoreSnapshot.writeString(_out, (String) model); break;
+			}
+			if (addresses != null) {
+				StoreSnapshot.writeAddresses(_out, addresses);
+			}
+		} catch (IOException _ex) {
+			// a ByteArrayOutputStream does not throw
+			throw new IllegalStateException(_ex);
+		}
+		CRC32 _crc = new CRC32();
+		_crc.update(_bytes.toByteArray(), 0, _bytes.size());
+		long _seq;
+		synchronized (lock) {
+			if (recovering) {
+				return;
+			}
+			if (failure != null || closed) {
+				throw new InternalServerErrorException("write-ahead log <" + directory + "> is " + 
+						(closed ? "closed." : "failed: " + failure.getMessage()));
+			}
+			try {
+				pendingOut.writeInt(_bytes.size());
+				pendingOut.writeInt((int) _crc.getValue());
+				_bytes.writeTo(pendingOut);
+			} catch (IOException _ex) {
+				throw new IllegalStateException(_ex);
+			}
+			_seq = ++appended;
+			lock.notifyAll();
+		}
+		lastAppended.get()[0] = _seq;
+	}
+
+	/******************************** commit *****************************************/
+	/**
+	 * The loop of the commit thread: write the pending records, force them to disk and notify the waiting writers.
+	 */
+	private void commit() {
+		try {
+			while (true) {
+				synchronized (lock) {
+					while (pending.size() == 0 && !rollRequested && !closed) {
+						lock.wait();
+					}
+					if (pending.size() == 0 && !rollRequested && closed) {
+						return;
+					}
+				}
+				if (commitDelay > 0) {
+					Thread.sleep(commitDelay);
+				}
+				byte[] _records;
+				long _seq;
+				boolean _roll;
+				synchronized (lock) {
+					_records = pending.toByteArray();
+					pending.reset();
+					_seq = appended;
+					_roll = rollRequested;
+				}
+				ByteBuffer _buffer = ByteBuffer.wrap(_records);
+				while (_buffer.hasRemaining()) {
+					channel.write(_buffer);
+				}
+				channel.force(false);
+				writtenSinceSnapshot += _records.length;
+				synchronized (lock) {
+					durable = _seq;
+					lock.notifyAll();
+				}
+				if (_roll || channel.size() >= segmentSize) {
+					channel.close();
+					openSegment(segment + 1);
+					synchronized (lock) {
+						rollRequested = false;
+						lock.notifyAll();
+					}
+				}
+				startCompaction();
+			}
+		} catch (IOException _ex) {
+			logger.log(Level.SEVERE, "commit(): segment " + segment + " of <" + directory + "> could not be written", _ex);
+			synchronized (lock) {
+				failure = _ex;
+				lock.notifyAll();
+			}
+		} catch (InterruptedException _ex) {
+			synchronized (lock) {
+				failure = new IOException("the commit thread was interrupted.");
+				lock.notifyAll();
+			}
+		}
+	}
+
+	private void openSegment(
+			long number) 
+			throws IOException 
+	{
+		channel = FileChannel.open(getSegmentFile(number).toPath(), 
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		// the records synced to the new segment are lost in a crash if its directory entry is not
+		StoreSnapshot.syncDirectory(directory);
+		segment = number;
+	}
+
+	/******************************** compaction *****************************************/
+	/**
+	 * Start a compaction in the background if the segments since the last snapshot exceed the compaction size.
+	 */
+	private void startCompaction() {
+		synchronized (lock) {
+			if (compacting || compactSize <= 0 || writtenSinceSnapshot < compactSize || closed) {
+				return;
+			}
+			compacting = true;
+		}
+		writtenSinceSnapshot = 0;
+		compactor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					compact();
+				} catch (IOException _ex) {
+					logger.log(Level.SEVERE, "compact(): the snapshot could not be written", _ex);
+				} catch (RuntimeException _ex) {
+					logger.log(Level.SEVERE, "compact(): the snapshot could not be written", _ex);
+				} finally {
+					synchronized (lock) {
+						compacting = false;
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Roll to a new segment N, write snapshot.N and delete the older segments and snapshots.
+	 */
+	private void compact() 
+			throws IOException 
+	{
+		long _start = System.nanoTime();
+		long _segment;
+		synchronized (lock) {
+			rollRequested = true;
+			lock.notifyAll();
+			while (rollRequested && failure == null && !closed) {
+				try {
+					lock.wait();
+				} catch (InterruptedException _ex) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			if (rollRequested) {
+				return;
+			}
+			_segment = segment;
+		}
+		int _contacts = StoreSnapshot.write(getSnapshotFile(_segment), stores);
+		for (Long _old : list(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+			if (_old < _segment) {
+				delete(getSegmentFile(_old));
+			}
+		}
+		for (Long _old : list(SNAPSHOT_PREFIX, "")) {
+			if (_old < _segment) {
+				delete(getSnapshotFile(_old));
+			}
+		}
+		logger.info("compact() -> snapshot." + _segment + " with " + _contacts + " contacts in " + 
+				(System.nanoTime() - _start) / 1000000 + "ms.");
+	}
+
+	/******************************** files *****************************************/
+	private File getSegmentFile(
+			long number) 
+	{
+		return new File(directory, SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+	}
+
+	private File getSnapshotFile(
+			long number) 
+	{
+		return new File(directory, SNAPSHOT_PREFIX + number);
+	}
+
+	/**
+	 * @return the numbers of the files with this prefix and suffix, in ascending order
+	 */
+	private List<Long> list(
+			final String prefix, 
+			final String suffix) 
+	{
+		List<Long> _numbers = new ArrayList<Long>();
+		File[] _files = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(
+					File file) 
+			{
+				return file.isFile() && file.getName().startsWith(prefix) && file.getName().endsWith(suffix);
+			}
+		});
+		if (_files != null) {
+			for (File _file : _files) {
+				String _name = _file.getName();
+				try {
+					_numbers.add(Long.parseLong(_name.substring(prefix.length(), _name.length() - suffix.length())));
+				} catch (NumberFormatException _ex) {
+					// e.g. a temporary snapshot file
+				}
+			}
+		}
+		Collections.sort(_numbers);
+		return _numbers;
+	}
+
+	private static void delete(
+			File file) 
+	{
+		if (!file.delete()) {
+			logger.warning("compact(): <" + file + "> could not be deleted.");
+		}
+	}
+}